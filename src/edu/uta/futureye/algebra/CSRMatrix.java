@@ -0,0 +1,898 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import edu.uta.futureye.algebra.intf.AlgebraMatrix;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.algebra.intf.Matrix;
+import edu.uta.futureye.algebra.intf.MatrixEntry;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.io.MatlabMatFileWriter;
+import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.Sequence;
+
+/**
+ * Compressed sparse row (CSR) matrix with a fixed sparsity pattern
+ * stored in flat arrays:
+ * <p><blockquote><pre>
+ * rowPtr[r] ... rowPtr[r+1]-1 : positions of the entries of row r+1 in colIdx and vals
+ * colIdx[k] : column index (0-based) of the k-th entry, sorted within each row
+ * vals[k]   : value of the k-th entry
+ * </pre></blockquote>
+ * The sparsity pattern (rowPtr and colIdx) is computed before assembly
+ * (see <tt>SparsityPattern</tt>) and can be shared by several matrices.
+ * Setting a non-zero value to an entry which is not in the pattern
+ * throws an exception, setting zero to it is ignored.
+ * <p>
+ * Row and column indices of the methods in <tt>Matrix</tt> interface start from 1.
+ * <p>
+ * A symmetric matrix (see <tt>getSymmetricUpper()</tt>) stores only the entries of
+ * the upper triangle. <tt>get()</tt> of an entry in the lower triangle returns the 
+ * value of its transposed entry and <tt>set()</tt>, <tt>add()</tt> of an entry in 
+ * the lower triangle are ignored, so a symmetric matrix can be assembled 
+ * by adding the full local stiff matrices.
+ * <p>
+ * Matrix vector multiplication of <tt>AlgebraMatrix</tt> interface is partitioned 
+ * by rows and runs in parallel if <tt>setParallelism()</tt> is called with 
+ * a value greater than 1.
+ *
+ */
+public class CSRMatrix implements SparseMatrix, AlgebraMatrix {
+	protected int rowDim = 0;
+	protected int colDim = 0;
+
+	protected int[] rowPtr;
+	protected int[] colIdx;
+	protected double[] vals;
+	protected boolean symmetric = false;
+
+	protected int parallelism = 1;
+	protected int[] partStart; // row partition balanced by the number of entries
+	protected double[][] symBuffers; // per-partition results of symmetric multiplication
+
+	protected String name = this.getClass().getSimpleName()+Sequence.getInstance().nextSeq();
+
+	/**
+	 * Construct an empty matrix, e.g. for the result of <tt>mult(AlgebraMatrix, AlgebraMatrix)</tt>
+	 */
+	public CSRMatrix() {
+		this(0, 0, new int[1], new int[0]);
+	}
+
+	/**
+	 * Construct a matrix with the given sparsity pattern, all the values are zero.
+	 * The pattern arrays are not copied.
+	 *
+	 * @param rowDim
+	 * @param colDim
+	 * @param rowPtr - length of rowDim+1
+	 * @param colIdx - 0-based column indices, sorted within each row
+	 */
+	public CSRMatrix(int rowDim, int colDim, int[] rowPtr, int[] colIdx) {
+		this.rowDim = rowDim;
+		this.colDim = colDim;
+		this.rowPtr = rowPtr;
+		this.colIdx = colIdx;
+		this.vals = new double[colIdx.length];
+	}
+
+	/**
+	 * Construct a matrix with the pattern and values of a sparse matrix
+	 *
+	 * @param sMat
+	 */
+	public CSRMatrix(SparseMatrix sMat) {
+		this.rowDim = sMat.getRowDim();
+		this.colDim = sMat.getColDim();
+		int[] cnt = new int[this.rowDim];
+		for(MatrixEntry e : sMat) {
+			cnt[e.getRow()-1]++;
+		}
+		this.rowPtr = new int[this.rowDim+1];
+		for(int r=0; r<this.rowDim; r++) {
+			this.rowPtr[r+1] = this.rowPtr[r] + cnt[r];
+		}
+		this.colIdx = new int[this.rowPtr[this.rowDim]];
+		this.vals = new double[this.colIdx.length];
+		int[] pos = Arrays.copyOf(this.rowPtr, this.rowDim);
+		for(MatrixEntry e : sMat) {
+			this.colIdx[pos[e.getRow()-1]++] = e.getCol()-1;
+		}
+		for(int r=0; r<this.rowDim; r++) {
+			Arrays.sort(this.colIdx, this.rowPtr[r], this.rowPtr[r+1]);
+		}
+		for(MatrixEntry e : sMat) {
+			this.vals[getOffset(e.getRow(), e.getCol())] = e.getValue();
+		}
+	}
+
+	/**
+	 * Return the position of entry (row, col) in <tt>vals</tt> or -1
+	 * if the entry is not in the sparsity pattern
+	 *
+	 * @param row - 1-based row index
+	 * @param col - 1-based column index
+	 * @return
+	 */
+	public int getOffset(int row, int col) {
+		if(row < 1 || row > rowDim)
+			throw new FutureyeException("Row number "+row+" exceeds dimenstion [1,"+rowDim+"]");
+		if(col < 1 || col > colDim)
+			throw new FutureyeException("Column number "+col+" exceeds dimenstion [1,"+colDim+"]");
+		if(symmetric && row > col) {
+			int tmp = row; row = col; col = tmp;
+		}
+		int k = Arrays.binarySearch(colIdx, rowPtr[row-1], rowPtr[row], col-1);
+		return k < 0 ? -1 : k;
+	}
+
+	/**
+	 * Return true if only the upper triangle is stored
+	 * @return
+	 */
+	public boolean isSymmetric() {
+		return this.symmetric;
+	}
+
+	/**
+	 * Return a new symmetric matrix with the entries of the upper triangle 
+	 * (including the diagonal) of this matrix. The lower triangle of this matrix 
+	 * is not checked.
+	 *
+	 * @return
+	 */
+	public CSRMatrix getSymmetricUpper() {
+		if(rowDim != colDim)
+			throw new FutureyeException("Symmetric matrix must be square: "+rowDim+"x"+colDim);
+		int[] uRowPtr = new int[rowDim+1];
+		for(int r=0; r<rowDim; r++) {
+			int n = 0;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+				if(colIdx[k] >= r) n++;
+			uRowPtr[r+1] = uRowPtr[r] + n;
+		}
+		int[] uColIdx = new int[uRowPtr[rowDim]];
+		CSRMatrix U = new CSRMatrix(rowDim, colDim, uRowPtr, uColIdx);
+		int p = 0;
+		for(int r=0; r<rowDim; r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				if(colIdx[k] >= r) {
+					uColIdx[p] = colIdx[k];
+					U.vals[p++] = vals[k];
+				}
+			}
+		}
+		U.symmetric = true;
+		U.setParallelism(this.parallelism);
+		return U;
+	}
+
+	/**
+	 * Return the positions of the diagonal entries in <tt>vals</tt>,
+	 * -1 for a row without diagonal entry in the sparsity pattern
+	 *
+	 * @return
+	 */
+	public int[] getDiagonalOffsets() {
+		int n = Math.min(rowDim, colDim);
+		int[] diag = new int[n];
+		for(int r=0; r<n; r++) {
+			int k = Arrays.binarySearch(colIdx, rowPtr[r], rowPtr[r+1], r);
+			diag[r] = k < 0 ? -1 : k;
+		}
+		return diag;
+	}
+
+	public int[] getRowPtr() {
+		return this.rowPtr;
+	}
+
+	public int[] getColIdx() {
+		return this.colIdx;
+	}
+
+	public double[] getVals() {
+		return this.vals;
+	}
+
+	/**
+	 * Change the number of rows. The added rows are empty, the entries of
+	 * the removed rows are dropped from the sparsity pattern. The pattern
+	 * arrays are copied, so a pattern shared with other matrices is not changed.
+	 */
+	@Override
+	public void setRowDim(int nRowDim) {
+		if(nRowDim == this.rowDim)
+			return;
+		int[] ptr = Arrays.copyOf(rowPtr, nRowDim+1);
+		for(int r=this.rowDim+1; r<=nRowDim; r++)
+			ptr[r] = rowPtr[this.rowDim];
+		int nnz = ptr[nRowDim];
+		this.rowPtr = ptr;
+		this.colIdx = Arrays.copyOf(colIdx, nnz);
+		this.vals = Arrays.copyOf(vals, nnz);
+		this.rowDim = nRowDim;
+		this.partStart = null;
+		this.symBuffers = null;
+	}
+
+	@Override
+	public int getRowDim() {
+		return this.rowDim;
+	}
+
+	/**
+	 * Change the number of columns. The entries of the removed columns are
+	 * dropped from the sparsity pattern, see <tt>setRowDim()</tt>.
+	 */
+	@Override
+	public void setColDim(int nColDim) {
+		if(nColDim < this.colDim) {
+			int[] ptr = new int[rowDim+1];
+			int[] cols = new int[colIdx.length];
+			double[] v = new double[vals.length];
+			int p = 0;
+			for(int r=0; r<rowDim; r++) {
+				for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+					if(colIdx[k] < nColDim) {
+						cols[p] = colIdx[k];
+						v[p++] = vals[k];
+					}
+				}
+				ptr[r+1] = p;
+			}
+			this.rowPtr = ptr;
+			this.colIdx = Arrays.copyOf(cols, p);
+			this.vals = Arrays.copyOf(v, p);
+			this.partStart = null;
+			this.symBuffers = null;
+		}
+		this.colDim = nColDim;
+	}
+
+	@Override
+	public int getColDim() {
+		return this.colDim;
+	}
+
+	@Override
+	public double get(int row, int col) {
+		int k = getOffset(row, col);
+		return k < 0 ? 0.0 : vals[k];
+	}
+
+	@Override
+	public double apply(int row, int col) {
+		return get(row, col);
+	}
+
+	@Override
+	public void set(int row, int col, double value) {
+		if(symmetric && row > col)
+			return;
+		int k = getOffset(row, col);
+		if(k >= 0)
+			vals[k] = value;
+		else if(Math.abs(value) >= Matrix.zeroEps)
+			throw new FutureyeException("Entry ("+row+","+col+") is not in the sparsity pattern");
+	}
+
+	@Override
+	public void update(int row, int col, double value) {
+		set(row, col, value);
+	}
+
+	@Override
+	public void add(int row, int col, double value) {
+		if(symmetric && row > col)
+			return;
+		int k = getOffset(row, col);
+		if(k >= 0)
+			vals[k] += value;
+		else if(Math.abs(value) >= Matrix.zeroEps)
+			throw new FutureyeException("Entry ("+row+","+col+") is not in the sparsity pattern");
+	}
+
+	@Override
+	public void mult(Vector x, Vector y) {
+		if(symmetric) {
+			double[] xData = new double[colDim];
+			double[] yData = new double[rowDim];
+			for(int c=0; c<colDim; c++)
+				xData[c] = x.get(c+1);
+			multImpl(xData, yData, false);
+			for(int r=0; r<rowDim; r++)
+				y.set(r+1, yData[r]);
+			return;
+		}
+		for(int r=0; r<rowDim; r++) {
+			double v = 0.0;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				v += vals[k]*x.get(colIdx[k]+1);
+			}
+			y.set(r+1, v);
+		}
+	}
+
+	/**
+	 * Matrix vector multiplication
+	 * y=this*x (y=A*x)
+	 */
+	@Override
+	public void mult(AlgebraVector x, AlgebraVector y) {
+		multImpl(x.getData(), y.getData(), false);
+	}
+
+	/**
+	 * Fused matrix vector multiplication and inner product:
+	 * y=A*x and return x'*y (x'*A*x). The inner product is computed in
+	 * the same pass over the rows as the multiplication.
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public double multDot(AlgebraVector x, AlgebraVector y) {
+		if(rowDim != colDim)
+			throw new FutureyeException("multDot() requires a square matrix: "+rowDim+"x"+colDim);
+		return multImpl(x.getData(), y.getData(), true);
+	}
+
+	/**
+	 * Sparse matrix multiplication C = this*B, where B and C are <tt>CSRMatrix</tt>.
+	 * The sparsity pattern and values of C are replaced by the ones of the product.
+	 */
+	@Override
+	public void mult(AlgebraMatrix B, AlgebraMatrix C) {
+		if(!(B instanceof CSRMatrix && C instanceof CSRMatrix))
+			throw new UnsupportedOperationException();
+		CSRMatrix A = this.symmetric ? this.getFullStorage() : this;
+		CSRMatrix BB = (CSRMatrix)B;
+		if(BB.symmetric)
+			BB = BB.getFullStorage();
+		CSRMatrix CC = (CSRMatrix)C;
+		if(A.colDim != BB.rowDim)
+			throw new FutureyeException("Matrix dimensions mismatch: "+
+					A.rowDim+"x"+A.colDim+" * "+BB.rowDim+"x"+BB.colDim);
+
+		int n = A.rowDim;
+		int m = BB.colDim;
+		int[] marker = new int[m];
+		Arrays.fill(marker, -1);
+		//Count entries of each row of C
+		int[] cRowPtr = new int[n+1];
+		for(int r=0; r<n; r++) {
+			int cnt = 0;
+			for(int k=A.rowPtr[r]; k<A.rowPtr[r+1]; k++) {
+				int br = A.colIdx[k];
+				for(int kk=BB.rowPtr[br]; kk<BB.rowPtr[br+1]; kk++) {
+					int c = BB.colIdx[kk];
+					if(marker[c] != r) {
+						marker[c] = r;
+						cnt++;
+					}
+				}
+			}
+			cRowPtr[r+1] = cRowPtr[r] + cnt;
+		}
+		//Compute values with a dense accumulator
+		int[] cColIdx = new int[cRowPtr[n]];
+		double[] cVals = new double[cColIdx.length];
+		double[] acc = new double[m];
+		Arrays.fill(marker, -1);
+		for(int r=0; r<n; r++) {
+			int p = cRowPtr[r];
+			for(int k=A.rowPtr[r]; k<A.rowPtr[r+1]; k++) {
+				int br = A.colIdx[k];
+				double v = A.vals[k];
+				for(int kk=BB.rowPtr[br]; kk<BB.rowPtr[br+1]; kk++) {
+					int c = BB.colIdx[kk];
+					if(marker[c] != r) {
+						marker[c] = r;
+						acc[c] = 0.0;
+						cColIdx[p++] = c;
+					}
+					acc[c] += v*BB.vals[kk];
+				}
+			}
+			Arrays.sort(cColIdx, cRowPtr[r], cRowPtr[r+1]);
+			for(int k=cRowPtr[r]; k<cRowPtr[r+1]; k++)
+				cVals[k] = acc[cColIdx[k]];
+		}
+		CC.rowDim = n;
+		CC.colDim = m;
+		CC.rowPtr = cRowPtr;
+		CC.colIdx = cColIdx;
+		CC.vals = cVals;
+		CC.symmetric = false;
+		CC.partStart = null;
+		CC.symBuffers = null;
+	}
+
+	/**
+	 * Return a new matrix with full storage. For a symmetric matrix,
+	 * the lower triangle is filled with the transposed upper triangle.
+	 *
+	 * @return
+	 */
+	public CSRMatrix getFullStorage() {
+		if(!symmetric)
+			return this.copy();
+		int n = rowDim;
+		int[] fRowPtr = new int[n+1];
+		for(int r=0; r<n; r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				fRowPtr[r+1]++;
+				if(colIdx[k] != r)
+					fRowPtr[colIdx[k]+1]++;
+			}
+		}
+		for(int r=0; r<n; r++)
+			fRowPtr[r+1] += fRowPtr[r];
+		int[] fColIdx = new int[fRowPtr[n]];
+		CSRMatrix F = new CSRMatrix(n, n, fRowPtr, fColIdx);
+		int[] pos = Arrays.copyOf(fRowPtr, n);
+		//Rows are visited in increasing order: the transposed entries of row c
+		//(columns r<c) are filled before its own upper entries (columns >=c)
+		for(int r=0; r<n; r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int c = colIdx[k];
+				if(c != r) {
+					int p = pos[c]++;
+					fColIdx[p] = r;
+					F.vals[p] = vals[k];
+				}
+			}
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int p = pos[r]++;
+				fColIdx[p] = colIdx[k];
+				F.vals[p] = vals[k];
+			}
+		}
+		F.setParallelism(this.parallelism);
+		return F;
+	}
+
+	/**
+	 * Return the transpose in a new matrix
+	 */
+	@Override
+	public AlgebraMatrix getTrans() {
+		if(symmetric)
+			return this.copy();
+		return this.copy().trans();
+	}
+
+	/**
+	 * Set the number of threads used in <tt>mult(AlgebraVector, AlgebraVector)</tt>
+	 * and <tt>multDot()</tt>. The rows are split into <tt>parallelism</tt> parts 
+	 * with about the same number of entries. For a non-symmetric matrix, the result
+	 * of <tt>mult()</tt> does not depend on the number of threads, the results of 
+	 * <tt>multDot()</tt> and of a symmetric matrix may differ by round-off errors.
+	 * <p>
+	 * The threads come from a pool shared by all the matrices with the same
+	 * parallelism (see <tt>getPool()</tt>), so no threads are created for
+	 * each matrix, e.g. the copies made by the direct solvers.
+	 *
+	 * @param parallelism
+	 * @return
+	 */
+	public CSRMatrix setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+		this.partStart = null;
+		this.symBuffers = null;
+		return this;
+	}
+
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	//Pools shared by all the matrices, indexed by parallelism
+	protected static final Map<Integer, ForkJoinPool> pools = new HashMap<Integer, ForkJoinPool>();
+
+	/**
+	 * Return the pool with <tt>parallelism</tt> threads shared by all the matrices.
+	 * The worker threads are daemon threads and are released when idle.
+	 *
+	 * @param parallelism
+	 * @return
+	 */
+	public static ForkJoinPool getPool(int parallelism) {
+		synchronized(pools) {
+			ForkJoinPool pool = pools.get(parallelism);
+			if(pool == null) {
+				pool = new ForkJoinPool(parallelism);
+				pools.put(parallelism, pool);
+			}
+			return pool;
+		}
+	}
+
+	interface RowTask {
+		/**
+		 * Process rows [rowStart, rowEnd) (0-based) of partition <tt>part</tt>
+		 */
+		void run(int part, int rowStart, int rowEnd);
+	}
+
+	protected int getPartNumber() {
+		return parallelism > 1 ? parallelism : 1;
+	}
+
+	protected int[] getPartition() {
+		if(partStart == null) {
+			int nParts = getPartNumber();
+			int[] ps = new int[nParts+1];
+			int nnz = vals.length;
+			int r = 0;
+			for(int p=1; p<nParts; p++) {
+				long target = (long)nnz*p/nParts;
+				while(r < rowDim && rowPtr[r] < target)
+					r++;
+				ps[p] = r;
+			}
+			ps[nParts] = rowDim;
+			partStart = ps;
+		}
+		return partStart;
+	}
+
+	protected void invoke(final RowTask task) {
+		final int[] ps = getPartition();
+		if(ps.length == 2) {
+			task.run(0, 0, rowDim);
+			return;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int p=0; p<ps.length-1; p++) {
+			final int part = p;
+			tasks.add(() -> {
+				task.run(part, ps[part], ps[part+1]);
+				return null;
+			});
+		}
+		for(Future<Void> f : getPool(parallelism).invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				throw new FutureyeException(e.getMessage());
+			} catch (ExecutionException e) {
+				throw new FutureyeException("Parallel multiplication failed: "+e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * y=A*x, return x'*y if <tt>dot</tt> is true
+	 */
+	protected double multImpl(final double[] x, final double[] y, final boolean dot) {
+		final int nParts = getPartNumber();
+		final double[] partial = new double[nParts];
+		if(!symmetric) {
+			invoke((part, rs, re) -> {
+				double s = 0.0;
+				for(int r=rs; r<re; r++) {
+					double v = 0.0;
+					for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+						v += vals[k]*x[colIdx[k]];
+					y[r] = v;
+					if(dot) s += v*x[r];
+				}
+				partial[part] = s;
+			});
+		} else if(nParts == 1) {
+			Arrays.fill(y, 0.0);
+			multSymmetric(x, y, 0, rowDim);
+			if(dot) {
+				for(int r=0; r<rowDim; r++)
+					partial[0] += x[r]*y[r];
+			}
+		} else {
+			//The transposed part of a row is scattered to the rows below it,
+			//so each partition writes into its own buffer which are summed afterwards
+			if(symBuffers == null)
+				symBuffers = new double[nParts][rowDim];
+			invoke((part, rs, re) -> {
+				double[] buf = symBuffers[part];
+				Arrays.fill(buf, rs, rowDim, 0.0);
+				multSymmetric(x, buf, rs, re);
+			});
+			final int[] ps = getPartition();
+			invoke((part, rs, re) -> {
+				double s = 0.0;
+				for(int r=rs; r<re; r++) {
+					double v = 0.0;
+					for(int p=0; p<nParts && ps[p]<=r; p++)
+						v += symBuffers[p][r];
+					y[r] = v;
+					if(dot) s += v*x[r];
+				}
+				partial[part] = s;
+			});
+		}
+		double rlt = 0.0;
+		for(int p=0; p<nParts; p++)
+			rlt += partial[p];
+		return rlt;
+	}
+
+	/**
+	 * y += U*x + (U-D)'*x for rows [rs, re) of the upper triangle U,
+	 * where D is the diagonal of U
+	 */
+	protected void multSymmetric(double[] x, double[] y, int rs, int re) {
+		for(int r=rs; r<re; r++) {
+			double xr = x[r];
+			double v = 0.0;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int c = colIdx[k];
+				v += vals[k]*x[c];
+				if(c != r)
+					y[c] += vals[k]*xr;
+			}
+			y[r] += v;
+		}
+	}
+
+	/**
+	 * A=A'
+	 *
+	 */
+	@Override
+	public CSRMatrix trans() {
+		if(symmetric)
+			return this;
+		int[] tRowPtr = new int[colDim+1];
+		for(int k=0; k<colIdx.length; k++) {
+			tRowPtr[colIdx[k]+1]++;
+		}
+		for(int c=0; c<colDim; c++) {
+			tRowPtr[c+1] += tRowPtr[c];
+		}
+		int[] tColIdx = new int[colIdx.length];
+		double[] tVals = new double[vals.length];
+		int[] pos = Arrays.copyOf(tRowPtr, colDim);
+		//rows are visited in increasing order so the columns of the transpose are sorted
+		for(int r=0; r<rowDim; r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int p = pos[colIdx[k]]++;
+				tColIdx[p] = r;
+				tVals[p] = vals[k];
+			}
+		}
+		int dim = this.colDim;
+		this.colDim = this.rowDim;
+		this.rowDim = dim;
+		this.rowPtr = tRowPtr;
+		this.colIdx = tColIdx;
+		this.vals = tVals;
+		this.partStart = null;
+		this.symBuffers = null;
+		return this;
+	}
+
+	/**
+	 * Copy values, the sparsity pattern is shared
+	 */
+	@Override
+	public CSRMatrix copy() {
+		CSRMatrix newM = new CSRMatrix(rowDim, colDim, rowPtr, colIdx);
+		System.arraycopy(vals, 0, newM.vals, 0, vals.length);
+		newM.symmetric = this.symmetric;
+		newM.setParallelism(this.parallelism);
+		return newM;
+	}
+
+	@Override
+	public void print() {
+		for(int i=1;i<=rowDim;i++) {
+			for(int j=1;j<=colDim;j++) {
+				System.out.print(String.format("%8.6f   ", get(i,j)));
+			}
+			System.out.println();
+		}
+		System.out.println();
+	}
+
+	public String toString() {
+		return "CSRMatrix:"+name+"("+
+			this.rowDim+","+this.colDim+
+			"):NNZ="+vals.length+(symmetric?":Symmetric":"");
+	}
+
+	@Override
+	public CSRMatrix setName(String name) {
+		this.name = name;
+		return this;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Write this matrix to a file with Matlab mat file format.
+	 * The variable name in matlab workspace is specified by <tt>setName()</tt>.
+	 *
+	 * @param fileName
+	 */
+	@Override
+	public void writeMatFile(String fileName) {
+		MatlabMatFileWriter w = new MatlabMatFileWriter();
+		w.addSparseMatrix(this);
+		w.writeFile(fileName);
+	}
+
+	/**
+	 * Write the entries in the sparsity pattern to a text file, one entry 
+	 * "row col value" (1-based) per line. The last line "rowDim colDim 0"
+	 * keeps the dimensions, so the file can be loaded in Matlab by 
+	 * <tt>spconvert(load(fileName))</tt>. Both triangles are written for
+	 * a symmetric matrix.
+	 *
+	 * @param fileName
+	 */
+	@Override
+	public void writeSimpleFile(String fileName) {
+		try {
+			PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+			try {
+				for(int r=0; r<rowDim; r++) {
+					for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+						w.println((r+1)+" "+(colIdx[k]+1)+" "+vals[k]);
+						if(symmetric && colIdx[k] != r)
+							w.println((colIdx[k]+1)+" "+(r+1)+" "+vals[k]);
+					}
+				}
+				w.println(rowDim+" "+colDim+" 0");
+			} finally {
+				w.close();
+			}
+		} catch (IOException e) {
+			throw new FutureyeException("Can't write "+fileName+": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Return the number of entries in the sparsity pattern. 
+	 * Only the upper triangle is counted for a symmetric matrix.
+	 */
+	@Override
+	public int getNonZeroNumber() {
+		return vals.length;
+	}
+
+	/**
+	 * Return a copy of all the entries in the sparsity pattern.
+	 * Changes in the returned map are not reflected in this matrix.
+	 */
+	@Override
+	public Map<Integer, Map<Integer, Double>> getAll() {
+		Map<Integer, Map<Integer, Double>> m = new HashMap<Integer, Map<Integer, Double>>();
+		for(int r=0; r<rowDim; r++) {
+			if(rowPtr[r] == rowPtr[r+1])
+				continue;
+			Map<Integer, Double> row = new HashMap<Integer, Double>();
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				row.put(colIdx[k]+1, vals[k]);
+			}
+			m.put(r+1, row);
+		}
+		return m;
+	}
+
+	@Override
+	public void setAll(int nRowBase, int nColBase,
+			Map<Integer, Map<Integer, Double>> dataMap) {
+		for(Entry<Integer, Map<Integer, Double>> rowEntry : dataMap.entrySet()) {
+			int nRow = rowEntry.getKey();
+			for(Entry<Integer, Double> entry : rowEntry.getValue().entrySet()) {
+				set(nRowBase+nRow, nColBase+entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public void clearAll() {
+		this.rowDim = 0;
+		this.colDim = 0;
+		this.rowPtr = new int[1];
+		this.colIdx = new int[0];
+		this.vals = new double[0];
+		this.partStart = null;
+		this.symBuffers = null;
+	}
+
+	/**
+	 * Set all the values to zero, the sparsity pattern is kept
+	 */
+	@Override
+	public void clearData() {
+		Arrays.fill(vals, 0.0);
+	}
+
+	/**
+	 * Return a row-major iterator over the entries in the sparsity pattern.
+	 * Only the upper triangle is visited for a symmetric matrix.
+	 */
+	@Override
+	public Iterator<MatrixEntry> iterator() {
+		return new Iterator<MatrixEntry>() {
+			int row = 0;
+			int k = 0;
+			final CSREntry entry = new CSREntry();
+
+			@Override
+			public boolean hasNext() {
+				return k < vals.length;
+			}
+
+			@Override
+			public MatrixEntry next() {
+				if(k >= vals.length)
+					throw new NoSuchElementException();
+				while(rowPtr[row+1] <= k)
+					row++;
+				entry.row = row;
+				entry.k = k++;
+				return entry;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Matrix entry backed by the matrix.
+	 */
+	class CSREntry implements MatrixEntry {
+		int row;
+		int k;
+
+		@Override
+		public int getRow() {
+			return row+1;
+		}
+
+		@Override
+		public int getCol() {
+			return colIdx[k]+1;
+		}
+
+		@Override
+		public double getValue() {
+			return vals[k];
+		}
+
+		@Override
+		public void setValue(double value) {
+			vals[k] = value;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import java.util.Arrays;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+
+/**
+ * Approximate minimum degree (AMD) fill-reducing ordering.
+ * <p>
+ * The elimination is simulated on the quotient graph of the pattern of A+A'
+ * (eliminated nodes become elements which absorb their neighbor elements),
+ * and the degrees of the nodes adjacent to the pivot are replaced by the
+ * approximate external degree bound of Amestoy, Davis and Duff.
+ * Supervariable detection and mass elimination are not performed.
+ *
+ */
+public class AMDOrdering {
+
+	/**
+	 * Return the ordering: <tt>perm[k]</tt> (0-based) is the index of the row/column
+	 * of A which is eliminated at the k-th step
+	 *
+	 * @param A - square matrix, only the sparsity pattern is used
+	 * @return
+	 */
+	public static int[] order(CSRMatrix A) {
+		int n = A.getRowDim();
+		int[] rowPtr = A.getRowPtr();
+		int[] colIdx = A.getColIdx();
+
+		//Pattern of A+A' without diagonal
+		int[] cnt = new int[n];
+		for(int i=0; i<n; i++) {
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++) {
+				int j = colIdx[k];
+				if(i != j) {
+					cnt[i]++;
+					cnt[j]++;
+				}
+			}
+		}
+		int[][] vAdj = new int[n][];
+		int[] vLen = new int[n];
+		for(int i=0; i<n; i++)
+			vAdj[i] = new int[cnt[i]];
+		for(int i=0; i<n; i++) {
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++) {
+				int j = colIdx[k];
+				if(i != j) {
+					vAdj[i][vLen[i]++] = j;
+					vAdj[j][vLen[j]++] = i;
+				}
+			}
+		}
+		for(int i=0; i<n; i++) {
+			Arrays.sort(vAdj[i], 0, vLen[i]);
+			int len = 0;
+			for(int k=0; k<vLen[i]; k++)
+				if(k == 0 || vAdj[i][k] != vAdj[i][k-1])
+					vAdj[i][len++] = vAdj[i][k];
+			vLen[i] = len;
+		}
+
+		int[][] eAdj = new int[n][]; // elements adjacent to each variable
+		int[] eLen = new int[n];
+		int[][] elemVars = new int[n][]; // variables of each element, null if absorbed or not an element
+		boolean[] eliminated = new boolean[n];
+		int[] degree = new int[n];
+		int[] mark = new int[n];
+		int[] wMark = new int[n];
+		int[] w = new int[n];
+		int stamp = 0;
+		int[] Lp = new int[n];
+
+		//Doubly linked lists of variables with the same degree
+		int[] head = new int[n];
+		int[] next = new int[n];
+		int[] prev = new int[n];
+		Arrays.fill(head, -1);
+		for(int i=0; i<n; i++) {
+			eAdj[i] = new int[4];
+			degree[i] = Math.min(vLen[i], n-1);
+			insert(head, next, prev, degree[i], i);
+		}
+
+		int[] perm = new int[n];
+		int minDeg = 0;
+		for(int k=0; k<n; k++) {
+			while(head[minDeg] == -1)
+				minDeg++;
+			int p = head[minDeg];
+			remove(head, next, prev, minDeg, p);
+			eliminated[p] = true;
+			perm[k] = p;
+
+			//The new element p = union of adjacent elements and variables of p
+			stamp++;
+			mark[p] = stamp;
+			int nLp = 0;
+			for(int q=0; q<eLen[p]; q++) {
+				int e = eAdj[p][q];
+				if(elemVars[e] == null) continue;
+				for(int v : elemVars[e]) {
+					if(!eliminated[v] && mark[v] != stamp) {
+						mark[v] = stamp;
+						Lp[nLp++] = v;
+					}
+				}
+				elemVars[e] = null; //absorbed
+			}
+			for(int q=0; q<vLen[p]; q++) {
+				int v = vAdj[p][q];
+				if(!eliminated[v] && mark[v] != stamp) {
+					mark[v] = stamp;
+					Lp[nLp++] = v;
+				}
+			}
+			elemVars[p] = Arrays.copyOf(Lp, nLp);
+			vAdj[p] = null;
+			eAdj[p] = null;
+
+			//w[e] = |Le \ Lp| for the other elements adjacent to Lp
+			for(int q=0; q<nLp; q++) {
+				int i = Lp[q];
+				for(int r=0; r<eLen[i]; r++) {
+					int e = eAdj[i][r];
+					if(elemVars[e] == null) continue;
+					if(wMark[e] != stamp) {
+						wMark[e] = stamp;
+						w[e] = elemVars[e].length;
+					}
+					w[e]--;
+				}
+			}
+
+			for(int q=0; q<nLp; q++) {
+				int i = Lp[q];
+				remove(head, next, prev, degree[i], i);
+				//prune elements: remove absorbed, add p
+				int d = 0;
+				int len = 0;
+				int[] ea = eAdj[i];
+				for(int r=0; r<eLen[i]; r++) {
+					int e = ea[r];
+					if(elemVars[e] == null) continue;
+					if(w[e] == 0) {
+						elemVars[e] = null; //aggressive absorption, Le is a subset of Lp
+						continue;
+					}
+					d += w[e];
+					ea[len++] = e;
+				}
+				if(len == ea.length)
+					ea = eAdj[i] = Arrays.copyOf(ea, 2*len);
+				ea[len++] = p;
+				eLen[i] = len;
+				//prune variables covered by element p
+				int[] va = vAdj[i];
+				len = 0;
+				for(int r=0; r<vLen[i]; r++) {
+					int v = va[r];
+					if(!eliminated[v] && mark[v] != stamp)
+						va[len++] = v;
+				}
+				vLen[i] = len;
+				d += len + nLp - 1;
+				d = Math.min(d, n-k-2);
+				degree[i] = d;
+				insert(head, next, prev, d, i);
+				if(d < minDeg)
+					minDeg = d;
+			}
+		}
+		return perm;
+	}
+
+	private static void insert(int[] head, int[] next, int[] prev, int d, int i) {
+		next[i] = head[d];
+		prev[i] = -1;
+		if(head[d] != -1)
+			prev[head[d]] = i;
+		head[d] = i;
+	}
+
+	private static void remove(int[] head, int[] next, int[] prev, int d, int i) {
+		if(prev[i] != -1)
+			next[prev[i]] = next[i];
+		else
+			head[d] = next[i];
+		if(next[i] != -1)
+			prev[next[i]] = prev[i];
+	}
+
+	/**
+	 * Return the inverse of permutation <tt>perm</tt>
+	 *
+	 * @param perm
+	 * @return
+	 */
+	public static int[] inverse(int[] perm) {
+		int[] pinv = new int[perm.length];
+		for(int k=0; k<perm.length; k++)
+			pinv[perm[k]] = k;
+		return pinv;
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Incomplete Cholesky factorization with zero fill-in, IC(0),
+ * for symmetric positive definite matrices
+ * <p>
+ * A = R'*R + E, where R is an upper triangle matrix with the same sparsity
+ * pattern as the upper triangle of A. R is stored in a symmetric copy of A.
+ * If A has full storage, only its upper triangle is used.
+ *
+ */
+public class IC0Preconditioner implements Preconditioner {
+	protected CSRMatrix R;
+	protected int[] diag;
+	protected double[] work;
+
+	public IC0Preconditioner(CSRMatrix A) {
+		R = A.isSymmetric() ? A.copy() : A.getSymmetricUpper();
+		diag = R.getDiagonalOffsets();
+		int[] rowPtr = R.getRowPtr();
+		int[] colIdx = R.getColIdx();
+		double[] vals = R.getVals();
+		int n = diag.length;
+
+		//Right-looking factorization, row i of R is final before
+		//it updates the rows below it
+		for(int i=0; i<n; i++) {
+			if(diag[i] < 0 || vals[diag[i]] <= 0.0)
+				throw new FutureyeException("IC(0): non-positive pivot at row "+(i+1));
+			double d = Math.sqrt(vals[diag[i]]);
+			vals[diag[i]] = d;
+			int end = rowPtr[i+1];
+			for(int k=diag[i]+1; k<end; k++)
+				vals[k] /= d;
+			for(int k1=diag[i]+1; k1<end; k1++) {
+				int c1 = colIdx[k1];
+				double v1 = vals[k1];
+				for(int k2=k1; k2<end; k2++) {
+					int pos = R.getOffset(c1+1, colIdx[k2]+1);
+					if(pos >= 0)
+						vals[pos] -= v1*vals[k2];
+				}
+			}
+		}
+		this.work = new double[n];
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		int[] rowPtr = R.getRowPtr();
+		int[] colIdx = R.getColIdx();
+		double[] vals = R.getVals();
+		double[] rd = r.getData();
+		double[] zd = z.getData();
+		double[] y = work;
+		int n = diag.length;
+		//R'y = r, R' is accessed by columns
+		System.arraycopy(rd, 0, y, 0, n);
+		for(int i=0; i<n; i++) {
+			double yi = y[i]/vals[diag[i]];
+			y[i] = yi;
+			for(int k=diag[i]+1; k<rowPtr[i+1]; k++)
+				y[colIdx[k]] -= vals[k]*yi;
+		}
+		//Rz = y
+		for(int i=n; --i>=0;) {
+			double s = y[i];
+			for(int k=diag[i]+1; k<rowPtr[i+1]; k++)
+				s -= vals[k]*zd[colIdx[k]];
+			zd[i] = s/vals[diag[i]];
+		}
+	}
+}
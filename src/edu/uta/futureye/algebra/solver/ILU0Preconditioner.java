@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import java.util.Arrays;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Incomplete LU factorization with zero fill-in, ILU(0)
+ * <p>
+ * A = L*U + R, where L (unit lower triangle) and U (upper triangle) have
+ * the same sparsity pattern as A. L and U are stored in a copy of A.
+ * For symmetric positive definite matrices with symmetric storage
+ * use <tt>IC0Preconditioner</tt>.
+ *
+ */
+public class ILU0Preconditioner implements Preconditioner {
+	protected CSRMatrix LU;
+	protected int[] diag;
+
+	public ILU0Preconditioner(CSRMatrix A) {
+		if(A.isSymmetric())
+			throw new FutureyeException("ILU(0): full storage is required, use IC0Preconditioner for symmetric storage");
+		LU = A.copy();
+		diag = LU.getDiagonalOffsets();
+		int[] rowPtr = LU.getRowPtr();
+		int[] colIdx = LU.getColIdx();
+		double[] vals = LU.getVals();
+		int n = diag.length;
+
+		//position of column j in the current row, -1 if not in the pattern
+		int[] iw = new int[LU.getColDim()];
+		Arrays.fill(iw, -1);
+		for(int i=0; i<n; i++) {
+			if(diag[i] < 0)
+				throw new FutureyeException("ILU(0): no diagonal entry at row "+(i+1));
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++)
+				iw[colIdx[k]] = k;
+			for(int k=rowPtr[i]; k<diag[i]; k++) {
+				int row = colIdx[k];
+				double t = vals[k] / vals[diag[row]];
+				vals[k] = t;
+				for(int kk=diag[row]+1; kk<rowPtr[row+1]; kk++) {
+					int pos = iw[colIdx[kk]];
+					if(pos >= 0)
+						vals[pos] -= t*vals[kk];
+				}
+			}
+			if(vals[diag[i]] == 0.0)
+				throw new FutureyeException("ILU(0): zero pivot at row "+(i+1));
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++)
+				iw[colIdx[k]] = -1;
+		}
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		int[] rowPtr = LU.getRowPtr();
+		int[] colIdx = LU.getColIdx();
+		double[] vals = LU.getVals();
+		double[] rd = r.getData();
+		double[] zd = z.getData();
+		int n = diag.length;
+		//Ly = r
+		for(int i=0; i<n; i++) {
+			double s = rd[i];
+			for(int k=rowPtr[i]; k<diag[i]; k++)
+				s -= vals[k]*zd[colIdx[k]];
+			zd[i] = s;
+		}
+		//Uz = y
+		for(int i=n; --i>=0;) {
+			double s = zd[i];
+			for(int k=diag[i]+1; k<rowPtr[i+1]; k++)
+				s -= vals[k]*zd[colIdx[k]];
+			zd[i] = s/vals[diag[i]];
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Jacobi (diagonal) preconditioner M = diag(A)
+ *
+ */
+public class JacobiPreconditioner implements Preconditioner {
+	protected double[] invDiag;
+
+	public JacobiPreconditioner(CSRMatrix A) {
+		int[] diag = A.getDiagonalOffsets();
+		double[] vals = A.getVals();
+		invDiag = new double[diag.length];
+		for(int i=0; i<diag.length; i++) {
+			if(diag[i] < 0 || vals[diag[i]] == 0.0)
+				throw new FutureyeException("Jacobi: zero diagonal entry at row "+(i+1));
+			invDiag[i] = 1.0/vals[diag[i]];
+		}
+	}
+
+	/**
+	 * Preconditioner with the given diagonal entries
+	 * 
+	 * @param diag
+	 */
+	public JacobiPreconditioner(double[] diag) {
+		invDiag = new double[diag.length];
+		for(int i=0; i<diag.length; i++) {
+			if(diag[i] == 0.0)
+				throw new FutureyeException("Jacobi: zero diagonal entry at row "+(i+1));
+			invDiag[i] = 1.0/diag[i];
+		}
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		double[] rd = r.getData();
+		double[] zd = z.getData();
+		for(int i=invDiag.length; --i>=0;)
+			zd[i] = rd[i]*invDiag[i];
+	}
+}
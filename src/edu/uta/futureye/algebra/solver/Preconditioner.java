@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+
+/**
+ * Preconditioner M of iterative solvers. A preconditioner is set up
+ * (factorized) in its constructor and applied in each iteration.
+ *
+ * @see Solver#solvePCG(edu.uta.futureye.algebra.intf.AlgebraMatrix, Preconditioner, AlgebraVector, AlgebraVector)
+ */
+public interface Preconditioner {
+	/**
+	 * Solve <tt>Mz = r</tt>, that is <tt>z = M^{-1}r</tt>
+	 * <p>
+	 * <tt>r</tt> is not changed.
+	 *
+	 * @param r
+	 * @param z
+	 */
+	public void apply(AlgebraVector r, AlgebraVector z);
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Symmetric successive over-relaxation (SSOR) preconditioner
+ * <p><blockquote><pre>
+ * M = 1/(w*(2-w)) * (D+w*L) * D^{-1} * (D+w*U)
+ * </pre></blockquote>
+ * where A = L+D+U and 0 &lt; w &lt; 2. Both full storage and symmetric storage
+ * (only upper triangle, L = U') of <tt>CSRMatrix</tt> are supported.
+ * The matrix is referenced, not copied.
+ *
+ */
+public class SSORPreconditioner implements Preconditioner {
+	protected CSRMatrix A;
+	protected double omega;
+	protected int[] diag;
+	protected double[] work;
+
+	public SSORPreconditioner(CSRMatrix A, double omega) {
+		if(omega <= 0 || omega >= 2)
+			throw new FutureyeException("SSOR: omega="+omega+" is not in (0,2)");
+		this.A = A;
+		this.omega = omega;
+		this.diag = A.getDiagonalOffsets();
+		double[] vals = A.getVals();
+		for(int i=0; i<diag.length; i++) {
+			if(diag[i] < 0 || vals[diag[i]] == 0.0)
+				throw new FutureyeException("SSOR: zero diagonal entry at row "+(i+1));
+		}
+		this.work = new double[diag.length];
+	}
+
+	/**
+	 * Symmetric Gauss-Seidel preconditioner (w=1)
+	 *
+	 * @param A
+	 */
+	public SSORPreconditioner(CSRMatrix A) {
+		this(A, 1.0);
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		int[] rowPtr = A.getRowPtr();
+		int[] colIdx = A.getColIdx();
+		double[] vals = A.getVals();
+		double[] rd = r.getData();
+		double[] zd = z.getData();
+		double[] y = work;
+		int n = diag.length;
+		double scale = omega*(2-omega);
+
+		//(D+w*L)y = w*(2-w)*r
+		if(A.isSymmetric()) {
+			for(int i=0; i<n; i++)
+				y[i] = scale*rd[i];
+			for(int i=0; i<n; i++) {
+				double yi = y[i]/vals[diag[i]];
+				y[i] = yi;
+				for(int k=diag[i]+1; k<rowPtr[i+1]; k++)
+					y[colIdx[k]] -= omega*vals[k]*yi;
+			}
+		} else {
+			for(int i=0; i<n; i++) {
+				double s = scale*rd[i];
+				for(int k=rowPtr[i]; k<diag[i]; k++)
+					s -= omega*vals[k]*y[colIdx[k]];
+				y[i] = s/vals[diag[i]];
+			}
+		}
+		//(D+w*U)z = D*y
+		for(int i=n; --i>=0;) {
+			double s = vals[diag[i]]*y[i];
+			for(int k=diag[i]+1; k<rowPtr[i+1]; k++)
+				s -= omega*vals[k]*zd[colIdx[k]];
+			zd[i] = s/vals[diag[i]];
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import java.util.Arrays;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.FullVector;
+import edu.uta.futureye.algebra.intf.AlgebraMatrix;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Matrix-free Schur complement operator
+ * <blockquote><pre>
+ * S = C - C1'*inv(B1)*C1 - C2'*inv(B2)*C2 - ...
+ * </pre></blockquote>
+ * S is never formed, <tt>mult()</tt> applies it to a vector with one
+ * solve of each factorized block <tt>Bi</tt>.
+ *
+ */
+public class SchurComplementOperator implements AlgebraMatrix {
+	protected CSRMatrix C;
+	protected CSRMatrix[] Ci;  // Ci
+	protected CSRMatrix[] CiT; // Ci'
+	protected SparseLU[] invBi;
+
+	//work vectors
+	protected FullVector[] t;
+	protected FullVector[] s;
+	protected FullVector y2;
+
+	/**
+	 *
+	 * @param C - pressure block, null for zero block
+	 * @param Ci - coupling blocks (velocity rows, pressure columns)
+	 * @param CiT - coupling blocks (pressure rows, velocity columns)
+	 * @param invBi - factorizations of the velocity blocks
+	 */
+	public SchurComplementOperator(CSRMatrix C, CSRMatrix[] Ci, CSRMatrix[] CiT, SparseLU[] invBi) {
+		if(Ci.length != CiT.length || Ci.length != invBi.length)
+			throw new FutureyeException("Schur complement: number of blocks mismatch");
+		this.C = C;
+		this.Ci = Ci;
+		this.CiT = CiT;
+		this.invBi = invBi;
+		this.t = new FullVector[Ci.length];
+		this.s = new FullVector[Ci.length];
+		for(int i=0; i<Ci.length; i++) {
+			t[i] = new FullVector(Ci[i].getRowDim());
+			s[i] = new FullVector(Ci[i].getRowDim());
+		}
+		this.y2 = new FullVector(getRowDim());
+	}
+
+	@Override
+	public int getRowDim() {
+		return CiT[0].getRowDim();
+	}
+
+	@Override
+	public int getColDim() {
+		return Ci[0].getColDim();
+	}
+
+	/**
+	 * y = S*x
+	 */
+	@Override
+	public void mult(AlgebraVector x, AlgebraVector y) {
+		if(C == null)
+			Arrays.fill(y.getData(), 0.0);
+		else
+			C.mult(x, y);
+		for(int i=0; i<Ci.length; i++) {
+			Ci[i].mult(x, t[i]);
+			invBi[i].solve(t[i], s[i]);
+			CiT[i].mult(s[i], y2);
+			y.add(-1.0, y2);
+		}
+	}
+
+	/**
+	 * Right hand side of the Schur complement system
+	 * <blockquote><pre>
+	 * g = f - C1'*inv(B1)*f1 - C2'*inv(B2)*f2 - ...
+	 * </pre></blockquote>
+	 *
+	 * @param fi - velocity right hand sides
+	 * @param f - pressure right hand side
+	 * @param g
+	 */
+	public void rhs(AlgebraVector[] fi, AlgebraVector f, AlgebraVector g) {
+		g.set(f);
+		for(int i=0; i<Ci.length; i++) {
+			invBi[i].solve(fi[i], s[i]);
+			CiT[i].mult(s[i], y2);
+			g.add(-1.0, y2);
+		}
+	}
+
+	/**
+	 * Back substitution of the velocity blocks
+	 * <blockquote><pre>
+	 * ui = inv(Bi)*(fi - Ci*p)
+	 * </pre></blockquote>
+	 *
+	 * @param i - 0-based block index
+	 * @param fi
+	 * @param p
+	 * @param ui
+	 */
+	public void velocity(int i, AlgebraVector fi, AlgebraVector p, AlgebraVector ui) {
+		Ci[i].mult(p, t[i]);
+		t[i].ax(-1.0).add(fi);
+		invBi[i].solve(t[i], ui);
+	}
+
+	@Override
+	public void mult(AlgebraMatrix B, AlgebraMatrix C) {
+		throw new FutureyeException("Schur complement operator is matrix-free, mult(AlgebraMatrix,AlgebraMatrix) is not supported");
+	}
+
+	@Override
+	public AlgebraMatrix getTrans() {
+		throw new FutureyeException("Schur complement operator is matrix-free, getTrans() is not supported");
+	}
+
+	@Override
+	public void print() {
+		System.out.println("Schur complement operator: "+getRowDim()+"x"+getColDim()+", blocks="+Ci.length);
+	}
+}
@@ -5,19 +5,18 @@
  */
 package edu.uta.futureye.algebra.solver;
 
+import java.util.Arrays;
+
+import edu.uta.futureye.algebra.CSRMatrix;
 import edu.uta.futureye.algebra.CompressedColMatrix;
 import edu.uta.futureye.algebra.CompressedRowMatrix;
 import edu.uta.futureye.algebra.FullMatrix;
 import edu.uta.futureye.algebra.FullVector;
 import edu.uta.futureye.algebra.SparseBlockMatrix;
 import edu.uta.futureye.algebra.SparseBlockVector;
-import edu.uta.futureye.algebra.SparseMatrixRowMajor;
 import edu.uta.futureye.algebra.SparseVectorHashMap;
 import edu.uta.futureye.algebra.intf.AlgebraMatrix;
 import edu.uta.futureye.algebra.intf.SparseMatrix;
-import edu.uta.futureye.algebra.intf.SparseVector;
-import edu.uta.futureye.algebra.solver.external.SolverColt;
-import edu.uta.futureye.algebra.solver.external.SolverJBLAS;
 
 /**
  *<blockquote><pre>
@@ -72,137 +71,66 @@ import edu.uta.futureye.algebra.solver.external.SolverJBLAS;
 public class SchurComplementStokesSolver {
 	protected SparseBlockMatrix A;
 	protected SparseBlockVector f;
-	double init = 1.0;
+	double init = 1.0; // not used since the velocity blocks are factorized
 	public boolean debug = false;
 	
+	//Iterative solver of the Schur complement system
+	protected Solver sov = new Solver();
+	//Pressure mass matrix for preconditioning
+	protected CSRMatrix Mp = null;
+	//Factorizations of the velocity blocks, reused by the next solve
+	protected SparseLU[] invB = new SparseLU[3];
+	protected CSRMatrix[] factoredB = new CSRMatrix[3];
+	
 	public SchurComplementStokesSolver(SparseBlockMatrix A,SparseBlockVector f) {
 		this.A = A;
 		this.f = f;
 	}
 	
+	/**
+	 * Replace the system with a new one, e.g. in the next nonlinear iteration. 
+	 * The factorizations of the velocity blocks are reused if possible.
+	 * 
+	 * @param A
+	 * @param f
+	 */
+	public void setSystem(SparseBlockMatrix A,SparseBlockVector f) {
+		this.A = A;
+		this.f = f;
+	}
+	
+	/**
+	 * Set the pressure mass matrix, its diagonal is used to precondition
+	 * the Schur complement system
+	 * 
+	 * @param Mp
+	 */
+	public void setPressureMassMatrix(SparseMatrix Mp) {
+		this.Mp = new CSRMatrix(Mp);
+	}
+	
+	/**
+	 * Return the iterative solver of the Schur complement system, 
+	 * e.g. to change the tolerances
+	 * 
+	 * @return
+	 */
+	public Solver getSchurSolver() {
+		return sov;
+	}
+	
+	/**
+	 * @deprecated The velocity blocks are solved by sparse LU factorizations,
+	 * there is no initial value of CG
+	 * @param init
+	 */
+	@Deprecated
 	public void setCGInit(double init) {
 		this.init = init;
 	}
 	
 	public SparseBlockVector solve2D() {
-		SparseMatrix B1 = A.getBlock(1, 1);
-		SparseMatrix B2 = A.getBlock(2, 2);
-		SparseMatrix C1 = A.getBlock(1, 3);
-		SparseMatrix C2 = A.getBlock(2, 3);
-		SparseMatrix C1T = A.getBlock(3, 1);
-		SparseMatrix C2T = A.getBlock(3, 2);
-		SparseMatrix C = A.getBlock(3, 3);
-		SparseVector f1 = f.getBlock(1);
-		SparseVector f2 = f.getBlock(2);
-		SparseVector f3 = f.getBlock(3);
-//		System.out.print("B1=[");B1.print();System.out.print("];");
-//		System.out.print("B2=[");B2.print();System.out.print("];");
-//		System.out.print("C1=[");C1.print();System.out.print("];");
-//		System.out.print("C2=[");C2.print();System.out.print("];");
-//		System.out.print("C1T=[");C1T.print();System.out.print("];");
-//		System.out.print("C2T=[");C2T.print();System.out.print("];");
-//		System.out.print("C=[");C.print();System.out.print("];");
-//		System.out.print("f1=[");f1.print();System.out.print("]';");
-//		System.out.print("f2=[");f2.print();System.out.print("]';");
-//		System.out.print("f3=[");f3.print();System.out.print("]';");
-		B1.writeMatFile("B1.mat");
-		
-		FullVector tmp1 = null;
-		FullVector tmp2 = null;
-		FullVector rhs  = new FullVector(C1.getColDim());
-		FullVector rhs2 = new FullVector(C2.getColDim());
-		
-//		CompressedRowMatrix BB1 = new CompressedRowMatrix(B1, true);
-//		CompressedRowMatrix BB2 = new CompressedRowMatrix(B2, true);
-//		CompressedColMatrix CC1 = new CompressedColMatrix(C1, true);
-//		CompressedColMatrix CC2 = new CompressedColMatrix(C2, true);
-		//for Sparse LU Decomposition
-		CompressedRowMatrix BB1 = new CompressedRowMatrix(B1, false);
-		CompressedRowMatrix BB2 = new CompressedRowMatrix(B2, false);
-		CompressedColMatrix CC1 = new CompressedColMatrix(C1, false);
-		CompressedColMatrix CC2 = new CompressedColMatrix(C2, false);
-		
-		CompressedRowMatrix CC1T = new CompressedRowMatrix(C1T, true);//C1T = - trans(C1)
-		CompressedRowMatrix CC2T = new CompressedRowMatrix(C2T, true);//C2T = - trans(C2)
-		CompressedRowMatrix CC = new CompressedRowMatrix(C, true);
-		FullVector ff1 = new FullVector(f1);
-		FullVector ff2 = new FullVector(f2);
-		FullVector ff3 = new FullVector(f3);
-		
-		//Schur complement right hand side: 
-		//f3 - C1'*inv(B1)*f1 - C2'*inv(B2)*f2
-		tmp1 = invB_v(BB1,ff1);
-		tmp2 = invB_v(BB2,ff2);
-		CC1T.mult(tmp1, rhs);
-		CC2T.mult(tmp2, rhs2);
-		rhs.ax(-1.0);
-		rhs.add(-1.0, rhs2);
-		rhs.add(1.0, ff3);
-		
-		long begin=0,end=0;
-		
-//		CompressedColMatrix bc1 = (CompressedColMatrix)invB_C(BB1,CC1);
-//		CompressedColMatrix bc2 = (CompressedColMatrix)invB_C(BB2,CC2);
-//		CompressedColMatrix bcc1 = (CompressedColMatrix)invB_CColt(BB1,CC1);
-//		CompressedColMatrix bcc2 = (CompressedColMatrix)invB_CColt(BB2,CC2);
-		
-		//S = - C1'*inv(B1)*C1 - C2'*inv(B2)*C2 + C
-		CompressedRowMatrix S = new CompressedRowMatrix();
-		CompressedRowMatrix S2 = new CompressedRowMatrix();
-		
-//Dense Colt Solver	
-//		CC1T.mult(invB_CColt(BB1,CC1), S);
-//		CC2T.mult(invB_CColt(BB2,CC2), S2);
-//Sparse Colt Solver		
-//		CC1T.mult(invB_CColt(B1,C1), S);
-//		CC2T.mult(invB_CColt(B2,C2), S2);		
-		
-//		CC1T.mult(invB_C(BB1,CC1), S);
-//		CC2T.mult(invB_C(BB2,CC2), S2);
-
-//FutuEye LU Decomposition
-		CC1T.mult(invB_C(B1,C1), S);
-		CC2T.mult(invB_C(B2,C2), S2);
-		
-//		CC1T.mult(new CompressedColMatrix(invB_C(B1,C1),true), S);
-//		CC2T.mult(new CompressedColMatrix(invB_C(B2,C2),true), S2);
-
-		
-		S.axpy(-1.0, S2.ax(-1.0)); // S = -S - S2
-		S.axpy(1.0, CC);
-		
-		SolverJBLAS sov = new SolverJBLAS();
-		SparseMatrix SS2 = S.getSparseMatrix();
-		SparseVector Srhs = rhs.getSparseVector();
-		begin = System.currentTimeMillis();
-		FullVector p = new FullVector(sov.solveDGESV(SS2, Srhs));
-		end = System.currentTimeMillis();
-		System.out.println("solveDGESV time="+(end-begin)+"ms");
-		
-//		Solver sov = new Solver();
-//		FullVector p = new FullVector(rhs.getDim(),1.0);
-//		sov.solveCG(S, rhs, p);
-		
-		
-		//u1=inv(B1)*(f1-C1*p)
-		//u2=inv(B2)*(f2-C2*p)
-		FullVector u1 = new FullVector(f1.getDim(),1.0);
-		FullVector u2 = new FullVector(f2.getDim(),1.0);
-		CC1.getCompressedRowMatrix().mult(p, u1);
-		u1.axpy(-1.0, ff1);
-		CC2.getCompressedRowMatrix().mult(p, u2);
-		u2.axpy(-1.0, ff2);
-		u1 = invB_v(BB1,u1);
-		u2 = invB_v(BB2,u2);
-		
-		SparseBlockVector rlt = new SparseBlockVector(3);
-		SparseVector uu1 = new SparseVectorHashMap(u1.getData());
-		SparseVector uu2 = new SparseVectorHashMap(u2.getData());
-		SparseVector pp = new SparseVectorHashMap(p.getData());
-		rlt.setBlock(1, uu1);
-		rlt.setBlock(2, uu2);
-		rlt.setBlock(3, pp);
-		return rlt;
+		return solve(2);
 	}
 	
 	/**
@@ -252,334 +180,249 @@ public class SchurComplementStokesSolver {
 	 *
 	 */
 	public SparseBlockVector solve3D() {
-		System.out.println("Begin solve3D...");
-		long begin=0,end=0;
-		begin = System.currentTimeMillis();
-		SparseMatrix B1  = A.getBlock(1, 1);
-		SparseMatrix B2  = A.getBlock(2, 2);
-		SparseMatrix B3  = A.getBlock(3, 3);
-		SparseMatrix C1  = A.getBlock(1, 4);
-		SparseMatrix C2  = A.getBlock(2, 4);
-		SparseMatrix C3  = A.getBlock(3, 4);
-		SparseMatrix C1T = A.getBlock(4, 1);
-		SparseMatrix C2T = A.getBlock(4, 2);
-		SparseMatrix C3T = A.getBlock(4, 3);
-		SparseMatrix C   = A.getBlock(4, 4);
-		SparseVector f1 = f.getBlock(1);
-		SparseVector f2 = f.getBlock(2);
-		SparseVector f3 = f.getBlock(3);
-		SparseVector f4 = f.getBlock(4);
-		
-		FullVector tmp1 = null;
-		FullVector tmp2 = null;
-		FullVector tmp3 = null;
-		FullVector rhs  = new FullVector(C1.getColDim());
-		FullVector rhs2 = new FullVector(C2.getColDim());
-		FullVector rhs3 = new FullVector(C3.getColDim());
-		
-//		CompressedRowMatrix BB1  = new CompressedRowMatrix(B1, true);
-//		CompressedRowMatrix BB2  = new CompressedRowMatrix(B2, true);
-//		CompressedRowMatrix BB3  = new CompressedRowMatrix(B3, true);
-//		CompressedColMatrix CC1  = new CompressedColMatrix(C1, true);
-//		CompressedColMatrix CC2  = new CompressedColMatrix(C2, true);
-//		CompressedColMatrix CC3  = new CompressedColMatrix(C3, true);
-		//For sparse LU solver
-		CompressedRowMatrix BB1  = new CompressedRowMatrix(B1, false);
-		CompressedRowMatrix BB2  = new CompressedRowMatrix(B2, false);
-		CompressedRowMatrix BB3  = new CompressedRowMatrix(B3, false);
-		CompressedColMatrix CC1  = new CompressedColMatrix(C1, false);
-		CompressedColMatrix CC2  = new CompressedColMatrix(C2, false);
-		CompressedColMatrix CC3  = new CompressedColMatrix(C3, false);
-		
-		CompressedRowMatrix CC1T = new CompressedRowMatrix(C1T, true);//C1T = - trans(C1)
-		CompressedRowMatrix CC2T = new CompressedRowMatrix(C2T, true);//C2T = - trans(C2)
-		CompressedRowMatrix CC3T = new CompressedRowMatrix(C3T, true);//C3T = - trans(C3)
-		CompressedRowMatrix CC   = new CompressedRowMatrix(C, true);
-		FullVector ff1 = new FullVector(f1);
-		FullVector ff2 = new FullVector(f2);
-		FullVector ff3 = new FullVector(f3);
-		FullVector ff4 = new FullVector(f4);
-		end = System.currentTimeMillis();
-		System.out.println("Preparing matrix and vector: "+(end-begin)+"ms");
-		
-		//Schur complement right hand side: 
-		//f4 - C1'*inv(B1)*f1 - C2'*inv(B2)*f2 - C3'*inv(B3)*f3
-		tmp1 = invB_v(BB1,ff1);
-		tmp2 = invB_v(BB2,ff2);
-		tmp3 = invB_v(BB3,ff3);
-		CC1T.mult(tmp1, rhs);
-		CC2T.mult(tmp2, rhs2);
-		CC3T.mult(tmp3, rhs3);
-		rhs.ax(-1.0);
-		rhs.add(-1.0, rhs2);
-		rhs.add(-1.0, rhs3);
-		rhs.add(1.0, ff4);
-		
-		
-
-		
-		
-		//S = C - C1'*inv(B1)*C1 - C2'*inv(B2)*C2 - C3'*inv(B3)*C3
-		CompressedRowMatrix S = new CompressedRowMatrix();
-		CompressedRowMatrix S2 = new CompressedRowMatrix();
-		CompressedRowMatrix S3 = new CompressedRowMatrix();
-		
-//		CC1T.mult(invB_CColt(BB1,CC1), S);
-//		CC2T.mult(invB_CColt(BB2,CC2), S2);
-//		CC3T.mult(invB_CColt(BB3,CC3), S3);
-		
-//		CC1T.mult(invB_C(BB1,CC1), S);
-//		CC2T.mult(invB_C(BB2,CC2), S2);
-//		CC3T.mult(invB_C(BB3,CC3), S3);
-		
-		CC1T.mult(invB_C(B1,C1), S);
-		CC2T.mult(invB_C(B2,C2), S2);
-		CC3T.mult(invB_C(B3,C3), S3);
-		
-		S.axpy(-1.0, S2.ax(-1.0));//S  = -S -S2
-		S.axpy(1.0, S3.ax(-1.0)); //S += -S3
-		S.axpy(1.0, CC);
-		
-		
-		SolverJBLAS sov = new SolverJBLAS();
-		SparseMatrix SS2 = S.getSparseMatrix();
-		SparseVector Srhs = rhs.getSparseVector();
-		begin = System.currentTimeMillis();
-		FullVector p = new FullVector(sov.solveDGESV(SS2, Srhs));
-		end = System.currentTimeMillis();
-		System.out.println("solveDGESV time="+(end-begin)+"ms");
-		
-//		Solver sov = new Solver();
-//		FullVector p = new FullVector(rhs.getDim(),1.0);
-//		sov.solveCG(S, rhs, p);
-		
-		
-		//u1=inv(B1)*(f1-C1*p)
-		//u2=inv(B2)*(f2-C2*p)
-		FullVector u1 = new FullVector(f1.getDim(),1.0);
-		FullVector u2 = new FullVector(f2.getDim(),1.0);
-		FullVector u3 = new FullVector(f3.getDim(),1.0);
-		CC1.getCompressedRowMatrix().mult(p, u1);
-		u1.axpy(-1.0, ff1);
-		CC2.getCompressedRowMatrix().mult(p, u2);
-		u2.axpy(-1.0, ff2);
-		CC3.getCompressedRowMatrix().mult(p, u3);
-		u3.axpy(-1.0, ff3);
-		u1 = invB_v(BB1,u1);
-		u2 = invB_v(BB2,u2);
-		u3 = invB_v(BB3,u3);
-		
-		SparseBlockVector rlt = new SparseBlockVector(4);
-		SparseVector uu1 = new SparseVectorHashMap(u1.getData());
-		SparseVector uu2 = new SparseVectorHashMap(u2.getData());
-		SparseVector uu3 = new SparseVectorHashMap(u3.getData());
-		SparseVector pp  = new SparseVectorHashMap(p.getData());
-		rlt.setBlock(1, uu1);
-		rlt.setBlock(2, uu2);
-		rlt.setBlock(3, uu3);
-		rlt.setBlock(4, pp);
+		return solve(3);
+	}
+	
+	/**
+	 * Solve the block system with <tt>dim</tt> velocity components.
+	 * <p>
+	 * The Schur complement system is solved with the matrix-free operator
+	 * <tt>SchurComplementOperator</tt>, which applies S by solving with the
+	 * sparse LU factorizations of the velocity blocks. PCG is used if S is
+	 * symmetric (Stokes), otherwise GMRES (Navier-Stokes). The preconditioner is
+	 * the diagonal of the pressure mass matrix if it is set by
+	 * <tt>setPressureMassMatrix()</tt>, otherwise the diagonal of
+	 * <tt>C - sum(Ci'*inv(diag(Bi))*Ci)</tt>.
+	 * 
+	 * @param dim
+	 * @return
+	 */
+	protected SparseBlockVector solve(int dim) {
+		int np = dim + 1;
+		CSRMatrix[] Ci = new CSRMatrix[dim];
+		CSRMatrix[] CiT = new CSRMatrix[dim];
+		FullVector[] fi = new FullVector[dim];
+		for(int i=0; i<dim; i++) {
+			factorizeB(i, A.getBlock(i+1, i+1));
+			Ci[i] = new CSRMatrix(A.getBlock(i+1, np));
+			CiT[i] = new CSRMatrix(A.getBlock(np, i+1));
+			fi[i] = new FullVector(f.getBlock(i+1));
+		}
+		CSRMatrix C = new CSRMatrix(A.getBlock(np, np));
+		FullVector fp = new FullVector(f.getBlock(np));
+		
+		SchurComplementOperator S = new SchurComplementOperator(C, Ci, CiT, Arrays.copyOf(invB, dim));
+		FullVector rhs = new FullVector(fp.getDim());
+		S.rhs(fi, fp, rhs);
+		
+		Preconditioner M = null;
+		if(this.Mp != null)
+			M = new JacobiPreconditioner(this.Mp);
+		else
+			M = new JacobiPreconditioner(approximateSchurDiagonal(C, Ci, CiT));
+		
+		sov.debug = this.debug;
+		FullVector p = new FullVector(rhs.getDim());
+		if(isSymmetric(C, Ci, CiT))
+			sov.solvePCG(S, M, rhs, p);
+		else
+			sov.solveGMRES(S, M, rhs, p);
+		
+		//ui=inv(Bi)*(fi-Ci*p)
+		SparseBlockVector rlt = new SparseBlockVector(np);
+		for(int i=0; i<dim; i++) {
+			FullVector ui = new FullVector(fi[i].getDim());
+			S.velocity(i, fi[i], p, ui);
+			rlt.setBlock(i+1, new SparseVectorHashMap(ui.getData()));
+		}
+		rlt.setBlock(np, new SparseVectorHashMap(p.getData()));
 		return rlt;
 	}
 	
+	/**
+	 * Factorize the i-th (0-based) velocity block. If the block has the same
+	 * sparsity pattern as the one factorized in the previous call, the
+	 * fill-reducing ordering is reused, and if the values are also the same, 
+	 * the factorization itself is reused.
+	 */
+	protected SparseLU factorizeB(int i, SparseMatrix B) {
+		CSRMatrix BB = new CSRMatrix(B);
+		CSRMatrix old = factoredB[i];
+		if(old != null &&
+				Arrays.equals(old.getRowPtr(), BB.getRowPtr()) &&
+				Arrays.equals(old.getColIdx(), BB.getColIdx())) {
+			if(!Arrays.equals(old.getVals(), BB.getVals())) {
+				invB[i].factorize(BB);
+				factoredB[i] = BB;
+			}
+		} else {
+			invB[i] = new SparseLU(BB);
+			factoredB[i] = BB;
+		}
+		return invB[i];
+	}
+	
+	/**
+	 * Diagonal of <tt>C - sum(Ci'*inv(diag(Bi))*Ci)</tt>
+	 */
+	protected double[] approximateSchurDiagonal(CSRMatrix C, CSRMatrix[] Ci, CSRMatrix[] CiT) {
+		int n = C.getRowDim();
+		double[] d = new double[n];
+		int[] cDiag = C.getDiagonalOffsets();
+		for(int r=0; r<n; r++) {
+			if(cDiag[r] >= 0)
+				d[r] = C.getVals()[cDiag[r]];
+		}
+		for(int i=0; i<Ci.length; i++) {
+			int[] bDiag = factoredB[i].getDiagonalOffsets();
+			double[] bVals = factoredB[i].getVals();
+			int[] rowPtr = Ci[i].getRowPtr();
+			int[] colIdx = Ci[i].getColIdx();
+			double[] vals = Ci[i].getVals();
+			for(int j=0; j<Ci[i].getRowDim(); j++) {
+				if(bDiag[j] < 0 || bVals[bDiag[j]] == 0.0) continue;
+				double b = bVals[bDiag[j]];
+				for(int k=rowPtr[j]; k<rowPtr[j+1]; k++) {
+					int r = colIdx[k];
+					int q = CiT[i].getOffset(r+1, j+1);
+					if(q >= 0)
+						d[r] -= CiT[i].getVals()[q]*vals[k]/b;
+				}
+			}
+		}
+		for(int r=0; r<n; r++) {
+			if(d[r] == 0.0) d[r] = 1.0;
+		}
+		return d;
+	}
+	
+	/**
+	 * S is symmetric if C and all Bi are symmetric and Ci' = -trans(Ci)
+	 */
+	protected boolean isSymmetric(CSRMatrix C, CSRMatrix[] Ci, CSRMatrix[] CiT) {
+		if(!isTrans(C, C, 1.0))
+			return false;
+		for(int i=0; i<Ci.length; i++) {
+			if(!isTrans(factoredB[i], factoredB[i], 1.0) || !isTrans(Ci[i], CiT[i], -1.0))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Return true if <tt>AT = a*trans(A)</tt>
+	 */
+	protected boolean isTrans(CSRMatrix A, CSRMatrix AT, double a) {
+		if(A.getRowDim() != AT.getColDim() || A.getColDim() != AT.getRowDim())
+			return false;
+		return matchTrans(A, AT, a) && matchTrans(AT, A, 1.0/a);
+	}
+	
+	/**
+	 * Return true if every entry of A matches the transposed entry of <tt>AT/a</tt>
+	 */
+	private static boolean matchTrans(CSRMatrix A, CSRMatrix AT, double a) {
+		int[] rowPtr = A.getRowPtr();
+		int[] colIdx = A.getColIdx();
+		double[] vals = A.getVals();
+		double[] tVals = AT.getVals();
+		double max = 0.0;
+		for(int k=0; k<vals.length; k++)
+			max = Math.max(max, Math.abs(vals[k]));
+		double eps = 1e-12*max;
+		for(int r=0; r<A.getRowDim(); r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int q = AT.getOffset(colIdx[k]+1, r+1);
+				double v = q < 0 ? 0.0 : tVals[q];
+				if(Math.abs(v - a*vals[k]) > Math.abs(a)*eps)
+					return false;
+			}
+		}
+		return true;
+	}
 	
 	/**
 	 * inv(B)*v
 	 * 
+	 * @deprecated Use <tt>solve2D()</tt> or <tt>solve3D()</tt>, this method
+	 * solves with the cached sparse LU factorization of the first velocity block
 	 * @param v
 	 * @return
 	 */
+	@Deprecated
 	public FullVector invB_v(CompressedRowMatrix B, FullVector v) {
-//		FullVector x = new FullVector(v.getDim(),0.1);
-//		x.setRandom(init,0.0);
-//		Solver sov = new Solver();
-//		sov.debug = this.debug;
-//		sov.solveCGS(B, v, x);
-		
-		SolverJBLAS sov = new SolverJBLAS();
-		SparseMatrix SS2 = B.getSparseMatrix();
-		SparseVector Srhs = v.getSparseVector();
-		long begin=0,end=0;
-		begin = System.currentTimeMillis();
-		FullVector x = new FullVector(sov.solveDGESV(SS2, Srhs));
-		end = System.currentTimeMillis();
-		System.out.println("solve inv(B)*v time="+(end-begin)+"ms");
+		SparseLU lu = factorizeB(0, B.getSparseMatrix());
+		FullVector x = new FullVector(v.getDim());
+		lu.solve(v, x);
 		return x;
 	}
 	
+	/**
+	 * inv(B)*C
+	 * 
+	 * @deprecated See <tt>invB_v()</tt>
+	 * @param B
+	 * @param C
+	 * @return
+	 */
+	@Deprecated
 	public FullMatrix invB_C(SparseMatrix B, SparseMatrix C) {
-		long begin,end;
-		begin = System.currentTimeMillis();
-		SparseMatrixRowMajor L = new SparseMatrixRowMajor(B.getRowDim(),B.getColDim());
-		SparseMatrixRowMajor U = new SparseMatrixRowMajor(B.getRowDim(),B.getColDim());
-		SparseMatrix P = new SparseMatrixRowMajor(B.getRowDim(),B.getColDim());
-		SparseMatrix X = new SparseMatrixRowMajor(C.getRowDim(),C.getColDim());
-//		LUDecomposition.solve((SparseMatrixRowMajor)B, L, U, P, X, C);
-		LUDecomposition.LU((SparseMatrixRowMajor)B, L, U, P);
-//		FullMatrix LL = new FullMatrix(L);
-//		FullMatrix UU = new FullMatrix(U);
-		FullMatrix CC = new FullMatrix(C);
-		FullMatrix XX = new FullMatrix(X);
-		LUDecomposition.backSubstitution(L, U, P, XX, CC);
-		end = System.currentTimeMillis();
-		System.out.println("SparseLU Solve time="+(end-begin)+"ms");
-		return XX;
+		return solveColumns(factorizeB(0, B), C);
 	}
 	
 	/**
 	 * inv(B)*C
+	 * 
+	 * @deprecated See <tt>invB_v()</tt>
 	 * @param B
 	 * @param C
 	 * @return
 	 */
+	@Deprecated
 	public AlgebraMatrix invB_C(CompressedRowMatrix B, CompressedColMatrix C) {
-		CompressedColMatrix BC = new CompressedColMatrix(B.getRowDim(),C.getColDim());
-		
-		FullVector v = new FullVector(C.getRowDim());
-		FullVector x = new FullVector(C.getRowDim());
-		
-//		x.setRandom(init,0.0);
-//		Solver sov = new Solver();
-//		sov.debug = this.debug;
-//		int colDim = C.getColDim();
-//		for(int c=1; c<=colDim; c++) {
-//			C.getColVector(c, v);
-//			sov.solveCGS(B, v, x);
-//			FullVector.SparseData sd = x.getSparseData();
-//			BC.setCol(c, sd.index, sd.data);
-//		}
-		
-//		SolverMTJ solMTJ = new SolverMTJ();
-//		solMTJ.debug = this.debug;
-//		int colDim = C.getColDim();
-//		for(int c=1; c<=colDim; c++) {
-//			C.getColVector(c, v);
-//			SparseVector xx = x.getSparseVector();
-//			//solMTJ.solveGMRES(B.getSparseMatrix(), v.getSparseVector(), xx);
-//			//solMTJ.solveBiCG(B.getSparseMatrix(), v.getSparseVector(), xx);
-//			//solMTJ.solveBiCGstab(B.getSparseMatrix(), v.getSparseVector(), xx);
-//			//solMTJ.solveQMR(B.getSparseMatrix(), v.getSparseVector(), xx);
-//			solMTJ.solveCG(B.getSparseMatrix(), v.getSparseVector(), xx);
-//			//solMTJ.solveCGS(B.getSparseMatrix(), v.getSparseVector(), xx);
-//			FullVector.SparseData sd = new FullVector(xx).getSparseData();
-//			BC.setCol(c, sd.index, sd.data);
-//		}
-		
-		
-//		//LU分解SparseMatrix
-//		int N = B.getRowDim();
-//		SparseMatrix A = B.getSparseMatrix();
-//		SparseMatrix L = new SparseMatrix(N,N);
-//		SparseMatrix U = new SparseMatrix(N,N);
-//		SparseMatrix P = new SparseMatrix(N,N);
-//		
-//		SparseVector x = new SparseVector(N);
-//		Vector x2 = x.copy();
-//		LUDecomposition.LU(A, L, U, P);
-//		
-//		int colDim = C.getColDim();
-//		FullVector v = new FullVector(C.getRowDim());
-//		for(int c=1; c<=colDim; c++) {
-//			System.out.println(c+"/"+colDim);
-//			C.getColVector(c, v);
-//			Vector f = v.getSparseVector();
-//			LUDecomposition.solvePx(P,x,f);
-//			LUDecomposition.solveLx(L,x2,x);
-//			LUDecomposition.solveUx(U,x,x2);
-//			FullVector fx = new FullVector(x);
-//			FullVector.SparseData sd = fx.getSparseData();
-//			BC.setCol(c, sd.index, sd.data);
-//		}
-		
-		//LU分解FullMatrix
-		int N = B.getRowDim();
-		FullMatrix fA = new FullMatrix(B.getSparseMatrix());
-		FullMatrix fL = new FullMatrix(N,N);
-		FullMatrix fU = new FullMatrix(N,N);
-		SparseMatrix P = new SparseMatrixRowMajor(N,N);
-		
-		long begin=0,end=0;
-//		FullVector x2 = x.copy();
-//		begin = System.currentTimeMillis();
-//		LUDecomposition.LU(fA, fL, fU, P);
-//		end = System.currentTimeMillis();
-//		System.out.println("LUDecomposition time="+(end-begin)+"ms");
-//		
-//		int colDim = C.getColDim();
-//		begin = System.currentTimeMillis();
-//		for(int c=1; c<=colDim; c++) {
-//			//System.out.println(c+"/"+colDim);
-//			C.getColVector(c, v);
-//			LUDecomposition.solvePx(P,x,v);
-//			LUDecomposition.solveLx(fL,x2,x);
-//			LUDecomposition.solveUx(fU,x,x2);
-//			FullVector.SparseData sd = x.getSparseData();
-//			BC.setCol(c, sd.index, sd.data);
-//		}
-//		end = System.currentTimeMillis();
-//		System.out.println("Back substitution time="+(end-begin)+"ms");
-//		return BC;
-		begin = System.currentTimeMillis();
-		FullMatrix fC = new FullMatrix(C.getSparseMatrix());
-		FullMatrix fX = new FullMatrix(C.getRowDim(),C.getColDim());
-		LUDecomposition.solve(fA, fL, fU, P, fX, fC);
-		end = System.currentTimeMillis();
-		System.out.println("LUDecomposition.solve() time="+(end-begin)+"ms");
-		return fX;
-
-		
-//		FullMatrix fB = new FullMatrix(B.getSparseMatrix());
-//		FullMatrix fC = new FullMatrix(C.getSparseMatrix());
-//		SolverColt solver = new SolverColt();
-//		long begin=0,end=0;
-//		begin = System.currentTimeMillis();
-//		FullMatrix fBC = solver.solve(fB, fC);
-//		int[] colIdx = new int[fBC.getRowDim()];
-//		double[] col = new double[fBC.getRowDim()];
-//		for(int c=0;c<fBC.getColDim();c++) {
-//			for(int r=0;r<fBC.getRowDim();r++) {
-//				colIdx[r] = r;
-//				col[r] = fBC.data[r][c];
-//			}
-//			BC.setCol(c+1, colIdx, col);
-//		}
-//		end = System.currentTimeMillis();
-//		System.out.println("SolverColt time="+(end-begin)+"ms");
-//		return BC;
+		return solveColumns(factorizeB(0, B.getSparseMatrix()), C.getSparseMatrix());
 	}
 	
+	/**
+	 * inv(B)*C, the dense Colt solver is replaced by the sparse LU factorization
+	 * 
+	 * @deprecated See <tt>invB_v()</tt>
+	 * @param B
+	 * @param C
+	 * @return
+	 */
+	@Deprecated
 	public AlgebraMatrix invB_CColt(CompressedRowMatrix B, CompressedColMatrix C) {
-//		CompressedColMatrix BC = new CompressedColMatrix(B.rowDim,C.colDim);
-		
-		FullMatrix fB = new FullMatrix(B.getSparseMatrix());
-		FullMatrix fC = new FullMatrix(C.getSparseMatrix());
-		SolverColt solver = new SolverColt();
-		long begin=0,end=0;
-		begin = System.currentTimeMillis();
-		FullMatrix fBC = solver.solve(fB, fC);
-//		int[] colIdx = new int[fBC.getRowDim()];
-//		double[] col = new double[fBC.getRowDim()];
-//		for(int c=0;c<fBC.getColDim();c++) {
-//			for(int r=0;r<fBC.getRowDim();r++) {
-//				colIdx[r] = r;
-//				col[r] = fBC.data[r][c];
-//			}
-//			BC.setCol(c+1, colIdx, col);
-//		}
-		end = System.currentTimeMillis();
-		System.out.println("Dense Solver: Colt time="+(end-begin)+"ms");
-		
-		return fBC;
+		return invB_C(B, C);
 	}
-
+	
+	/**
+	 * @deprecated See <tt>invB_v()</tt>
+	 */
+	@Deprecated
 	public AlgebraMatrix invB_CColt(SparseMatrix B, SparseMatrix C) {
-		SolverColt solver = new SolverColt();
-		long begin=0,end=0;
-		begin = System.currentTimeMillis();
-		FullMatrix fBC = solver.solve(B, C);
-		end = System.currentTimeMillis();
-		System.out.println("Sparse Solver: Colt time="+(end-begin)+"ms");
-		
-		return fBC;
+		return invB_C(B, C);
+	}
+	
+	/**
+	 * Solve each column of C with the factorization
+	 */
+	private static FullMatrix solveColumns(SparseLU lu, SparseMatrix C) {
+		int nRow = C.getRowDim(), nCol = C.getColDim();
+		double[][] c = new FullMatrix(C).getData();
+		FullMatrix X = new FullMatrix(nRow, nCol);
+		double[][] x = X.getData();
+		FullVector v = new FullVector(nRow);
+		FullVector xc = new FullVector(nRow);
+		double[] vd = v.getData(), xd = xc.getData();
+		for(int col=0; col<nCol; col++) {
+			for(int r=0; r<nRow; r++)
+				vd[r] = c[r][col];
+			lu.solve(v, xc);
+			for(int r=0; r<nRow; r++)
+				x[r][col] = xd[r];
+		}
+		return X;
 	}
 	
 	/**
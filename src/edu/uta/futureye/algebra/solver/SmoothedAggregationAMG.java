@@ -0,0 +1,420 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.FullVector;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Algebraic multigrid with smoothed aggregation for symmetric positive
+ * definite matrices of scalar problems (e.g. Laplace and diffusion equations).
+ * <p>
+ * Setup (in the constructor) on each level:
+ * <ul>
+ * <li>strength of connection: <tt>a_ij^2 &gt;= theta^2*|a_ii*a_jj|</tt>
+ * <li>aggregation of strongly connected nodes
+ * <li>tentative prolongator T with the constant vector as near null space
+ * <li>smoothed prolongator <tt>P = (I - w*D^{-1}*A)*T</tt>, <tt>w = 4/(3*rho(D^{-1}A))</tt>
+ * <li>Galerkin coarse operator <tt>A_c = P'*A*P</tt>
+ * </ul>
+ * The coarsest level is solved by dense LU factorization if it has at most
+ * <tt>maxCoarseSize</tt> unknowns, otherwise (coarsening stagnated) by smoothing.
+ * <p>
+ * <tt>apply()</tt> performs one V-cycle with zero initial guess and symmetric
+ * Gauss-Seidel smoothing (forward before and backward after the coarse grid correction),
+ * so it can be used as a preconditioner of <tt>Solver.solvePCG()</tt>.
+ * Use <tt>Solver.solveAMG()</tt> to iterate V-cycles as a standalone solver.
+ *
+ */
+public class SmoothedAggregationAMG implements Preconditioner {
+	//number of pre- and post-smoothing sweeps
+	public int preSmooth = 1;
+	public int postSmooth = 1;
+
+	protected double theta;
+	protected int maxCoarseSize;
+	protected int maxLevels = 25;
+
+	protected List<Level> levels = new ArrayList<Level>();
+	protected double[][] coarseLU;
+	protected int[] coarsePiv;
+
+	protected static class Level {
+		CSRMatrix A;
+		CSRMatrix P;
+		CSRMatrix R;
+		int[] diag;
+		FullVector x; // solution on this level
+		FullVector b; // right hand side on this level
+		FullVector r; // residual on this level
+	}
+
+	/**
+	 * Setup with strength threshold <tt>theta=0.08</tt> and
+	 * at most 200 unknowns on the coarsest level
+	 *
+	 * @param A
+	 */
+	public SmoothedAggregationAMG(CSRMatrix A) {
+		this(A, 0.08, 200);
+	}
+
+	/**
+	 *
+	 * @param A
+	 * @param theta - strength of connection threshold
+	 * @param maxCoarseSize - maximum number of unknowns on the coarsest level
+	 */
+	public SmoothedAggregationAMG(CSRMatrix A, double theta, int maxCoarseSize) {
+		this.theta = theta;
+		this.maxCoarseSize = maxCoarseSize;
+		CSRMatrix Al = A.isSymmetric() ? A.getFullStorage() : A;
+		while(true) {
+			Level lv = new Level();
+			lv.A = Al;
+			lv.diag = Al.getDiagonalOffsets();
+			int n = Al.getRowDim();
+			lv.x = new FullVector(n);
+			lv.b = new FullVector(n);
+			lv.r = new FullVector(n);
+			levels.add(lv);
+			if(n <= maxCoarseSize || levels.size() >= maxLevels)
+				break;
+			int[] agg = new int[n];
+			int nAgg = aggregate(Al, lv.diag, agg);
+			if(nAgg == 0 || nAgg >= n)
+				break;
+			lv.P = smoothProlongator(Al, lv.diag, agg, nAgg);
+			lv.R = (CSRMatrix)lv.P.getTrans();
+			CSRMatrix AP = new CSRMatrix();
+			Al.mult(lv.P, AP);
+			CSRMatrix Ac = new CSRMatrix();
+			lv.R.mult(AP, Ac);
+			Al = Ac;
+		}
+		CSRMatrix Ac = levels.get(levels.size()-1).A;
+		if(Ac.getRowDim() <= maxCoarseSize)
+			factorizeCoarse(Ac);
+	}
+
+	/**
+	 * Return the number of levels
+	 * @return
+	 */
+	public int getLevelNumber() {
+		return levels.size();
+	}
+
+	/**
+	 * Return the matrix on <tt>level</tt> (0 for the finest)
+	 * @param level
+	 * @return
+	 */
+	public CSRMatrix getMatrix(int level) {
+		return levels.get(level).A;
+	}
+
+	/**
+	 * Sum of the number of entries of the matrices on all levels
+	 * divided by the number of entries of the finest matrix
+	 * @return
+	 */
+	public double getOperatorComplexity() {
+		double nnz = 0;
+		for(Level lv : levels)
+			nnz += lv.A.getNonZeroNumber();
+		return nnz/levels.get(0).A.getNonZeroNumber();
+	}
+
+	/**
+	 * Aggregate strongly connected nodes. <tt>agg[i]</tt> is the aggregate
+	 * of node i, -1 for an isolated node (e.g. a Dirichlet node).
+	 *
+	 * @return number of aggregates
+	 */
+	protected int aggregate(CSRMatrix A, int[] diag, int[] agg) {
+		int n = A.getRowDim();
+		int[] rowPtr = A.getRowPtr();
+		int[] colIdx = A.getColIdx();
+		double[] vals = A.getVals();
+
+		//strong connections
+		boolean[] strong = new boolean[vals.length];
+		boolean[] isolated = new boolean[n];
+		double theta2 = theta*theta;
+		for(int i=0; i<n; i++) {
+			if(diag[i] < 0)
+				throw new FutureyeException("AMG: no diagonal entry at row "+(i+1));
+			double aii = vals[diag[i]];
+			boolean any = false;
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++) {
+				int j = colIdx[k];
+				if(j == i) continue;
+				double aij = vals[k];
+				if(aij*aij >= theta2*Math.abs(aii*vals[diag[j]]) && aij != 0.0) {
+					strong[k] = true;
+					any = true;
+				}
+			}
+			isolated[i] = !any;
+		}
+
+		Arrays.fill(agg, -1);
+		int nAgg = 0;
+		//Pass 1: a node and all its strong neighbors form an aggregate
+		//if none of them is aggregated
+		for(int i=0; i<n; i++) {
+			if(agg[i] >= 0 || isolated[i]) continue;
+			boolean free = true;
+			for(int k=rowPtr[i]; k<rowPtr[i+1] && free; k++)
+				if(strong[k] && agg[colIdx[k]] >= 0)
+					free = false;
+			if(!free) continue;
+			agg[i] = nAgg;
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++)
+				if(strong[k])
+					agg[colIdx[k]] = nAgg;
+			nAgg++;
+		}
+		//Pass 2: join the aggregate of the strongest aggregated neighbor
+		int[] agg1 = Arrays.copyOf(agg, n);
+		for(int i=0; i<n; i++) {
+			if(agg[i] >= 0 || isolated[i]) continue;
+			double max = 0.0;
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++) {
+				if(strong[k] && agg1[colIdx[k]] >= 0 && Math.abs(vals[k]) > max) {
+					max = Math.abs(vals[k]);
+					agg[i] = agg1[colIdx[k]];
+				}
+			}
+		}
+		//Pass 3: remaining nodes form aggregates with their free strong neighbors
+		for(int i=0; i<n; i++) {
+			if(agg[i] >= 0 || isolated[i]) continue;
+			agg[i] = nAgg;
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++)
+				if(strong[k] && agg[colIdx[k]] < 0)
+					agg[colIdx[k]] = nAgg;
+			nAgg++;
+		}
+		return nAgg;
+	}
+
+	/**
+	 * P = (I - w*D^{-1}*A)*T
+	 */
+	protected CSRMatrix smoothProlongator(CSRMatrix A, int[] diag, int[] agg, int nAgg) {
+		int n = A.getRowDim();
+		int[] rowPtr = A.getRowPtr();
+		int[] colIdx = A.getColIdx();
+		double[] vals = A.getVals();
+
+		//Tentative prolongator with normalized columns
+		int[] size = new int[nAgg];
+		for(int i=0; i<n; i++)
+			if(agg[i] >= 0) size[agg[i]]++;
+		double[] t = new double[n];
+		for(int i=0; i<n; i++)
+			t[i] = agg[i] >= 0 ? 1.0/Math.sqrt(size[agg[i]]) : 0.0;
+
+		double omega = 4.0/(3.0*estimateSpectralRadius(A, diag));
+
+		//Count entries of each row of P
+		int[] marker = new int[nAgg];
+		Arrays.fill(marker, -1);
+		int[] pRowPtr = new int[n+1];
+		for(int i=0; i<n; i++) {
+			int cnt = 0;
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++) {
+				int a = agg[colIdx[k]];
+				if(a >= 0 && marker[a] != i) {
+					marker[a] = i;
+					cnt++;
+				}
+			}
+			if(agg[i] >= 0 && marker[agg[i]] != i)
+				cnt++;
+			pRowPtr[i+1] = pRowPtr[i] + cnt;
+		}
+		int[] pColIdx = new int[pRowPtr[n]];
+		CSRMatrix P = new CSRMatrix(n, nAgg, pRowPtr, pColIdx);
+		double[] pVals = P.getVals();
+		double[] acc = new double[nAgg];
+		Arrays.fill(marker, -1);
+		for(int i=0; i<n; i++) {
+			int p = pRowPtr[i];
+			double s = omega/vals[diag[i]];
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++) {
+				int j = colIdx[k];
+				int a = agg[j];
+				if(a < 0) continue;
+				if(marker[a] != i) {
+					marker[a] = i;
+					acc[a] = 0.0;
+					pColIdx[p++] = a;
+				}
+				acc[a] -= s*vals[k]*t[j];
+			}
+			if(agg[i] >= 0) {
+				int a = agg[i];
+				if(marker[a] != i) {
+					marker[a] = i;
+					acc[a] = 0.0;
+					pColIdx[p++] = a;
+				}
+				acc[a] += t[i];
+			}
+			Arrays.sort(pColIdx, pRowPtr[i], pRowPtr[i+1]);
+			for(int k=pRowPtr[i]; k<pRowPtr[i+1]; k++)
+				pVals[k] = acc[pColIdx[k]];
+		}
+		return P;
+	}
+
+	/**
+	 * Estimate the spectral radius of D^{-1}*A by power iterations
+	 */
+	protected double estimateSpectralRadius(CSRMatrix A, int[] diag) {
+		int n = A.getRowDim();
+		double[] vals = A.getVals();
+		FullVector x = new FullVector(n);
+		FullVector y = new FullVector(n);
+		double[] xd = x.getData();
+		double[] yd = y.getData();
+		for(int i=0; i<n; i++)
+			xd[i] = 1.0 + (i%7)*0.1;
+		double rho = 1.0;
+		for(int it=0; it<15; it++) {
+			double norm = x.norm2();
+			if(norm == 0.0) break;
+			x.scale(1.0/norm);
+			A.mult(x, y);
+			for(int i=0; i<n; i++)
+				yd[i] /= vals[diag[i]];
+			rho = y.norm2();
+			FullVector tmp = x; x = y; y = tmp;
+			xd = x.getData(); yd = y.getData();
+		}
+		return rho;
+	}
+
+	protected void factorizeCoarse(CSRMatrix A) {
+		int n = A.getRowDim();
+		int[] rowPtr = A.getRowPtr();
+		int[] colIdx = A.getColIdx();
+		double[] vals = A.getVals();
+		double[][] LU = new double[n][n];
+		for(int i=0; i<n; i++)
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++)
+				LU[i][colIdx[k]] = vals[k];
+		int[] piv = new int[n];
+		for(int j=0; j<n; j++) {
+			int p = j;
+			for(int i=j+1; i<n; i++)
+				if(Math.abs(LU[i][j]) > Math.abs(LU[p][j])) p = i;
+			if(LU[p][j] == 0.0)
+				throw new FutureyeException("AMG: singular coarsest matrix");
+			double[] tmp = LU[p]; LU[p] = LU[j]; LU[j] = tmp;
+			piv[j] = p;
+			for(int i=j+1; i<n; i++) {
+				double l = LU[i][j] / LU[j][j];
+				LU[i][j] = l;
+				if(l != 0.0)
+					for(int k=j+1; k<n; k++)
+						LU[i][k] -= l*LU[j][k];
+			}
+		}
+		this.coarseLU = LU;
+		this.coarsePiv = piv;
+	}
+
+	protected void solveCoarse(double[] b, double[] x) {
+		int n = coarsePiv.length;
+		System.arraycopy(b, 0, x, 0, n);
+		for(int j=0; j<n; j++) {
+			int p = coarsePiv[j];
+			double tmp = x[p]; x[p] = x[j]; x[j] = tmp;
+		}
+		for(int i=0; i<n; i++) {
+			double s = x[i];
+			for(int k=0; k<i; k++)
+				s -= coarseLU[i][k]*x[k];
+			x[i] = s;
+		}
+		for(int i=n; --i>=0;) {
+			double s = x[i];
+			for(int k=i+1; k<n; k++)
+				s -= coarseLU[i][k]*x[k];
+			x[i] = s/coarseLU[i][i];
+		}
+	}
+
+	/**
+	 * Gauss-Seidel sweep on x for Ax=b
+	 */
+	protected void gaussSeidel(Level lv, boolean forward) {
+		int[] rowPtr = lv.A.getRowPtr();
+		int[] colIdx = lv.A.getColIdx();
+		double[] vals = lv.A.getVals();
+		double[] x = lv.x.getData();
+		double[] b = lv.b.getData();
+		int n = x.length;
+		for(int ii=0; ii<n; ii++) {
+			int i = forward ? ii : n-1-ii;
+			double s = b[i];
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++)
+				s -= vals[k]*x[colIdx[k]];
+			x[i] += s/vals[lv.diag[i]];
+		}
+	}
+
+	protected void vcycle(int l) {
+		Level lv = levels.get(l);
+		if(l == levels.size()-1) {
+			if(coarseLU != null) {
+				solveCoarse(lv.b.getData(), lv.x.getData());
+			} else {
+				for(int s=0; s<preSmooth; s++)
+					gaussSeidel(lv, true);
+				for(int s=0; s<postSmooth; s++)
+					gaussSeidel(lv, false);
+			}
+			return;
+		}
+		for(int s=0; s<preSmooth; s++)
+			gaussSeidel(lv, true);
+		//r = b - Ax
+		lv.A.mult(lv.x, lv.r);
+		lv.r.axpy(-1.0, lv.b);
+		Level next = levels.get(l+1);
+		lv.R.mult(lv.r, next.b);
+		Arrays.fill(next.x.getData(), 0.0);
+		vcycle(l+1);
+		//x = x + P*xc, r is used as temporary vector
+		lv.P.mult(next.x, lv.r);
+		lv.x.add(lv.r);
+		for(int s=0; s<postSmooth; s++)
+			gaussSeidel(lv, false);
+	}
+
+	/**
+	 * One V-cycle with zero initial guess: z = M^{-1}r
+	 */
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		Level lv = levels.get(0);
+		lv.b.set(r);
+		Arrays.fill(lv.x.getData(), 0.0);
+		vcycle(0);
+		z.set(lv.x);
+	}
+}
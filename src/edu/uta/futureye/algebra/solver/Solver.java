@@ -5,6 +5,9 @@
  */
 package edu.uta.futureye.algebra.solver;
 
+import java.util.Arrays;
+
+import edu.uta.futureye.algebra.CSRMatrix;
 import edu.uta.futureye.algebra.CompressedRowMatrix;
 import edu.uta.futureye.algebra.FullVector;
 import edu.uta.futureye.algebra.SparseVectorHashMap;
@@ -33,8 +36,33 @@ public class Solver {
 	//迭代最大次数
 	public double maxIter = 20000;
 	
+	//GMRES重启步数
+	public int restart = 30;
+	
 	public boolean debug = false;
 	
+	protected boolean isConverged(double norm2, double firstNorm2) {
+		return (norm2<=this.epsRelIter*firstNorm2 && norm2<=this.epsAbsIterMax) || 
+				norm2<=this.epsAbsIterMin;
+	}
+	
+	protected void printConverged(int i, double norm2, double firstNorm2) {
+		if(debug)
+			System.out.println(
+				String.format("Iter----->i=%05d, RError=%8.3e, AError=%8.3e", 
+						i,norm2/firstNorm2,norm2));
+	}
+	
+	/**
+	 * z = M^{-1}r, M=I if <tt>M</tt> is null
+	 */
+	protected void precondition(Preconditioner M, AlgebraVector r, AlgebraVector z) {
+		if(M == null)
+			z.set(r);
+		else
+			M.apply(r, z);
+	}
+	
 	/**
 	 * Conjugate Gradients iterative method, solves 
 	 * symmetric positive definite linear system:
@@ -47,6 +75,8 @@ public class Solver {
 	 */
 	public AlgebraVector solveCG(AlgebraMatrix A, AlgebraVector b, 
 			AlgebraVector x) {
+		if(A instanceof CSRMatrix)
+			return solveCG((CSRMatrix)A, b, x);
 
 		double alpha = 0, beta = 0, rho = 0, rho_1 = 0;
 		
@@ -102,6 +132,74 @@ public class Solver {
 		return x;
     }
 	
+	/**
+	 * Conjugate Gradients iterative method for a CSR matrix. 
+	 * <p>
+	 * The matrix vector multiplication and <tt>p'*q</tt> are computed in one pass
+	 * (see <tt>CSRMatrix.multDot()</tt>), the updates of <tt>x</tt>, <tt>r</tt>
+	 * and <tt>r'*r</tt> are computed in another pass, so there are two passes over the
+	 * vectors in each iteration besides the update of <tt>p</tt>.
+	 * 
+	 * @param A
+	 * @param b
+	 * @param x
+	 * @return
+	 */
+	public AlgebraVector solveCG(CSRMatrix A, AlgebraVector b, 
+			AlgebraVector x) {
+
+		double alpha = 0, beta = 0, rho = 0, rho_1 = 0;
+		
+		int dim = b.getDim();
+		FullVector r = new FullVector(dim);
+		FullVector p = new FullVector(dim);
+		FullVector q = new FullVector(dim);
+		double[] xd = x.getData();
+		double[] bd = b.getData();
+		double[] rd = r.getData();
+		double[] pd = p.getData();
+		double[] qd = q.getData();
+		
+		// r = b - Ax
+		A.mult(x, r);
+		for(int j=0; j<dim; j++) {
+			rd[j] = bd[j] - rd[j];
+			rho += rd[j]*rd[j];
+		}
+		
+		double firstNorm2 = Math.sqrt(rho);
+		double norm2 = 0;
+		for(int i=0;i<maxIter;i++) {
+			norm2 = Math.sqrt(rho);
+			if(isConverged(norm2, firstNorm2)) {
+				printConverged(i, norm2, firstNorm2);
+				return x;
+			}
+			
+		    if (i==0)
+		        p.set(r);
+		    else {
+		        beta = rho / rho_1;
+		        p.axpy(beta, r); //p=beta*p+r
+		    }
+		
+		    //q = A*p, p'*q
+		    alpha = rho / A.multDot(p, q);
+		
+		    //x=x+alpha*p, r=r-alpha*q, r'*r
+		    rho_1 = rho;
+		    rho = 0.0;
+		    for(int j=0; j<dim; j++) {
+		    	xd[j] += alpha*pd[j];
+		    	double rj = rd[j] - alpha*qd[j];
+		    	rd[j] = rj;
+		    	rho += rj*rj;
+		    }
+		}
+		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+    }
+	
 	/**
 	 * Conjugate Gradients squared iterative method,
 	 * solves the unsymmetric linear system
@@ -189,6 +287,304 @@ public class Solver {
 		return x;
     }	
 	
+	/**
+	 * Preconditioned Conjugate Gradients iterative method, solves 
+	 * symmetric positive definite linear system:
+	 * <tt>Ax = b</tt>
+	 * <p>
+	 * The preconditioner <tt>M</tt> must be symmetric positive definite, e.g.
+	 * <tt>JacobiPreconditioner</tt>, <tt>SSORPreconditioner</tt> or 
+	 * <tt>IC0Preconditioner</tt>. No preconditioning if <tt>M</tt> is null.
+	 * 
+	 * @param A
+	 * @param M
+	 * @param b
+	 * @param x
+	 * @return
+	 */
+	public AlgebraVector solvePCG(AlgebraMatrix A, Preconditioner M, 
+			AlgebraVector b, AlgebraVector x) {
+
+		double alpha = 0, beta = 0, rho = 0, rho_1 = 0;
+		
+		int dim = b.getDim();
+		AlgebraVector r = new FullVector(dim);
+		AlgebraVector z = new FullVector(dim);
+		AlgebraVector p = new FullVector(dim);
+		AlgebraVector q = new FullVector(dim);
+		
+		// r = b - Ax
+		A.mult(x, r);
+		r.axpy(-1.0, b);
+		
+		double firstNorm2 = r.norm2();
+		double norm2 = 0;
+		for(int i=0;i<maxIter;i++) {
+			norm2 = r.norm2();
+			if(isConverged(norm2, firstNorm2)) {
+				printConverged(i, norm2, firstNorm2);
+				return x;
+			}
+			
+			//Mz=r
+			precondition(M, r, z);
+			
+		    rho = r.dot(z);
+		
+		    if (i==0)
+		        p.set(z);
+		    else {
+		        beta = rho / rho_1;
+		        p.axpy(beta, z); //p=beta*p+z
+		    }
+		
+		    //q = A*p
+		    A.mult(p, q);
+		    alpha = rho / p.dot(q);
+		
+		    x.add(alpha, p); //x=x+alpha*p
+		    r.add(-alpha, q); //r=r-alpha*q
+		
+		    rho_1 = rho;
+		}
+		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+	}
+	
+	/**
+	 * Right preconditioned BiCGStab iterative method, solves
+	 * the unsymmetric linear system
+	 * <tt>Ax = b</tt>
+	 * <p>
+	 * No preconditioning if <tt>M</tt> is null.
+	 * 
+	 * @param A
+	 * @param M
+	 * @param b
+	 * @param x
+	 * @return
+	 */
+	public AlgebraVector solveBiCGStab(AlgebraMatrix A, Preconditioner M, 
+			AlgebraVector b, AlgebraVector x) {
+		
+		double rho = 0, rho_1 = 0, alpha = 0, beta = 0, omega = 0;
+		
+		int dim = b.getDim();
+		AlgebraVector r = new FullVector(dim);
+		AlgebraVector rtilde = new FullVector(dim);
+		AlgebraVector p = new FullVector(dim);
+		AlgebraVector phat = new FullVector(dim);
+		AlgebraVector v = new FullVector(dim);
+		AlgebraVector s = new FullVector(dim);
+		AlgebraVector shat = new FullVector(dim);
+		AlgebraVector t = new FullVector(dim);
+		
+		// r = b - Ax
+		A.mult(x, r);
+		r.axpy(-1.0, b);
+		rtilde.set(r);
+		
+		double firstNorm2 = r.norm2();
+		double norm2 = 0;
+		for(int i=0;i<maxIter;i++) {
+			norm2 = r.norm2();
+			if(isConverged(norm2, firstNorm2)) {
+				printConverged(i, norm2, firstNorm2);
+				return x;
+			}
+			
+			rho = rtilde.dot(r);
+			if (rho == 0)
+				throw new FutureyeException("NotConverge, rho==0, iter="+i);
+			
+			if (i==0)
+				p.set(r);
+			else {
+				beta = (rho / rho_1) * (alpha / omega);
+				//p = r + beta*(p - omega*v)
+				p.add(-omega, v).axpy(beta, r);
+			}
+			
+			precondition(M, p, phat);
+			A.mult(phat, v);
+			alpha = rho / rtilde.dot(v);
+			
+			//s = r - alpha*v
+			s.set(r).add(-alpha, v);
+			norm2 = s.norm2();
+			if(isConverged(norm2, firstNorm2)) {
+				x.add(alpha, phat);
+				printConverged(i+1, norm2, firstNorm2);
+				return x;
+			}
+			
+			precondition(M, s, shat);
+			A.mult(shat, t);
+			omega = t.dot(s) / t.dot(t);
+			if (omega == 0)
+				throw new FutureyeException("NotConverge, omega==0, iter="+i);
+			
+			x.add(alpha, phat).add(omega, shat);
+			r.set(s).add(-omega, t);
+			
+			rho_1 = rho;
+		}
+		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+	}
+	
+	/**
+	 * Right preconditioned restarted GMRES(m) iterative method, solves
+	 * the unsymmetric linear system
+	 * <tt>Ax = b</tt>
+	 * <p>
+	 * The number of iterations between restarts <tt>m</tt> is specified by
+	 * the field <tt>restart</tt>. No preconditioning if <tt>M</tt> is null.
+	 * 
+	 * @param A
+	 * @param M
+	 * @param b
+	 * @param x
+	 * @return
+	 */
+	public AlgebraVector solveGMRES(AlgebraMatrix A, Preconditioner M, 
+			AlgebraVector b, AlgebraVector x) {
+		
+		int dim = b.getDim();
+		int m = Math.max(1, Math.min(restart, dim));
+		AlgebraVector r = new FullVector(dim);
+		AlgebraVector w = new FullVector(dim);
+		AlgebraVector z = new FullVector(dim);
+		AlgebraVector[] V = new AlgebraVector[m+1];
+		for(int j=0; j<=m; j++)
+			V[j] = new FullVector(dim);
+		double[][] H = new double[m+1][m];
+		double[] cs = new double[m];
+		double[] sn = new double[m];
+		double[] g = new double[m+1];
+		double[] y = new double[m];
+		
+		// r = b - Ax
+		A.mult(x, r);
+		r.axpy(-1.0, b);
+		
+		double firstNorm2 = r.norm2();
+		double norm2 = firstNorm2;
+		int i = 0;
+		while(i < maxIter) {
+			if(isConverged(norm2, firstNorm2)) {
+				printConverged(i, norm2, firstNorm2);
+				return x;
+			}
+			V[0].set(1.0/norm2, r);
+			Arrays.fill(g, 0.0);
+			g[0] = norm2;
+			
+			int k = 0;
+			while(k < m && i < maxIter) {
+				//w = A*M^{-1}*V[k]
+				precondition(M, V[k], z);
+				A.mult(z, w);
+				//Modified Gram-Schmidt
+				for(int j=0; j<=k; j++) {
+					H[j][k] = w.dot(V[j]);
+					w.add(-H[j][k], V[j]);
+				}
+				H[k+1][k] = w.norm2();
+				if(H[k+1][k] != 0.0)
+					V[k+1].set(1.0/H[k+1][k], w);
+				//Apply previous Givens rotations to the new column
+				for(int j=0; j<k; j++) {
+					double tmp = cs[j]*H[j][k] + sn[j]*H[j+1][k];
+					H[j+1][k] = -sn[j]*H[j][k] + cs[j]*H[j+1][k];
+					H[j][k] = tmp;
+				}
+				double h = Math.hypot(H[k][k], H[k+1][k]);
+				cs[k] = H[k][k]/h;
+				sn[k] = H[k+1][k]/h;
+				H[k][k] = h;
+				H[k+1][k] = 0.0;
+				g[k+1] = -sn[k]*g[k];
+				g[k] = cs[k]*g[k];
+				norm2 = Math.abs(g[k+1]);
+				k++;
+				i++;
+				if(isConverged(norm2, firstNorm2))
+					break;
+			}
+			//Solve H(1:k,1:k)*y = g(1:k)
+			for(int j=k; --j>=0;) {
+				double v = g[j];
+				for(int l=j+1; l<k; l++)
+					v -= H[j][l]*y[l];
+				y[j] = v/H[j][j];
+			}
+			//x = x + M^{-1}*V*y
+			Arrays.fill(w.getData(), 0.0);
+			for(int j=0; j<k; j++)
+				w.add(y[j], V[j]);
+			precondition(M, w, z);
+			x.add(z);
+			
+			// r = b - Ax
+			A.mult(x, r);
+			r.axpy(-1.0, b);
+			norm2 = r.norm2();
+		}
+		if(isConverged(norm2, firstNorm2)) {
+			printConverged(i, norm2, firstNorm2);
+			return x;
+		}
+		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+	}
+	
+	/**
+	 * Algebraic multigrid iterative method, solves 
+	 * symmetric positive definite linear system:
+	 * <tt>Ax = b</tt>
+	 * <p>
+	 * Each iteration is one V-cycle of <tt>amg</tt> on the residual equation.
+	 * For ill-conditioned systems, use <tt>amg</tt> as preconditioner of
+	 * <tt>solvePCG()</tt> instead.
+	 * 
+	 * @param amg - AMG hierarchy set up for matrix A
+	 * @param b
+	 * @param x
+	 * @return
+	 */
+	public AlgebraVector solveAMG(SmoothedAggregationAMG amg,
+			AlgebraVector b, AlgebraVector x) {
+		AlgebraMatrix A = amg.getMatrix(0);
+		int dim = b.getDim();
+		AlgebraVector r = new FullVector(dim);
+		AlgebraVector e = new FullVector(dim);
+		
+		// r = b - Ax
+		A.mult(x, r);
+		r.axpy(-1.0, b);
+		
+		double firstNorm2 = r.norm2();
+		double norm2 = 0;
+		for(int i=0;i<maxIter;i++) {
+			norm2 = r.norm2();
+			if(isConverged(norm2, firstNorm2)) {
+				printConverged(i, norm2, firstNorm2);
+				return x;
+			}
+			amg.apply(r, e);
+			x.add(e);
+			A.mult(x, r);
+			r.axpy(-1.0, b);
+		}
+		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+	}
+	
+	public AlgebraVector solveAMG(CSRMatrix A, AlgebraVector b, AlgebraVector x) {
+		return solveAMG(new SmoothedAggregationAMG(A), b, x);
+	}
+	
 	/////////////////////////////////////////////////////////////
 	
 	public Vector solveCG(SparseMatrix A, Vector b, Vector x) {
@@ -197,7 +593,8 @@ public class Solver {
 			throw new FutureyeException(
 					"ERROR: Solver.solver() m.dim!=v.dim ");
 		}
-		AlgebraMatrix algStiff = new CompressedRowMatrix(A,false);
+		AlgebraMatrix algStiff = A instanceof CSRMatrix ? 
+				(CSRMatrix)A : new CompressedRowMatrix(A,false);
 		FullVector algLoad = new FullVector(b);
 		FullVector algU = new FullVector(x);
 		solveCG(algStiff, algLoad, algU);
@@ -233,7 +630,8 @@ public class Solver {
 					"ERROR: Solver.solver() m.dim!=v.dim ");
 		}
 		//CGS
-		AlgebraMatrix algStiff = new CompressedRowMatrix(A,false);
+		AlgebraMatrix algStiff = A instanceof CSRMatrix ? 
+				(CSRMatrix)A : new CompressedRowMatrix(A,false);
 		FullVector algLoad = new FullVector(b);
 		FullVector algU = new FullVector(x);
 		solveCGS(algStiff, algLoad, algU);
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import java.util.Arrays;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Sparse Cholesky factorization <tt>P*A*P' = L*L'</tt> of a symmetric positive
+ * definite matrix with AMD fill-reducing ordering P.
+ * <p>
+ * The factorization has two phases:
+ * <ul>
+ * <li>symbolic analysis (ordering, elimination tree and column counts of L),
+ * which depends only on the sparsity pattern of A
+ * <li>numeric factorization (up-looking algorithm)
+ * </ul>
+ * Both are done in the constructor. <tt>factorize()</tt> repeats the numeric phase
+ * for a matrix with the same sparsity pattern. The factor is kept, so
+ * <tt>solve()</tt> can be called for any number of right hand sides.
+ *
+ */
+public class SparseCholesky {
+	protected int n;
+	protected int[] perm; // perm[k]: row of A at row k of PAP'
+	protected int[] pinv;
+
+	//PAP' in CSR, only the lower triangle (column <= row) is used
+	protected int[] cRowPtr;
+	protected int[] cColIdx;
+	protected int[] cSrc; // position of each entry in the values of A
+	protected double[] cVals;
+
+	protected int[] parent; // elimination tree
+
+	//L stored by columns, diagonal entry first
+	protected int[] Lp;
+	protected int[] Li;
+	protected double[] Lx;
+
+	//work arrays
+	protected int[] stack;
+	protected int[] flag;
+	protected double[] x;
+
+	public SparseCholesky(CSRMatrix A) {
+		analyze(A);
+		factorize(A);
+	}
+
+	/**
+	 * Symbolic analysis
+	 *
+	 * @param A
+	 */
+	protected void analyze(CSRMatrix A) {
+		if(A.getRowDim() != A.getColDim())
+			throw new FutureyeException("Cholesky: matrix must be square");
+		CSRMatrix AA = A.isSymmetric() ? A.getFullStorage() : A;
+		n = AA.getRowDim();
+		perm = AMDOrdering.order(AA);
+		pinv = AMDOrdering.inverse(perm);
+
+		//Lower triangle of PAP'
+		int[] rowPtr = AA.getRowPtr();
+		int[] colIdx = AA.getColIdx();
+		cRowPtr = new int[n+1];
+		for(int i=0; i<n; i++) {
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++) {
+				int r = pinv[i], c = pinv[colIdx[k]];
+				if(c <= r) cRowPtr[r+1]++;
+			}
+		}
+		for(int r=0; r<n; r++)
+			cRowPtr[r+1] += cRowPtr[r];
+		cColIdx = new int[cRowPtr[n]];
+		cSrc = new int[cRowPtr[n]];
+		cVals = new double[cRowPtr[n]];
+		int[] pos = Arrays.copyOf(cRowPtr, n);
+		for(int i=0; i<n; i++) {
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++) {
+				int r = pinv[i], c = pinv[colIdx[k]];
+				if(c <= r) {
+					int q = pos[r]++;
+					cColIdx[q] = c;
+					cSrc[q] = k;
+				}
+			}
+		}
+
+		//Elimination tree
+		parent = new int[n];
+		int[] ancestor = new int[n];
+		for(int k=0; k<n; k++) {
+			parent[k] = -1;
+			ancestor[k] = -1;
+			for(int q=cRowPtr[k]; q<cRowPtr[k+1]; q++) {
+				int i = cColIdx[q];
+				while(i != -1 && i < k) {
+					int inext = ancestor[i];
+					ancestor[i] = k;
+					if(inext == -1)
+						parent[i] = k;
+					i = inext;
+				}
+			}
+		}
+
+		//Column counts of L by the row patterns
+		stack = new int[n];
+		flag = new int[n];
+		x = new double[n];
+		int[] colCount = new int[n];
+		Arrays.fill(flag, -1);
+		for(int k=0; k<n; k++) {
+			colCount[k]++;
+			int top = ereach(k);
+			for(int p=top; p<n; p++)
+				colCount[stack[p]]++;
+		}
+		Lp = new int[n+1];
+		for(int j=0; j<n; j++)
+			Lp[j+1] = Lp[j] + colCount[j];
+		Li = new int[Lp[n]];
+		Lx = new double[Lp[n]];
+	}
+
+	/**
+	 * Nonzero pattern of row k of L (excluding the diagonal) in
+	 * topological order: stack[top..n-1]
+	 */
+	protected int ereach(int k) {
+		int top = n;
+		flag[k] = k;
+		for(int q=cRowPtr[k]; q<cRowPtr[k+1]; q++) {
+			int i = cColIdx[q];
+			if(i > k) continue;
+			int len = 0;
+			for(; flag[i] != k; i = parent[i]) {
+				stack[len++] = i;
+				flag[i] = k;
+			}
+			while(len > 0)
+				stack[--top] = stack[--len];
+		}
+		return top;
+	}
+
+	/**
+	 * Numeric factorization of a matrix with the same sparsity
+	 * pattern as the one used in the constructor
+	 *
+	 * @param A
+	 */
+	public void factorize(CSRMatrix A) {
+		double[] aVals = A.isSymmetric() ? A.getFullStorage().getVals() : A.getVals();
+		for(int q=0; q<cVals.length; q++)
+			cVals[q] = aVals[cSrc[q]];
+		int[] c = new int[n];
+		System.arraycopy(Lp, 0, c, 0, n);
+		Arrays.fill(flag, -1);
+		for(int k=0; k<n; k++) {
+			int top = ereach(k);
+			x[k] = 0.0;
+			for(int q=cRowPtr[k]; q<cRowPtr[k+1]; q++)
+				x[cColIdx[q]] += cVals[q];
+			double d = x[k];
+			x[k] = 0.0;
+			for(; top<n; top++) {
+				int i = stack[top];
+				double lki = x[i]/Lx[Lp[i]];
+				x[i] = 0.0;
+				for(int p=Lp[i]+1; p<c[i]; p++)
+					x[Li[p]] -= Lx[p]*lki;
+				d -= lki*lki;
+				int p = c[i]++;
+				Li[p] = k;
+				Lx[p] = lki;
+			}
+			if(d <= 0.0)
+				throw new FutureyeException("Cholesky: matrix is not positive definite at row "+(perm[k]+1));
+			int p = c[k]++;
+			Li[p] = k;
+			Lx[p] = Math.sqrt(d);
+		}
+	}
+
+	/**
+	 * Solve <tt>Ax=b</tt> with the factorization
+	 *
+	 * @param b
+	 * @param x
+	 * @return x
+	 */
+	public AlgebraVector solve(AlgebraVector b, AlgebraVector x) {
+		double[] bd = b.getData();
+		double[] xd = x.getData();
+		double[] y = new double[n];
+		for(int k=0; k<n; k++)
+			y[k] = bd[perm[k]];
+		//Ly = y
+		for(int j=0; j<n; j++) {
+			y[j] /= Lx[Lp[j]];
+			for(int p=Lp[j]+1; p<Lp[j+1]; p++)
+				y[Li[p]] -= Lx[p]*y[j];
+		}
+		//L'y = y
+		for(int j=n; --j>=0;) {
+			for(int p=Lp[j]+1; p<Lp[j+1]; p++)
+				y[j] -= Lx[p]*y[Li[p]];
+			y[j] /= Lx[Lp[j]];
+		}
+		for(int k=0; k<n; k++)
+			xd[perm[k]] = y[k];
+		return x;
+	}
+
+	/**
+	 * Return the number of entries in L
+	 * @return
+	 */
+	public int getFactorNonZeroNumber() {
+		return Lp[n];
+	}
+
+	/**
+	 * Return the fill-reducing ordering
+	 * @return
+	 */
+	public int[] getPermutation() {
+		return perm;
+	}
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.algebra.solver;
+
+import java.util.Arrays;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.AlgebraVector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Sparse LU factorization <tt>P*A*Q = L*U</tt> of a general square matrix.
+ * <p>
+ * Symbolic analysis: the column ordering Q is the AMD ordering of A+A'.
+ * Numeric factorization: left-looking algorithm of Gilbert and Peierls, the
+ * pattern of each column of L and U is found by a depth-first search in the
+ * graph of L. The row ordering P is chosen by threshold partial pivoting which
+ * prefers the diagonal entry if it is not smaller than <tt>tol</tt> times the
+ * largest candidate.
+ * <p>
+ * The factor is kept, so <tt>solve()</tt> can be called for any number
+ * of right hand sides.
+ *
+ */
+public class SparseLU {
+	protected int n;
+	protected double tol;
+	protected int[] q;    // column ordering
+	protected int[] pinv; // row ordering: row i of A is row pinv[i] of PAQ
+
+	//A stored by columns
+	protected int[] Ap;
+	protected int[] Ai;
+	protected double[] Ax;
+
+	//L (unit diagonal first in each column) and U (diagonal last) stored by columns
+	protected int[] Lp, Li, Up, Ui;
+	protected double[] Lx, Ux;
+
+	//work arrays
+	protected int[] xi;
+	protected int[] pstack;
+	protected int[] marked;
+	protected int markStamp;
+	protected double[] x;
+
+	/**
+	 * LU factorization with diagonal preference <tt>tol=0.1</tt>
+	 *
+	 * @param A
+	 */
+	public SparseLU(CSRMatrix A) {
+		this(A, 0.1);
+	}
+
+	/**
+	 *
+	 * @param A
+	 * @param tol - pivot tolerance in [0,1], 1 for partial pivoting
+	 */
+	public SparseLU(CSRMatrix A, double tol) {
+		this.tol = tol;
+		analyze(A);
+		factorize(A);
+	}
+
+	/**
+	 * Symbolic analysis
+	 *
+	 * @param A
+	 */
+	protected void analyze(CSRMatrix A) {
+		if(A.getRowDim() != A.getColDim())
+			throw new FutureyeException("LU: matrix must be square");
+		n = A.getRowDim();
+		q = AMDOrdering.order(A.isSymmetric() ? A.getFullStorage() : A);
+		xi = new int[n];
+		pstack = new int[n];
+		marked = new int[n];
+		x = new double[n];
+	}
+
+	/**
+	 * Numeric factorization, the column ordering computed in the
+	 * constructor is used
+	 *
+	 * @param A
+	 */
+	public void factorize(CSRMatrix A) {
+		//transpose of CSR is CSR of A', which is A stored by columns
+		CSRMatrix At = A.isSymmetric() ? A.getFullStorage() : A.copy().trans();
+		Ap = At.getRowPtr();
+		Ai = At.getColIdx();
+		Ax = At.getVals();
+
+		int lmax = 4*Ax.length + n, umax = 4*Ax.length + n;
+		Lp = new int[n+1]; Li = new int[lmax]; Lx = new double[lmax];
+		Up = new int[n+1]; Ui = new int[umax]; Ux = new double[umax];
+		pinv = new int[n];
+		Arrays.fill(pinv, -1);
+		Arrays.fill(x, 0.0);
+		int lnz = 0, unz = 0;
+		for(int k=0; k<n; k++) {
+			Lp[k] = lnz;
+			Up[k] = unz;
+			if(lnz + n > Li.length) {
+				Li = Arrays.copyOf(Li, 2*Li.length + n);
+				Lx = Arrays.copyOf(Lx, 2*Lx.length + n);
+			}
+			if(unz + n > Ui.length) {
+				Ui = Arrays.copyOf(Ui, 2*Ui.length + n);
+				Ux = Arrays.copyOf(Ux, 2*Ux.length + n);
+			}
+			int col = q[k];
+			int top = spsolve(col);
+			//find pivot
+			int ipiv = -1;
+			double a = -1;
+			for(int p=top; p<n; p++) {
+				int i = xi[p];
+				if(pinv[i] < 0) {
+					double t = Math.abs(x[i]);
+					if(t > a) {
+						a = t;
+						ipiv = i;
+					}
+				} else {
+					Ui[unz] = pinv[i];
+					Ux[unz++] = x[i];
+				}
+			}
+			if(ipiv == -1 || a <= 0.0)
+				throw new FutureyeException("LU: matrix is singular at column "+(col+1));
+			if(pinv[col] < 0 && Math.abs(x[col]) >= a*tol)
+				ipiv = col;
+			double pivot = x[ipiv];
+			Ui[unz] = k;
+			Ux[unz++] = pivot;
+			pinv[ipiv] = k;
+			Li[lnz] = ipiv;
+			Lx[lnz++] = 1.0;
+			for(int p=top; p<n; p++) {
+				int i = xi[p];
+				if(pinv[i] < 0) {
+					Li[lnz] = i;
+					Lx[lnz++] = x[i]/pivot;
+				}
+				x[i] = 0.0;
+			}
+		}
+		Lp[n] = lnz;
+		Up[n] = unz;
+		for(int p=0; p<lnz; p++)
+			Li[p] = pinv[Li[p]];
+	}
+
+	/**
+	 * x = L\A(:,col), the pattern of x is returned in xi[top..n-1]
+	 */
+	protected int spsolve(int col) {
+		int top = reach(col);
+		for(int p=Ap[col]; p<Ap[col+1]; p++)
+			x[Ai[p]] = Ax[p];
+		for(int px=top; px<n; px++) {
+			int j = xi[px];
+			int J = pinv[j];
+			if(J < 0) continue;
+			double xj = x[j]; // L has unit diagonal
+			for(int p=Lp[J]+1; p<Lp[J+1]; p++)
+				x[Li[p]] -= Lx[p]*xj;
+		}
+		return top;
+	}
+
+	/**
+	 * Nonzero pattern of L\A(:,col) in topological order
+	 */
+	protected int reach(int col) {
+		int top = n;
+		markStamp++;
+		for(int p=Ap[col]; p<Ap[col+1]; p++) {
+			if(marked[Ai[p]] != markStamp)
+				top = dfs(Ai[p], top);
+		}
+		return top;
+	}
+
+	protected int dfs(int j, int top) {
+		int head = 0;
+		xi[0] = j;
+		while(head >= 0) {
+			j = xi[head];
+			int jnew = pinv[j];
+			if(marked[j] != markStamp) {
+				marked[j] = markStamp;
+				pstack[head] = jnew < 0 ? 0 : Lp[jnew]+1;
+			}
+			boolean done = true;
+			int p2 = jnew < 0 ? 0 : Lp[jnew+1];
+			for(int p=pstack[head]; p<p2; p++) {
+				int i = Li[p];
+				if(marked[i] == markStamp) continue;
+				pstack[head] = p;
+				xi[++head] = i;
+				done = false;
+				break;
+			}
+			if(done) {
+				head--;
+				xi[--top] = j;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Solve <tt>Ax=b</tt> with the factorization
+	 *
+	 * @param b
+	 * @param x
+	 * @return x
+	 */
+	public AlgebraVector solve(AlgebraVector b, AlgebraVector x) {
+		double[] bd = b.getData();
+		double[] xd = x.getData();
+		double[] y = new double[n];
+		for(int i=0; i<n; i++)
+			y[pinv[i]] = bd[i];
+		//Ly = y
+		for(int j=0; j<n; j++) {
+			for(int p=Lp[j]+1; p<Lp[j+1]; p++)
+				y[Li[p]] -= Lx[p]*y[j];
+		}
+		//Uy = y
+		for(int j=n; --j>=0;) {
+			y[j] /= Ux[Up[j+1]-1];
+			for(int p=Up[j]; p<Up[j+1]-1; p++)
+				y[Ui[p]] -= Ux[p]*y[j];
+		}
+		for(int k=0; k<n; k++)
+			xd[q[k]] = y[k];
+		return x;
+	}
+
+	/**
+	 * Return the number of entries in L and U
+	 * @return
+	 */
+	public int getFactorNonZeroNumber() {
+		return Lp[n] + Up[n];
+	}
+}
@@ -10,6 +10,10 @@ import edu.uta.futureye.lib.assembler.AssembleParam;
 
 /**
  * This class represents a compiled function from an object of MathFunc
+ * <p>
+ * A compiled function keeps no state between calls, all the intermediate
+ * values are passed through the arguments array (see <tt>MathFunc.compileToArg()</tt>).
+ * So an instance can be shared by threads if each thread uses its own arguments array.
  *
  */
 public abstract class CompiledFunc {
@@ -34,6 +38,40 @@ public abstract class CompiledFunc {
 		return apply(null, args);
 	}
 	
+	/**
+	 * Integrate the function over the quadrature points in one call:
+	 * <p><blockquote><pre>
+	 * \sum_p weights[p]*apply(ap, args)
+	 * </pre></blockquote>
+	 * where the coordinates of point p, which are
+	 * <tt>points[p*dim], ..., points[p*dim+dim-1]</tt> and <tt>dim=points.length/weights.length</tt>,
+	 * are copied into <tt>args</tt> starting at <tt>argsStart</tt> before the evaluation.
+	 * <p>
+	 * The classes generated by <tt>MathFunc.compileWithASM()</tt> override this method with
+	 * a loop in which the sub-expressions that do not depend on the coordinates of the
+	 * points are evaluated only once before the loop.
+	 *
+	 * @param ap
+	 * @param args
+	 * @param argsStart - start position of the coordinates of quadrature points in args
+	 * @param points - coordinates of quadrature points on the reference element
+	 * @param weights - weights of quadrature points
+	 * @return
+	 */
+	public double integrate(AssembleParam ap, double[] args, int argsStart,
+			double[] points, double[] weights) {
+		int nPoints = weights.length;
+		if(nPoints == 0)
+			return 0.0;
+		int dim = points.length/nPoints;
+		double rlt = 0.0;
+		for(int p=0; p<nPoints; p++) {
+			System.arraycopy(points, p*dim, args, argsStart, dim);
+			rlt += weights[p]*apply(ap, args);
+		}
+		return rlt;
+	}
+
 	/**
 	 * Set the references to functions before compilation for
 	 * further calling from apply(...)
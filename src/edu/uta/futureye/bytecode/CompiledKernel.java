@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.bytecode;
+
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.lib.assembler.AssembleParam;
+
+/**
+ * This class represents a compiled (fused) kernel of a weak form.
+ * All the entries of the local stiff matrix and local load vector
+ * are generated into one method of one class so that the sub-expressions
+ * shared by the entries are evaluated only once at each quadrature point.
+ *
+ */
+public abstract class CompiledKernel {
+	//references to MathFunc objects
+	protected MathFunc[] funcRefs;
+
+	/**
+	 * This function is implemented during compilation. It fills the local
+	 * stiff matrix <tt>A</tt> and local load vector <tt>b</tt> by integrating
+	 * the compiled LHS and RHS expressions over all the quadrature points:
+	 * <p><blockquote><pre>
+	 * A[j][i] = \sum_p weights[p]*LHS[j][i](args)
+	 * b[j]    = \sum_p weights[p]*RHS[j](args)
+	 * </pre></blockquote>
+	 * where the coordinates of point p, which are
+	 * <tt>points[p*dim], ..., points[p*dim+dim-1]</tt> and <tt>dim=points.length/weights.length</tt>,
+	 * are copied into <tt>args</tt> starting at <tt>argsStart</tt> before the evaluation.
+	 *
+	 * @param ap - This parameter is supposed to be passed into the function during assembling process
+	 * @param args - arguments defined in MathFunc
+	 * @param argsStart - start position of the coordinates of quadrature points in args
+	 * @param points - coordinates of quadrature points on the reference element
+	 * @param weights - weights of quadrature points
+	 * @param A - local stiff matrix (output)
+	 * @param b - local load vector (output)
+	 */
+	public abstract void apply(AssembleParam ap, double[] args, int argsStart,
+			double[] points, double[] weights, double[][] A, double[] b);
+
+	/**
+	 * Set the references to functions before compilation for
+	 * further calling from apply(...)
+	 * @param funcs
+	 */
+	public void setFuncRefs(MathFunc[] funcs) {
+		this.funcRefs = funcs;
+	}
+}
@@ -0,0 +1,699 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.bytecode;
+
+import static org.apache.bcel.generic.InstructionConstants.DALOAD;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.bcel.generic.ALOAD;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.DLOAD;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.PUSH;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import edu.uta.futureye.core.intf.LocalCoordinate;
+import edu.uta.futureye.function.MathFuncBase;
+import edu.uta.futureye.function.basic.FC;
+import edu.uta.futureye.function.basic.FComposite;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.FAdd;
+import edu.uta.futureye.function.operator.FBinaryOp;
+import edu.uta.futureye.function.operator.FDiv;
+import edu.uta.futureye.function.operator.FMul;
+import edu.uta.futureye.function.operator.FSub;
+import edu.uta.futureye.function.operator.FUniaryOp;
+import edu.uta.futureye.lib.assembler.AssembleParam;
+import edu.uta.futureye.util.LocalVarAllocator;
+
+/**
+ * Directed acyclic graph (DAG) of a set of expression trees.
+ * <p>
+ * Structurally equal sub-expressions (the same operator applied to the same
+ * operands, the same constant or the same variable) are merged into one node
+ * of the DAG by hashing. A node which is referenced more than once is a shared 
+ * sub-expression. In the generated code a shared sub-expression is evaluated 
+ * only once, stored in a local variable and loaded from the local variable 
+ * thereafter.
+ * <p>
+ * Constants are folded during the construction of the DAG: an operator whose 
+ * operands are all constants is replaced by an <tt>FC</tt> object, and the 
+ * trivial operations <tt>f*1, 1*f, f/1, f+0, 0+f, f-0</tt> are replaced by <tt>f</tt>.
+ * <p>
+ * Usage:
+ * <p><blockquote><pre>
+ * ExprDAG dag = new ExprDAG(f1, f2, f3);
+ * dag.allocLocals(mv);          //mv must be a LocalVarAllocator
+ * MathFunc g1 = dag.rewrite(f1); //shared sub-expressions are replaced by local variables
+ * ...
+ * dag.bytecodeGen(mv, ...);     //generate code to evaluate the shared sub-expressions
+ * g1.bytecodeGen(mv, ...);      //generate code for f1
+ * </pre></blockquote>
+ *
+ * Sub-expressions containing functions that are not compiled (see <tt>isCompilable()</tt>)
+ * are never shared since the value of them may depend on the AssembleParam object.
+ */
+public class ExprDAG {
+	//Original node -> node in the DAG
+	protected Map<MathFunc, MathFunc> canonical = new IdentityHashMap<MathFunc, MathFunc>();
+	//Structural key -> node in the DAG
+	protected Map<String, MathFunc> table = new HashMap<String, MathFunc>();
+	//Children of the nodes in the DAG
+	protected Map<MathFunc, List<MathFunc>> dagChildren = new IdentityHashMap<MathFunc, List<MathFunc>>();
+	//Unique ids of the nodes in the DAG and the functions which are compared by identity
+	protected Map<MathFunc, Integer> ids = new IdentityHashMap<MathFunc, Integer>();
+	//Number of references to each node in the DAG
+	protected Map<MathFunc, Integer> refCount = new IdentityHashMap<MathFunc, Integer>();
+	//All the nodes in the DAG in post-order
+	protected List<MathFunc> nodes = new ArrayList<MathFunc>();
+	//Nodes which contain functions that are not compiled
+	protected Set<MathFunc> opaque = Collections.newSetFromMap(new IdentityHashMap<MathFunc, Boolean>());
+	//Shared nodes in post-order
+	protected List<MathFunc> shared = new ArrayList<MathFunc>();
+	//Loop-invariant nodes in post-order (see hoistInvariants())
+	protected List<MathFunc> invariant = new ArrayList<MathFunc>();
+	//Local variables for the shared nodes
+	protected Map<MathFunc, LocalVar> localVars = new IdentityHashMap<MathFunc, LocalVar>();
+	//Rewritten nodes
+	protected Map<MathFunc, MathFunc> rewritten = new IdentityHashMap<MathFunc, MathFunc>();
+
+	//Arguments of the generated method
+	protected Map<String, Integer> argsMap;
+	//Roots of the expression trees
+	protected Set<MathFunc> roots = Collections.newSetFromMap(new IdentityHashMap<MathFunc, Boolean>());
+
+	public ExprDAG(MathFunc ...roots) {
+		this(null, roots);
+	}
+
+	/**
+	 * Any sub-expression (except the roots) whose result is held by an argument 
+	 * in <tt>argsMap</tt> (see <tt>MathFunc.compileToArg()</tt>) is replaced by the
+	 * argument.
+	 * 
+	 * @param argsMap - arguments of the generated method
+	 * @param roots
+	 */
+	public ExprDAG(Map<String, Integer> argsMap, MathFunc ...roots) {
+		this.argsMap = argsMap;
+		for(MathFunc root : roots)
+			this.roots.add(root);
+		for(MathFunc root : roots)
+			count(canonicalize(root));
+		for(MathFunc f : nodes) {
+			if(refCount.get(f) > 1 && isShareable(f))
+				shared.add(f);
+		}
+	}
+
+	/**
+	 * Return the node in the DAG which is structurally equal to <tt>f</tt>
+	 *
+	 * @param f
+	 * @return
+	 */
+	protected MathFunc canonicalize(MathFunc f) {
+		MathFunc c = canonical.get(f);
+		if(c != null)
+			return c;
+		String argName = f.getCompiledArgName();
+		if(argName != null && argsMap != null && argsMap.containsKey(argName) && !roots.contains(f)) {
+			c = canonicalize(new ArgVar(f, argName, argsMap.get(argName)));
+			canonical.put(f, c);
+			return c;
+		}
+		List<MathFunc> cs = new ArrayList<MathFunc>();
+		for(MathFunc child : children(f))
+			cs.add(canonicalize(child));
+		MathFunc s = fold(f, cs);
+		if(s != null) {
+			c = canonicalize(s);
+		} else {
+			String key = key(f, cs);
+			c = table.get(key);
+			if(c == null) {
+				c = f;
+				table.put(key, c);
+				dagChildren.put(c, cs);
+				boolean isOpaque = !isCompilable(c);
+				for(MathFunc child : cs) {
+					if(opaque.contains(child))
+						isOpaque = true;
+				}
+				if(isOpaque)
+					opaque.add(c);
+			}
+		}
+		canonical.put(f, c);
+		return c;
+	}
+
+	protected void count(MathFunc c) {
+		Integer cnt = refCount.get(c);
+		if(cnt != null) {
+			refCount.put(c, cnt+1);
+			return;
+		}
+		refCount.put(c, 1);
+		for(MathFunc child : dagChildren.get(c))
+			count(child);
+		nodes.add(c);
+	}
+
+	protected int id(MathFunc f) {
+		Integer id = ids.get(f);
+		if(id == null) {
+			id = ids.size();
+			ids.put(f, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Return the key of <tt>f</tt> for hashing. Two nodes with the same key
+	 * generate the same code.
+	 *
+	 * @param f
+	 * @param cs - children of <tt>f</tt> in the DAG
+	 * @return
+	 */
+	protected String key(MathFunc f, List<MathFunc> cs) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(f.getClass().getName());
+		if(f instanceof FC) {
+			sb.append(":").append(Double.doubleToLongBits(f.apply()));
+		} else if(f.getClass() == FX.class) {
+			sb.append(":").append(f.getExpr());
+		} else if(f instanceof LocalCoordinate) {
+			//local coordinates r,s,t load their argument by name as FX. They are 
+			//compared by name since the operators copy their arguments (see FBinaryOp.setArgIdx())
+			sb.append(":").append(f.getVarNames().get(0));
+		} else if(f instanceof ArgVar) {
+			sb.append(":").append(((ArgVar)f).getIndex());
+		} else if(!isCompilable(f) || cs.size() == 0) {
+			//compared by identity
+			sb.append("@").append(id(f));
+		} else if(f instanceof FComposite) {
+			FComposite fc = (FComposite)f;
+			if(fc.isOuterVarActive()) {
+				sb.append("(").append(id(cs.get(0))).append(")");
+			} else {
+				sb.append("@").append(id(fc.fOuter)).append("(");
+				List<String> names = fc.fOuter.getVarNames();
+				for(int i=0, k=0; i<names.size(); i++) {
+					sb.append(names.get(i)).append("=");
+					if(fc.fInners.get(names.get(i)) != null)
+						sb.append(id(cs.get(k++)));
+					sb.append(",");
+				}
+				sb.append(")");
+			}
+		} else {
+			int[] childIds = new int[cs.size()];
+			for(int i=0; i<cs.size(); i++)
+				childIds[i] = id(cs.get(i));
+			//f+g=g+f, f*g=g*f
+			if(f instanceof FAdd || f instanceof FMul)
+				Arrays.sort(childIds);
+			sb.append(Arrays.toString(childIds));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Constant folding
+	 *
+	 * @param f
+	 * @param cs - children of <tt>f</tt> in the DAG
+	 * @return the simplified expression or null if <tt>f</tt> can not be simplified
+	 */
+	protected MathFunc fold(MathFunc f, List<MathFunc> cs) {
+		if(!isCompilable(f) || !(f instanceof FBinaryOp || f instanceof FUniaryOp))
+			return null;
+		boolean allConst = true;
+		for(MathFunc c : cs) {
+			if(!(c instanceof FC))
+				allConst = false;
+		}
+		if(allConst) {
+			MathFunc cp = f.copy();
+			if(cp instanceof FBinaryOp) {
+				((FBinaryOp)cp).arg1 = cs.get(0);
+				((FBinaryOp)cp).arg2 = cs.get(1);
+			} else {
+				((FUniaryOp)cp).arg = cs.get(0);
+			}
+			return new FC(cp.apply());
+		}
+		if(f instanceof FMul) {
+			if(isConst(cs.get(1), 1.0)) return cs.get(0);
+			if(isConst(cs.get(0), 1.0)) return cs.get(1);
+		} else if(f instanceof FDiv) {
+			if(isConst(cs.get(1), 1.0)) return cs.get(0);
+		} else if(f instanceof FAdd) {
+			if(isConst(cs.get(1), 0.0)) return cs.get(0);
+			if(isConst(cs.get(0), 0.0)) return cs.get(1);
+		} else if(f instanceof FSub) {
+			if(isConst(cs.get(1), 0.0)) return cs.get(0);
+		}
+		return null;
+	}
+
+	protected static boolean isConst(MathFunc f, double v) {
+		return f instanceof FC && f.apply() == v;
+	}
+
+	/**
+	 * Return true if the code of function <tt>f</tt> is generated by itself,
+	 * that is the ASM version of <tt>bytecodeGen()</tt> is overridden. Otherwise
+	 * a call to <tt>f.apply(ap, args)</tt> is generated (see MathFuncBase.bytecodeGen())
+	 *
+	 * @param f
+	 * @return
+	 */
+	public static boolean isCompilable(MathFunc f) {
+		try {
+			return f.getClass().getMethod("bytecodeGen", MethodVisitor.class, Map.class,
+					int.class, Map.class, String.class).getDeclaringClass() != MathFuncBase.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Return the sub-expressions of <tt>f</tt> which are compiled in the
+	 * same context (the same arguments array) as <tt>f</tt>
+	 *
+	 * @param f
+	 * @return
+	 */
+	public static List<MathFunc> children(MathFunc f) {
+		List<MathFunc> ret = new ArrayList<MathFunc>();
+		if(!isCompilable(f))
+			return ret;
+		if(f instanceof FBinaryOp) {
+			ret.add(((FBinaryOp) f).arg1);
+			ret.add(((FBinaryOp) f).arg2);
+		} else if(f instanceof FUniaryOp) {
+			ret.add(((FUniaryOp) f).arg);
+		} else if(f instanceof FComposite) {
+			FComposite fc = (FComposite)f;
+			if(fc.isOuterVarActive()) {
+				ret.add(fc.fOuter);
+			} else {
+				//The outer function is evaluated with a different arguments array
+				for(String name : fc.fOuter.getVarNames()) {
+					MathFunc fInner = fc.fInners.get(name);
+					if(fInner != null)
+						ret.add(fInner);
+				}
+			}
+		}
+		return ret;
+	}
+
+	protected boolean isShareable(MathFunc f) {
+		return !opaque.contains(f) && dagChildren.get(f).size() > 0;
+	}
+
+	/**
+	 * Return true if any sub-expression in the trees contains functions
+	 * that are not compiled
+	 *
+	 * @param f
+	 * @return
+	 */
+	public boolean isOpaque(MathFunc f) {
+		return opaque.contains(canonical.get(f));
+	}
+
+	/**
+	 * Return the shared sub-expressions in the order of evaluation
+	 *
+	 * @return
+	 */
+	public List<MathFunc> getSharedExprs() {
+		return shared;
+	}
+
+	/**
+	 * Loop-invariant code motion for a loop over quadrature points in which the
+	 * arguments <tt>loopVars</tt> are changed (see <tt>CompiledFunc.integrate()</tt>).
+	 * <p>
+	 * The largest sub-expressions which do not depend on <tt>loopVars</tt> and
+	 * contain no functions that are not compiled are moved out of the loop: they are
+	 * evaluated by <tt>bytecodeGenInvariants()</tt> before the loop and stored in local
+	 * variables, and <tt>bytecodeGen()</tt> evaluates only the shared sub-expressions
+	 * which depend on <tt>loopVars</tt>. Must be called before <tt>allocLocals()</tt>.
+	 *
+	 * @param loopVars - names of the arguments which are changed in the loop
+	 */
+	public void hoistInvariants(Set<String> loopVars) {
+		Set<MathFunc> variant = Collections.newSetFromMap(new IdentityHashMap<MathFunc, Boolean>());
+		Set<MathFunc> usedInLoop = Collections.newSetFromMap(new IdentityHashMap<MathFunc, Boolean>());
+		for(MathFunc f : nodes) {
+			if(isVariant(f, loopVars, variant)) {
+				variant.add(f);
+				usedInLoop.addAll(dagChildren.get(f));
+			}
+		}
+		for(MathFunc root : roots)
+			usedInLoop.add(canonical.get(root));
+		Set<MathFunc> isShared = Collections.newSetFromMap(new IdentityHashMap<MathFunc, Boolean>());
+		isShared.addAll(shared);
+		List<MathFunc> loopShared = new ArrayList<MathFunc>();
+		for(MathFunc f : nodes) {
+			if(variant.contains(f)) {
+				if(isShared.contains(f))
+					loopShared.add(f);
+			} else if(dagChildren.get(f).size() > 0 && (isShared.contains(f) || usedInLoop.contains(f))) {
+				invariant.add(f);
+			}
+		}
+		shared = loopShared;
+	}
+
+	/**
+	 * Return true if node <tt>f</tt> depends on any argument in <tt>loopVars</tt>
+	 *
+	 * @param f
+	 * @param loopVars
+	 * @param variant - the variant nodes before <tt>f</tt> in post-order
+	 * @return
+	 */
+	protected boolean isVariant(MathFunc f, Set<String> loopVars, Set<MathFunc> variant) {
+		//functions that are not compiled get all the arguments
+		if(opaque.contains(f))
+			return true;
+		for(MathFunc c : dagChildren.get(f)) {
+			if(variant.contains(c))
+				return true;
+		}
+		if(f instanceof ArgVar)
+			return loopVars.contains(((ArgVar)f).argName);
+		if(f instanceof FC)
+			return false;
+		if(f instanceof FComposite) {
+			FComposite fc = (FComposite)f;
+			if(fc.isOuterVarActive())
+				return false;
+			//the variables of the outer function which are not replaced by
+			//inner functions are read from the arguments
+			for(String name : fc.fOuter.getVarNames()) {
+				if(fc.fInners.get(name) == null && loopVars.contains(name))
+					return true;
+			}
+			return false;
+		}
+		if(dagChildren.get(f).size() > 0)
+			return false;
+		//leaf nodes read the arguments by name
+		List<String> names = f.getVarNames();
+		if(names == null || names.size() == 0)
+			return true;
+		for(String name : names) {
+			if(loopVars.contains(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Allocate a local variable for each shared (and loop-invariant) sub-expression
+	 *
+	 * @param mv
+	 */
+	public void allocLocals(LocalVarAllocator mv) {
+		for(MathFunc f : invariant) {
+			localVars.put(f, new LocalVar(f, mv.newLocal(Type.DOUBLE_TYPE)));
+		}
+		for(MathFunc f : shared) {
+			localVars.put(f, new LocalVar(f, mv.newLocal(Type.DOUBLE_TYPE)));
+		}
+		rewritten.clear();
+	}
+
+	/**
+	 * Return a copy of the expression tree <tt>f</tt> in which the structurally
+	 * equal sub-expressions are merged, the constants are folded and the shared
+	 * sub-expressions are replaced by the local variables. The original
+	 * expression tree is not changed. Only the nodes which are compiled
+	 * (see <tt>isCompilable()</tt>) are copied.
+	 *
+	 * @param f - one of the expressions (or their sub-expressions) passed to the constructor
+	 * @return
+	 */
+	public MathFunc rewrite(MathFunc f) {
+		MathFunc c = canonical.get(f);
+		if(c == null)
+			throw new IllegalArgumentException("Not in the DAG: "+f.getExpr());
+		LocalVar lv = localVars.get(c);
+		if(lv != null)
+			return lv;
+		return rewriteChildren(c);
+	}
+
+	protected MathFunc rewriteChildren(MathFunc f) {
+		MathFunc ret = rewritten.get(f);
+		if(ret != null)
+			return ret;
+		ret = f;
+		if(!isCompilable(f) || dagChildren.get(f).size() == 0) {
+			//keep it
+		} else if(f instanceof FBinaryOp) {
+			FBinaryOp op = (FBinaryOp)f;
+			FBinaryOp cp = (FBinaryOp)op.copy();
+			cp.arg1 = rewrite(op.arg1);
+			cp.arg2 = rewrite(op.arg2);
+			ret = cp;
+		} else if(f instanceof FUniaryOp) {
+			FUniaryOp op = (FUniaryOp)f;
+			FUniaryOp cp = (FUniaryOp)op.copy();
+			cp.arg = rewrite(op.arg);
+			ret = cp;
+		} else if(f instanceof FComposite) {
+			FComposite fc = (FComposite)f;
+			FComposite cp = (FComposite)fc.copy();
+			if(fc.isOuterVarActive()) {
+				cp.fOuter = rewrite(fc.fOuter);
+			} else {
+				Map<String, MathFunc> fInners = new HashMap<String, MathFunc>();
+				for(Entry<String, MathFunc> e : fc.fInners.entrySet()) {
+					MathFunc fInner = canonical.containsKey(e.getValue()) ? 
+							rewrite(e.getValue()) : e.getValue();
+					fInners.put(e.getKey(), fInner);
+				}
+				cp.fInners = fInners;
+			}
+			ret = cp;
+		}
+		rewritten.put(f, ret);
+		return ret;
+	}
+
+	/**
+	 * Return the expressions that are needed to be generated for the
+	 * shared sub-expressions in the order of evaluation. The shared
+	 * sub-expressions in each returned expression are replaced by
+	 * local variables.
+	 *
+	 * @return
+	 */
+	public List<MathFunc> getRewrittenSharedExprs() {
+		List<MathFunc> ret = new ArrayList<MathFunc>();
+		for(MathFunc f : invariant)
+			ret.add(rewriteChildren(f));
+		for(MathFunc f : shared)
+			ret.add(rewriteChildren(f));
+		return ret;
+	}
+
+	/**
+	 * Generate code to evaluate all the shared sub-expressions
+	 * and store the results to the local variables
+	 */
+	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
+			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
+		for(MathFunc f : shared) {
+			rewriteChildren(f).bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+			mv.visitVarInsn(Opcodes.DSTORE, localVars.get(f).getIndex());
+		}
+	}
+
+	/**
+	 * Generate code to evaluate the loop-invariant sub-expressions
+	 * (see <tt>hoistInvariants()</tt>) and store the results to the local variables
+	 */
+	public void bytecodeGenInvariants(MethodVisitor mv, Map<String, Integer> argsMap,
+			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
+		for(MathFunc f : invariant) {
+			rewriteChildren(f).bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+			mv.visitVarInsn(Opcodes.DSTORE, localVars.get(f).getIndex());
+		}
+	}
+
+	/**
+	 * A local variable which holds the value of a shared sub-expression.
+	 * <p>
+	 * The index is the slot allocated by <tt>allocLocals()</tt>, which only
+	 * the ASM generators call. A BCEL generator which uses the rewritten
+	 * expressions must store the shared sub-expressions to the same slots and
+	 * reserve them (see <tt>MethodGen.setMaxLocals()</tt>).
+	 */
+	public static class LocalVar extends MathFuncBase {
+		protected MathFunc expr;
+		protected int idx;
+
+		public LocalVar(MathFunc expr, int idx) {
+			this.expr = expr;
+			this.idx = idx;
+		}
+
+		public int getIndex() {
+			return this.idx;
+		}
+
+		@Override
+		public double apply(double... args) {
+			return expr.apply(args);
+		}
+
+		@Override
+		public double apply(AssembleParam ap, double... args) {
+			return expr.apply(ap, args);
+		}
+
+		@Override
+		public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
+				int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
+			mv.visitVarInsn(Opcodes.DLOAD, idx);
+		}
+
+		@Override
+		public InstructionHandle bytecodeGen(String clsName, MethodGen mg,
+				ConstantPoolGen cp, InstructionFactory factory,
+				InstructionList il, Map<String, Integer> argsMap,
+				int argsStartPos, Map<MathFunc, Integer> funcRefsMap) {
+			return il.append(new DLOAD(idx));
+		}
+
+		@Override
+		public String getName() {
+			return "local"+idx;
+		}
+
+		@Override
+		public MathFunc setName(String name) {
+			return this;
+		}
+
+		@Override
+		public MathFunc setVarNames(List<String> varNames) {
+			return this;
+		}
+
+		@Override
+		public List<String> getVarNames() {
+			return expr.getVarNames();
+		}
+
+		@Override
+		public MathFunc setArgIdx(Map<String, Integer> argsMap) {
+			return this;
+		}
+
+		@Override
+		public Map<String, Integer> getArgIdxMap() {
+			return expr.getArgIdxMap();
+		}
+
+		@Override
+		public String getExpr() {
+			return getName();
+		}
+
+		@Override
+		public boolean isConstant() {
+			return false;
+		}
+
+		@Override
+		public boolean isInteger() {
+			return false;
+		}
+
+		@Override
+		public boolean isZero() {
+			return false;
+		}
+
+		@Override
+		public boolean isReal() {
+			return false;
+		}
+	}
+
+	/**
+	 * An argument of the generated method which holds the value of a sub-expression
+	 * (see <tt>MathFunc.compileToArg()</tt>)
+	 */
+	public static class ArgVar extends LocalVar {
+		protected String argName;
+
+		public ArgVar(MathFunc expr, String argName, int idx) {
+			super(expr, idx);
+			this.argName = argName;
+		}
+
+		@Override
+		public double apply(double... args) {
+			return args[idx];
+		}
+
+		@Override
+		public double apply(AssembleParam ap, double... args) {
+			return args[idx];
+		}
+
+		@Override
+		public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
+				int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
+			mv.visitVarInsn(Opcodes.ALOAD, argsStartPos);
+			mv.visitLdcInsn(idx);
+			mv.visitInsn(Opcodes.DALOAD);
+		}
+
+		@Override
+		public InstructionHandle bytecodeGen(String clsName, MethodGen mg,
+				ConstantPoolGen cp, InstructionFactory factory,
+				InstructionList il, Map<String, Integer> argsMap,
+				int argsStartPos, Map<MathFunc, Integer> funcRefsMap) {
+			il.append(new ALOAD(argsStartPos));
+			il.append(new PUSH(cp, idx));
+			return il.append(DALOAD);
+		}
+
+		@Override
+		public String getName() {
+			return argName;
+		}
+	}
+}
@@ -0,0 +1,438 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import edu.uta.futureye.core.intf.LocalCoordinate;
+import edu.uta.futureye.function.basic.FC;
+import edu.uta.futureye.function.basic.FComposite;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.FAdd;
+import edu.uta.futureye.function.operator.FBinaryOp;
+import edu.uta.futureye.function.operator.FUniaryOp;
+import edu.uta.futureye.util.ClassGenerator;
+import edu.uta.futureye.util.FuncClassLoader;
+
+/**
+ * Content addressed cache of the classes generated by <tt>MathFunc.compileWithASM()</tt>
+ * and <tt>KernelGenerator.compile()</tt>.
+ * <p>
+ * The key of a generated class is a hash of the canonical structure of the compiled
+ * expressions and the order of the arguments (see <tt>Key</tt>), so compiling the same
+ * expression again, e.g. in each time step or nonlinear iteration, reuses the
+ * class which is already loaded instead of generating a new one.
+ * <p>
+ * Each class is defined by its own <tt>FuncClassLoader</tt> and the cache holds only
+ * weak references to the classes, so a class and its loader are unloaded once
+ * no compiled object of it is reachable.
+ * <p>
+ * The on-disk cache is disabled by default. If <tt>diskCacheDir</tt> is set, the
+ * generated classes are written to that directory as <tt>&lt;key&gt;.class</tt> and
+ * read back on a miss of the in-memory cache, e.g. in the next run of a program.
+ * Every key includes <tt>CODEGEN_VERSION</tt>, so the classes generated by an
+ * older code generator are never loaded from the directory or an archive.
+ * <p>
+ * Ahead-of-time mode: <tt>openArchive()</tt> loads the classes of a jar file
+ * produced by a previous run (or a build step) and records the classes generated
+ * in this run, <tt>saveArchive()</tt> writes them back to the jar. If new classes
+ * have been added, the archive is also saved once when the JVM exits. Since the
+ * classes are addressed by the hash of the expressions, a weak form whose
+ * expressions have changed simply misses the archive and is compiled at runtime. Both modes can also be enabled without
+ * changing the code by the system properties <tt>futureye.classCacheDir</tt> and
+ * <tt>futureye.classArchive</tt>.
+ *
+ */
+public class FuncClassCache {
+	//Increase whenever the generated code changes for the same expressions
+	public static final int CODEGEN_VERSION = 2;
+
+	//Reuse generated classes with the same key
+	public static boolean enabled = true;
+	//Directory of the on-disk cache, null to disable
+	public static String diskCacheDir = System.getProperty("futureye.classCacheDir");
+
+	protected static Map<String, ClassRef> cache = new HashMap<String, ClassRef>();
+	protected static ReferenceQueue<Class<?>> queue = new ReferenceQueue<Class<?>>();
+
+	//Bytecode of the classes in the archive, keyed by class key
+	protected static Map<String, byte[]> archive = null;
+	protected static String archiveFile = null;
+	protected static boolean archiveChanged = false;
+	protected static Thread archiveHook = null;
+
+	static {
+		String jar = System.getProperty("futureye.classArchive");
+		if(jar != null)
+			openArchive(jar);
+	}
+
+	protected static class ClassRef extends WeakReference<Class<?>> {
+		String key;
+		ClassRef(String key, Class<?> c) {
+			super(c, queue);
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Return the class with the given key, or null if it is not cached in memory,
+	 * in the archive or on disk
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static synchronized Class<?> get(String key) {
+		if(!enabled || key == null)
+			return null;
+		expunge();
+		ClassRef ref = cache.get(key);
+		Class<?> c = ref == null ? null : ref.get();
+		if(c == null && archive != null) {
+			byte[] bytecode = archive.get(key);
+			if(bytecode != null) {
+				c = defineClass(bytecode);
+				cache.put(key, new ClassRef(key, c));
+			}
+		}
+		if(c == null && diskCacheDir != null) {
+			File file = new File(diskCacheDir, key+".class");
+			if(file.exists()) {
+				try {
+					c = defineClass(Files.readAllBytes(file.toPath()));
+					cache.put(key, new ClassRef(key, c));
+				} catch (IOException e) {
+					c = null;
+				}
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Define the class of <tt>bytecode</tt> in a new class loader and cache it
+	 * with the given key. The class is not cached if <tt>key</tt> is null.
+	 *
+	 * @param key
+	 * @param bytecode
+	 * @return
+	 */
+	public static synchronized Class<?> define(String key, byte[] bytecode) {
+		Class<?> c = defineClass(bytecode);
+		if(enabled && key != null) {
+			expunge();
+			cache.put(key, new ClassRef(key, c));
+			if(archive != null) {
+				archive.put(key, bytecode);
+				archiveChanged = true;
+			}
+			if(diskCacheDir != null) {
+				File dir = new File(diskCacheDir);
+				if(!dir.exists())
+					dir.mkdirs();
+				try(FileOutputStream fos = new FileOutputStream(new File(dir, key+".class"))) {
+					fos.write(bytecode);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Load the classes of the jar file <tt>jarFile</tt> if it exists, the classes
+	 * generated afterwards are added to the archive and written to <tt>jarFile</tt>
+	 * by <tt>saveArchive()</tt> or when the JVM exits
+	 *
+	 * @param jarFile
+	 */
+	public static synchronized void openArchive(String jarFile) {
+		archive = new LinkedHashMap<String, byte[]>();
+		archiveFile = jarFile;
+		archiveChanged = false;
+		if(archiveHook == null) {
+			archiveHook = new Thread(FuncClassCache::saveArchive);
+			Runtime.getRuntime().addShutdownHook(archiveHook);
+		}
+		File file = new File(jarFile);
+		if(!file.exists())
+			return;
+		try(JarInputStream jis = new JarInputStream(new FileInputStream(file))) {
+			JarEntry entry;
+			while((entry = jis.getNextJarEntry()) != null) {
+				String name = entry.getName();
+				if(name.endsWith(".class"))
+					archive.put(name.substring(0, name.length()-6), readAll(jis));
+			}
+		} catch (IOException e) {
+			//A broken archive is ignored, the classes are generated again
+			e.printStackTrace();
+			archive.clear();
+		}
+	}
+
+	/**
+	 * Write the archive to its jar file if new classes have been generated
+	 * since it was opened or saved. Nothing is done if no archive is opened.
+	 */
+	public static synchronized void saveArchive() {
+		if(archive == null || !archiveChanged)
+			return;
+		File file = new File(archiveFile).getAbsoluteFile();
+		if(file.getParentFile() != null && !file.getParentFile().exists())
+			file.getParentFile().mkdirs();
+		File tmp = new File(file.getPath()+".tmp");
+		try {
+			try(JarOutputStream jos = new JarOutputStream(new FileOutputStream(tmp))) {
+				for(Map.Entry<String, byte[]> e : archive.entrySet()) {
+					jos.putNextEntry(new JarEntry(e.getKey()+".class"));
+					jos.write(e.getValue());
+					jos.closeEntry();
+				}
+			}
+			//Replace the old archive only if the new one is complete
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			archiveChanged = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Detach the archive, the classes already loaded stay in the in-memory cache
+	 */
+	public static synchronized void closeArchive() {
+		saveArchive();
+		archive = null;
+		archiveFile = null;
+	}
+
+	protected static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while((n = in.read(buf)) > 0)
+			out.write(buf, 0, n);
+		return out.toByteArray();
+	}
+
+	protected static Class<?> defineClass(byte[] bytecode) {
+		FuncClassLoader<?> fcl = new FuncClassLoader<Object>(ClassGenerator.class.getClassLoader());
+		return fcl.defineClassForName(null, bytecode);
+	}
+
+	/**
+	 * Remove the entries of the classes which have been unloaded
+	 */
+	protected static void expunge() {
+		ClassRef ref;
+		while((ref = (ClassRef)queue.poll()) != null) {
+			if(cache.get(ref.key) == ref)
+				cache.remove(ref.key);
+		}
+	}
+
+	/**
+	 * Return the number of classes in the in-memory cache
+	 * @return
+	 */
+	public static synchronized int size() {
+		expunge();
+		return cache.size();
+	}
+
+	public static synchronized void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Canonical structural key of a set of expressions.
+	 * <p>
+	 * The nodes of the expressions are numbered by hashing in the same way as
+	 * <tt>ExprDAG</tt>, so two sets of expressions that are structurally equal
+	 * have the same key and generate the same code:
+	 * <ul>
+	 * <li>constants are compared by value, variables and local coordinates
+	 * (e.g. <tt>TriAreaCoord.TriAreaCoordR</tt>) by name
+	 * <li>composite functions are compared by the outer function and the inner functions
+	 * <li>operators in package <tt>edu.uta.futureye.function.operator</tt> are compared by
+	 * class and operands
+	 * <li>functions that are not compiled are called through <tt>funcRefs</tt> and
+	 * are compared by identity within the expressions
+	 * </ul>
+	 * Any other compiled function may generate code that depends on its fields, in
+	 * which case the key is null and the generated class is not cached.
+	 */
+	public static class Key {
+		protected StringBuilder sb = new StringBuilder();
+		protected Map<MathFunc, Integer> ids = new IdentityHashMap<MathFunc, Integer>();
+		protected Map<String, Integer> table = new HashMap<String, Integer>();
+		protected Set<String> argVars;
+		protected int nOpaque = 0;
+		protected boolean cacheable = true;
+
+		/**
+		 *
+		 * @param varNames - order of the arguments
+		 * @param replaceArgVars - true if sub-expressions whose results are held by
+		 * arguments are replaced by the arguments (see <tt>ExprDAG(Map, MathFunc...)</tt>)
+		 */
+		public Key(String[] varNames, boolean replaceArgVars) {
+			sb.append("v").append(CODEGEN_VERSION).append(";args(");
+			for(String name : varNames)
+				sb.append(name).append(",");
+			sb.append(")");
+			if(replaceArgVars) {
+				argVars = new HashSet<String>();
+				for(String name : varNames)
+					argVars.add(name);
+			}
+		}
+
+		/**
+		 * Add an expression, return the id of its root or -1 if <tt>f</tt> is null
+		 *
+		 * @param f
+		 * @param isRoot
+		 * @return
+		 */
+		public int add(MathFunc f, boolean isRoot) {
+			if(f == null)
+				return -1;
+			Integer id = ids.get(f);
+			if(id != null)
+				return id;
+			String node;
+			String argName = f.getCompiledArgName();
+			if(argVars != null && !isRoot && argName != null && argVars.contains(argName)) {
+				node = "arg:"+argName;
+			} else if(!ExprDAG.isCompilable(f)) {
+				node = "ref:"+(nOpaque++);
+			} else if(f instanceof FC) {
+				node = "C:"+Double.doubleToLongBits(f.apply());
+			} else if(f.getClass() == FX.class) {
+				node = "X:"+f.getVarNames().get(0);
+			} else if(f instanceof LocalCoordinate) {
+				//local coordinates r,s,t load their argument by name as FX
+				node = "X:"+f.getVarNames().get(0);
+			} else if(f instanceof FComposite) {
+				node = addComposite((FComposite)f);
+			} else if(f.getClass().getPackage() == FAdd.class.getPackage() && f instanceof FBinaryOp) {
+				FBinaryOp op = (FBinaryOp)f;
+				int id1 = add(op.arg1, false);
+				int id2 = add(op.arg2, false);
+				node = f.getClass().getSimpleName()+"("+id1+","+id2+")";
+			} else if(f.getClass().getPackage() == FAdd.class.getPackage() && f instanceof FUniaryOp) {
+				node = f.getClass().getSimpleName()+"("+add(((FUniaryOp)f).arg, false)+")";
+			} else {
+				cacheable = false;
+				node = "?";
+			}
+			id = table.get(node);
+			if(id == null) {
+				id = table.size();
+				table.put(node, id);
+				sb.append(";").append(id).append("=").append(node);
+			}
+			ids.put(f, id);
+			return id;
+		}
+
+		protected String addComposite(FComposite fc) {
+			if(fc.isOuterVarActive())
+				return "Comp("+add(fc.fOuter, false)+")";
+			//The outer function is evaluated with its own arguments array
+			//which holds the values of the inner functions
+			StringBuilder node = new StringBuilder("Comp(");
+			Set<String> saved = argVars;
+			argVars = null;
+			node.append(add(fc.fOuter, false));
+			argVars = saved;
+			Map<String, Integer> argIdx = fc.fOuter.getArgIdxMap();
+			for(String name : fc.fOuter.getVarNames()) {
+				MathFunc fInner = fc.fInners.get(name);
+				node.append(",").append(name).append(":").append(argIdx.get(name)).append("=");
+				node.append(fInner == null ? "arg" : String.valueOf(add(fInner, false)));
+			}
+			return node.append(")").toString();
+		}
+
+		/**
+		 * Return true if the expressions contain functions that are not compiled,
+		 * which are called through <tt>funcRefs</tt> by the generated code
+		 *
+		 * @return
+		 */
+		public boolean hasFuncRefs() {
+			return nOpaque > 0;
+		}
+
+		/**
+		 * Append anything else the generated code depends on
+		 *
+		 * @param s
+		 * @return
+		 */
+		public Key append(String s) {
+			sb.append(";").append(s);
+			return this;
+		}
+
+		/**
+		 * Return the canonical structure of the expressions, <tt>getKey()</tt>
+		 * is its digest
+		 */
+		@Override
+		public String toString() {
+			return sb.toString();
+		}
+
+		/**
+		 * Return the hex SHA-256 digest of the structure, or null if the
+		 * expressions contain functions which can not be compared structurally
+		 *
+		 * @return
+		 */
+		public String getKey() {
+			if(!cacheable)
+				return null;
+			try {
+				MessageDigest md = MessageDigest.getInstance("SHA-256");
+				byte[] digest = md.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+				StringBuilder hex = new StringBuilder();
+				for(int i=0; i<16; i++)
+					hex.append(String.format("%02x", digest[i]));
+				return hex.toString();
+			} catch (NoSuchAlgorithmException e) {
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.bytecode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.lib.assembler.AssembleParam;
+import edu.uta.futureye.util.BytecodeUtils;
+import edu.uta.futureye.util.ClassGenerator;
+import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.LocalVarAllocator;
+
+/**
+ * Generate a fused kernel (a sub-class of CompiledKernel) for the LHS and RHS
+ * expressions of a weak form. The generated method looks like:
+ * <p><blockquote><pre>
+ * void apply(AssembleParam ap, double[] args, int argsStart,
+ *            double[] points, double[] weights, double[][] A, double[] b) {
+ *     //A=0; b=0;
+ *     int nPoints = weights.length;
+ *     int dim = points.length/nPoints;
+ *     for(int p=0; p&lt;nPoints; p++) {
+ *         System.arraycopy(points, p*dim, args, argsStart, dim);
+ *         double w = weights[p];
+ *         //evaluate shared sub-expressions
+ *         double local0 = ...;
+ *         ...
+ *         A[0][0] += w*(...);
+ *         ...
+ *         b[0] += w*(...);
+ *         ...
+ *     }
+ * }
+ * </pre></blockquote>
+ */
+public class KernelGenerator {
+	//Local variable table of method apply(...) of CompiledKernel
+	static final int apIdx        = 1;
+	static final int argsIdx      = 2;
+	static final int argsStartIdx = 3;
+	static final int pointsIdx    = 4;
+	static final int weightsIdx   = 5;
+	static final int AIdx         = 6;
+	static final int bIdx         = 7;
+
+	/**
+	 * Compile the LHS and RHS expressions into a single class
+	 *
+	 * @param name - prefix of the generated class name
+	 * @param lhs - LHS expressions, <tt>lhs[j][i]</tt> is integrated into <tt>A[j][i]</tt>
+	 * @param rhs - RHS expressions, <tt>rhs[j]</tt> is integrated into <tt>b[j]</tt>
+	 * @param varNames - order of the arguments
+	 * @return
+	 * @throws FutureyeException if the kernel can't be generated, e.g. the code is too large
+	 */
+	public static CompiledKernel compile(String name, MathFunc[][] lhs, MathFunc[] rhs,
+			String ...varNames) {
+		FuncClassCache.Key key = new FuncClassCache.Key(varNames, false);
+		key.append("kernel");
+		for(int j=0; j<lhs.length; j++) {
+			StringBuilder sb = new StringBuilder("A").append(j).append("(");
+			for(int i=0; i<lhs[j].length; i++)
+				sb.append(isZero(lhs[j][i]) ? -1 : key.add(lhs[j][i], true)).append(",");
+			key.append(sb.append(")").toString());
+		}
+		StringBuilder sbRHS = new StringBuilder("b(");
+		for(int j=0; j<rhs.length; j++)
+			sbRHS.append(isZero(rhs[j]) ? -1 : key.add(rhs[j], true)).append(",");
+		key.append(sbRHS.append(")").toString());
+		String hash = key.getKey();
+		String genClassName = name + (hash == null ? java.util.UUID.randomUUID().toString().replaceAll("-", "") : hash);
+		try {
+			if(!key.hasFuncRefs()) {
+				Class<?> c = FuncClassCache.get(hash);
+				if(c != null) {
+					CompiledKernel kernel = (CompiledKernel) c.newInstance();
+					kernel.setFuncRefs(new MathFunc[0]);
+					return kernel;
+				}
+			}
+
+			ClassGenerator cgen = new ClassGenerator(genClassName);
+			cgen.startClass(ClassGenerator.getASMName(CompiledKernel.class), null);
+
+			Label startLabel = new Label();
+			Label endLabel = new Label();
+			Type paramAP = Type.getType(AssembleParam.class);
+			Type paramArray = Type.getType(double[].class);
+			Type paramMatrix = Type.getType(double[][].class);
+			String desc = Type.getMethodDescriptor(Type.VOID_TYPE, paramAP, paramArray, Type.INT_TYPE,
+					paramArray, paramArray, paramMatrix, paramArray);
+			LocalVarAllocator mv = (LocalVarAllocator)cgen.startMethod(Opcodes.ACC_PUBLIC, "apply", desc);
+			cgen.startCode(mv, startLabel);
+
+			HashMap<String, Integer> argsMap = new HashMap<String, Integer>();
+			for(int i=0; i<varNames.length; i++) {
+				argsMap.put(varNames[i], i);
+			}
+
+			//All the non-zero expressions
+			List<MathFunc> roots = new ArrayList<MathFunc>();
+			for(int j=0; j<lhs.length; j++) {
+				for(int i=0; i<lhs[j].length; i++) {
+					if(!isZero(lhs[j][i]))
+						roots.add(lhs[j][i]);
+				}
+			}
+			for(int j=0; j<rhs.length; j++) {
+				if(!isZero(rhs[j]))
+					roots.add(rhs[j]);
+			}
+
+			ExprDAG dag = new ExprDAG(roots.toArray(new MathFunc[0]));
+			int nPointsIdx = mv.newLocal(Type.INT_TYPE);
+			int dimIdx = mv.newLocal(Type.INT_TYPE);
+			int pIdx = mv.newLocal(Type.INT_TYPE);
+			int wIdx = mv.newLocal(Type.DOUBLE_TYPE);
+			dag.allocLocals(mv);
+
+			//Rewrite the expressions and collect the references to functions
+			//which are not compiled
+			MathFunc[][] lhs2 = new MathFunc[lhs.length][];
+			MathFunc[] rhs2 = new MathFunc[rhs.length];
+			List<MathFunc> refs = new ArrayList<MathFunc>();
+			for(MathFunc f : dag.getRewrittenSharedExprs())
+				BytecodeUtils.postOrder(f, refs);
+			for(int j=0; j<lhs.length; j++) {
+				lhs2[j] = new MathFunc[lhs[j].length];
+				for(int i=0; i<lhs[j].length; i++) {
+					if(!isZero(lhs[j][i])) {
+						lhs2[j][i] = dag.rewrite(lhs[j][i]);
+						if(isZero(lhs2[j][i])) //folded to zero
+							lhs2[j][i] = null;
+						else
+							BytecodeUtils.postOrder(lhs2[j][i], refs);
+					}
+				}
+			}
+			for(int j=0; j<rhs.length; j++) {
+				if(!isZero(rhs[j])) {
+					rhs2[j] = dag.rewrite(rhs[j]);
+					if(isZero(rhs2[j])) //folded to zero
+						rhs2[j] = null;
+					else
+						BytecodeUtils.postOrder(rhs2[j], refs);
+				}
+			}
+			Map<MathFunc, Integer> refsMap = new HashMap<MathFunc, Integer>();
+			for(int i=0; i<refs.size(); i++) {
+				if(!refsMap.containsKey(refs.get(i)))
+					refsMap.put(refs.get(i), i);
+			}
+
+			//The same kernel has been compiled
+			Class<?> c = FuncClassCache.get(hash);
+			if(c != null) {
+				CompiledKernel kernel = (CompiledKernel) c.newInstance();
+				kernel.setFuncRefs(refs.toArray(new MathFunc[0]));
+				return kernel;
+			}
+
+			//A=0; b=0;
+			for(int j=0; j<lhs.length; j++) {
+				for(int i=0; i<lhs[j].length; i++) {
+					mv.visitVarInsn(Opcodes.ALOAD, AIdx);
+					mv.visitLdcInsn(j);
+					mv.visitInsn(Opcodes.AALOAD);
+					mv.visitLdcInsn(i);
+					mv.visitInsn(Opcodes.DCONST_0);
+					mv.visitInsn(Opcodes.DASTORE);
+				}
+			}
+			for(int j=0; j<rhs.length; j++) {
+				mv.visitVarInsn(Opcodes.ALOAD, bIdx);
+				mv.visitLdcInsn(j);
+				mv.visitInsn(Opcodes.DCONST_0);
+				mv.visitInsn(Opcodes.DASTORE);
+			}
+
+			//int nPoints = weights.length;
+			mv.visitVarInsn(Opcodes.ALOAD, weightsIdx);
+			mv.visitInsn(Opcodes.ARRAYLENGTH);
+			mv.visitVarInsn(Opcodes.ISTORE, nPointsIdx);
+			//int dim = points.length/nPoints;
+			mv.visitVarInsn(Opcodes.ALOAD, pointsIdx);
+			mv.visitInsn(Opcodes.ARRAYLENGTH);
+			mv.visitVarInsn(Opcodes.ILOAD, nPointsIdx);
+			mv.visitInsn(Opcodes.IDIV);
+			mv.visitVarInsn(Opcodes.ISTORE, dimIdx);
+			//for(int p=0; p<nPoints; p++)
+			mv.visitInsn(Opcodes.ICONST_0);
+			mv.visitVarInsn(Opcodes.ISTORE, pIdx);
+			Label loopLabel = new Label();
+			Label loopEndLabel = new Label();
+			mv.visitLabel(loopLabel);
+			mv.visitVarInsn(Opcodes.ILOAD, pIdx);
+			mv.visitVarInsn(Opcodes.ILOAD, nPointsIdx);
+			mv.visitJumpInsn(Opcodes.IF_ICMPGE, loopEndLabel);
+
+			//System.arraycopy(points, p*dim, args, argsStart, dim);
+			mv.visitVarInsn(Opcodes.ALOAD, pointsIdx);
+			mv.visitVarInsn(Opcodes.ILOAD, pIdx);
+			mv.visitVarInsn(Opcodes.ILOAD, dimIdx);
+			mv.visitInsn(Opcodes.IMUL);
+			mv.visitVarInsn(Opcodes.ALOAD, argsIdx);
+			mv.visitVarInsn(Opcodes.ILOAD, argsStartIdx);
+			mv.visitVarInsn(Opcodes.ILOAD, dimIdx);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "arraycopy",
+					"(Ljava/lang/Object;ILjava/lang/Object;II)V", false);
+			//double w = weights[p];
+			mv.visitVarInsn(Opcodes.ALOAD, weightsIdx);
+			mv.visitVarInsn(Opcodes.ILOAD, pIdx);
+			mv.visitInsn(Opcodes.DALOAD);
+			mv.visitVarInsn(Opcodes.DSTORE, wIdx);
+
+			//Shared sub-expressions
+			dag.bytecodeGen(mv, argsMap, argsIdx, refsMap, genClassName);
+
+			//A[j][i] += w*lhs[j][i]
+			for(int j=0; j<lhs2.length; j++) {
+				for(int i=0; i<lhs2[j].length; i++) {
+					if(lhs2[j][i] == null) continue;
+					if(dag.isOpaque(lhs[j][i]))
+						setDOFIdx(mv, i+1, j+1);
+					mv.visitVarInsn(Opcodes.ALOAD, AIdx);
+					mv.visitLdcInsn(j);
+					mv.visitInsn(Opcodes.AALOAD);
+					mv.visitLdcInsn(i);
+					mv.visitInsn(Opcodes.DUP2);
+					mv.visitInsn(Opcodes.DALOAD);
+					lhs2[j][i].bytecodeGen(mv, argsMap, argsIdx, refsMap, genClassName);
+					mv.visitVarInsn(Opcodes.DLOAD, wIdx);
+					mv.visitInsn(Opcodes.DMUL);
+					mv.visitInsn(Opcodes.DADD);
+					mv.visitInsn(Opcodes.DASTORE);
+				}
+			}
+			//b[j] += w*rhs[j]
+			for(int j=0; j<rhs2.length; j++) {
+				if(rhs2[j] == null) continue;
+				if(dag.isOpaque(rhs[j]))
+					setDOFIdx(mv, -1, j+1);
+				mv.visitVarInsn(Opcodes.ALOAD, bIdx);
+				mv.visitLdcInsn(j);
+				mv.visitInsn(Opcodes.DUP2);
+				mv.visitInsn(Opcodes.DALOAD);
+				rhs2[j].bytecodeGen(mv, argsMap, argsIdx, refsMap, genClassName);
+				mv.visitVarInsn(Opcodes.DLOAD, wIdx);
+				mv.visitInsn(Opcodes.DMUL);
+				mv.visitInsn(Opcodes.DADD);
+				mv.visitInsn(Opcodes.DASTORE);
+			}
+
+			mv.visitIincInsn(pIdx, 1);
+			mv.visitJumpInsn(Opcodes.GOTO, loopLabel);
+			mv.visitLabel(loopEndLabel);
+			mv.visitInsn(Opcodes.RETURN);
+
+			mv.visitLocalVariable("this", "L" + genClassName + ";", null, startLabel, endLabel, 0);
+			mv.visitLocalVariable("ap", paramAP.getDescriptor(), null, startLabel, endLabel, apIdx);
+			mv.visitLocalVariable("args", paramArray.getDescriptor(), null, startLabel, endLabel, argsIdx);
+			mv.visitLocalVariable("argsStart", "I", null, startLabel, endLabel, argsStartIdx);
+			mv.visitLocalVariable("points", paramArray.getDescriptor(), null, startLabel, endLabel, pointsIdx);
+			mv.visitLocalVariable("weights", paramArray.getDescriptor(), null, startLabel, endLabel, weightsIdx);
+			mv.visitLocalVariable("A", paramMatrix.getDescriptor(), null, startLabel, endLabel, AIdx);
+			mv.visitLocalVariable("b", paramArray.getDescriptor(), null, startLabel, endLabel, bIdx);
+			mv.visitMaxs(-1, -1); // Auto generated
+			cgen.endCode(mv, endLabel);
+			cgen.endClass();
+
+			byte[] bcode;
+			try {
+				bcode = cgen.dump();
+			} catch(RuntimeException e) {
+				//e.g. the code of method apply() is larger than 64KB
+				throw new FutureyeException("Can't generate kernel "+genClassName+": "+e.getMessage());
+			}
+			c = FuncClassCache.define(hash, bcode);
+			CompiledKernel kernel = (CompiledKernel) c.newInstance();
+			kernel.setFuncRefs(refs.toArray(new MathFunc[0]));
+			return kernel;
+		} catch (FutureyeException e) {
+			throw e;
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new RuntimeException(e.getMessage());
+		}
+	}
+
+	protected static boolean isZero(MathFunc f) {
+		return f == null || (f.isConstant() && f.apply() == 0.0);
+	}
+
+	/**
+	 * if(ap != null) { ap.trialDOFIdx = i; ap.testDOFIdx = j; }
+	 */
+	protected static void setDOFIdx(MethodVisitor mv, int i, int j) {
+		String owner = ClassGenerator.getASMName(AssembleParam.class);
+		Label skip = new Label();
+		mv.visitVarInsn(Opcodes.ALOAD, apIdx);
+		mv.visitJumpInsn(Opcodes.IFNULL, skip);
+		mv.visitVarInsn(Opcodes.ALOAD, apIdx);
+		mv.visitLdcInsn(i);
+		mv.visitFieldInsn(Opcodes.PUTFIELD, owner, "trialDOFIdx", "I");
+		mv.visitVarInsn(Opcodes.ALOAD, apIdx);
+		mv.visitLdcInsn(j);
+		mv.visitFieldInsn(Opcodes.PUTFIELD, owner, "testDOFIdx", "I");
+		mv.visitLabel(skip);
+	}
+}
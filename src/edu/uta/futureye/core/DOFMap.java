@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.core;
+
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.core.intf.VecFiniteElement;
+import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.container.ElementList;
+
+/**
+ * Connectivity table of a mesh for a finite element: the global indices
+ * of the local DOFs of all the elements stored in a flat array
+ * <p><blockquote><pre>
+ * table[(k-1)*nDOFs + (j-1)] = fe.getGlobalIndex(mesh, eList.at(k), j)
+ * </pre></blockquote>
+ * where k is the index of the element in <tt>mesh.getElementList()</tt> and
+ * j is the local index of the DOF, both 1-based.
+ * <p>
+ * The table is computed once for each pair of mesh and finite element,
+ * use <tt>Mesh.getDOFMap()</tt> to get the cached one.
+ *
+ */
+public class DOFMap {
+	protected int nElements;
+	protected int nNodes;
+	protected int nDOFs;
+	protected int totalDOFs;
+	protected int[] table;
+
+	public DOFMap(Mesh mesh, FiniteElement fe) {
+		ElementList eList = mesh.getElementList();
+		init(mesh, fe.getNumberOfDOFs(), fe.getTotalNumberOfDOFs(mesh));
+		for(int k=1, p=0; k<=nElements; k++) {
+			Element e = eList.at(k);
+			for(int j=1; j<=nDOFs; j++)
+				table[p++] = fe.getGlobalIndex(mesh, e, j);
+		}
+	}
+
+	public DOFMap(Mesh mesh, VecFiniteElement fe) {
+		ElementList eList = mesh.getElementList();
+		init(mesh, fe.getNumberOfDOFs(), fe.getTotalNumberOfDOFs(mesh));
+		for(int k=1, p=0; k<=nElements; k++) {
+			Element e = eList.at(k);
+			for(int j=1; j<=nDOFs; j++)
+				table[p++] = fe.getGlobalIndex(mesh, e, j);
+		}
+	}
+
+	/**
+	 * Connectivity table of a flat mesh for a nodal finite element: the local DOFs
+	 * of an element are its nodes in the same order, so
+	 * <tt>table[(k-1)*nDOFs + (j-1)] = mesh.getNode(k-1, j-1)+1</tt>.
+	 * All the elements must have <tt>fe.getNumberOfDOFs()</tt> nodes.
+	 * 
+	 * @param mesh
+	 * @param fe
+	 */
+	public DOFMap(FlatMesh mesh, FiniteElement fe) {
+		this.nElements = mesh.getNumberOfElements();
+		this.nNodes = mesh.getNumberOfNodes();
+		this.nDOFs = fe.getNumberOfDOFs();
+		this.totalDOFs = nNodes;
+		int[] elemPtr = mesh.getElementPtr();
+		int[] elemNodes = mesh.getElementNodes();
+		if(elemNodes.length != nElements*nDOFs)
+			throw new FutureyeException("DOFMap: each element of the flat mesh must have "+
+					nDOFs+" nodes for "+fe.getClass().getSimpleName());
+		this.table = new int[nElements*nDOFs];
+		for(int k=0, p=0; k<nElements; k++) {
+			if(elemPtr[k+1]-elemPtr[k] != nDOFs)
+				throw new FutureyeException("DOFMap: element "+(k+1)+" of the flat mesh has "+
+						(elemPtr[k+1]-elemPtr[k])+" nodes, expected "+nDOFs);
+			for(int j=elemPtr[k]; j<elemPtr[k+1]; j++)
+				table[p++] = elemNodes[j]+1;
+		}
+	}
+
+	protected void init(Mesh mesh, int nDOFs, int totalDOFs) {
+		this.nElements = mesh.getElementList().size();
+		this.nNodes = mesh.getNodeList().size();
+		this.nDOFs = nDOFs;
+		this.totalDOFs = totalDOFs;
+		this.table = new int[nElements*nDOFs];
+	}
+
+	/**
+	 * Return the global index of a local DOF
+	 *
+	 * @param eleIdx - index of the element in the element list of the mesh (1-based)
+	 * @param localIndex - local index of the DOF (1-based)
+	 * @return
+	 */
+	public int getGlobalIndex(int eleIdx, int localIndex) {
+		return table[(eleIdx-1)*nDOFs + localIndex - 1];
+	}
+
+	/**
+	 * Return the position of the first DOF of the element <tt>eleIdx</tt> (1-based)
+	 * in the table
+	 *
+	 * @param eleIdx
+	 * @return
+	 */
+	public int getOffset(int eleIdx) {
+		return (eleIdx-1)*nDOFs;
+	}
+
+	/**
+	 * Return the index of element <tt>e</tt> in the table, or 0 if <tt>e</tt>
+	 * is not the element at <tt>e.globalIndex</tt> in the element list of <tt>mesh</tt>
+	 *
+	 * @param mesh
+	 * @param e
+	 * @return
+	 */
+	public int getElementIndex(Mesh mesh, Element e) {
+		int idx = e.globalIndex;
+		if(idx < 1 || idx > nElements || mesh.getElementList().at(idx) != e)
+			return 0;
+		return idx;
+	}
+
+	/**
+	 * Return the flat table, see the class comment for the layout
+	 *
+	 * @return
+	 */
+	public int[] getTable() {
+		return table;
+	}
+
+	public int getNumberOfDOFs() {
+		return nDOFs;
+	}
+
+	public int getNumberOfElements() {
+		return nElements;
+	}
+
+	/**
+	 * Return the total number of DOFs on the mesh
+	 *
+	 * @return
+	 */
+	public int getTotalNumberOfDOFs() {
+		return totalDOFs;
+	}
+
+	/**
+	 * Return false if elements or nodes are added to or removed from
+	 * the mesh after the table is computed
+	 *
+	 * @param mesh
+	 * @return
+	 */
+	public boolean isValidFor(Mesh mesh) {
+		return mesh.getElementList().size() == nElements &&
+				mesh.getNodeList().size() == nNodes;
+	}
+}
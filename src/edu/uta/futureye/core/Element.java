@@ -461,6 +461,17 @@ public class Element {
 				facesTp = topo.getFaces();
 				for(int i=1;i<=topo.getVertices().length;i++)
 					entity.addVertex(new Vertex(i,new NodeLocal(i,nodes.at(i))));
+			} else if(n == 10) {
+				//二次四面体单元，边中点按照TetrahedronTp中边的顺序编号为5,...,10
+				topo = new TetrahedronTp();
+				entity.setTopology(topo);
+				edgesTp = topo.getEdges();
+				facesTp = topo.getFaces();
+				for(int i=1;i<=topo.getVertices().length;i++)
+					entity.addVertex(new Vertex(i,new NodeLocal(i,nodes.at(i))));
+				//边中点被相邻的两个面共享，作为体结点保存，避免重复
+				for(int i=0;i<edgesTp.length;i++)
+					entity.addVolumeNode(new NodeLocal(5+i,nodes.at(5+i)));
 			} else {
 				FutureyeException ex = new FutureyeException("Error: Not supported element, try use Element(GeoEntity geoEntity)");
 				ex.printStackTrace();
@@ -1565,11 +1576,25 @@ public class Element {
 		} else if(dim == 3) {
 			double volume = this.getElementVolume();
 			if(volume < 0) {
+				//交换顶点2,3（逆序4个顶点是偶置换，不改变体积的符号），
+				//二次四面体单元的边中点随之调整
+				//new local index of the old node i
+				int[] newIndex = {1, 3, 2, 4, 7, 6, 5, 8, 10, 9};
 				VertexList tmp = new VertexList();
-				int n = vertices.size();
-				for(int i=n;i>=1;i--) {
-					vertices.at(i).setAllLocalIndex(n-i+1);
-					tmp.add(vertices.at(i));
+				tmp.add(vertices.at(1));
+				tmp.add(vertices.at(3));
+				tmp.add(vertices.at(2));
+				tmp.add(vertices.at(4));
+				for(int i=1;i<=4;i++)
+					vertices.at(i).setAllLocalIndex(newIndex[i-1]);
+				@SuppressWarnings("unchecked")
+				GeoEntity3D<FaceLocal,EdgeLocal,NodeLocal> g = this.getGeoEntity3D();
+				ObjList<NodeLocal> edgeNodes = g.getVolumeNodes();
+				if(edgeNodes != null) {
+					for(int i=1;i<=edgeNodes.size();i++) {
+						NodeLocal nl = edgeNodes.at(i);
+						nl.localIndex = newIndex[nl.localIndex-1];
+					}
 				}
 				this.geoEntity.addAllVertices(tmp);
 				this.applyChange();
@@ -1674,4 +1699,23 @@ public class Element {
 		}
 		return rlt;
 	}
+	
+	/**
+	 * Copy the coordinates of the nodes into <tt>coords</tt> in the same
+	 * order as <tt>getNodeCoords()</tt> without allocating a new array
+	 * 
+	 * @param coords - length at least number of nodes * dim
+	 * @return number of values copied
+	 */
+	public int getNodeCoords(double[] coords) {
+		int nNodes = nodes.size();
+		int dim = nodes.at(1).dim;
+		int index = 0;
+		for(int j=0; j<dim; j++) {
+			for(int i=1; i<=nNodes; i++) {
+				coords[index++] = nodes.at(i).coords[j];
+			}
+		}
+		return index;
+	}
 }
@@ -0,0 +1,410 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.core;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.container.ElementList;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * Compact immutable mesh stored in flat arrays instead of <tt>Node</tt> and
+ * <tt>Element</tt> objects:
+ * <p><blockquote><pre>
+ * xyz[i*dim+d]            coordinate d of node i
+ * elemNodes[elemPtr[k]+j] node j of element k
+ * elemType[k]             TRIANGLE, QUADRILATERAL, TETRAHEDRON or HEXAHEDRON
+ * </pre></blockquote>
+ * All the indices are 0-based. The vertices of an element come first in its
+ * node list, in the same order as <tt>Element.nodes</tt>.
+ * <p>
+ * The node-to-element and element-to-element (elements sharing an edge in 2D
+ * or a face in 3D) adjacency is computed in CSR format on demand.
+ * <p>
+ * A flat mesh can be built from a <tt>Mesh</tt> or read directly by
+ * <tt>MeshReader.readFlatMesh()</tt>, and assembled by <tt>BasicAssembler</tt>.
+ * <tt>MeshWriter.writeBinaryMesh()</tt> saves it together with the adjacency
+ * in a binary file which is loaded without parsing.
+ * It takes a few dozen bytes per element instead of kilobytes.
+ *
+ */
+public class FlatMesh {
+	public static final int TRIANGLE = 1;
+	public static final int QUADRILATERAL = 2;
+	public static final int TETRAHEDRON = 3;
+	public static final int HEXAHEDRON = 4;
+
+	//Vertices of the facets (edges in 2D, faces in 3D) of each element type
+	protected static final int[][][] FACETS = {
+		null,
+		{{0,1},{1,2},{2,0}},
+		{{0,1},{1,2},{2,3},{3,0}},
+		{{0,1,2},{0,1,3},{0,2,3},{1,2,3}},
+		{{0,1,2,3},{4,5,6,7},{0,1,5,4},{1,2,6,5},{2,3,7,6},{3,0,4,7}}
+	};
+	protected static final int[] NUM_VERTICES = {0, 3, 4, 4, 8};
+
+	protected int dim;
+	protected int nNodes;
+	protected int nElements;
+	protected double[] xyz;
+	protected int[] elemPtr;
+	protected int[] elemNodes;
+	protected int[] elemType;
+
+	//Adjacency computed on demand
+	protected int[] nodeElemPtr;
+	protected int[] nodeElems;
+	protected int[] elemElemPtr;
+	protected int[] elemElems;
+
+	protected Map<FiniteElement, DOFMap> dofMaps = new IdentityHashMap<FiniteElement, DOFMap>();
+
+	/**
+	 * Build a flat mesh from the arrays (not copied). The vertices of the linear
+	 * triangles, quadrilaterals and tetrahedra are adjusted to counterclockwise
+	 * in the same way as <tt>Element.adjustVerticeToCounterClockwise()</tt>.
+	 *
+	 * @param dim
+	 * @param xyz - coordinates, length nNodes*dim
+	 * @param elemPtr - length nElements+1
+	 * @param elemNodes - 0-based node indices
+	 * @param elemType
+	 */
+	public FlatMesh(int dim, double[] xyz, int[] elemPtr, int[] elemNodes, int[] elemType) {
+		init(dim, xyz, elemPtr, elemNodes, elemType);
+		for(int k=0; k<nElements; k++)
+			adjustVerticeToCounterClockwise(k);
+	}
+
+	/**
+	 * Build a flat mesh from the arrays (not copied) and the adjacency computed
+	 * before, e.g. read from a binary mesh file (see <tt>MeshWriter.writeBinaryMesh()</tt>).
+	 * The vertices are assumed to be adjusted already and are not checked.
+	 *
+	 * @param dim
+	 * @param xyz
+	 * @param elemPtr
+	 * @param elemNodes
+	 * @param elemType
+	 * @param nodeElemPtr - see <tt>getNodeElementPtr()</tt>
+	 * @param nodeElems
+	 * @param elemElemPtr - see <tt>getElementNeighborPtr()</tt>
+	 * @param elemElems
+	 */
+	public FlatMesh(int dim, double[] xyz, int[] elemPtr, int[] elemNodes, int[] elemType,
+			int[] nodeElemPtr, int[] nodeElems, int[] elemElemPtr, int[] elemElems) {
+		init(dim, xyz, elemPtr, elemNodes, elemType);
+		if(nodeElemPtr.length != nNodes+1 || nodeElemPtr[nNodes] != nodeElems.length ||
+				elemElemPtr.length != nElements+1 || elemElemPtr[nElements] != elemElems.length)
+			throw new FutureyeException("FlatMesh: invalid adjacency arrays");
+		this.nodeElemPtr = nodeElemPtr;
+		this.nodeElems = nodeElems;
+		this.elemElemPtr = elemElemPtr;
+		this.elemElems = elemElems;
+	}
+
+	protected void init(int dim, double[] xyz, int[] elemPtr, int[] elemNodes, int[] elemType) {
+		this.dim = dim;
+		this.nNodes = xyz.length/dim;
+		this.nElements = elemType.length;
+		this.xyz = xyz;
+		this.elemPtr = elemPtr;
+		this.elemNodes = elemNodes;
+		this.elemType = elemType;
+		if(elemPtr.length != nElements+1 || elemPtr[nElements] != elemNodes.length)
+			throw new FutureyeException("FlatMesh: elemPtr doesn't match elemNodes and elemType");
+		for(int k=0; k<nElements; k++) {
+			if(elemType[k] < TRIANGLE || elemType[k] > HEXAHEDRON ||
+					elemPtr[k+1]-elemPtr[k] < NUM_VERTICES[elemType[k]])
+				throw new FutureyeException("FlatMesh: invalid element "+(k+1));
+		}
+	}
+
+	/**
+	 * Build a flat mesh from <tt>mesh</tt>. Node i (0-based) is the node
+	 * with <tt>globalIndex=i+1</tt>, element k is <tt>mesh.getElementList().at(k+1)</tt>.
+	 *
+	 * @param mesh
+	 */
+	public FlatMesh(Mesh mesh) {
+		NodeList nodes = mesh.getNodeList();
+		ElementList eList = mesh.getElementList();
+		this.nNodes = nodes.size();
+		this.nElements = eList.size();
+		this.dim = nNodes == 0 ? 2 : nodes.at(1).dim();
+		this.xyz = new double[nNodes*dim];
+		for(int i=1; i<=nNodes; i++) {
+			Node node = nodes.at(i);
+			if(node.globalIndex != i)
+				throw new FutureyeException("FlatMesh: node "+i+" has globalIndex="+node.globalIndex);
+			for(int d=0; d<dim; d++)
+				xyz[(i-1)*dim+d] = node.coord(d+1);
+		}
+		this.elemPtr = new int[nElements+1];
+		this.elemType = new int[nElements];
+		for(int k=1; k<=nElements; k++)
+			elemPtr[k] = elemPtr[k-1] + eList.at(k).nodes.size();
+		this.elemNodes = new int[elemPtr[nElements]];
+		for(int k=1; k<=nElements; k++) {
+			Element e = eList.at(k);
+			elemType[k-1] = getType(dim, e.vertices().size());
+			for(int j=1, p=elemPtr[k-1]; j<=e.nodes.size(); j++)
+				elemNodes[p++] = e.nodes.at(j).globalIndex-1;
+		}
+	}
+
+	/**
+	 * Return the element type of an element with <tt>nVertices</tt> vertices
+	 *
+	 * @param dim
+	 * @param nVertices
+	 * @return
+	 */
+	public static int getType(int dim, int nVertices) {
+		if(dim == 2 && nVertices == 3) return TRIANGLE;
+		if(dim == 2 && nVertices == 4) return QUADRILATERAL;
+		if(dim == 3 && nVertices == 4) return TETRAHEDRON;
+		if(dim == 3 && nVertices == 8) return HEXAHEDRON;
+		throw new FutureyeException("FlatMesh: unsupported element with "+nVertices+
+				" vertices in "+dim+"D");
+	}
+
+	protected void adjustVerticeToCounterClockwise(int k) {
+		int p = elemPtr[k];
+		int n = elemPtr[k+1]-p;
+		int type = elemType[k];
+		if(n != NUM_VERTICES[type])
+			return; //Only linear elements
+		if(type == TRIANGLE || type == QUADRILATERAL) {
+			double area = 0.0;
+			for(int j=0; j<n; j++) {
+				int a = elemNodes[p+j], b = elemNodes[p+(j+1)%n];
+				area += xyz[a*dim]*xyz[b*dim+1] - xyz[b*dim]*xyz[a*dim+1];
+			}
+			if(area < 0) {
+				for(int i=0, j=n-1; i<j; i++, j--) {
+					int t = elemNodes[p+i]; elemNodes[p+i] = elemNodes[p+j]; elemNodes[p+j] = t;
+				}
+			}
+		} else if(type == TETRAHEDRON) {
+			int a = elemNodes[p]*3, b = elemNodes[p+1]*3, c = elemNodes[p+2]*3, d = elemNodes[p+3]*3;
+			double x1 = xyz[b]-xyz[a], y1 = xyz[b+1]-xyz[a+1], z1 = xyz[b+2]-xyz[a+2];
+			double x2 = xyz[c]-xyz[a], y2 = xyz[c+1]-xyz[a+1], z2 = xyz[c+2]-xyz[a+2];
+			double x3 = xyz[d]-xyz[a], y3 = xyz[d+1]-xyz[a+1], z3 = xyz[d+2]-xyz[a+2];
+			double vol = x1*(y2*z3-z2*y3) - y1*(x2*z3-z2*x3) + z1*(x2*y3-y2*x3);
+			if(vol < 0) {
+				int t = elemNodes[p+1]; elemNodes[p+1] = elemNodes[p+2]; elemNodes[p+2] = t;
+			}
+		}
+	}
+
+	public int getDim() {
+		return dim;
+	}
+
+	public int getNumberOfNodes() {
+		return nNodes;
+	}
+
+	public int getNumberOfElements() {
+		return nElements;
+	}
+
+	/**
+	 * Return the coordinates of all the nodes, see the class comment for the layout
+	 *
+	 * @return
+	 */
+	public double[] getCoords() {
+		return xyz;
+	}
+
+	public double getCoord(int node, int d) {
+		return xyz[node*dim+d];
+	}
+
+	public int[] getElementPtr() {
+		return elemPtr;
+	}
+
+	public int[] getElementNodes() {
+		return elemNodes;
+	}
+
+	public int[] getElementTypes() {
+		return elemType;
+	}
+
+	public int getNumberOfNodes(int ele) {
+		return elemPtr[ele+1]-elemPtr[ele];
+	}
+
+	public int getNumberOfVertices(int ele) {
+		return NUM_VERTICES[elemType[ele]];
+	}
+
+	/**
+	 * Return node j of element <tt>ele</tt> (both 0-based)
+	 *
+	 * @param ele
+	 * @param j
+	 * @return
+	 */
+	public int getNode(int ele, int j) {
+		return elemNodes[elemPtr[ele]+j];
+	}
+
+	/**
+	 * Copy the coordinates of the nodes of element <tt>ele</tt> into <tt>coords</tt>
+	 * in the same order as <tt>Element.getNodeCoords()</tt>: the first coordinates
+	 * of all the nodes, then the second coordinates and so on.
+	 *
+	 * @param ele
+	 * @param coords
+	 * @return number of values copied
+	 */
+	public int getNodeCoords(int ele, double[] coords) {
+		int start = elemPtr[ele];
+		int n = elemPtr[ele+1]-start;
+		int index = 0;
+		for(int d=0; d<dim; d++) {
+			for(int j=0; j<n; j++)
+				coords[index++] = xyz[elemNodes[start+j]*dim+d];
+		}
+		return index;
+	}
+
+	/**
+	 * Return the CSR row pointer of the node-to-element adjacency: the elements
+	 * which contain node i are <tt>getNodeElements()[ptr[i]..ptr[i+1]-1]</tt> in
+	 * ascending order
+	 *
+	 * @return
+	 */
+	public synchronized int[] getNodeElementPtr() {
+		if(nodeElemPtr == null)
+			computeNodeElements();
+		return nodeElemPtr;
+	}
+
+	public synchronized int[] getNodeElements() {
+		if(nodeElemPtr == null)
+			computeNodeElements();
+		return nodeElems;
+	}
+
+	/**
+	 * Return the CSR row pointer of the element-to-element adjacency: the elements
+	 * which share an edge (2D) or a face (3D) with element k are
+	 * <tt>getElementNeighbors()[ptr[k]..ptr[k+1]-1]</tt>
+	 *
+	 * @return
+	 */
+	public synchronized int[] getElementNeighborPtr() {
+		if(elemElemPtr == null)
+			computeElementNeighbors();
+		return elemElemPtr;
+	}
+
+	public synchronized int[] getElementNeighbors() {
+		if(elemElemPtr == null)
+			computeElementNeighbors();
+		return elemElems;
+	}
+
+	protected void computeNodeElements() {
+		int[] ptr = new int[nNodes+1];
+		for(int p=0; p<elemNodes.length; p++)
+			ptr[elemNodes[p]+1]++;
+		for(int i=0; i<nNodes; i++)
+			ptr[i+1] += ptr[i];
+		int[] elems = new int[elemNodes.length];
+		int[] pos = new int[nNodes];
+		System.arraycopy(ptr, 0, pos, 0, nNodes);
+		for(int k=0; k<nElements; k++) {
+			for(int p=elemPtr[k]; p<elemPtr[k+1]; p++)
+				elems[pos[elemNodes[p]]++] = k;
+		}
+		this.nodeElems = elems;
+		this.nodeElemPtr = ptr;
+	}
+
+	protected void computeElementNeighbors() {
+		if(nodeElemPtr == null)
+			computeNodeElements();
+		//Two passes: count, then fill
+		int[] ptr = new int[nElements+1];
+		int[] elems = null;
+		for(int pass=0; pass<2; pass++) {
+			for(int k=0; k<nElements; k++) {
+				int[][] facets = FACETS[elemType[k]];
+				int p = elemPtr[k];
+				int count = 0;
+				for(int f=0; f<facets.length; f++) {
+					int nb = findFacetNeighbor(k, p, facets[f]);
+					if(nb >= 0) {
+						if(pass == 1)
+							elems[ptr[k]+count] = nb;
+						count++;
+					}
+				}
+				if(pass == 0)
+					ptr[k+1] = ptr[k] + count;
+			}
+			if(pass == 0)
+				elems = new int[ptr[nElements]];
+		}
+		this.elemElems = elems;
+		this.elemElemPtr = ptr;
+	}
+
+	//The other element which contains all the vertices of a facet of element k, -1 if none
+	protected int findFacetNeighbor(int k, int p, int[] facet) {
+		int v0 = elemNodes[p+facet[0]];
+		for(int q=nodeElemPtr[v0]; q<nodeElemPtr[v0+1]; q++) {
+			int c = nodeElems[q];
+			if(c == k)
+				continue;
+			int cStart = elemPtr[c];
+			int cEnd = cStart + NUM_VERTICES[elemType[c]];
+			boolean all = true;
+			for(int i=1; i<facet.length && all; i++) {
+				int v = elemNodes[p+facet[i]];
+				all = false;
+				for(int r=cStart; r<cEnd; r++) {
+					if(elemNodes[r] == v) {
+						all = true;
+						break;
+					}
+				}
+			}
+			if(all)
+				return c;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the connectivity table for a nodal finite element, where the
+	 * local DOFs are the nodes of an element, see <tt>DOFMap(FlatMesh,FiniteElement)</tt>.
+	 * The table is cached for each finite element.
+	 *
+	 * @param fe
+	 * @return
+	 */
+	public synchronized DOFMap getDOFMap(FiniteElement fe) {
+		DOFMap map = dofMaps.get(fe);
+		if(map == null) {
+			map = new DOFMap(this, fe);
+			dofMaps.put(fe, map);
+		}
+		return map;
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.bcel.generic.ALOAD;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.DALOAD;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.PUSH;
+import org.objectweb.asm.MethodVisitor;
+
+import com.sun.xml.internal.ws.org.objectweb.asm.Opcodes;
+
+import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.core.intf.LocalCoordinate;
+import edu.uta.futureye.function.FMath;
+import edu.uta.futureye.function.SingleVarFunc;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.QuadratureRule;
+
+/**
+ * Hexahedron volume coordinate r,s,t (trilinear) on [-1,1]*[-1,1]*[-1,1]
+ *
+ *      8-------7
+ *     /|      /|
+ *    5-------6 |      t
+ *    | 4-----|-3      | s
+ *    |/      |/       |/
+ *    1-------2        +--r
+ *
+ * x = sum_i xi*Ni, Ni = (1+ri*r)*(1+si*s)*(1+ti*t)/8
+ * where (ri,si,ti) are the coordinates of vertex i.
+ *
+ * Let J = (x_r x_s x_t)
+ *         (y_r y_s y_t)
+ *         (z_r z_s z_t)
+ * then
+ *  (r_x r_y r_z)
+ *  (s_x s_y s_z) = inv(J)
+ *  (t_x t_y t_z)
+ *
+ * J depends on r,s,t. The Jacobian is |det(J)|, so the vertices 1-4 can be
+ * ordered either clockwise or counterclockwise.
+ *
+ */
+public class HexVolumeCoord implements CoordTrans {
+	//Coordinates of the vertices of the reference hexahedron
+	public static final double[][] vertices = {
+		{-1,-1,-1}, { 1,-1,-1}, { 1, 1,-1}, {-1, 1,-1},
+		{-1,-1, 1}, { 1,-1, 1}, { 1, 1, 1}, {-1, 1, 1}
+	};
+
+	HexVolumeCoordVar r;
+	HexVolumeCoordVar s;
+	HexVolumeCoordVar t;
+
+	MathFunc x;
+	MathFunc y;
+	MathFunc z;
+	HashMap<String, MathFunc> map;
+
+	//J[i][j] = d(x,y,z)_i/d(r,s,t)_j
+	MathFunc[][] J;
+	MathFunc det;
+	MathFunc jac;
+
+	/**
+	 *
+	 * @param xs - x coordinates of the 8 vertices
+	 * @param ys - y coordinates of the 8 vertices
+	 * @param zs - z coordinates of the 8 vertices
+	 */
+	public HexVolumeCoord(MathFunc[] xs, MathFunc[] ys, MathFunc[] zs) {
+		this.r = new HexVolumeCoordVar("r", 0);
+		this.s = new HexVolumeCoordVar("s", 1);
+		this.t = new HexVolumeCoordVar("t", 2);
+
+		MathFunc[] N = getTrilinearFunctions();
+		this.x = xs[0]*N[0];
+		this.y = ys[0]*N[0];
+		this.z = zs[0]*N[0];
+		for(int i=1; i<8; i++) {
+			this.x = x + xs[i]*N[i];
+			this.y = y + ys[i]*N[i];
+			this.z = z + zs[i]*N[i];
+		}
+		this.map = new HashMap<String, MathFunc>();
+		this.map.put("x", x);
+		this.map.put("y", y);
+		this.map.put("z", z);
+
+		MathFunc[] X = {x, y, z};
+		String[] R = {"r", "s", "t"};
+		this.J = new MathFunc[3][3];
+		for(int i=0; i<3; i++)
+			for(int j=0; j<3; j++)
+				this.J[i][j] = X[i].diff(R[j]);
+		this.det = J[0][0]*cofactor(0, 0) + J[0][1]*cofactor(0, 1) + J[0][2]*cofactor(0, 2);
+		this.jac = FMath.abs(det);
+	}
+
+	/**
+	 * Return the trilinear functions Ni (i=1,...,8) of the local coordinates
+	 * which are 1 at vertex i and 0 at the other vertices
+	 *
+	 * @return
+	 */
+	public MathFunc[] getTrilinearFunctions() {
+		MathFunc[] N = new MathFunc[8];
+		for(int i=0; i<8; i++) {
+			double[] v = vertices[i];
+			N[i] = (1+v[0]*r)*(1+v[1]*s)*(1+v[2]*t)/8;
+		}
+		return N;
+	}
+
+	/**
+	 * Return the cofactor of J[i][j], inv(J)[j][i] = cofactor(i,j)/det(J)
+	 */
+	protected MathFunc cofactor(int i, int j) {
+		int i1 = (i+1)%3, i2 = (i+2)%3;
+		int j1 = (j+1)%3, j2 = (j+2)%3;
+		return J[i1][j1]*J[i2][j2] - J[i1][j2]*J[i2][j1];
+	}
+
+	public MathFunc getCoordR() {
+		return this.r;
+	}
+
+	public MathFunc getCoordS() {
+		return this.s;
+	}
+
+	public MathFunc getCoordT() {
+		return this.t;
+	}
+
+	@Override
+	public MathFunc[] getCoords() {
+		return new MathFunc[]{r, s, t};
+	}
+
+	@Override
+	public MathFunc getJacobian() {
+		return this.jac;
+	}
+
+	@Override
+	public QuadratureRule.Shape getReferenceShape() {
+		return QuadratureRule.Shape.HEXAHEDRON;
+	}
+
+	@Override
+	public HashMap<String, MathFunc> getCoordTransMap() {
+		return this.map;
+	}
+
+	public class HexVolumeCoordVar extends SingleVarFunc implements LocalCoordinate {
+		//index of the coordinate in (r,s,t)
+		int index;
+
+		public HexVolumeCoordVar(String name, int index) {
+			super(name, name);
+			this.index = index;
+		}
+
+		@Override
+		public double apply(double... args) {
+			return args[this.argIdx];
+		}
+
+		@Override
+		public MathFunc diff(String varName) {
+			if(varName.equals(this.varName))
+				return FMath.C1;
+			if(varName.equals("x"))
+				return cofactor(0, index)/det;
+			else if(varName.equals("y"))
+				return cofactor(1, index)/det;
+			else if(varName.equals("z"))
+				return cofactor(2, index)/det;
+			else
+				return FMath.C0;
+		}
+
+		public String getExpr() {
+			return this.varName;
+		}
+
+		public String toString() {
+			return this.varName;
+		}
+
+		@Override
+		public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
+				int argsStartPos, Map<MathFunc, Integer> funcRefsMap,
+				String clsName) {
+			mv.visitIntInsn(Opcodes.ALOAD, argsStartPos);
+			Integer argIdx = argsMap.get(varName);
+			if(argIdx == null) throw new RuntimeException("Index of "+varName+" is null!");
+			mv.visitLdcInsn(argIdx);
+			mv.visitInsn(Opcodes.DALOAD);
+		}
+
+		@Override
+		public InstructionHandle bytecodeGen(String clsName, MethodGen mg,
+				ConstantPoolGen cp, InstructionFactory factory,
+				InstructionList il, Map<String, Integer> argsMap,
+				int argsStartPos, Map<MathFunc, Integer> funcRefsMap) {
+			il.append(new ALOAD(argsStartPos));
+			il.append(new PUSH(cp, argsMap.get(this.getName())));
+			return il.append(new DALOAD());
+		}
+	}
+}
@@ -24,9 +24,11 @@ import org.objectweb.asm.MethodVisitor;
 import com.sun.xml.internal.ws.org.objectweb.asm.Opcodes;
 
 import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.core.intf.LocalCoordinate;
 import edu.uta.futureye.function.FMath;
 import edu.uta.futureye.function.SingleVarFunc;
 import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.QuadratureRule;
 
 /**
  * 2D line local coordinate.
@@ -87,13 +89,18 @@ public class Line2DCoord implements CoordTrans {
 	public MathFunc getJacobian() {
 		return this.jac;
 	}
+
+	@Override
+	public QuadratureRule.Shape getReferenceShape() {
+		return QuadratureRule.Shape.LINE;
+	}
 	
 	@Override
 	public HashMap<String, MathFunc> getCoordTransMap() {
 		return this.map;
 	}
 
-	public class Line2DCoordR extends SingleVarFunc {
+	public class Line2DCoordR extends SingleVarFunc implements LocalCoordinate {
 		public Line2DCoordR() {
 			super("r", "r");
 		}
@@ -7,6 +7,7 @@ package edu.uta.futureye.core;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -14,6 +15,8 @@ import java.util.Set;
 
 import edu.uta.futureye.algebra.SparseVectorHashMap;
 import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.core.intf.VecFiniteElement;
 import edu.uta.futureye.function.Variable;
 import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.tutorial.Tools;
@@ -54,6 +57,12 @@ public class Mesh {
 	
 	public boolean debug = false;
 	
+	//Connectivity tables of the finite elements used on this mesh
+	protected Map<Object, DOFMap> dofMaps = new IdentityHashMap<Object, DOFMap>();
+	
+	//Spatial index for node lookup and point location, built on demand
+	protected MeshSpatialIndex spatialIndex;
+	
 	public EdgeList getEdgeList() {
 		return edgeList;
 	}
@@ -120,6 +129,65 @@ public class Mesh {
 	public void clearAll() {
 		nodeList.clear();
 		eleList.clear();
+		clearDOFMaps();
+		clearSpatialIndex();
+	}
+	
+	/**
+	 * Return the connectivity table of finite element <tt>fe</tt> on this mesh.
+	 * The table is computed at the first call and cached. It is recomputed if 
+	 * the number of elements or nodes has changed, call <tt>clearDOFMaps()</tt>
+	 * if the mesh is changed in other ways.
+	 * 
+	 * @param fe
+	 * @return
+	 */
+	public synchronized DOFMap getDOFMap(FiniteElement fe) {
+		DOFMap map = dofMaps.get(fe);
+		if(map == null || !map.isValidFor(this)) {
+			map = new DOFMap(this, fe);
+			dofMaps.put(fe, map);
+		}
+		return map;
+	}
+	
+	/**
+	 * @see #getDOFMap(FiniteElement)
+	 * @param fe
+	 * @return
+	 */
+	public synchronized DOFMap getDOFMap(VecFiniteElement fe) {
+		DOFMap map = dofMaps.get(fe);
+		if(map == null || !map.isValidFor(this)) {
+			map = new DOFMap(this, fe);
+			dofMaps.put(fe, map);
+		}
+		return map;
+	}
+	
+	public synchronized void clearDOFMaps() {
+		dofMaps.clear();
+	}
+	
+	/**
+	 * Return the spatial index of the nodes and elements used by <tt>findNode()</tt>,
+	 * <tt>findNodeByCoord()</tt> and <tt>getElementByCoord()</tt>. The index is built
+	 * at the first call. Nodes appended to the node list are inserted into the index
+	 * and the element part is rebuilt if the number of elements has changed. Call 
+	 * <tt>clearSpatialIndex()</tt> if nodes are moved or removed.
+	 * 
+	 * @return
+	 */
+	public synchronized MeshSpatialIndex getSpatialIndex() {
+		if(spatialIndex == null || !spatialIndex.isValidFor(this))
+			spatialIndex = new MeshSpatialIndex(this);
+		else if(spatialIndex.getNumberOfIndexedNodes() < nodeList.size())
+			spatialIndex.addNodes();
+		return spatialIndex;
+	}
+	
+	public synchronized void clearSpatialIndex() {
+		spatialIndex = null;
 	}
 	
 	/**
@@ -154,6 +222,26 @@ public class Mesh {
 			System.out.println("computeNodesBelongToElement done!");
 	}
 	
+	/**
+	 * Adjust the vertices of all the elements to counterclockwise 
+	 * (see Element.adjustVerticeToCounterClockwise()). It is a preprocessing
+	 * step which only needs to be done once after the mesh is built or changed.
+	 * 
+	 * @return number of elements adjusted
+	 */
+	public int adjustVerticeToCounterClockwise() {
+		int n = 0;
+		for(Element e : eleList) {
+			if(e.adjustVerticeToCounterClockwise())
+				n++;
+		}
+		if(n > 0)
+			clearDOFMaps(); //local DOFs are renumbered
+		if(debug)
+			System.out.println("adjustVerticeToCounterClockwise done! "+n+" elements adjusted");
+		return n;
+	}
+	
 	public void deleteIsolatedNode() {
 		computeNodeBelongsToElements();
 		Iterator<Node> node = nodeList.iterator();
@@ -296,19 +384,9 @@ public class Mesh {
 	 * @return the node object in the mesh if success, null if no matches
 	 */
 	public Node findNode(Node node) {
-		for(int i=1;i<=nodeList.size();i++) {
-			int nDim = node.dim();
-			boolean same = true;
-			for(int j=1;j<=nDim;j++) {
-				if(Math.abs(node.coord(j)-nodeList.at(i).coord(j)) > Constant.meshEps) {
-					same = false;
-					break;
-				}
-			}
-			if(same) 
-				return nodeList.at(i);
-		}
-		return null;
+		if(nodeList.size() == 0)
+			return null;
+		return getSpatialIndex().findNode(node.coords(), Constant.meshEps);
 	}
 	
 	/**
@@ -322,19 +400,26 @@ public class Mesh {
 	 * @return the node object in the mesh if success, null if no matches
 	 */
 	public Node findNodeByCoord(double[] coord, double threshold) {
-		for(int i=1;i<=nodeList.size();i++) {
-			int nDim = nodeList.at(1).dim();
-			boolean same = true;
-			for(int j=1;j<=nDim;j++) {
-				if(Math.abs(coord[j-1]-nodeList.at(i).coord(j)) > threshold) {
-					same = false;
-					break;
-				}
-			}
-			if(same)
-				return nodeList.at(i);
-		}
-		return null;
+		if(nodeList.size() == 0)
+			return null;
+		return getSpatialIndex().findNode(coord, threshold);
+	}
+	
+	/**
+	 * Batched <tt>findNodeByCoord()</tt>
+	 * 
+	 * @param coords - coords[i] is the coordinate of the i-th point
+	 * @param threshold
+	 * @return the i-th entry is the node found for the i-th point or null
+	 */
+	public Node[] findNodesByCoord(double[][] coords, double threshold) {
+		Node[] rlt = new Node[coords.length];
+		if(nodeList.size() == 0)
+			return rlt;
+		MeshSpatialIndex index = getSpatialIndex();
+		for(int i=0; i<coords.length; i++)
+			rlt[i] = index.findNode(coords[i], threshold);
+		return rlt;
 	}
 	
 	public Element getElementByNodes(NodeList nodes) {
@@ -361,14 +446,25 @@ public class Mesh {
 	 * @return
 	 */
 	public Element getElementByCoord(double[] coord) {
-		Node node = new Node(2);
-		node.set(0, coord);
-		for(int i=1;i<=eleList.size();i++) {
-			Element e = eleList.at(i);
-			if(e.isCoordInElement(coord))
-				return e;
-		}
-		return null;
+		if(nodeList.size() == 0)
+			return null;
+		return getSpatialIndex().getElementByCoord(coord);
+	}
+	
+	/**
+	 * Batched <tt>getElementByCoord()</tt>
+	 * 
+	 * @param coords - coords[i] is the coordinate of the i-th point
+	 * @return the i-th entry is the element containing the i-th point or null
+	 */
+	public Element[] getElementsByCoord(double[][] coords) {
+		Element[] rlt = new Element[coords.length];
+		if(nodeList.size() == 0)
+			return rlt;
+		MeshSpatialIndex index = getSpatialIndex();
+		for(int i=0; i<coords.length; i++)
+			rlt[i] = index.getElementByCoord(coords[i]);
+		return rlt;
 	}
 	
 	/**
@@ -584,6 +680,8 @@ public class Mesh {
 		this.nVertex = mesh.nVertex;
 		this.mapNTF = mesh.mapNTF;
 		this.debug = mesh.debug;
+		clearDOFMaps();
+		clearSpatialIndex();
 	}
 	
 	/**
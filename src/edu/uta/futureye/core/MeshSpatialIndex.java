@@ -0,0 +1,380 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.core;
+
+import java.util.Arrays;
+
+import edu.uta.futureye.util.Constant;
+import edu.uta.futureye.util.container.ElementList;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * Uniform grid of buckets over the bounding box of a mesh for node lookup
+ * and point location.
+ * <p>
+ * Each node is stored in the bucket which contains it. Each element is stored
+ * in all the buckets which overlap its bounding box (enlarged by the tolerance
+ * of <tt>Element.isCoordInElement()</tt>). The grid has about 2 nodes per bucket,
+ * so a query only checks a few candidates instead of all the nodes or elements.
+ * Points outside the bounding box are clamped to the boundary buckets, so nodes
+ * added after the index is built (e.g. by <tt>Refiner</tt>) can be inserted
+ * with <tt>addNodes()</tt>.
+ * <p>
+ * Buckets store the positions (1-based) of nodes and elements in the lists
+ * of the mesh in ascending order, so a query returns the first match in the
+ * list order, the same as a linear scan.
+ * <p>
+ * Use <tt>Mesh.getSpatialIndex()</tt> to get the index which is built on demand
+ * and kept up to date with the mesh as long as nodes and elements are only appended.
+ * The index doesn't track the coordinates of the nodes, so <tt>Mesh.clearSpatialIndex()</tt>
+ * must be called after nodes are moved (e.g. a deformed mesh) or removed,
+ * otherwise the queries use the old positions.
+ * <p>
+ * Queries can be called from several threads, the element part is built by the
+ * first one. The mesh must not be modified while it is queried.
+ *
+ */
+public class MeshSpatialIndex {
+	//Relative enlargement of element bounding boxes
+	public static double boxEps = 0.01;
+
+	protected Mesh mesh;
+	protected int dim;
+	protected double[] min;
+	protected double[] max;
+	protected double[] cellSize;
+	protected int[] nCells;
+	protected int totalCells;
+
+	protected int nNodes; //number of nodes in the index
+	protected int[][] nodeBuckets;
+	protected int[] nodeBucketSize;
+
+	//number of elements in the index, -1 if not built. It is written after the
+	//element part is complete, so a thread which reads it sees the element part
+	protected volatile int nElements;
+	protected int[][] eleBuckets;
+	protected int[] eleBucketSize;
+	protected double[] eleBoxes; //[(k-1)*2*dim+d]: min, [(k-1)*2*dim+dim+d]: max
+
+	/**
+	 * Build the node part of the index, the element part is built at the
+	 * first point location query
+	 *
+	 * @param mesh
+	 */
+	public MeshSpatialIndex(Mesh mesh) {
+		this.mesh = mesh;
+		NodeList nodes = mesh.getNodeList();
+		int n = nodes.size();
+		this.dim = n == 0 ? 1 : nodes.at(1).dim();
+		this.min = new double[dim];
+		this.max = new double[dim];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		for(int i=1; i<=n; i++) {
+			Node node = nodes.at(i);
+			for(int d=0; d<dim; d++) {
+				double c = node.coord(d+1);
+				if(c < min[d]) min[d] = c;
+				if(c > max[d]) max[d] = c;
+			}
+		}
+		if(n == 0) {
+			Arrays.fill(min, 0.0);
+			Arrays.fill(max, 0.0);
+		}
+
+		//About 2 nodes per bucket, degenerated directions have one layer
+		double volume = 1.0;
+		int nActive = 0;
+		for(int d=0; d<dim; d++) {
+			if(max[d] - min[d] > Constant.eps) {
+				volume *= max[d] - min[d];
+				nActive++;
+			}
+		}
+		double h = nActive == 0 ? 1.0 : Math.pow(volume/Math.max(n/2.0, 1.0), 1.0/nActive);
+		this.nCells = new int[dim];
+		this.cellSize = new double[dim];
+		long maxCells = Math.max(4L*n, 16L);
+		double total;
+		do { //Coarsen the grid for very thin domains
+			total = 1;
+			for(int d=0; d<dim; d++) {
+				double extent = max[d] - min[d];
+				nCells[d] = extent > Constant.eps ? (int)Math.max(1, Math.min(extent/h, maxCells)) : 1;
+				total *= nCells[d];
+			}
+			h *= 2;
+		} while(total > maxCells);
+		this.totalCells = (int)total;
+		for(int d=0; d<dim; d++) {
+			double extent = max[d] - min[d];
+			cellSize[d] = extent > Constant.eps ? extent/nCells[d] : 1.0;
+		}
+
+		this.nodeBuckets = new int[totalCells][];
+		this.nodeBucketSize = new int[totalCells];
+		this.nNodes = 0;
+		addNodes();
+		this.nElements = -1;
+	}
+
+	/**
+	 * Insert the nodes which are appended to the node list of the mesh
+	 * after the index is built
+	 */
+	public synchronized void addNodes() {
+		NodeList nodes = mesh.getNodeList();
+		int n = nodes.size();
+		for(int i=nNodes+1; i<=n; i++) {
+			int cell = cellOf(nodes.at(i));
+			nodeBuckets[cell] = append(nodeBuckets[cell], nodeBucketSize[cell]++, i);
+		}
+		nNodes = n;
+	}
+
+	/**
+	 * Build the element part of the index if the number of elements has changed
+	 */
+	protected void ensureElementIndex() {
+		int n = mesh.getElementList().size();
+		if(nElements != n) {
+			synchronized(this) {
+				if(nElements != n)
+					buildElementIndex();
+			}
+		}
+	}
+
+	/**
+	 * Build the element part of the index
+	 */
+	public synchronized void buildElementIndex() {
+		ElementList eList = mesh.getElementList();
+		int n = eList.size();
+		int[][] eleBuckets = new int[totalCells][];
+		int[] eleBucketSize = new int[totalCells];
+		double[] eleBoxes = new double[n*2*dim];
+		int[] lo = new int[dim];
+		int[] hi = new int[dim];
+		for(int k=1; k<=n; k++) {
+			Element e = eList.at(k);
+			int base = (k-1)*2*dim;
+			NodeList eNodes = e.nodes;
+			for(int d=0; d<dim; d++) {
+				double bmin = Double.POSITIVE_INFINITY;
+				double bmax = Double.NEGATIVE_INFINITY;
+				for(int j=1; j<=eNodes.size(); j++) {
+					double c = eNodes.at(j).coord(d+1);
+					if(c < bmin) bmin = c;
+					if(c > bmax) bmax = c;
+				}
+				eleBoxes[base+d] = bmin;
+				eleBoxes[base+dim+d] = bmax;
+			}
+			//Enlarge the box by the tolerance of the point location
+			double diam = 0.0;
+			for(int d=0; d<dim; d++)
+				diam = Math.max(diam, eleBoxes[base+dim+d] - eleBoxes[base+d]);
+			double tol = boxEps*diam + Constant.meshEps;
+			for(int d=0; d<dim; d++) {
+				eleBoxes[base+d] -= tol;
+				eleBoxes[base+dim+d] += tol;
+				lo[d] = cellIndex(eleBoxes[base+d], d);
+				hi[d] = cellIndex(eleBoxes[base+dim+d], d);
+			}
+			int[] c = Arrays.copyOf(lo, dim);
+			while(true) {
+				int cell = flatten(c);
+				eleBuckets[cell] = append(eleBuckets[cell], eleBucketSize[cell]++, k);
+				if(!next(c, lo, hi)) break;
+			}
+		}
+		this.eleBuckets = eleBuckets;
+		this.eleBucketSize = eleBucketSize;
+		this.eleBoxes = eleBoxes;
+		this.nElements = n;
+	}
+
+	/**
+	 * Return the first node in the node list with |coord(i)-node.coord(i)| &lt;= threshold
+	 * for all the components, null if no matches
+	 *
+	 * @param coord
+	 * @param threshold
+	 * @return
+	 */
+	public Node findNode(double[] coord, double threshold) {
+		int qDim = Math.min(dim, coord.length);
+		int[] lo = new int[dim];
+		int[] hi = new int[dim];
+		long nQueryCells = 1;
+		for(int d=0; d<dim; d++) {
+			if(d < qDim) {
+				lo[d] = cellIndex(coord[d]-threshold, d);
+				hi[d] = cellIndex(coord[d]+threshold, d);
+			} else {
+				lo[d] = 0;
+				hi[d] = nCells[d]-1;
+			}
+			nQueryCells *= hi[d]-lo[d]+1;
+		}
+		NodeList nodes = mesh.getNodeList();
+		int found = Integer.MAX_VALUE;
+		if(nQueryCells == 1) {
+			int cell = flatten(lo);
+			int[] bucket = nodeBuckets[cell];
+			for(int p=0; p<nodeBucketSize[cell]; p++) {
+				if(matches(nodes.at(bucket[p]), coord, qDim, threshold))
+					return nodes.at(bucket[p]);
+			}
+			return null;
+		}
+		int[] c = Arrays.copyOf(lo, dim);
+		while(true) {
+			int cell = flatten(c);
+			int[] bucket = nodeBuckets[cell];
+			for(int p=0; p<nodeBucketSize[cell] && bucket[p]<found; p++) {
+				if(matches(nodes.at(bucket[p]), coord, qDim, threshold)) {
+					found = bucket[p];
+					break;
+				}
+			}
+			if(!next(c, lo, hi)) break;
+		}
+		return found == Integer.MAX_VALUE ? null : nodes.at(found);
+	}
+
+	/**
+	 * Return the first element in the element list which contains the point
+	 * <tt>coord</tt> (see <tt>Element.isCoordInElement()</tt>), null if no matches
+	 *
+	 * @param coord
+	 * @return
+	 */
+	public Element getElementByCoord(double[] coord) {
+		ensureElementIndex();
+		int[] c = new int[dim];
+		for(int d=0; d<dim; d++)
+			c[d] = d < coord.length ? cellIndex(coord[d], d) : 0;
+		int cell = flatten(c);
+		int[] bucket = eleBuckets[cell];
+		ElementList eList = mesh.getElementList();
+		for(int p=0; p<eleBucketSize[cell]; p++) {
+			int k = bucket[p];
+			if(inBox(k, coord) && eList.at(k).isCoordInElement(coord))
+				return eList.at(k);
+		}
+		return null;
+	}
+
+	/**
+	 * Return the bounding box of the nodes when the index is built:
+	 * <tt>{min_1,...,min_dim,max_1,...,max_dim}</tt>
+	 *
+	 * @return
+	 */
+	public double[] getBoundingBox() {
+		double[] box = new double[2*dim];
+		System.arraycopy(min, 0, box, 0, dim);
+		System.arraycopy(max, 0, box, dim, dim);
+		return box;
+	}
+
+	/**
+	 * Return the (enlarged) bounding box of the <tt>idx</tt>-th element (1-based)
+	 * in the same layout as <tt>getBoundingBox()</tt>
+	 *
+	 * @param idx
+	 * @return
+	 */
+	public double[] getElementBoundingBox(int idx) {
+		ensureElementIndex();
+		return Arrays.copyOfRange(eleBoxes, (idx-1)*2*dim, idx*2*dim);
+	}
+
+	public int getDim() {
+		return dim;
+	}
+
+	/**
+	 * Return true if the index is built for the current nodes of <tt>mesh</tt>,
+	 * nodes appended to the list can be inserted by <tt>addNodes()</tt>
+	 *
+	 * @param mesh
+	 * @return
+	 */
+	public boolean isValidFor(Mesh mesh) {
+		return this.mesh == mesh && mesh.getNodeList().size() >= nNodes;
+	}
+
+	public int getNumberOfIndexedNodes() {
+		return nNodes;
+	}
+
+	////////////////////////////////////////////////////////////////
+
+	protected boolean matches(Node node, double[] coord, int qDim, double threshold) {
+		for(int d=0; d<qDim; d++) {
+			if(Math.abs(coord[d]-node.coord(d+1)) > threshold)
+				return false;
+		}
+		return true;
+	}
+
+	protected boolean inBox(int k, double[] coord) {
+		int base = (k-1)*2*dim;
+		for(int d=0; d<dim && d<coord.length; d++) {
+			if(coord[d] < eleBoxes[base+d] || coord[d] > eleBoxes[base+dim+d])
+				return false;
+		}
+		return true;
+	}
+
+	protected int cellIndex(double c, int d) {
+		double t = (c - min[d])/cellSize[d];
+		if(t <= 0 || Double.isNaN(t)) return 0;
+		if(t >= nCells[d]) return nCells[d]-1;
+		return (int)t;
+	}
+
+	protected int cellOf(Node node) {
+		int cell = 0;
+		for(int d=dim-1; d>=0; d--)
+			cell = cell*nCells[d] + cellIndex(node.coord(d+1), d);
+		return cell;
+	}
+
+	protected int flatten(int[] c) {
+		int cell = 0;
+		for(int d=dim-1; d>=0; d--)
+			cell = cell*nCells[d] + c[d];
+		return cell;
+	}
+
+	//Next cell in the range [lo,hi], false if all the cells are visited
+	protected static boolean next(int[] c, int[] lo, int[] hi) {
+		for(int d=0; d<c.length; d++) {
+			if(c[d] < hi[d]) {
+				c[d]++;
+				return true;
+			}
+			c[d] = lo[d];
+		}
+		return false;
+	}
+
+	protected static int[] append(int[] bucket, int size, int value) {
+		if(bucket == null)
+			bucket = new int[2];
+		else if(size == bucket.length)
+			bucket = Arrays.copyOf(bucket, 2*size);
+		bucket[size] = value;
+		return bucket;
+	}
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.SpaceVector;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.util.Constant;
+import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.container.NodeList;
+import edu.uta.futureye.util.container.VertexList;
+
+/**
+ * Interpolation operator from the nodal values on a mesh to a set of points,
+ * e.g. the nodes of another mesh.
+ * <p>
+ * The points are located once (see <tt>Mesh.getSpatialIndex()</tt>) when the
+ * operator is built. The element containing each point and the interpolation
+ * weights of the nodes of that element are stored as a sparse matrix P
+ * (number of points * number of nodes of the source mesh), so that
+ * <p><blockquote><pre>
+ * uTo = P * uFrom
+ * </pre></blockquote>
+ * can be applied to any number of vectors without locating the points again.
+ * <p>
+ * A point which coincides with a node of the source mesh (within
+ * <tt>Constant.meshEps</tt>) takes the value of that node. Otherwise the value is
+ * interpolated linearly on triangles and tetrahedra and bilinearly on quadrilaterals
+ * from the values on the vertices. Points outside of the source mesh have no
+ * entries in P, <tt>apply()</tt> sets them to a default value.
+ *
+ */
+public class MeshTransfer {
+	protected Mesh meshFrom;
+	protected int nPoints;
+	protected int[] elements; // index of the containing element (1-based), -1 at a node, 0 outside
+	protected CSRMatrix matrix;
+	protected int nOutside;
+
+	/**
+	 * Build the operator from the nodal values on <tt>meshFrom</tt> to
+	 * the nodal values on <tt>meshTo</tt>
+	 *
+	 * @param meshFrom
+	 * @param meshTo
+	 */
+	public MeshTransfer(Mesh meshFrom, Mesh meshTo) {
+		this(meshFrom, getNodeCoords(meshTo));
+	}
+
+	/**
+	 * Build the operator from the nodal values on <tt>meshFrom</tt> to
+	 * the values at <tt>points</tt>
+	 *
+	 * @param meshFrom
+	 * @param points - points[i] is the coordinate of the i-th point
+	 */
+	public MeshTransfer(Mesh meshFrom, double[][] points) {
+		this.meshFrom = meshFrom;
+		this.nPoints = points.length;
+		this.elements = new int[nPoints];
+		int nNodes = meshFrom.getNodeList().size();
+
+		MeshSpatialIndex index = meshFrom.getSpatialIndex();
+		int[] rowPtr = new int[nPoints+1];
+		int[] cols = new int[4*nPoints];
+		double[] vals = new double[4*nPoints];
+		int[] idx = new int[8];
+		double[] w = new double[8];
+		int nnz = 0;
+		for(int i=0; i<nPoints; i++) {
+			int n = 0;
+			Node node = index.findNode(points[i], Constant.meshEps);
+			if(node != null) {
+				idx[0] = node.globalIndex;
+				w[0] = 1.0;
+				n = 1;
+				elements[i] = -1;
+			} else {
+				Element e = index.getElementByCoord(points[i]);
+				if(e != null) {
+					n = computeWeights(e, points[i], idx, w);
+					elements[i] = e.globalIndex;
+				} else {
+					nOutside++;
+				}
+			}
+			if(nnz + n > cols.length) {
+				cols = Arrays.copyOf(cols, 2*cols.length+n);
+				vals = Arrays.copyOf(vals, 2*vals.length+n);
+			}
+			//Sorted column indices within a row
+			int start = nnz;
+			for(int k=0; k<n; k++) {
+				int p = nnz++;
+				while(p > start && cols[p-1] > idx[k]-1) {
+					cols[p] = cols[p-1];
+					vals[p] = vals[p-1];
+					p--;
+				}
+				cols[p] = idx[k]-1;
+				vals[p] = w[k];
+			}
+			rowPtr[i+1] = nnz;
+		}
+		this.matrix = new CSRMatrix(nPoints, nNodes, rowPtr,
+				Arrays.copyOf(cols, nnz));
+		System.arraycopy(vals, 0, matrix.getVals(), 0, nnz);
+	}
+
+	/**
+	 * Compute the interpolation weights of the nodes of element <tt>e</tt>
+	 * at point <tt>coord</tt> in <tt>e</tt>
+	 * <p><blockquote><pre>
+	 * u(coord) = sum_{k=0}^{n-1} w[k]*u(idx[k])
+	 * </pre></blockquote>
+	 * where idx[k] is the global index of a node and n is the returned value
+	 *
+	 * @param e
+	 * @param coord
+	 * @param idx
+	 * @param w
+	 * @return number of nodes
+	 */
+	public static int computeWeights(Element e, double[] coord, int[] idx, double[] w) {
+		VertexList vs = e.vertices();
+		int nv = vs.size();
+		if(coord.length == 2 && nv == 3) {
+			//Area coordinates
+			double x1 = vs.at(1).coord(1), y1 = vs.at(1).coord(2);
+			double x2 = vs.at(2).coord(1), y2 = vs.at(2).coord(2);
+			double x3 = vs.at(3).coord(1), y3 = vs.at(3).coord(2);
+			double det = (x2-x1)*(y3-y1) - (x3-x1)*(y2-y1);
+			double s = ((coord[0]-x1)*(y3-y1) - (x3-x1)*(coord[1]-y1))/det;
+			double t = ((x2-x1)*(coord[1]-y1) - (coord[0]-x1)*(y2-y1))/det;
+			w[0] = 1-s-t; w[1] = s; w[2] = t;
+		} else if(coord.length == 2 && nv == 4) {
+			//Bilinear f(x,y) = a1 + a2*x + a3*y + a4*x*y through the 4 vertices
+			double[][] M = new double[4][4];
+			for(int k=0; k<4; k++) {
+				double x = vs.at(k+1).coord(1), y = vs.at(k+1).coord(2);
+				M[k][0] = 1; M[k][1] = x; M[k][2] = y; M[k][3] = x*y;
+			}
+			//w = inv(M)' * (1,x,y,xy)'
+			double[] b = {1, coord[0], coord[1], coord[0]*coord[1]};
+			solveTransposed(M, b);
+			for(int k=0; k<4; k++) w[k] = b[k];
+		} else if(coord.length == 3 && nv == 4) {
+			//Volume coordinates
+			double[][] M = new double[4][4];
+			for(int k=0; k<4; k++) {
+				M[k][0] = 1;
+				for(int d=1; d<=3; d++)
+					M[k][d] = vs.at(k+1).coord(d);
+			}
+			double[] b = {1, coord[0], coord[1], coord[2]};
+			solveTransposed(M, b);
+			for(int k=0; k<4; k++) w[k] = b[k];
+		} else {
+			throw new FutureyeException("Unsupported element type for interpolation: "+e.toString());
+		}
+		for(int k=0; k<nv; k++)
+			idx[k] = vs.at(k+1).globalNode().globalIndex;
+		return nv;
+	}
+
+	//Solve M'*x = b by Gaussian elimination with partial pivoting, x is returned in b
+	protected static void solveTransposed(double[][] M, double[] b) {
+		int n = b.length;
+		double[][] A = new double[n][n];
+		for(int i=0; i<n; i++)
+			for(int j=0; j<n; j++)
+				A[i][j] = M[j][i];
+		for(int c=0; c<n; c++) {
+			int p = c;
+			for(int r=c+1; r<n; r++)
+				if(Math.abs(A[r][c]) > Math.abs(A[p][c])) p = r;
+			double[] tr = A[c]; A[c] = A[p]; A[p] = tr;
+			double tb = b[c]; b[c] = b[p]; b[p] = tb;
+			if(A[c][c] == 0.0)
+				throw new FutureyeException("Degenerated element in interpolation");
+			for(int r=c+1; r<n; r++) {
+				double f = A[r][c]/A[c][c];
+				for(int k=c; k<n; k++)
+					A[r][k] -= f*A[c][k];
+				b[r] -= f*b[c];
+			}
+		}
+		for(int r=n-1; r>=0; r--) {
+			double s = b[r];
+			for(int k=r+1; k<n; k++)
+				s -= A[r][k]*b[k];
+			b[r] = s/A[r][r];
+		}
+	}
+
+	protected static double[][] getNodeCoords(Mesh mesh) {
+		NodeList nodes = mesh.getNodeList();
+		double[][] coords = new double[nodes.size()][];
+		for(int i=1; i<=nodes.size(); i++)
+			coords[i-1] = nodes.at(i).coords();
+		return coords;
+	}
+
+	/**
+	 * Return the interpolation matrix P, see the class comment
+	 *
+	 * @return
+	 */
+	public CSRMatrix getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * Interpolate <tt>u</tt> (values on the nodes of the source mesh) to the points,
+	 * the points outside of the source mesh are set to <tt>defaultValue</tt>
+	 *
+	 * @param u
+	 * @param defaultValue
+	 * @return
+	 */
+	public Vector apply(Vector u, double defaultValue) {
+		Vector rlt = new SpaceVector(nPoints);
+		int[] rowPtr = matrix.getRowPtr();
+		int[] colIdx = matrix.getColIdx();
+		double[] vals = matrix.getVals();
+		for(int r=0; r<nPoints; r++) {
+			if(rowPtr[r] == rowPtr[r+1]) {
+				rlt.set(r+1, defaultValue);
+				continue;
+			}
+			double v = 0.0;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+				v += vals[k]*u.get(colIdx[k]+1);
+			rlt.set(r+1, v);
+		}
+		return rlt;
+	}
+
+	public Vector apply(Vector u) {
+		return apply(u, 0.0);
+	}
+
+	/**
+	 * Interpolate several vectors with <tt>parallelism</tt> threads
+	 *
+	 * @param us
+	 * @param defaultValue
+	 * @param parallelism
+	 * @return
+	 */
+	public Vector[] apply(final Vector[] us, final double defaultValue, int parallelism) {
+		final Vector[] rlt = new Vector[us.length];
+		if(parallelism <= 1 || us.length <= 1) {
+			for(int i=0; i<us.length; i++)
+				rlt[i] = apply(us[i], defaultValue);
+			return rlt;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for(int i=0; i<us.length; i++) {
+				final int vi = i;
+				tasks.add(() -> {
+					rlt[vi] = apply(us[vi], defaultValue);
+					return null;
+				});
+			}
+			for(Future<Void> f : pool.invokeAll(tasks)) {
+				try {
+					f.get();
+				} catch (InterruptedException e) {
+					throw new FutureyeException(e.getMessage());
+				} catch (ExecutionException e) {
+					throw new FutureyeException("Parallel interpolation failed: "+e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return rlt;
+	}
+
+	/**
+	 * Return the index (1-based) of the element of the source mesh which
+	 * contains the i-th point (0-based), -1 if the point is a node of the
+	 * source mesh, 0 if it is outside of the source mesh
+	 *
+	 * @param i
+	 * @return
+	 */
+	public int getElementIndex(int i) {
+		return elements[i];
+	}
+
+	public boolean isInside(int i) {
+		return elements[i] != 0;
+	}
+
+	public int getNumberOfOutsidePoints() {
+		return nOutside;
+	}
+
+	public int getNumberOfPoints() {
+		return nPoints;
+	}
+
+	public Mesh getSourceMesh() {
+		return meshFrom;
+	}
+}
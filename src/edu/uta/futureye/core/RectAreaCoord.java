@@ -21,9 +21,11 @@ import org.objectweb.asm.MethodVisitor;
 import com.sun.xml.internal.ws.org.objectweb.asm.Opcodes;
 
 import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.core.intf.LocalCoordinate;
 import edu.uta.futureye.function.FMath;
 import edu.uta.futureye.function.SingleVarFunc;
 import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.QuadratureRule;
 
 /**
  * Rectangle area coordinate r,s (bilinear).
@@ -130,13 +132,18 @@ public class RectAreaCoord implements CoordTrans {
 	public MathFunc getJacobian() {
 		return this.jac;
 	}
+
+	@Override
+	public QuadratureRule.Shape getReferenceShape() {
+		return QuadratureRule.Shape.RECTANGLE;
+	}
 	
 	@Override
 	public HashMap<String, MathFunc> getCoordTransMap() {
 		return this.map;
 	}
 
-	public class RectAreaCoordR extends SingleVarFunc {
+	public class RectAreaCoordR extends SingleVarFunc implements LocalCoordinate {
 		public RectAreaCoordR() {
 			super("r", "r");
 		}
@@ -186,7 +193,7 @@ public class RectAreaCoord implements CoordTrans {
 			return il.append(new DALOAD());
 		}
 	}
-	public class RectAreaCoordS extends SingleVarFunc {
+	public class RectAreaCoordS extends SingleVarFunc implements LocalCoordinate {
 		public RectAreaCoordS() {
 			super("s", "s");
 		}
@@ -1,9 +1,15 @@
 package edu.uta.futureye.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.container.EdgeList;
 import edu.uta.futureye.util.container.ElementList;
 import edu.uta.futureye.util.container.NodeList;
 import edu.uta.futureye.util.container.ObjList;
@@ -52,6 +58,23 @@ public class Refiner {
 	}
 	
 	public static boolean directRefine(Mesh mesh, ElementList eToRefine) {
+		return directRefine(mesh, eToRefine, new HashMap<Long,Node>(),
+				new ArrayList<Node[]>(), new ElementList());
+	}
+	
+	/**
+	 * Refine the elements in <tt>eToRefine</tt>, the new elements are appended to
+	 * the element list of <tt>mesh</tt> and the refined elements are added to <tt>refined</tt>
+	 * 
+	 * @param mesh
+	 * @param eToRefine
+	 * @param midNodes - edge midpoints created so far, see <tt>getMidNode()</tt>
+	 * @param edgeMids - {midpoint, end node 1, end node 2} of the edges refined in this call
+	 * @param refined
+	 * @return true if all the elements have been refined before
+	 */
+	protected static boolean directRefine(Mesh mesh, ElementList eToRefine,
+			Map<Long,Node> midNodes, List<Node[]> edgeMids, ElementList refined) {
 		ElementList oldEleList = mesh.getElementList();
 		int refinedNum = 0;
 		
@@ -80,31 +103,14 @@ public class Refiner {
 				Vertex v2 = vList.at(2);
 				Vertex v3 = vList.at(3);
 				
-				Node node4 = new NodeRefined(2);
-				node4.setCoord(1, (v1.coord(1)+v2.coord(1))/2.0);
-				node4.setCoord(2, (v1.coord(2)+v2.coord(2))/2.0);
-				node4.setRefineLevel(e.getLevel()+1);
-				Node tmpNode = mesh.findNode(node4);
-				if(tmpNode != null) node4 = tmpNode;
-				
-				Node node5 = new NodeRefined(2);
-				node5.setCoord(1, (v2.coord(1)+v3.coord(1))/2.0);
-				node5.setCoord(2, (v2.coord(2)+v3.coord(2))/2.0);
-				node5.setRefineLevel(e.getLevel()+1);
-				tmpNode = mesh.findNode(node5);
-				if(tmpNode != null) node5 = tmpNode;
-				
-				Node node6 = new NodeRefined(2);
-				node6.setCoord(1, (v3.coord(1)+v1.coord(1))/2.0);
-				node6.setCoord(2, (v3.coord(2)+v1.coord(2))/2.0);
-				node6.setRefineLevel(e.getLevel()+1);
-				tmpNode = mesh.findNode(node6);
-				if(tmpNode != null) node6 = tmpNode;
-				
 				Node node1 = e.nodes.at(v1.localIndex);
 				Node node2 = e.nodes.at(v2.localIndex);
 				Node node3 = e.nodes.at(v3.localIndex);
 				
+				Node node4 = getMidNode(node1, node2, e.getLevel()+1, midNodes, edgeMids);
+				Node node5 = getMidNode(node2, node3, e.getLevel()+1, midNodes, edgeMids);
+				Node node6 = getMidNode(node3, node1, e.getLevel()+1, midNodes, edgeMids);
+				
 				NodeList nList = new NodeList();
 				
 				nList.clear();
@@ -156,45 +162,21 @@ public class Refiner {
 				Vertex v3 = vList.at(3);
 				Vertex v4 = vList.at(4);
 				
-				Node node5 = new NodeRefined(2);
-				node5.setCoord(1, (v1.coord(1)+v2.coord(1))/2.0);
-				node5.setCoord(2, (v1.coord(2)+v2.coord(2))/2.0);
-				node5.setRefineLevel(e.getLevel()+1);
-				Node tmpNode = mesh.findNode(node5);
-				if(tmpNode != null) node5 = tmpNode;
-				
-				Node node6 = new NodeRefined(2);
-				node6.setCoord(1, (v2.coord(1)+v3.coord(1))/2.0);
-				node6.setCoord(2, (v2.coord(2)+v3.coord(2))/2.0);
-				node6.setRefineLevel(e.getLevel()+1);
-				tmpNode = mesh.findNode(node6);
-				if(tmpNode != null) node6 = tmpNode;
-				
-				Node node7 = new NodeRefined(2);
-				node7.setCoord(1, (v3.coord(1)+v4.coord(1))/2.0);
-				node7.setCoord(2, (v3.coord(2)+v4.coord(2))/2.0);
-				node7.setRefineLevel(e.getLevel()+1);
-				tmpNode = mesh.findNode(node7);
-				if(tmpNode != null) node7 = tmpNode;
+				Node node1 = e.nodes.at(v1.localIndex);
+				Node node2 = e.nodes.at(v2.localIndex);
+				Node node3 = e.nodes.at(v3.localIndex);
+				Node node4 = e.nodes.at(v4.localIndex);
 				
-				Node node8 = new NodeRefined(2);
-				node8.setCoord(1, (v4.coord(1)+v1.coord(1))/2.0);
-				node8.setCoord(2, (v4.coord(2)+v1.coord(2))/2.0);
-				node8.setRefineLevel(e.getLevel()+1);
-				tmpNode = mesh.findNode(node8);
-				if(tmpNode != null) node8 = tmpNode;
+				Node node5 = getMidNode(node1, node2, e.getLevel()+1, midNodes, edgeMids);
+				Node node6 = getMidNode(node2, node3, e.getLevel()+1, midNodes, edgeMids);
+				Node node7 = getMidNode(node3, node4, e.getLevel()+1, midNodes, edgeMids);
+				Node node8 = getMidNode(node4, node1, e.getLevel()+1, midNodes, edgeMids);
 				
+				//The center node is always new
 				Node node9 = new NodeRefined(2);
 				node9.setCoord(1, (node5.coord(1)+node7.coord(1))/2.0);
 				node9.setCoord(2, (node5.coord(2)+node7.coord(2))/2.0);
 				node9.setRefineLevel(e.getLevel()+1);
-				tmpNode = mesh.findNode(node9);
-				if(tmpNode != null) node9 = tmpNode;
-				
-				Node node1 = e.nodes.at(v1.localIndex);
-				Node node2 = e.nodes.at(v2.localIndex);
-				Node node3 = e.nodes.at(v3.localIndex);
-				Node node4 = e.nodes.at(v4.localIndex);
 				
 				NodeList nList = new NodeList();
 				
@@ -263,26 +245,22 @@ public class Refiner {
 //				}
 //			}
 			
-			//细化新增的单元与老单元放入同一个list，按照在列表中存储索引，统一重新编号
-			//注意：此时被细化的父单元还没有删除
-			//此时将新结点加入老结点列表，细化后，不需要删除多余结点
-			oldEleList.addAll(newEleList);
-			for(int j=1;j<=oldEleList.size();j++) {
-				Element ele = oldEleList.at(j);
-				if(ele.globalIndex == 0) {
-					ele.globalIndex = j;
-					for(int k=1;k<=ele.nodes.size();k++) {
-						Node newNode = ele.nodes.at(k);
-						if(newNode.globalIndex == 0) {
-							newNode.globalIndex = oldNodeList.size()+1;
-							oldNodeList.add(newNode);
-						}
+			//新增单元追加到列表末尾，只对新增单元和新增结点编号
+			//注意：此时被细化的父单元还没有删除，在refineOnce()中统一删除
+			for(int j=1;j<=newEleList.size();j++) {
+				Element ele = newEleList.at(j);
+				oldEleList.add(ele);
+				ele.globalIndex = oldEleList.size();
+				for(int k=1;k<=ele.nodes.size();k++) {
+					Node newNode = ele.nodes.at(k);
+					if(newNode.globalIndex == 0) {
+						newNode.globalIndex = oldNodeList.size()+1;
+						oldNodeList.add(newNode);
 					}
-				}  else {
-					ele.globalIndex = j;
 				}
 			}
 			e.childs = newEleList;
+			refined.add(e);
 		}
 
 		return refinedNum==eToRefine.size();
@@ -297,36 +275,291 @@ public class Refiner {
 		}
 	}
 	
+	/**
+	 * Refine the elements in <tt>eToRefine</tt> once. The neighbors which would
+	 * have more than one hanging node on an edge are refined first.
+	 * <p>
+	 * The edge midpoints are looked up by the end nodes instead of coordinates and
+	 * the mesh topology (see <tt>Mesh.computeNodeBelongsToElements()</tt>,
+	 * <tt>computeNeighborNodes()</tt>, <tt>computeGlobalEdge()</tt> and
+	 * <tt>computeNeighborElements()</tt>) and hanging nodes are updated only around
+	 * the refined elements, so the cost is linear in the number of refined elements.
+	 * The topology must be computed once before the first refinement.
+	 * 
+	 * @param mesh
+	 * @param eToRefine
+	 */
 	public static void refineOnce(Mesh mesh, ElementList eToRefine) {
-		ElementList eList = mesh.getElementList();
+		Map<Long,Node> midNodes = new HashMap<Long,Node>();
 		while(true) {
 			ElementList eNeighbors = checkNeighborRefinement(eToRefine);
+			List<Node[]> edgeMids = new ArrayList<Node[]>();
+			ElementList refined = new ElementList();
 			if(eNeighbors.size()>0) {
-				boolean stop = directRefine(mesh,eNeighbors);
-				computeHangingNode(eNeighbors);
-				for(int iToRe=1;iToRe<=eNeighbors.size();iToRe++) {
-					eList.remove(eNeighbors.at(iToRe));
-				}
-				reNumberElements(mesh);
-				mesh.computeNodeBelongsToElements();
-				mesh.computeNeighborNodes();
-				mesh.computeGlobalEdge();
-				mesh.computeNeighborElements();
+				boolean stop = directRefine(mesh,eNeighbors,midNodes,edgeMids,refined);
+				updateTopology(mesh,refined,edgeMids);
 				if(stop) break;
 			} else {
-				directRefine(mesh,eToRefine);
-				computeHangingNode(eToRefine);
-				for(int iToRe=1;iToRe<=eToRefine.size();iToRe++) {
-					eList.remove(eToRefine.at(iToRe));
-				}
-				reNumberElements(mesh);
-				mesh.computeNodeBelongsToElements();
-				mesh.computeNeighborNodes();
-				mesh.computeGlobalEdge();
-				mesh.computeNeighborElements();
+				directRefine(mesh,eToRefine,midNodes,edgeMids,refined);
+				updateTopology(mesh,refined,edgeMids);
 				break;
 			}
 		}
+		mesh.clearDOFMaps();
+	}
+	
+	/**
+	 * Return the midpoint of the edge (n1,n2). It is either created before in the same
+	 * refinement (<tt>midNodes</tt>), or a hanging node on the edge created by refining
+	 * the neighbor, or a new node.
+	 */
+	protected static Node getMidNode(Node n1, Node n2, int level,
+			Map<Long,Node> midNodes, List<Node[]> edgeMids) {
+		Long key = edgeKey(n1, n2);
+		Node mid = midNodes.get(key);
+		if(mid == null) {
+			mid = findHangingNode(n1, n2);
+			if(mid == null) {
+				mid = new NodeRefined(2);
+				mid.setCoord(1, (n1.coord(1)+n2.coord(1))/2.0);
+				mid.setCoord(2, (n1.coord(2)+n2.coord(2))/2.0);
+				mid.setRefineLevel(level);
+			}
+			midNodes.put(key, mid);
+		}
+		edgeMids.add(new Node[]{mid, n1, n2});
+		return mid;
+	}
+	
+	protected static Long edgeKey(Node n1, Node n2) {
+		int i1 = Math.min(n1.globalIndex, n2.globalIndex);
+		int i2 = Math.max(n1.globalIndex, n2.globalIndex);
+		return ((long)i1 << 32) | i2;
+	}
+	
+	//A hanging node on edge (n1,n2) is a neighbor of n1 or n2 (neighbors are
+	//computed along the oriented local edges) constrained by n1 and n2
+	protected static Node findHangingNode(Node n1, Node n2) {
+		Node rlt = findHangingNode(n1.neighbors, n1, n2);
+		if(rlt == null)
+			rlt = findHangingNode(n2.neighbors, n1, n2);
+		return rlt;
+	}
+	
+	protected static Node findHangingNode(NodeList neighbors, Node n1, Node n2) {
+		if(neighbors == null)
+			return null;
+		for(int i=1;i<=neighbors.size();i++) {
+			Node nb = neighbors.at(i);
+			if(nb instanceof NodeRefined) {
+				NodeList cns = ((NodeRefined)nb).constrainNodes;
+				if(cns.size() == 2 &&
+						(cns.at(1) == n1 && cns.at(2) == n2 || cns.at(1) == n2 && cns.at(2) == n1))
+					return nb;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Remove the refined elements from the mesh and update the topology and
+	 * hanging nodes around them
+	 */
+	protected static void updateTopology(Mesh mesh, ElementList refined, List<Node[]> edgeMids) {
+		if(refined.size() == 0)
+			return;
+		ElementList eList = mesh.getElementList();
+		
+		//Affected nodes, the refined elements are removed from the topology
+		Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<Node,Boolean>());
+		Set<Element> parents = Collections.newSetFromMap(new IdentityHashMap<Element,Boolean>());
+		for(int i=1;i<=refined.size();i++)
+			parents.add(refined.at(i));
+		for(int i=1;i<=refined.size();i++) {
+			Element e = refined.at(i);
+			for(int j=1;j<=e.nodes.size();j++) {
+				Node node = e.nodes.at(j);
+				nodes.add(node);
+				if(node.belongToElements != null)
+					node.belongToElements.remove(e);
+			}
+			for(int j=1;j<=e.neighbors.size();j++) {
+				Element eNeighbor = e.neighbors.at(j);
+				if(!parents.contains(eNeighbor))
+					eNeighbor.neighbors.remove(e);
+			}
+			for(int j=1;j<=e.childs.size();j++) {
+				Element child = e.childs.at(j);
+				for(int k=1;k<=child.nodes.size();k++)
+					nodes.add(child.nodes.at(k));
+			}
+		}
+		
+		//Remove the refined elements in one pass and renumber the elements
+		List<Element> active = new ArrayList<Element>(eList.size());
+		for(int i=1;i<=eList.size();i++) {
+			if(!parents.contains(eList.at(i)))
+				active.add(eList.at(i));
+		}
+		eList.clear();
+		for(Element e : active)
+			eList.add(e);
+		reNumberElements(mesh);
+		
+		//Node belongs to elements
+		for(int i=1;i<=refined.size();i++) {
+			ElementList childs = refined.at(i).childs;
+			for(int j=1;j<=childs.size();j++) {
+				Element child = childs.at(j);
+				for(int k=1;k<=child.nodes.size();k++)
+					child.nodes.at(k).addBelongToElements(child);
+			}
+		}
+		
+		//Global edges: share the edges with the existing elements
+		EdgeList edgeList = mesh.getEdgeList();
+		for(int i=1;i<=refined.size();i++) {
+			ElementList childs = refined.at(i).childs;
+			for(int j=1;j<=childs.size();j++) {
+				ObjList<EdgeLocal> localEdges = childs.at(j).edges();
+				for(int k=1;k<=localEdges.size();k++) {
+					EdgeLocal localEdge = localEdges.at(k);
+					Edge globalEdge = findGlobalEdge(localEdge.beginNode(), localEdge.endNode());
+					if(globalEdge == null) {
+						globalEdge = localEdge.buildEdge();
+						if(edgeList != null) {
+							edgeList.add(globalEdge);
+							globalEdge.setGlobalIndex(edgeList.size());
+						}
+					}
+					localEdge.globalEdge = globalEdge;
+				}
+			}
+		}
+		//Remove the edges which are not used by any element
+		if(edgeList != null) {
+			for(int i=1;i<=refined.size();i++) {
+				ObjList<EdgeLocal> localEdges = refined.at(i).edges();
+				for(int k=1;k<=localEdges.size();k++) {
+					Edge oldEdge = localEdges.at(k).globalEdge;
+					if(oldEdge == null)
+						continue;
+					int idx = oldEdge.getGlobalIndex();
+					if(idx < 1 || idx > edgeList.size() || edgeList.at(idx) != oldEdge)
+						continue;
+					if(findGlobalEdge(oldEdge.beginNode(), oldEdge.endNode()) == oldEdge)
+						continue;
+					Edge last = edgeList.at(edgeList.size());
+					edgeList.set(idx, last);
+					last.setGlobalIndex(idx);
+					edgeList.remove(edgeList.size());
+					oldEdge.setGlobalIndex(0);
+				}
+			}
+		}
+		
+		//Neighbor nodes
+		for(Node node : nodes) {
+			node.clearNeighbors();
+			ElementList belongs = node.belongToElements;
+			for(int j=1;j<=belongs.size();j++) {
+				Element e = belongs.at(j);
+				for(int k=1;k<=e.nodes.size();k++) {
+					Node nbNode = e.nodes.at(k);
+					if(nbNode.globalIndex != node.globalIndex && e.containsEdge(node, nbNode))
+						node.addNeighbors(nbNode);
+				}
+			}
+		}
+		
+		//Hanging nodes: a midpoint is a hanging node if an element still has the whole edge
+		for(int i=1;i<=refined.size();i++) {
+			ElementList childs = refined.at(i).childs;
+			for(int j=1;j<=childs.size();j++) {
+				Element child = childs.at(j);
+				for(int k=1;k<=child.nodes.size();k++) {
+					Node node = child.nodes.at(k);
+					if(node.getRefineLevel() == child.getLevel())
+						((NodeRefined)node).clearConstrainNodes();
+				}
+			}
+		}
+		for(Node[] em : edgeMids) {
+			Edge coarseEdge = findGlobalEdge(em[1], em[2]);
+			if(coarseEdge != null) {
+				NodeRefined nRefined = (NodeRefined)em[0];
+				nRefined.addConstrainNode(coarseEdge.beginNode());
+				nRefined.addConstrainNode(coarseEdge.endNode());
+			}
+		}
+
+		//Neighbor elements: add the children, the refined elements have been removed
+		for(int i=1;i<=refined.size();i++) {
+			ElementList childs = refined.at(i).childs;
+			for(int j=1;j<=childs.size();j++) {
+				Element child = childs.at(j);
+				for(int k=1;k<=child.nodes.size();k++) {
+					ElementList belongs = child.nodes.at(k).belongToElements;
+					for(int kk=1;kk<=belongs.size();kk++) {
+						Element e2 = belongs.at(kk);
+						if(e2 != child && mayBeNeighbor(child, e2) && mesh.isNeighbor(child, e2)) {
+							child.addNeighborElement(e2);
+							e2.addNeighborElement(child);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Elements with a common node can be neighbors only if they have another common
+	 * node or one of them has a hanging node on an edge of the other
+	 */
+	protected static boolean mayBeNeighbor(Element e1, Element e2) {
+		int nCommon = 0;
+		for(int i=1;i<=e1.nodes.size();i++) {
+			Node n = e1.nodes.at(i);
+			for(int j=1;j<=e2.nodes.size();j++) {
+				if(n == e2.nodes.at(j)) {
+					nCommon++;
+					break;
+				}
+			}
+		}
+		return nCommon >= 2 || hasHangingNodeOn(e1, e2) || hasHangingNodeOn(e2, e1);
+	}
+	
+	protected static boolean hasHangingNodeOn(Element e, Element coarse) {
+		for(int i=1;i<=e.nodes.size();i++) {
+			Node n = e.nodes.at(i);
+			if(n instanceof NodeRefined && ((NodeRefined)n).isHangingNode()) {
+				NodeList cns = ((NodeRefined)n).constrainNodes;
+				if(coarse.nodes.contains(cns.at(1)) && coarse.nodes.contains(cns.at(2)))
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	//Global edge (n1,n2) of an element in the mesh, null if no such edge
+	protected static Edge findGlobalEdge(Node n1, Node n2) {
+		ElementList belongs = n1.belongToElements;
+		if(belongs == null)
+			return null;
+		for(int i=1;i<=belongs.size();i++) {
+			ObjList<EdgeLocal> localEdges = belongs.at(i).edges();
+			for(int j=1;j<=localEdges.size();j++) {
+				EdgeLocal localEdge = localEdges.at(j);
+				if(localEdge.globalEdge == null)
+					continue;
+				Node b = localEdge.beginNode();
+				Node e = localEdge.endNode();
+				if(b == n1 && e == n2 || b == n2 && e == n1)
+					return localEdge.globalEdge;
+			}
+		}
+		return null;
 	}
 	
 	//计算hanging node
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.bcel.generic.ALOAD;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.DALOAD;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.PUSH;
+import org.objectweb.asm.MethodVisitor;
+
+import com.sun.xml.internal.ws.org.objectweb.asm.Opcodes;
+
+import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.core.intf.LocalCoordinate;
+import edu.uta.futureye.function.FMath;
+import edu.uta.futureye.function.SingleVarFunc;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.QuadratureRule;
+
+/**
+ * Tetrahedral volume coordinate r,s,t,u
+ * where u=1-r-s-t
+ *
+ * x = x1*r + x2*s + x3*t + x4*u
+ * y = y1*r + y2*s + y3*t + y4*u
+ * z = z1*r + z2*s + z3*t + z4*u
+ *
+ * Let J = (x_r x_s x_t)
+ *         (y_r y_s y_t)
+ *         (z_r z_s z_t)
+ * then
+ *  (r_x r_y r_z)
+ *  (s_x s_y s_z) = inv(J)
+ *  (t_x t_y t_z)
+ *
+ * The Jacobian is |det(J)| = 6*volume, the weights of the quadrature rules
+ * on the reference tetrahedron sum to 1/6.
+ *
+ */
+public class TetVolumeCoord implements CoordTrans {
+	TetVolumeCoordVar r;
+	TetVolumeCoordVar s;
+	TetVolumeCoordVar t;
+
+	MathFunc x;
+	MathFunc y;
+	MathFunc z;
+	HashMap<String, MathFunc> map;
+
+	//J[i][j] = d(x,y,z)_i/d(r,s,t)_j
+	MathFunc[][] J;
+	MathFunc det;
+	MathFunc jac;
+
+	public TetVolumeCoord(MathFunc x1, MathFunc x2, MathFunc x3, MathFunc x4,
+			MathFunc y1, MathFunc y2, MathFunc y3, MathFunc y4,
+			MathFunc z1, MathFunc z2, MathFunc z3, MathFunc z4) {
+		this.r = new TetVolumeCoordVar("r", 0);
+		this.s = new TetVolumeCoordVar("s", 1);
+		this.t = new TetVolumeCoordVar("t", 2);
+		MathFunc u = 1 - r - s - t;
+
+		this.x = x1*r + x2*s + x3*t + x4*u;
+		this.y = y1*r + y2*s + y3*t + y4*u;
+		this.z = z1*r + z2*s + z3*t + z4*u;
+		this.map = new HashMap<String, MathFunc>();
+		this.map.put("x", x);
+		this.map.put("y", y);
+		this.map.put("z", z);
+
+		this.J = new MathFunc[][] {
+			{x1-x4, x2-x4, x3-x4},
+			{y1-y4, y2-y4, y3-y4},
+			{z1-z4, z2-z4, z3-z4}
+		};
+		this.det = J[0][0]*cofactor(0, 0) + J[0][1]*cofactor(0, 1) + J[0][2]*cofactor(0, 2);
+		this.jac = FMath.abs(det);
+	}
+
+	/**
+	 * Return the cofactor of J[i][j], inv(J)[j][i] = cofactor(i,j)/det(J)
+	 */
+	protected MathFunc cofactor(int i, int j) {
+		int i1 = (i+1)%3, i2 = (i+2)%3;
+		int j1 = (j+1)%3, j2 = (j+2)%3;
+		return J[i1][j1]*J[i2][j2] - J[i1][j2]*J[i2][j1];
+	}
+
+	public MathFunc getCoordR() {
+		return this.r;
+	}
+
+	public MathFunc getCoordS() {
+		return this.s;
+	}
+
+	public MathFunc getCoordT() {
+		return this.t;
+	}
+
+	/**
+	 *
+	 * @return 1-r-s-t
+	 */
+	public MathFunc getCoordU() {
+		return 1 - r - s - t;
+	}
+
+	@Override
+	public MathFunc[] getCoords() {
+		return new MathFunc[]{r, s, t};
+	}
+
+	@Override
+	public MathFunc getJacobian() {
+		return this.jac;
+	}
+
+	@Override
+	public QuadratureRule.Shape getReferenceShape() {
+		return QuadratureRule.Shape.TETRAHEDRON;
+	}
+
+	@Override
+	public HashMap<String, MathFunc> getCoordTransMap() {
+		return this.map;
+	}
+
+	public class TetVolumeCoordVar extends SingleVarFunc implements LocalCoordinate {
+		//index of the coordinate in (r,s,t)
+		int index;
+
+		public TetVolumeCoordVar(String name, int index) {
+			super(name, name);
+			this.index = index;
+		}
+
+		@Override
+		public double apply(double... args) {
+			return args[this.argIdx];
+		}
+
+		@Override
+		public MathFunc diff(String varName) {
+			if(varName.equals(this.varName))
+				return FMath.C1;
+			if(varName.equals("x"))
+				return cofactor(0, index)/det;
+			else if(varName.equals("y"))
+				return cofactor(1, index)/det;
+			else if(varName.equals("z"))
+				return cofactor(2, index)/det;
+			else
+				return FMath.C0;
+		}
+
+		public String getExpr() {
+			return this.varName;
+		}
+
+		public String toString() {
+			return this.varName;
+		}
+
+		@Override
+		public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
+				int argsStartPos, Map<MathFunc, Integer> funcRefsMap,
+				String clsName) {
+			mv.visitIntInsn(Opcodes.ALOAD, argsStartPos);
+			Integer argIdx = argsMap.get(varName);
+			if(argIdx == null) throw new RuntimeException("Index of "+varName+" is null!");
+			mv.visitLdcInsn(argIdx);
+			mv.visitInsn(Opcodes.DALOAD);
+		}
+
+		@Override
+		public InstructionHandle bytecodeGen(String clsName, MethodGen mg,
+				ConstantPoolGen cp, InstructionFactory factory,
+				InstructionList il, Map<String, Integer> argsMap,
+				int argsStartPos, Map<MathFunc, Integer> funcRefsMap) {
+			il.append(new ALOAD(argsStartPos));
+			il.append(new PUSH(cp, argsMap.get(this.getName())));
+			return il.append(new DALOAD());
+		}
+	}
+}
@@ -23,9 +23,11 @@ import org.objectweb.asm.MethodVisitor;
 import com.sun.xml.internal.ws.org.objectweb.asm.Opcodes;
 
 import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.core.intf.LocalCoordinate;
 import edu.uta.futureye.function.FMath;
 import edu.uta.futureye.function.SingleVarFunc;
 import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.QuadratureRule;
 
 /**
  * Triangular area coordinate r,s,t
@@ -112,12 +114,17 @@ public class TriAreaCoord implements CoordTrans {
 		return this.jac;
 	}
 
+	@Override
+	public QuadratureRule.Shape getReferenceShape() {
+		return QuadratureRule.Shape.TRIANGLE;
+	}
+
 	@Override
 	public HashMap<String, MathFunc> getCoordTransMap() {
 		return this.map;
 	}
 
-	public class TriAreaCoordR extends SingleVarFunc {
+	public class TriAreaCoordR extends SingleVarFunc implements LocalCoordinate {
 		public TriAreaCoordR() {
 			super("r", "r");
 		}
@@ -169,7 +176,7 @@ public class TriAreaCoord implements CoordTrans {
 		}
 	}
 
-	public class TriAreaCoordS extends SingleVarFunc {
+	public class TriAreaCoordS extends SingleVarFunc implements LocalCoordinate {
 		public TriAreaCoordS() {
 			super("s", "s");
 		}
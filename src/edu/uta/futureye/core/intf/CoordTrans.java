@@ -8,6 +8,7 @@ package edu.uta.futureye.core.intf;
 import java.util.HashMap;
 
 import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.QuadratureRule;
 
 /**
  * Coordinate transformation
@@ -42,4 +43,12 @@ public interface CoordTrans {
 	 * @return
 	 */
 	public MathFunc getJacobian();
+
+	/**
+	 * Return the shape of the reference element on which the local
+	 * coordinates are defined, which selects the quadrature rules
+	 * (see <tt>QuadratureRule.get()</tt>)
+	 * @return
+	 */
+	public QuadratureRule.Shape getReferenceShape();
 }
@@ -0,0 +1,16 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ * 
+ * 
+ */
+package edu.uta.futureye.core.intf;
+
+/**
+ * Marker of the local coordinate functions of an element, e.g. r,s,t of
+ * <tt>TriAreaCoord</tt>. They take their value from the argument of the same
+ * name like <tt>FX</tt>, so the compiler and the class cache treat them as
+ * variables and compare them by name.
+ * 
+ */
+public interface LocalCoordinate {
+}
@@ -7,12 +7,12 @@ package edu.uta.futureye.function;
 
 import static org.apache.bcel.Constants.ACC_PUBLIC;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.bcel.Constants;
 import org.apache.bcel.generic.AALOAD;
@@ -28,12 +28,13 @@ import org.apache.bcel.generic.InstructionList;
 import org.apache.bcel.generic.MethodGen;
 import org.apache.bcel.generic.PUSH;
 import org.apache.bcel.generic.Type;
-import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
 import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.bytecode.ExprDAG;
+import edu.uta.futureye.bytecode.FuncClassCache;
 import edu.uta.futureye.core.Node;
 import edu.uta.futureye.function.basic.FC;
 import edu.uta.futureye.function.basic.FComposite;
@@ -48,6 +49,7 @@ import edu.uta.futureye.util.BytecodeUtils;
 import edu.uta.futureye.util.ClassGenerator;
 import edu.uta.futureye.util.Constant;
 import edu.uta.futureye.util.FuncClassLoader;
+import edu.uta.futureye.util.LocalVarAllocator;
 
 public abstract class MathFuncBase implements MathFunc, Cloneable { 
 	
@@ -218,8 +220,10 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap,
 			String clsName) {
+		//The field 'funcRefs' is inherited by the generated class 'clsName'
+		//(CompiledFunc or CompiledKernel)
 		mv.visitVarInsn(org.objectweb.asm.Opcodes.ALOAD, 0);
-		mv.visitFieldInsn(Opcodes.GETFIELD, ClassGenerator.getASMName(CompiledFunc.class), "funcRefs", 
+		mv.visitFieldInsn(Opcodes.GETFIELD, clsName, "funcRefs", 
 				org.objectweb.asm.Type.getType(MathFunc[].class).getDescriptor());
 		mv.visitLdcInsn(funcRefsMap.get(this));
 		mv.visitInsn(org.objectweb.asm.Opcodes.AALOAD);
@@ -254,14 +258,32 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 	@Override
 	public CompiledFunc compileWithASM(String ...varNames) {
 
-		boolean writeFile = true;
-		genClassName = getName();
+		String[] argsOrder = varNames;
+		if(argsOrder == null || argsOrder.length == 0)
+			argsOrder = this.getVarNames().toArray(new String[0]);
+		FuncClassCache.Key key = new FuncClassCache.Key(argsOrder, true);
+		key.add(this, true);
+		key.append("result:"+this.compiledArgName);
+		key.append("integrate");
+		String hash = key.getKey();
+		
+		String genClassName = getName();
 		if (genClassName == null || genClassName.length() == 0)
 			genClassName = this.getClass().getSimpleName();
 		genClassName = genClassName
-				+ java.util.UUID.randomUUID().toString().replaceAll("-", "");
+				+ (hash == null ? java.util.UUID.randomUUID().toString().replaceAll("-", "") : hash);
 		try {
-			FuncClassLoader<CompiledFunc> mcl = FuncClassLoader.getInstance(ClassGenerator.class.getClassLoader());
+			//The generated code does not use funcRefs if all the functions are
+			//compiled, so a cached class is used without analyzing the expression
+			if(!key.hasFuncRefs()) {
+				Class<?> c = FuncClassCache.get(hash);
+				if(c != null) {
+					CompiledFunc func = (CompiledFunc) c.newInstance();
+					func.setFuncRefs(new MathFunc[0]);
+					return func;
+				}
+			}
+
 			ClassGenerator cgen = new ClassGenerator(genClassName);
 
 			cgen.startClass(ClassGenerator.getASMName(CompiledFunc.class), null);
@@ -304,24 +326,42 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 				//System.out.println("JIT compileWithASM: "+this.getName()+sb.toString()+" = "+expr);
 			}
 
-			Map<MathFunc, Integer> refsMap = BytecodeUtils.getFuncRefsMap(this);
+			// Merge structurally equal sub-expressions and fold constants. The shared 
+			// sub-expressions are evaluated first and stored in local variables
+			ExprDAG dag = new ExprDAG(argsMap, this);
+			dag.allocLocals((LocalVarAllocator)mv);
+			MathFunc root = dag.rewrite(this);
+			List<MathFunc> refs = new ArrayList<MathFunc>();
+			for(MathFunc f : dag.getRewrittenSharedExprs())
+				BytecodeUtils.postOrder(f, refs);
+			BytecodeUtils.postOrder(root, refs);
+			Map<MathFunc, Integer> refsMap = new HashMap<MathFunc, Integer>();
+			for(int i=0; i<refs.size(); i++) {
+				if(!refsMap.containsKey(refs.get(i)))
+					refsMap.put(refs.get(i), i);
+			}
+			
+			//The same expression has been compiled
+			Class<?> c = FuncClassCache.get(hash);
+			if(c != null) {
+				CompiledFunc func = (CompiledFunc) c.newInstance();
+				func.setFuncRefs(refs.toArray(new MathFunc[0]));
+				return func;
+			}
+			
+			dag.bytecodeGen(mv, argsMap, 2, refsMap, genClassName);
+			root.bytecodeGen(mv, argsMap, 2, refsMap, genClassName); //2 for args: double apply(Element e, Node n, double ...args);
 			
-			if (this.compileToStaticField) {
-				this.bytecodeGen(mv, argsMap, 2, refsMap, genClassName); //2 for args: double apply(Element e, Node n, double ...args);
-				staticFieldName = "var_" + this.getName();
-				FieldVisitor fv = cgen.getClassWriter().visitField(
-						Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC, staticFieldName, "D", "D", 0.0);
-				fv.visitEnd();
+			Integer resultIdx = argsMap.get(this.compiledArgName);
+			if (this.compiledArgName != null && resultIdx != null) {
+				// args[resultIdx] = result; the result is also returned
+				int tmp = ((LocalVarAllocator)mv).newLocal(org.objectweb.asm.Type.DOUBLE_TYPE);
 				mv.visitInsn(Opcodes.DUP2);
-				mv.visitFieldInsn(Opcodes.PUTSTATIC, cgen.getClassName(),
-						staticFieldName, "D");
-				
-				//no need to do this here:
-				//this.compileToStaticField = false; //set to false to indicate that it is already compiled
-				
-				this.isCompiledToStaticFiled = true;
-			} else {
-				this.bytecodeGen(mv, argsMap, 2, refsMap, genClassName); //2 for args: double apply(Element e, Node n, double ...args);
+				mv.visitVarInsn(Opcodes.DSTORE, tmp);
+				mv.visitVarInsn(Opcodes.ALOAD, 2);
+				mv.visitLdcInsn(resultIdx);
+				mv.visitVarInsn(Opcodes.DLOAD, tmp);
+				mv.visitInsn(Opcodes.DASTORE);
 			}
 			mv.visitInsn(retType.getOpcode(Opcodes.IRETURN));
 			
@@ -331,28 +371,17 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 			mv.visitMaxs(-1, -1); // Auto generated
 			cgen.endCode(mv, endMatchesLabel);
 
+			integrateGen(cgen, genClassName, argsOrder, argsMap, refs, refsMap);
+
 			cgen.endClass();
 
 			byte[] bcode = cgen.dump();
-			if (writeFile) {
-				File dir = new File("gen_classes");
-				if(!dir.exists()) {
-					dir.mkdir();
-				}
-
-				FileOutputStream fos = new FileOutputStream("gen_classes/"+genClassName + ".class");
-				fos.write(bcode);
-				fos.close();
-			}
-
-			Class<?> c = mcl.defineClassForName(null, bcode);
+			c = FuncClassCache.define(hash, bcode);
 
 			CompiledFunc func = (CompiledFunc) c.newInstance();
 
 			// Set funcRefs field in CompiledFunc
-			List<MathFunc> list = new ArrayList<MathFunc>();
-			BytecodeUtils.postOrder(this, list);
-			func.setFuncRefs(list.toArray(new MathFunc[0]));
+			func.setFuncRefs(refs.toArray(new MathFunc[0]));
 
 			return func;
 		} catch (Exception e) {
@@ -361,19 +390,168 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 		}
 	}
 
-	// Indicate whether the result of the expression is needed to be assigned to a static field
-	protected boolean compileToStaticField = false;
-	// This flag is automatically set to false when 'compileToStaticField' is set to true and
-	// it is set to true after the first time of compilation so the expressions that contain this
-	// expression will refer the static field thereafter
-	protected boolean isCompiledToStaticFiled = false;
-	protected String genClassName;
-	protected String staticFieldName;
+	//Local coordinates of the quadrature points in the order they are
+	//stored in the arguments array (see CompiledFunc.integrate())
+	protected static final String[] QUADRATURE_COORDS = {"r", "s", "t", "u"};
+
+	/**
+	 * Generate method <tt>integrate()</tt> of CompiledFunc:
+	 * <p><blockquote><pre>
+	 * double integrate(AssembleParam ap, double[] args, int argsStart, double[] points, double[] weights) {
+	 *     if(argsStart != {index of r} || points.length != dim*weights.length)
+	 *         return super.integrate(ap, args, argsStart, points, weights);
+	 *     //evaluate loop-invariant sub-expressions
+	 *     double local0 = ...;
+	 *     double sum = 0.0;
+	 *     for(int p=0, q=0; p&lt;weights.length; p++, q+=dim) {
+	 *         args[argsStart] = points[q]; ... args[argsStart+dim-1] = points[q+dim-1];
+	 *         sum += weights[p]*(...);
+	 *     }
+	 *     return sum;
+	 * }
+	 * </pre></blockquote>
+	 * where <tt>dim</tt> is the number of local coordinates r,s,t that follow
+	 * each other in <tt>argsOrder</tt>. Nothing is generated if there is no
+	 * local coordinate r in <tt>argsOrder</tt>.
+	 */
+	protected void integrateGen(ClassGenerator cgen, String genClassName, String[] argsOrder,
+			Map<String, Integer> argsMap, List<MathFunc> refs, Map<MathFunc, Integer> refsMap) {
+		Integer coordStart = argsMap.get(QUADRATURE_COORDS[0]);
+		if(coordStart == null)
+			return;
+		Set<String> loopVars = new HashSet<String>();
+		int dim = 0;
+		while(dim < QUADRATURE_COORDS.length && coordStart+dim < argsOrder.length &&
+				QUADRATURE_COORDS[dim].equals(argsOrder[coordStart+dim])) {
+			loopVars.add(QUADRATURE_COORDS[dim]);
+			dim++;
+		}
+
+		final int apIdx = 1, argsIdx = 2, argsStartIdx = 3, pointsIdx = 4, weightsIdx = 5;
+		org.objectweb.asm.Type paramAP = org.objectweb.asm.Type.getType(AssembleParam.class);
+		org.objectweb.asm.Type paramArray = org.objectweb.asm.Type.getType(double[].class);
+		String desc = org.objectweb.asm.Type.getMethodDescriptor(org.objectweb.asm.Type.DOUBLE_TYPE,
+				paramAP, paramArray, org.objectweb.asm.Type.INT_TYPE, paramArray, paramArray);
+		LocalVarAllocator mv = (LocalVarAllocator)cgen.startMethod(Opcodes.ACC_PUBLIC, "integrate", desc);
+		Label startLabel = new Label();
+		Label endLabel = new Label();
+		cgen.startCode(mv, startLabel);
+
+		ExprDAG dag = new ExprDAG(argsMap, this);
+		dag.hoistInvariants(loopVars);
+		dag.allocLocals(mv);
+		MathFunc root = dag.rewrite(this);
+		//The same functions which are not compiled as in apply(), add any other one
+		for(MathFunc f : dag.getRewrittenSharedExprs())
+			BytecodeUtils.postOrder(f, refs);
+		BytecodeUtils.postOrder(root, refs);
+		for(int i=0; i<refs.size(); i++) {
+			if(!refsMap.containsKey(refs.get(i)))
+				refsMap.put(refs.get(i), i);
+		}
+		int nPointsIdx = mv.newLocal(org.objectweb.asm.Type.INT_TYPE);
+		int pIdx = mv.newLocal(org.objectweb.asm.Type.INT_TYPE);
+		int qIdx = mv.newLocal(org.objectweb.asm.Type.INT_TYPE);
+		int sumIdx = mv.newLocal(org.objectweb.asm.Type.DOUBLE_TYPE);
+
+		//if(argsStart != coordStart || points.length != dim*weights.length)
+		//    return super.integrate(ap, args, argsStart, points, weights);
+		Label fast = new Label();
+		Label generic = new Label();
+		mv.visitVarInsn(Opcodes.ILOAD, argsStartIdx);
+		mv.visitLdcInsn(coordStart);
+		mv.visitJumpInsn(Opcodes.IF_ICMPNE, generic);
+		mv.visitVarInsn(Opcodes.ALOAD, pointsIdx);
+		mv.visitInsn(Opcodes.ARRAYLENGTH);
+		mv.visitVarInsn(Opcodes.ALOAD, weightsIdx);
+		mv.visitInsn(Opcodes.ARRAYLENGTH);
+		mv.visitLdcInsn(dim);
+		mv.visitInsn(Opcodes.IMUL);
+		mv.visitJumpInsn(Opcodes.IF_ICMPEQ, fast);
+		mv.visitLabel(generic);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ALOAD, apIdx);
+		mv.visitVarInsn(Opcodes.ALOAD, argsIdx);
+		mv.visitVarInsn(Opcodes.ILOAD, argsStartIdx);
+		mv.visitVarInsn(Opcodes.ALOAD, pointsIdx);
+		mv.visitVarInsn(Opcodes.ALOAD, weightsIdx);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ClassGenerator.getASMName(CompiledFunc.class),
+				"integrate", desc, false);
+		mv.visitInsn(Opcodes.DRETURN);
+		mv.visitLabel(fast);
+
+		//Loop-invariant sub-expressions
+		dag.bytecodeGenInvariants(mv, argsMap, argsIdx, refsMap, genClassName);
+
+		//double sum = 0.0; int nPoints = weights.length;
+		mv.visitInsn(Opcodes.DCONST_0);
+		mv.visitVarInsn(Opcodes.DSTORE, sumIdx);
+		mv.visitVarInsn(Opcodes.ALOAD, weightsIdx);
+		mv.visitInsn(Opcodes.ARRAYLENGTH);
+		mv.visitVarInsn(Opcodes.ISTORE, nPointsIdx);
+		//for(int p=0, q=0; p<nPoints; p++, q+=dim)
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, pIdx);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, qIdx);
+		Label loopLabel = new Label();
+		Label loopEndLabel = new Label();
+		mv.visitLabel(loopLabel);
+		mv.visitVarInsn(Opcodes.ILOAD, pIdx);
+		mv.visitVarInsn(Opcodes.ILOAD, nPointsIdx);
+		mv.visitJumpInsn(Opcodes.IF_ICMPGE, loopEndLabel);
+		//args[argsStart+d] = points[q+d]
+		for(int d=0; d<dim; d++) {
+			mv.visitVarInsn(Opcodes.ALOAD, argsIdx);
+			mv.visitLdcInsn(coordStart+d);
+			mv.visitVarInsn(Opcodes.ALOAD, pointsIdx);
+			mv.visitVarInsn(Opcodes.ILOAD, qIdx);
+			if(d > 0) {
+				mv.visitLdcInsn(d);
+				mv.visitInsn(Opcodes.IADD);
+			}
+			mv.visitInsn(Opcodes.DALOAD);
+			mv.visitInsn(Opcodes.DASTORE);
+		}
+		//Shared sub-expressions which depend on the point
+		dag.bytecodeGen(mv, argsMap, argsIdx, refsMap, genClassName);
+		//sum += weights[p]*(...)
+		mv.visitVarInsn(Opcodes.DLOAD, sumIdx);
+		mv.visitVarInsn(Opcodes.ALOAD, weightsIdx);
+		mv.visitVarInsn(Opcodes.ILOAD, pIdx);
+		mv.visitInsn(Opcodes.DALOAD);
+		root.bytecodeGen(mv, argsMap, argsIdx, refsMap, genClassName);
+		mv.visitInsn(Opcodes.DMUL);
+		mv.visitInsn(Opcodes.DADD);
+		mv.visitVarInsn(Opcodes.DSTORE, sumIdx);
+		mv.visitIincInsn(pIdx, 1);
+		mv.visitIincInsn(qIdx, dim);
+		mv.visitJumpInsn(Opcodes.GOTO, loopLabel);
+		mv.visitLabel(loopEndLabel);
+		mv.visitVarInsn(Opcodes.DLOAD, sumIdx);
+		mv.visitInsn(Opcodes.DRETURN);
+
+		mv.visitLocalVariable("this", "L" + genClassName + ";", null, startLabel, endLabel, 0);
+		mv.visitLocalVariable("ap", paramAP.getDescriptor(), null, startLabel, endLabel, apIdx);
+		mv.visitLocalVariable("args", paramArray.getDescriptor(), null, startLabel, endLabel, argsIdx);
+		mv.visitLocalVariable("argsStart", "I", null, startLabel, endLabel, argsStartIdx);
+		mv.visitLocalVariable("points", paramArray.getDescriptor(), null, startLabel, endLabel, pointsIdx);
+		mv.visitLocalVariable("weights", paramArray.getDescriptor(), null, startLabel, endLabel, weightsIdx);
+		mv.visitMaxs(-1, -1); // Auto generated
+		cgen.endCode(mv, endLabel);
+	}
+
+	// Name of the argument which holds the result of the expression
+	protected String compiledArgName;
+	
+	@Override
+	public void compileToArg(String argName) {
+		this.compiledArgName = argName;
+	}
 	
 	@Override
-	public void compileToStaticField(boolean flag) {
-		this.compileToStaticField = flag;
-		this.isCompiledToStaticFiled = false;
+	public String getCompiledArgName() {
+		return this.compiledArgName;
 	}
 
 	//////////////Operator overloading support through Java-OO//////////////////
@@ -504,6 +682,8 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 	}
 	
 	public MathFunc negate() {
+		if(this.isConstant())
+			return new FC(-this.apply());
 		return new FSub(FMath.C0, this);
 	};
 	
@@ -35,10 +35,12 @@ import edu.uta.futureye.function.VariableArray;
 import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.lib.assembler.AssembleParam;
 import edu.uta.futureye.test.BytecodeTest;
+import edu.uta.futureye.util.ArgsToLocalsAdapter;
 import edu.uta.futureye.util.BytecodeConst;
 import edu.uta.futureye.util.BytecodeUtils;
 import edu.uta.futureye.util.FuncClassLoader;
 import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.LocalVarAllocator;
 import edu.uta.futureye.util.Utils;
 
 /**
@@ -444,8 +446,22 @@ public class FComposite extends MultiVarFunc {
 		if(this.isOuterVariablesActive) {
 			fOuter.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
 		} else {
-			//TODO find a way to determine aryArgOuterLVTIdx and put the variable in LVT
-			int aryArgOuterLVTIdx = 3;//???
+			//Allocate a free local variable for the array if possible
+			int aryArgOuterLVTIdx = 3;
+			if(mv instanceof LocalVarAllocator) {
+				LocalVarAllocator lva = (LocalVarAllocator)mv;
+				aryArgOuterLVTIdx = lva.newLocal(
+						org.objectweb.asm.Type.getType(double[].class));
+				//Pass the arguments in local variables instead of a new array 
+				//if fOuter only reads them one by one, so nothing is allocated
+				ArgsToLocalsAdapter probe = new ArgsToLocalsAdapter(null, 
+						aryArgOuterLVTIdx, null, lva.getNextLocal());
+				fOuter.bytecodeGen(probe, fOuter.getArgIdxMap(), aryArgOuterLVTIdx, funcRefsMap, clsName);
+				if(probe.isReplaced()) {
+					bytecodeGenLocals(lva, aryArgOuterLVTIdx, argsMap, argsStartPos, funcRefsMap, clsName);
+					return;
+				}
+			}
 			
 			//define a local variable 
 			//double[] aryArgOuter = new double[size];
@@ -456,31 +472,59 @@ public class FComposite extends MultiVarFunc {
 			//int index = 0;
 			Map<String, Integer> fOuterArgMap = fOuter.getArgIdxMap();
 			for(String name : fOuter.getVarNames()) {
-				MathFunc f = fInners.get(name);
 				//aryArgOuter[argIdx] = {value of the argument}
 				mv.visitVarInsn(Opcodes.ALOAD, aryArgOuterLVTIdx);
 				mv.visitLdcInsn(fOuterArgMap.get(name));
-				if(f != null) {
-					List<String> args = f.getVarNames();
-					HashMap<String, Integer> fArgsMap = new HashMap<String, Integer>();
-					for(int i=0; i<args.size(); i++) {
-						fArgsMap.put(args[i], argsMap.get(args[i]));
-					}
-					f.bytecodeGen(mv, fArgsMap, argsStartPos, funcRefsMap, clsName);
-				} else {
-					//f(r,x,y) = ((x*x + y*y)*-2.0 + 36.0)*r
-					//fInner = {x=..., y=...} //no r
-					//mv.visitLdcInsn(0.0); // //pad 0.0 for undefined variables in fInners map
-					//get from 'argsMap' seems correct?
-					mv.visitVarInsn(Opcodes.ALOAD, argsStartPos);
-					mv.visitLdcInsn(argsMap.get(name));
-					mv.visitInsn(Opcodes.DALOAD);
-				}
+				innerBytecodeGen(mv, name, argsMap, argsStartPos, funcRefsMap, clsName);
 				mv.visitInsn(Opcodes.DASTORE);
 			}
 			// Pass the generated double array to fOuter by specifying the start position to 'aryArgOuterLVTIdx'
 			fOuter.bytecodeGen(mv, fOuter.getArgIdxMap(), aryArgOuterLVTIdx, funcRefsMap, clsName);
 		}
 	}
+	
+	/**
+	 * Push the value of the argument <tt>name</tt> of fOuter
+	 */
+	protected void innerBytecodeGen(MethodVisitor mv, String name, Map<String, Integer> argsMap,
+			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
+		MathFunc f = fInners.get(name);
+		if(f != null) {
+			List<String> args = f.getVarNames();
+			HashMap<String, Integer> fArgsMap = new HashMap<String, Integer>();
+			for(int i=0; i<args.size(); i++) {
+				fArgsMap.put(args[i], argsMap.get(args[i]));
+			}
+			f.bytecodeGen(mv, fArgsMap, argsStartPos, funcRefsMap, clsName);
+		} else {
+			//f(r,x,y) = ((x*x + y*y)*-2.0 + 36.0)*r
+			//fInner = {x=..., y=...} //no r
+			//mv.visitLdcInsn(0.0); // //pad 0.0 for undefined variables in fInners map
+			//get from 'argsMap' seems correct?
+			mv.visitVarInsn(Opcodes.ALOAD, argsStartPos);
+			mv.visitLdcInsn(argsMap.get(name));
+			mv.visitInsn(Opcodes.DALOAD);
+		}
+	}
+	
+	/**
+	 * Store the arguments of fOuter in local variables and generate fOuter 
+	 * with the reads of the (virtual) array <tt>aryArgOuterLVTIdx</tt> replaced 
+	 * by the local variables
+	 */
+	protected void bytecodeGenLocals(LocalVarAllocator mv, int aryArgOuterLVTIdx, 
+			Map<String, Integer> argsMap, int argsStartPos, 
+			Map<MathFunc, Integer> funcRefsMap, String clsName) {
+		Map<String, Integer> fOuterArgMap = fOuter.getArgIdxMap();
+		int[] locals = new int[fOuter.getVarNames().size()];
+		for(String name : fOuter.getVarNames()) {
+			int idx = mv.newLocal(org.objectweb.asm.Type.DOUBLE_TYPE);
+			locals[fOuterArgMap.get(name)] = idx;
+			innerBytecodeGen(mv, name, argsMap, argsStartPos, funcRefsMap, clsName);
+			mv.visitVarInsn(Opcodes.DSTORE, idx);
+		}
+		fOuter.bytecodeGen(new ArgsToLocalsAdapter(mv, aryArgOuterLVTIdx, locals, mv.getNextLocal()), 
+				fOuterArgMap, aryArgOuterLVTIdx, funcRefsMap, clsName);
+	}
 
 }
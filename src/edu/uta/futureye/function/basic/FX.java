@@ -105,15 +105,9 @@ public class FX extends MathFuncBase {
 	@Override
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
-		//No need to compile to static field due to performance consideration
-//		if (this.compileToStaticField && !this.isCompiledToStaticFiled) {
-//			mv.visitFieldInsn(Opcodes.GETSTATIC, this.genClassName, this.staticFieldName, "D");
-//			this.isCompiledToStaticFiled = true;
-//		} else {
-			mv.visitIntInsn(Opcodes.ALOAD, argsStartPos);
-			mv.visitLdcInsn(argsMap.get(varName));
-			mv.visitInsn(Opcodes.DALOAD);
-//		}
+		mv.visitIntInsn(Opcodes.ALOAD, argsStartPos);
+		mv.visitLdcInsn(argsMap.get(varName));
+		mv.visitInsn(Opcodes.DALOAD);
 	}
 	
 	@Override
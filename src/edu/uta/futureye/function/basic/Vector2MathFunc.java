@@ -8,16 +8,15 @@ import edu.uta.futureye.algebra.intf.Vector;
 import edu.uta.futureye.util.Tools;
 import edu.uta.futureye.core.Element;
 import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.MeshTransfer;
 import edu.uta.futureye.core.Node;
 import edu.uta.futureye.core.TriAreaCoord;
-import edu.uta.futureye.core.geometry.Point;
 import edu.uta.futureye.core.intf.CoordTrans;
 import edu.uta.futureye.function.MultiVarFunc;
 import edu.uta.futureye.function.Variable;
 import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.lib.assembler.AssembleParam;
 import edu.uta.futureye.util.FutureyeException;
-import edu.uta.futureye.util.Utils;
 
 /**
  * <blockquote><pre>
@@ -191,23 +190,18 @@ public class Vector2MathFunc extends MultiVarFunc {
 					else
 						return this.defaultFunction.apply(v);
 				}
-				double[] f = new double[e.nodes.size()];
-				for(int i=1;i<=e.nodes.size();i++) {
-					f[i-1] = vec.get(e.nodes.at(i).globalIndex);
+				//三角形、四边形（双线性）和四面体单元
+				int[] idx = new int[4];
+				double[] w = new double[4];
+				int n = MeshTransfer.computeWeights(e, coord, idx, w);
+				double interpValue = 0.0;
+				for(int i=0;i<n;i++) {
+					interpValue += w[i]*vec.get(idx[i]);
 				}
-				//二维四边形单元
-				if(e.vertices().size() == 4 && coord.length==2) {
-					double[] coef = Utils.computeBilinearFunctionCoef(e.nodes.toArray(new Point[0]), f);
-					//f(x,y) = a1 + a2*x + a3*y + a4*x*y
-					double x = coord[0];
-					double y = coord[1];
-					double interpValue = coef[0] + coef[1]*x + coef[2]*y + coef[3]*x*y;
-					if(enableCache && index > 0) {
-						cachedValueMap.put(index, interpValue);
-					}
-					return interpValue;
+				if(enableCache && index > 0) {
+					cachedValueMap.put(index, interpValue);
 				}
-				throw new FutureyeException("Error: Unsported element type:"+e.toString());
+				return interpValue;
 			} else {
 				return vec.get(index);
 			}
@@ -355,16 +355,30 @@ public interface MathFunc {
 	CompiledFunc compileWithASM(String ...varNames);
 	
 	/**
-	 * Set the flag so that the evaluation results of this expression 
-	 * is compiled to a static filed of the generated class. Any expression
-	 * that contains this expression will access the static filed instead for
-	 * evaluation.
+	 * Set the name of the argument that holds the evaluation result of this
+	 * expression. If <tt>argName</tt> is in the argument list of the compiled
+	 * function of this expression, the compiled function stores the result to
+	 * that argument (args[i]) before returning. Any compiled expression that 
+	 * contains this expression and has <tt>argName</tt> in its argument list
+	 * loads args[i] instead of evaluating this expression.
+	 * <p>
+	 * The value is passed through the arguments array owned by the caller,
+	 * so compiled functions keep no state between calls and can be shared 
+	 * by threads as long as each thread uses its own arguments array.
+	 * 
+	 * The default is null
 	 * 
-	 * The default flag is false
+	 * @param argName
+	 */
+	void compileToArg(String argName);
+	
+	/**
+	 * Return the name of the argument that holds the evaluation result of this
+	 * expression, see <tt>compileToArg()</tt>
 	 * 
-	 * @param flag
+	 * @return
 	 */
-	void compileToStaticField(boolean flag);
+	String getCompiledArgName();
 	
 	//////////////Operator overloading support through Java-OO//////////////////
 	/**
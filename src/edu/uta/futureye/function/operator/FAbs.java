@@ -60,12 +60,8 @@ public class FAbs extends FUniaryOp {
 	@Override
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
-		if (this.compileToStaticField && this.isCompiledToStaticFiled) {
-			mv.visitFieldInsn(Opcodes.GETSTATIC, this.genClassName, this.staticFieldName, "D");
-		} else {
-			arg.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-			mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "abs", "(D)D", false);
-		}
+		arg.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "abs", "(D)D", false);
 	}
 
 	@Override
@@ -57,12 +57,8 @@ public class FCos extends FUniaryOp {
 	@Override
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
-		if (this.compileToStaticField && this.isCompiledToStaticFiled) {
-			mv.visitFieldInsn(Opcodes.GETSTATIC, this.genClassName, this.staticFieldName, "D");
-		} else {
-			arg.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-			mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "cos", "(D)D", false);
-		}
+		arg.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "cos", "(D)D", false);
 	}
 
 	@Override
@@ -89,12 +89,8 @@ public class FDiv extends FBinaryOp {
 	@Override
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
-		if (this.compileToStaticField && this.isCompiledToStaticFiled) {
-			mv.visitFieldInsn(Opcodes.GETSTATIC, this.genClassName, this.staticFieldName, "D");
-		} else {
-			arg1.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-			arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-			mv.visitInsn(Opcodes.DDIV);
-		}
+		arg1.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+		arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+		mv.visitInsn(Opcodes.DDIV);
 	}
 }
@@ -93,12 +93,8 @@ public class FMul extends FBinaryOp {
 	@Override
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
-		if (this.compileToStaticField && this.isCompiledToStaticFiled) {
-			mv.visitFieldInsn(Opcodes.GETSTATIC, this.genClassName, this.staticFieldName, "D");
-		} else {
-			arg1.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-			arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-			mv.visitInsn(Opcodes.DMUL);
-		}
+		arg1.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+		arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+		mv.visitInsn(Opcodes.DMUL);
 	}
 }
@@ -15,6 +15,7 @@ import edu.uta.futureye.function.Variable;
 import edu.uta.futureye.function.VariableArray;
 import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.lib.assembler.AssembleParam;
+import edu.uta.futureye.util.FutureyeException;
 
 /**
  * Function Operator FOIntegrate: 
@@ -157,7 +158,7 @@ public class FOIntegrate{
 				rlt += triW[i]*integrand.apply(v);
 			}
 		} else {
-			System.out.println("ERROR: intOnTriangleRefElement() Not supported order = "+order);
+			throw new FutureyeException("intOnTriangleRefElement(): Not supported order = "+order);
 		}
 		return rlt;
 	}
@@ -228,7 +229,7 @@ public class FOIntegrate{
 				rlt += h5[i]*integrand.apply(v);
 			}
 		} else {
-			System.out.println("ERROR: intOnLinearRefElement() Not supported order = "+order);
+			throw new FutureyeException("intOnLinearRefElement(): Not supported order = "+order);
 		}
 		return rlt;
 	}
@@ -296,7 +297,7 @@ public class FOIntegrate{
 			for(int i=0;i<rltAry.length;i++) 
 				rlt += wa[i]*rltAry[i];
 		} else {
-			System.out.println("ERROR: intOnRectangleRefElement() Not supported order = "+order);
+			throw new FutureyeException("intOnRectangleRefElement(): Not supported order = "+order);
 		}
 		
 		return rlt;
@@ -334,7 +335,7 @@ public class FOIntegrate{
 				rlt += h2*integrand.apply(v);
 			}
 		} else {
-			System.out.println("ERROR: intOnTetrahedraRefElement() Not supported order = "+order);
+			throw new FutureyeException("intOnTetrahedraRefElement(): Not supported order = "+order);
 		}
 		
 		return rlt;
@@ -478,159 +479,224 @@ public class FOIntegrate{
 			double[] rltAry = integrand.applyAll(valAry,new HashMap<Object, Object>());
 			for(int i=0;i<rltAry.length;i++) 
 				rlt += wa[i]*rltAry[i];
+		} else {
+			throw new FutureyeException("intOnHexahedraRefElement(): Not supported order = "+order);
 		}
 		return rlt;
 	}
 	
+	//Quadrature rules of the compiled integrands {points, weights}, indexed by order
+	static double[][][] lineQuadrature = new double[6][][];
+	static double[][][] triangleQuadrature = new double[6][][];
+	static double[][][] rectangleQuadrature = new double[6][][];
+	static {
+		lineQuadrature[1] = new double[][] { {0.0}, {2.0} };
+		rectangleQuadrature[1] = new double[][] { {0.0, 0.0}, {4.0} };
+		for(int order=2; order<=5; order++) {
+			lineQuadrature[order] = getLinearRefElementQuadrature(order);
+			triangleQuadrature[order] = getTriangleRefElementQuadrature(order);
+			rectangleQuadrature[order] = getRectangleRefElementQuadrature(order);
+		}
+	}
+	
+	/**
+	 * Integrate the compiled integrand on the triangle reference element. All the
+	 * quadrature points are evaluated in one call of <tt>CompiledFunc.integrate()</tt>
+	 * 
+	 * @param integrand
+	 * @param ap
+	 * @param params - arguments of the integrand
+	 * @param paramsStart - start position of the local coordinates (r,s,t) in params
+	 * @param order - 2,3,4,5
+	 * @return
+	 */
 	public static double intOnTriangleRefElement(CompiledFunc integrand,
 			AssembleParam ap, double[] params, int paramsStart, 
 			int order) {
-		double rlt = 0.0;
-		if(order == 2) {
-			params[paramsStart] = 0.333333333333333;
-			params[paramsStart+1] = 0.333333333333333;
-			params[paramsStart+2] = 0.333333333333333;
-			rlt = 0.5*integrand.apply(ap, params);
-		} else if(order == 3) {
-			params[paramsStart] = 0.5; params[paramsStart+1] = 0.5; params[paramsStart+2] = 0.0; 
-			double pv1 = integrand.apply(ap, params);
-			params[paramsStart] = 0.0; params[paramsStart+1] = 0.5; params[paramsStart+2] = 0.5; 
-			double pv2 = integrand.apply(ap, params);
-			params[paramsStart] = 0.5; params[paramsStart+1] = 0.0; params[paramsStart+2] = 0.5; 
-			double pv3 = integrand.apply(ap, params);
-			rlt = 0.5*0.333333333333333*(pv1 + pv2 + pv3);
-		} else if(order == 4) {
-			double w123 = 25.0/48.0;
-			double w4 = -27.0/48.0;
-			
-			params[paramsStart] = 0.6; params[paramsStart+1] = 0.2; params[paramsStart+2] = 0.2; 
-			double pv1 = integrand.apply(ap, params);
-			params[paramsStart] = 0.2; params[paramsStart+1] = 0.6; params[paramsStart+2] = 0.2; 
-			double pv2 = integrand.apply(ap, params);
-			params[paramsStart] = 0.2; params[paramsStart+1] = 0.2; params[paramsStart+2] = 0.6; 
-			double pv3 = integrand.apply(ap, params);
-			params[paramsStart] = 0.333333333333333; params[paramsStart+1] = 0.333333333333333; params[paramsStart+2] = 0.333333333333333; 
-			double pv4 = 0.5*integrand.apply(ap, params);
-			
-			rlt = 0.5*w123*(pv1 + pv2 + pv3) + w4*pv4;
-		} else if(order == 5) {
-			for(int i=0;i<7;i++) {
-				params[paramsStart]   = triR[i]; 
-				params[paramsStart+1] = triS[i]; 
-				params[paramsStart+2] = 1.0-triR[i]-triS[i];
-				rlt += triW[i]*integrand.apply(ap, params);
-			}
-		}
-		return rlt;
+		if(order < 2 || order > 5)
+			throw new FutureyeException("intOnTriangleRefElement(): Not supported order = "+order);
+		double[][] q = triangleQuadrature[order];
+		return integrand.integrate(ap, params, paramsStart, q[0], q[1]);
 	}
 	
 	/**
 	 * Integrate on 2D rectangle reference element [-1,1]*[-1,1]
-	 * @param element TODO
-	 * @param node TODO
+	 * 
+	 * @param integrand
+	 * @param ap
+	 * @param params - arguments of the integrand
+	 * @param paramsStart - start position of the local coordinates (r,s) in params
+	 * @param order - 1,2,3,4,5
+	 * @return
 	 */
 	public static double intOnRectangleRefElement(CompiledFunc integrand,
 			AssembleParam ap, double[] params, int paramsStart,
 			int order) {
-		double a1_1 = 0.0;
-		double h1_1 = 4.0;
-		double a2 = 0.577350269189626;
-		//double h2 = 1.0;
-		
-		double rlt = 0.0;
-		if(order == 1) {
-			params[paramsStart] = a1_1;
-			params[paramsStart+1] = a1_1;
-			rlt += h1_1*integrand.apply(ap, params);
-		} else if(order == 2) {
-			params[paramsStart] = a2; 
-			params[paramsStart+1] = a2;
-			rlt += integrand.apply(ap, params);
-			params[paramsStart] = -a2; 
-			params[paramsStart+1] = a2;
-			rlt += integrand.apply(ap, params);
-			params[paramsStart] = a2; 
-			params[paramsStart+1] = -a2;
-			rlt += integrand.apply(ap, params);
-			params[paramsStart] = -a2; 
-			params[paramsStart+1] = -a2;
-			rlt += integrand.apply(ap, params);
-		} else if(order == 5) {
-			for(int i=0;i<order;i++) {
-				for(int j=0;j<order;j++) {
-					params[paramsStart] = a5[i]; 
-					params[paramsStart+1] = a5[j];
-					rlt += h5[i]*h5[j]*integrand.apply(ap, params);
-				}
-			}
-		} else {
-			System.out.println("ERROR: intOnRectangleRefElement() Not supported order = "+order);
+		if(order < 1 || order > 5) {
+			throw new FutureyeException("intOnRectangleRefElement(): Not supported order = "+order);
 		}
-		
-		return rlt;
+		double[][] q = rectangleQuadrature[order];
+		return integrand.integrate(ap, params, paramsStart, q[0], q[1]);
 	}
 
+	/**
+	 * Integrate on 1D line segment reference element [-1,1]
+	 * 
+	 * @param integrand
+	 * @param ap
+	 * @param params - arguments of the integrand
+	 * @param paramsStart - start position of the local coordinate r in params
+	 * @param order - 1,2,3,4,5
+	 * @return
+	 */
 	public static double intOnLinearRefElement(CompiledFunc integrand, 
 			AssembleParam ap, double[] params, int paramsStart,
 			int order) {
-		double a1_1 = 0.0;
-		double h1_1 = 2.0;
-		
-		double a2_1 = - 0.577350269189626;
-		double a2_2 = - a2_1;
-		double h2_1 = 1.0;
-		double h2_2 = h2_1;
-		
-		double a3_1 = - 0.774596669241483;
-		double a3_2 = 0.0;
-		double a3_3 = - a3_1;
-		double h3_1 = 0.555555555555556;
-		double h3_2 = 0.888888888888889;
-		double h3_3 = h3_1;
-		
-		double a4_1 = - 0.861136311594953;
-		double a4_2 = - 0.339981043584856;
-		double a4_3 = - a4_2;
-		double a4_4 = - a4_1;
-		double h4_1 = 0.347854845137454;
-		double h4_2 = 0.652145154862546;
-		double h4_3 = h4_2;
-		double h4_4 = h4_1;
-		
-		double rlt = 0.0;
-		if(order == 1) {
-			params[paramsStart] = a1_1;
-			rlt += h1_1*integrand.apply(ap, params);
-		} else if(order == 2) {
-			params[paramsStart] = a2_1;
-			rlt += h2_1*integrand.apply(ap, params);
-			params[paramsStart] = a2_2;
-			rlt += h2_2*integrand.apply(ap, params);
+		if(order < 1 || order > 5) {
+			throw new FutureyeException("intOnLinearRefElement(): Not supported order = "+order);
+		}
+		double[][] q = lineQuadrature[order];
+		return integrand.integrate(ap, params, paramsStart, q[0], q[1]);
+	}
+
+	/**
+	 * Integrate on 3D tetrahedron reference element with volume coordinates (r,s,t,u).
+	 * The weights sum to 1/6 (the volume of the reference element), so the Jacobian
+	 * in the integrand should be |det(J)| = 6*volume, see TetVolumeCoord
+	 *
+	 * @param integrand
+	 * @param ap
+	 * @param params - arguments of the integrand
+	 * @param paramsStart - start position of the local coordinates (r,s,t,u) in params
+	 * @param order - 1 (1 point), 2 (4 points)
+	 * @return
+	 */
+	public static double intOnTetrahedraRefElement(CompiledFunc integrand,
+			AssembleParam ap, double[] params, int paramsStart,
+			int order) {
+		if(order < 1 || order > 2) {
+			throw new FutureyeException("intOnTetrahedraRefElement(): Not supported order = "+order);
+		}
+		return intOnRefElement(integrand, ap, params, paramsStart,
+				QuadratureRule.get(QuadratureRule.Shape.TETRAHEDRON, order));
+	}
+
+	/**
+	 * Integrate on 3D hexahedron reference element [-1,1]*[-1,1]*[-1,1]
+	 *
+	 * @param integrand
+	 * @param ap
+	 * @param params - arguments of the integrand
+	 * @param paramsStart - start position of the local coordinates (r,s,t) in params
+	 * @param order - number of Gauss points in each direction, 1,2,3,4,5
+	 * @return
+	 */
+	public static double intOnHexahedraRefElement(CompiledFunc integrand,
+			AssembleParam ap, double[] params, int paramsStart,
+			int order) {
+		if(order < 1 || order > 5) {
+			throw new FutureyeException("intOnHexahedraRefElement(): Not supported order = "+order);
+		}
+		return intOnRefElement(integrand, ap, params, paramsStart,
+				QuadratureRule.get(QuadratureRule.Shape.HEXAHEDRON, 2*order-1));
+	}
+
+	/**
+	 * Integrate the compiled integrand on the reference element of <tt>rule</tt>
+	 *
+	 * @param integrand
+	 * @param ap
+	 * @param params - arguments of the integrand
+	 * @param paramsStart - start position of the local coordinates in params
+	 * @param rule - see QuadratureRule.get()
+	 * @return
+	 */
+	public static double intOnRefElement(CompiledFunc integrand,
+			AssembleParam ap, double[] params, int paramsStart,
+			QuadratureRule rule) {
+		return integrand.integrate(ap, params, paramsStart, rule.getPoints(), rule.getWeights());
+	}
+
+
+	/**
+	 * Return the quadrature points and weights on the 1D line segment reference element [-1,1]
+	 * which are used in the compiled kernel (see CompiledKernel)
+	 * 
+	 * @param order
+	 * @return {points, weights}
+	 */
+	public static double[][] getLinearRefElementQuadrature(int order) {
+		if(order == 2) {
+			return new double[][] { a2.clone(), h2.clone() };
 		} else if(order == 3) {
-			params[paramsStart] = a3_1;
-			rlt += h3_1*integrand.apply(ap, params);
-			params[paramsStart] = a3_2;
-			rlt += h3_2*integrand.apply(ap, params);
-			params[paramsStart] = a3_3;
-			rlt += h3_3*integrand.apply(ap, params);
+			return new double[][] { a3.clone(), h3.clone() };
 		} else if(order == 4) {
-			params[paramsStart] = a4_1;
-			rlt += h4_1*integrand.apply(ap, params);
-			params[paramsStart] = a4_2;
-			rlt += h4_2*integrand.apply(ap, params);
-			params[paramsStart] = a4_3;
-			rlt += h4_3*integrand.apply(ap, params);
-			params[paramsStart] = a4_4;
-			rlt += h4_4*integrand.apply(ap, params);
+			return new double[][] { a4.clone(), h4.clone() };
 		} else if(order == 5) {
-			for(int i=0;i<order;i++) {
-				params[paramsStart] = a5[i];
-				rlt += h5[i]*integrand.apply(ap, params);
+			return new double[][] { a5.clone(), h5.clone() };
+		} else {
+			throw new FutureyeException("getLinearRefElementQuadrature(): Not supported order = "+order);
+		}
+	}
+	
+	/**
+	 * Return the quadrature points (r,s,t) and weights on the triangle reference element
+	 * which are used in the compiled kernel (see CompiledKernel)
+	 * 
+	 * @param order
+	 * @return {points, weights}
+	 */
+	public static double[][] getTriangleRefElementQuadrature(int order) {
+		if(order == 2) {
+			double c = 0.333333333333333;
+			return new double[][] { {c, c, c}, {0.5} };
+		} else if(order == 3) {
+			double w = 0.5*0.333333333333333;
+			return new double[][] { 
+					{0.5, 0.5, 0.0,  0.0, 0.5, 0.5,  0.5, 0.0, 0.5},
+					{w, w, w} };
+		} else if(order == 4) {
+			double c = 0.333333333333333;
+			double w123 = 0.5*25.0/48.0;
+			double w4 = 0.5*-27.0/48.0;
+			return new double[][] { 
+					{0.6, 0.2, 0.2,  0.2, 0.6, 0.2,  0.2, 0.2, 0.6,  c, c, c},
+					{w123, w123, w123, w4} };
+		} else if(order == 5) {
+			double[] points = new double[3*7];
+			for(int i=0;i<7;i++) {
+				points[3*i]   = triR[i];
+				points[3*i+1] = triS[i];
+				points[3*i+2] = 1.0-triR[i]-triS[i];
 			}
+			return new double[][] { points, triW.clone() };
 		} else {
-			System.out.println("ERROR: intOnLinearRefElement() Not supported order = "+order);
+			throw new FutureyeException("getTriangleRefElementQuadrature(): Not supported order = "+order);
 		}
-		return rlt;
+	}
+	
+	/**
+	 * Return the quadrature points (r,s) and weights on the 2D rectangle reference element [-1,1]*[-1,1]
+	 * which are used in the compiled kernel (see CompiledKernel)
+	 * 
+	 * @param order
+	 * @return {points, weights}
+	 */
+	public static double[][] getRectangleRefElementQuadrature(int order) {
+		double[][] line = getLinearRefElementQuadrature(order);
+		int n = line[1].length;
+		double[] points = new double[2*n*n];
+		double[] weights = new double[n*n];
+		int c = 0;
+		for(int i=0;i<n;i++) {
+			for(int j=0;j<n;j++) {
+				points[2*c]   = line[0][i];
+				points[2*c+1] = line[0][j];
+				weights[c] = line[1][i]*line[1][j];
+				c++;
+			}
+		}
+		return new double[][] { points, weights };
 	}
 
 }
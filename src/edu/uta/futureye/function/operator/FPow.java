@@ -79,18 +79,14 @@ public class FPow extends FBinaryOp {
 	@Override
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
-		if (this.compileToStaticField && this.isCompiledToStaticFiled) {
-			mv.visitFieldInsn(Opcodes.GETSTATIC, this.genClassName, this.staticFieldName, "D");
+		arg1.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+		if(arg2.isInteger()) {
+			arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+			mv.visitInsn(Opcodes.D2I);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, FPow.class.getName().replaceAll("\\.", "/"), "powi", "(DI)D", false);
 		} else {
-			arg1.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-			if(arg2.isInteger()) {
-				arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-				mv.visitInsn(Opcodes.D2I);
-				mv.visitMethodInsn(Opcodes.INVOKESTATIC, FPow.class.getName().replaceAll("\\.", "/"), "powi", "(DI)D", false);
-			} else {
-				arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
-				mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", false);
-			}
+			arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", false);
 		}
 	}
 
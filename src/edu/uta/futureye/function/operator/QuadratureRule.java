@@ -0,0 +1,585 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.function.operator;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.uta.futureye.function.SingleVarFunc;
+import edu.uta.futureye.function.basic.FAx;
+import edu.uta.futureye.function.basic.FAxpb;
+import edu.uta.futureye.function.basic.FC;
+import edu.uta.futureye.function.basic.FComposite;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Quadrature rules on the reference elements, indexed by the degree of
+ * polynomials which are integrated exactly.
+ * <p>
+ * The points of a rule are stored in one array, point p is
+ * <tt>points[p*dim], ..., points[p*dim+dim-1]</tt>, which is the layout
+ * expected by <tt>CompiledFunc.integrate()</tt> and <tt>CompiledKernel.apply()</tt>.
+ * <ul>
+ * <li>LINE: [-1,1], point (r), the weights sum to 2
+ * <li>TRIANGLE: area coordinates (r,s,t) where t=1-r-s, the weights sum to 1/2
+ * <li>RECTANGLE: [-1,1]*[-1,1], point (r,s), the weights sum to 4
+ * <li>TETRAHEDRON: volume coordinates (r,s,t,u) where u=1-r-s-t, the weights sum to 1/6
+ * <li>HEXAHEDRON: [-1,1]^3, point (r,s,t), the weights sum to 8
+ * </ul>
+ * Lines, rectangles and hexahedra use (tensor products of) Gauss-Legendre rules.
+ * Triangles use the Dunavant rules up to degree 8 and tetrahedra the Keast rules
+ * up to degree 4. Higher degrees on triangles and tetrahedra use collapsed
+ * Gauss-Legendre product rules (the square or cube is mapped onto the simplex by
+ * the Duffy transformation), which are exact for any degree.
+ * <p>
+ * The rules are computed at the first request and cached, <tt>get()</tt>
+ * returns the same object for the same shape and degree.
+ *
+ */
+public class QuadratureRule {
+	public static enum Shape {
+		LINE,
+		TRIANGLE,
+		RECTANGLE,
+		TETRAHEDRON,
+		HEXAHEDRON
+		};
+
+	public static final int MAX_DEGREE = 40;
+
+	protected static Map<Shape, QuadratureRule[]> registry =
+			new EnumMap<Shape, QuadratureRule[]>(Shape.class);
+
+	protected Shape shape;
+	protected int degree;
+	protected int dim;
+	protected double[] points;
+	protected double[] weights;
+
+	protected QuadratureRule(Shape shape, int degree, int dim, double[] points, double[] weights) {
+		this.shape = shape;
+		this.degree = degree;
+		this.dim = dim;
+		this.points = points;
+		this.weights = weights;
+	}
+
+	/**
+	 * Return the rule with the fewest points on <tt>shape</tt> which integrates
+	 * polynomials of degree <tt>degree</tt> exactly
+	 *
+	 * @param shape
+	 * @param degree - 0 to MAX_DEGREE
+	 * @return
+	 */
+	public static synchronized QuadratureRule get(Shape shape, int degree) {
+		if(degree < 0)
+			degree = 0;
+		if(degree > MAX_DEGREE)
+			throw new FutureyeException("Quadrature rule of degree "+degree+" on "+shape+
+					" is not supported, max degree = "+MAX_DEGREE);
+		QuadratureRule[] rules = registry.get(shape);
+		if(rules == null) {
+			rules = new QuadratureRule[MAX_DEGREE+1];
+			registry.put(shape, rules);
+		}
+		if(rules[degree] == null) {
+			switch(shape) {
+			case LINE:        rules[degree] = line(degree); break;
+			case TRIANGLE:    rules[degree] = triangle(degree); break;
+			case RECTANGLE:   rules[degree] = rectangle(degree); break;
+			case TETRAHEDRON: rules[degree] = tetrahedron(degree); break;
+			case HEXAHEDRON:  rules[degree] = hexahedron(degree); break;
+			}
+		}
+		return rules[degree];
+	}
+
+	public Shape getShape() {
+		return shape;
+	}
+
+	/**
+	 * Return the degree of polynomials which are integrated exactly
+	 * @return
+	 */
+	public int getDegree() {
+		return degree;
+	}
+
+	/**
+	 * Return the number of coordinates of each point
+	 * @return
+	 */
+	public int getDimension() {
+		return dim;
+	}
+
+	/**
+	 * Return the number of points
+	 * @return
+	 */
+	public int size() {
+		return weights.length;
+	}
+
+	/**
+	 * Return the coordinates of all the points, the array must not be changed
+	 * @return
+	 */
+	public double[] getPoints() {
+		return points;
+	}
+
+	/**
+	 * Return the weights of all the points, the array must not be changed
+	 * @return
+	 */
+	public double[] getWeights() {
+		return weights;
+	}
+
+	public String toString() {
+		return "QuadratureRule("+shape+", degree="+degree+", points="+weights.length+")";
+	}
+
+	/**
+	 * Return the n-point Gauss-Legendre rule on [-1,1]: {points, weights}.
+	 * The rule is exact for polynomials of degree 2n-1.
+	 *
+	 * @param n
+	 * @return
+	 */
+	public static double[][] gaussLegendre(int n) {
+		double[] x = new double[n];
+		double[] w = new double[n];
+		for(int i=0; i<(n+1)/2; i++) {
+			//Newton iteration on P_n from the Chebyshev like initial guess
+			double z = Math.cos(Math.PI*(i+0.75)/(n+0.5));
+			double dp = 0.0;
+			for(int iter=0; iter<100; iter++) {
+				double p1 = 1.0, p2 = 0.0;
+				for(int j=1; j<=n; j++) {
+					double p3 = p2;
+					p2 = p1;
+					p1 = ((2*j-1)*z*p2 - (j-1)*p3)/j;
+				}
+				dp = n*(z*p1 - p2)/(z*z - 1.0);
+				double z1 = z;
+				z = z1 - p1/dp;
+				if(Math.abs(z - z1) <= 1e-15)
+					break;
+			}
+			x[i] = -z;
+			x[n-1-i] = z;
+			w[i] = w[n-1-i] = 2.0/((1.0 - z*z)*dp*dp);
+		}
+		if(n%2 == 1)
+			x[n/2] = 0.0;
+		return new double[][] { x, w };
+	}
+
+	protected static int gaussPoints(int degree) {
+		return Math.max(1, (degree+2)/2);
+	}
+
+	protected static QuadratureRule line(int degree) {
+		double[][] g = gaussLegendre(gaussPoints(degree));
+		return new QuadratureRule(Shape.LINE, degree, 1, g[0], g[1]);
+	}
+
+	protected static QuadratureRule rectangle(int degree) {
+		double[][] g = gaussLegendre(gaussPoints(degree));
+		int n = g[1].length;
+		double[] points = new double[2*n*n];
+		double[] weights = new double[n*n];
+		int c = 0;
+		for(int i=0; i<n; i++) {
+			for(int j=0; j<n; j++) {
+				points[2*c]   = g[0][i];
+				points[2*c+1] = g[0][j];
+				weights[c] = g[1][i]*g[1][j];
+				c++;
+			}
+		}
+		return new QuadratureRule(Shape.RECTANGLE, degree, 2, points, weights);
+	}
+
+	protected static QuadratureRule hexahedron(int degree) {
+		double[][] g = gaussLegendre(gaussPoints(degree));
+		int n = g[1].length;
+		double[] points = new double[3*n*n*n];
+		double[] weights = new double[n*n*n];
+		int c = 0;
+		for(int i=0; i<n; i++) {
+			for(int j=0; j<n; j++) {
+				for(int k=0; k<n; k++) {
+					points[3*c]   = g[0][i];
+					points[3*c+1] = g[0][j];
+					points[3*c+2] = g[0][k];
+					weights[c] = g[1][i]*g[1][j]*g[1][k];
+					c++;
+				}
+			}
+		}
+		return new QuadratureRule(Shape.HEXAHEDRON, degree, 3, points, weights);
+	}
+
+	/**
+	 * Gauss-Legendre rule on [0,1] for polynomials of degree <tt>degree</tt>
+	 */
+	protected static double[][] gaussLegendre01(int degree) {
+		double[][] g = gaussLegendre(gaussPoints(degree));
+		for(int i=0; i<g[0].length; i++) {
+			g[0][i] = 0.5*(g[0][i] + 1.0);
+			g[1][i] = 0.5*g[1][i];
+		}
+		return g;
+	}
+
+	/**
+	 * Dunavant rules on the triangle of unit area, each row is one orbit of points:
+	 * {weight} for the centroid, {weight, a} for the 3 permutations of (a,a,1-2a),
+	 * {weight, a, b} for the 6 permutations of (a,b,1-a-b).
+	 * D.A. Dunavant, High degree efficient symmetrical Gaussian quadrature rules
+	 * for the triangle, IJNME 21 (1985)
+	 */
+	static double[][][] dunavant = {
+		null,
+		//degree 1
+		{ {1.0} },
+		//degree 2
+		{ {1.0/3.0, 1.0/6.0} },
+		//degree 3
+		{ {-27.0/48.0}, {25.0/48.0, 0.2} },
+		//degree 4
+		{ {0.223381589678011, 0.445948490915965},
+		  {0.109951743655322, 0.091576213509771} },
+		//degree 5
+		{ {0.225},
+		  {(155.0-Math.sqrt(15.0))/1200.0, (6.0-Math.sqrt(15.0))/21.0},
+		  {(155.0+Math.sqrt(15.0))/1200.0, (6.0+Math.sqrt(15.0))/21.0} },
+		//degree 6
+		{ {0.116786275726379, 0.249286745170910},
+		  {0.050844906370207, 0.063089014491502},
+		  {0.082851075618374, 0.053145049844817, 0.310352451033784} },
+		//degree 7: the rule of degree 8 is used which has positive weights
+		null,
+		//degree 8
+		{ {0.144315607677787},
+		  {0.095091634267285, 0.459292588292723},
+		  {0.103217370534718, 0.170569307751760},
+		  {0.032458497623198, 0.050547228317031},
+		  {0.027230314174435, 0.008394777409958, 0.263112829634638} }
+	};
+
+	protected static QuadratureRule triangle(int degree) {
+		if(degree < dunavant.length) {
+			int d = degree == 0 ? 1 : degree;
+			if(dunavant[d] == null)
+				d++;
+			return symmetric(Shape.TRIANGLE, degree, 3, dunavant[d], 0.5);
+		}
+		//collapsed rule: r=x, s=(1-x)y, weight (1-x)
+		double[][] gx = gaussLegendre01(degree+1);
+		double[][] gy = gaussLegendre01(degree);
+		int nx = gx[1].length, ny = gy[1].length;
+		double[] points = new double[3*nx*ny];
+		double[] weights = new double[nx*ny];
+		int c = 0;
+		for(int i=0; i<nx; i++) {
+			for(int j=0; j<ny; j++) {
+				double r = gx[0][i];
+				double s = (1.0 - r)*gy[0][j];
+				points[3*c]   = r;
+				points[3*c+1] = s;
+				points[3*c+2] = 1.0 - r - s;
+				weights[c] = gx[1][i]*gy[1][j]*(1.0 - r);
+				c++;
+			}
+		}
+		return new QuadratureRule(Shape.TRIANGLE, degree, 3, points, weights);
+	}
+
+	/**
+	 * Keast rules on the tetrahedron of unit volume, each row is one orbit of points:
+	 * {weight} for the centroid, {weight, a} for the 4 permutations of (a,a,a,1-3a),
+	 * {weight, a, a} for the 6 permutations of (a,a,1/2-a,1/2-a).
+	 * P. Keast, Moderate degree tetrahedral quadrature formulas, CMAME 55 (1986)
+	 */
+	static double[][][] keast = {
+		null,
+		//degree 1
+		{ {1.0} },
+		//degree 2
+		{ {0.25, (5.0-Math.sqrt(5.0))/20.0} },
+		//degree 3
+		{ {-0.8}, {0.45, 1.0/6.0} },
+		//degree 4
+		{ {-0.0789333333333333},
+		  {0.0457333333333333, 0.0714285714285714},
+		  {0.1493333333333333, 0.399403576166799, 0.399403576166799} }
+	};
+
+	protected static QuadratureRule tetrahedron(int degree) {
+		if(degree < keast.length) {
+			return symmetric(Shape.TETRAHEDRON, degree, 4, keast[degree == 0 ? 1 : degree], 1.0/6.0);
+		}
+		//collapsed rule: r=x, s=(1-x)y, t=(1-x)(1-y)z, weight (1-x)^2(1-y)
+		double[][] gx = gaussLegendre01(degree+2);
+		double[][] gy = gaussLegendre01(degree+1);
+		double[][] gz = gaussLegendre01(degree);
+		int nx = gx[1].length, ny = gy[1].length, nz = gz[1].length;
+		double[] points = new double[4*nx*ny*nz];
+		double[] weights = new double[nx*ny*nz];
+		int c = 0;
+		for(int i=0; i<nx; i++) {
+			for(int j=0; j<ny; j++) {
+				for(int k=0; k<nz; k++) {
+					double x = gx[0][i], y = gy[0][j];
+					double r = x;
+					double s = (1.0 - x)*y;
+					double t = (1.0 - x)*(1.0 - y)*gz[0][k];
+					points[4*c]   = r;
+					points[4*c+1] = s;
+					points[4*c+2] = t;
+					points[4*c+3] = 1.0 - r - s - t;
+					weights[c] = gx[1][i]*gy[1][j]*gz[1][k]*(1.0 - x)*(1.0 - x)*(1.0 - y);
+					c++;
+				}
+			}
+		}
+		return new QuadratureRule(Shape.TETRAHEDRON, degree, 4, points, weights);
+	}
+
+	/**
+	 * Expand the orbits of a symmetric rule on the simplex with <tt>dim</tt>
+	 * barycentric coordinates, the weights are scaled by <tt>measure</tt>
+	 */
+	protected static QuadratureRule symmetric(Shape shape, int degree, int dim,
+			double[][] orbits, double measure) {
+		int n = 0;
+		for(double[] o : orbits)
+			n += orbitSize(dim, o);
+		double[] points = new double[dim*n];
+		double[] weights = new double[n];
+		int c = 0;
+		for(double[] o : orbits) {
+			double[] bary = new double[dim];
+			if(o.length == 1) {
+				for(int d=0; d<dim; d++)
+					bary[d] = 1.0/dim;
+			} else if(o.length == 2) {
+				//(a,...,a,1-(dim-1)a)
+				for(int d=0; d<dim-1; d++)
+					bary[d] = o[1];
+				bary[dim-1] = 1.0 - (dim-1)*o[1];
+			} else if(dim == 3) {
+				//(a,b,1-a-b)
+				bary[0] = o[1];
+				bary[1] = o[2];
+				bary[2] = 1.0 - o[1] - o[2];
+			} else {
+				//(a,a,1/2-a,1/2-a)
+				bary[0] = bary[1] = o[1];
+				bary[2] = bary[3] = 0.5 - o[1];
+			}
+			c = permutations(bary, 0, o[0]*measure, points, weights, c);
+		}
+		return new QuadratureRule(shape, degree, dim, points, weights);
+	}
+
+	protected static int orbitSize(int dim, double[] orbit) {
+		if(orbit.length == 1)
+			return 1;
+		if(orbit.length == 2)
+			return dim;
+		return 6;
+	}
+
+	/**
+	 * Add the distinct permutations of <tt>bary</tt>
+	 */
+	protected static int permutations(double[] bary, int k, double w,
+			double[] points, double[] weights, int c) {
+		int dim = bary.length;
+		if(k == dim) {
+			System.arraycopy(bary, 0, points, c*dim, dim);
+			weights[c] = w;
+			return c+1;
+		}
+		for(int i=k; i<dim; i++) {
+			//skip the values which have been placed at position k
+			boolean dup = false;
+			for(int j=k; j<i; j++) {
+				if(bary[j] == bary[i])
+					dup = true;
+			}
+			if(dup) continue;
+			double tmp = bary[k]; bary[k] = bary[i]; bary[i] = tmp;
+			c = permutations(bary, k+1, w, points, weights, c);
+			tmp = bary[k]; bary[k] = bary[i]; bary[i] = tmp;
+		}
+		return c;
+	}
+
+	/**
+	 * Return an upper bound of the polynomial degree of the expression <tt>f</tt>
+	 * in the local coordinates, which is used to select the quadrature rule.
+	 * <p>
+	 * The degree of a variable is given by <tt>varDegrees</tt>, e.g. 1 for the local
+	 * coordinates r,s,t, and 0 for the variables not in it, e.g. the coordinates of
+	 * the nodes of an element. Constants have degree 0, the degree of a product is the
+	 * sum of the degrees, the degree of a sum is the max of the degrees. A quotient
+	 * whose denominator depends on the local coordinates is not a polynomial, its degree
+	 * is estimated by the sum of the degrees. A function which is not a polynomial,
+	 * e.g. sin(x) or a user defined coefficient, is counted as a polynomial of degree
+	 * <tt>coefDegree</tt> of its arguments.
+	 *
+	 * @param f
+	 * @param varDegrees
+	 * @param coefDegree
+	 * @return
+	 */
+	public static int getPolynomialDegree(MathFunc f, Map<String, Integer> varDegrees, int coefDegree) {
+		return new DegreeEstimator(varDegrees, coefDegree, null).degree(f);
+	}
+
+	/**
+	 * Return the degree of the integrand <tt>f</tt> on the reference element
+	 * <tt>shape</tt> with local coordinates <tt>coords</tt>, which selects the
+	 * quadrature rule <tt>get(shape, degree)</tt>.
+	 * <p>
+	 * On triangles and tetrahedra it is the total degree of <tt>f</tt>. On lines,
+	 * rectangles and hexahedra, where the rules are tensor products, it is the max
+	 * of the degrees of <tt>f</tt> in each local coordinate, e.g. a bilinear function
+	 * has degree 1.
+	 * <p>
+	 * The derivatives of the local coordinates are quotients by the Jacobian <tt>jac</tt>
+	 * of the coordinate transformation (see <tt>CoordTrans</tt>), or by the determinant
+	 * if <tt>jac</tt> is its absolute value. The degree of such a quotient is the degree
+	 * of the numerator minus the degree of the denominator, which is exact on affine
+	 * elements (e.g. parallelograms) and is the usual choice on the others. Other quotients are counted as in
+	 * <tt>getPolynomialDegree(MathFunc, Map, int)</tt>.
+	 *
+	 * @param f
+	 * @param shape
+	 * @param coords - local coordinates, e.g. CoordTrans.getCoords()
+	 * @param jac - Jacobian of the coordinate transformation, can be null
+	 * @param coefDegree
+	 * @return
+	 */
+	public static int getPolynomialDegree(MathFunc f, Shape shape, MathFunc[] coords,
+			MathFunc jac, int coefDegree) {
+		Map<String, Integer> varDegrees = new HashMap<String, Integer>();
+		if(shape == Shape.TRIANGLE || shape == Shape.TETRAHEDRON) {
+			for(MathFunc coord : coords) {
+				for(String name : coord.getVarNames())
+					varDegrees.put(name, 1);
+			}
+			return new DegreeEstimator(varDegrees, coefDegree, jac).degree(f);
+		}
+		int degree = 0;
+		for(MathFunc coord : coords) {
+			for(String name : coord.getVarNames()) {
+				varDegrees.clear();
+				varDegrees.put(name, 1);
+				degree = Math.max(degree, new DegreeEstimator(varDegrees, coefDegree, jac).degree(f));
+			}
+		}
+		return degree;
+	}
+
+	protected static class DegreeEstimator {
+		Map<String, Integer> varDegrees;
+		int coefDegree;
+		MathFunc jac;
+		Map<MathFunc, Integer> memo = new IdentityHashMap<MathFunc, Integer>();
+
+		DegreeEstimator(Map<String, Integer> varDegrees, int coefDegree, MathFunc jac) {
+			this.varDegrees = varDegrees;
+			this.coefDegree = coefDegree;
+			this.jac = jac;
+		}
+
+		int degree(MathFunc f) {
+			Integer ret = memo.get(f);
+			if(ret != null)
+				return ret;
+			int deg;
+			if(f instanceof FC) {
+				deg = 0;
+			} else if(f instanceof FAdd || f instanceof FSub || f instanceof FMax || f instanceof FMin) {
+				FBinaryOp op = (FBinaryOp)f;
+				deg = Math.max(degree(op.arg1), degree(op.arg2));
+			} else if(f instanceof FMul) {
+				FBinaryOp op = (FBinaryOp)f;
+				deg = degree(op.arg1) + degree(op.arg2);
+			} else if(f instanceof FDiv) {
+				FBinaryOp op = (FBinaryOp)f;
+				if(jac != null && (op.arg2 == jac ||
+						(jac instanceof FAbs && op.arg2 == ((FAbs)jac).arg)))
+					deg = Math.max(0, degree(op.arg1) - degree(op.arg2));
+				else
+					deg = degree(op.arg1) + degree(op.arg2);
+			} else if(f instanceof FPow) {
+				FPow op = (FPow)f;
+				int base = degree(op.arg1);
+				int exp = degree(op.arg2);
+				if(base == 0 && exp == 0)
+					deg = 0;
+				else if(exp == 0 && op.arg2.isInteger() && op.arg2.apply() >= 0)
+					deg = base*(int)op.arg2.apply();
+				else
+					deg = coefDegree*Math.max(1, Math.max(base, exp));
+			} else if(f instanceof FBinaryOp) {
+				FBinaryOp op = (FBinaryOp)f;
+				deg = coefDegree*Math.max(degree(op.arg1), degree(op.arg2));
+			} else if(f instanceof FAbs) {
+				//piecewise polynomial, e.g. the absolute value of the Jacobian
+				deg = degree(((FUniaryOp)f).arg);
+			} else if(f instanceof FUniaryOp) {
+				deg = coefDegree*degree(((FUniaryOp)f).arg);
+			} else if(f instanceof FComposite) {
+				FComposite fc = (FComposite)f;
+				if(fc.isOuterVarActive()) {
+					deg = degree(fc.fOuter);
+				} else {
+					//degrees of the variables of the outer function
+					Map<String, Integer> outerDegrees = new HashMap<String, Integer>();
+					for(String name : fc.fOuter.getVarNames()) {
+						MathFunc fInner = fc.fInners.get(name);
+						Integer d = fInner == null ? varDegrees.get(name) : Integer.valueOf(degree(fInner));
+						outerDegrees.put(name, d == null ? 0 : d);
+					}
+					deg = new DegreeEstimator(outerDegrees, coefDegree, jac).degree(fc.fOuter);
+				}
+			} else {
+				int d = 0;
+				List<String> names = f.getVarNames();
+				if(names != null) {
+					for(String name : names) {
+						Integer vd = varDegrees.get(name);
+						if(vd != null)
+							d = Math.max(d, vd);
+					}
+				}
+				if(f instanceof FX || f instanceof FAx || f instanceof FAxpb ||
+						(f instanceof SingleVarFunc && f.getClass().getPackage() != FC.class.getPackage()))
+					deg = d; //variables and local coordinates
+				else
+					deg = coefDegree*d;
+			}
+			memo.put(f, deg);
+			return deg;
+		}
+	}
+}
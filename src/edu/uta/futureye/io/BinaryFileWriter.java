@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.io;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Little endian binary output through a <tt>FileChannel</tt> with a large
+ * direct buffer, arrays are copied into the buffer in bulk
+ *
+ * @author yuemingl
+ *
+ */
+class BinaryFileWriter implements Closeable {
+	//Size of the direct buffer in bytes
+	static int bufferSize = 1<<20;
+
+	FileOutputStream out;
+	FileChannel ch;
+	ByteBuffer buf;
+
+	BinaryFileWriter(String fileName) throws IOException {
+		this.out = new FileOutputStream(fileName);
+		this.ch = out.getChannel();
+		this.buf = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	void flush() throws IOException {
+		buf.flip();
+		while(buf.hasRemaining())
+			ch.write(buf);
+		buf.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	void ensure(int n) throws IOException {
+		if(buf.remaining() < n)
+			flush();
+	}
+
+	void putByte(int v) throws IOException {
+		ensure(1);
+		buf.put((byte)v);
+	}
+
+	void putInt(int v) throws IOException {
+		ensure(4);
+		buf.putInt(v);
+	}
+
+	void putLong(long v) throws IOException {
+		ensure(8);
+		buf.putLong(v);
+	}
+
+	void putFloat(float v) throws IOException {
+		ensure(4);
+		buf.putFloat(v);
+	}
+
+	void putDouble(double v) throws IOException {
+		ensure(8);
+		buf.putDouble(v);
+	}
+
+	void putDoubles(double[] a) throws IOException {
+		int off = 0;
+		while(off < a.length) {
+			if(buf.remaining() < 8)
+				flush();
+			int n = Math.min(a.length-off, buf.remaining()/8);
+			buf.asDoubleBuffer().put(a, off, n);
+			buf.position(buf.position() + 8*n);
+			off += n;
+		}
+	}
+
+	void putInts(int[] a) throws IOException {
+		int off = 0;
+		while(off < a.length) {
+			if(buf.remaining() < 4)
+				flush();
+			int n = Math.min(a.length-off, buf.remaining()/4);
+			buf.asIntBuffer().put(a, off, n);
+			buf.position(buf.position() + 4*n);
+			off += n;
+		}
+	}
+
+	void putAscii(CharSequence s) throws IOException {
+		for(int i=0; i<s.length(); i++) {
+			ensure(1);
+			buf.put((byte)s.charAt(i));
+		}
+	}
+}
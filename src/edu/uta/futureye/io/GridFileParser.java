@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import edu.uta.futureye.core.FlatMesh;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Parser of .grd files from Gridgen working directly on the bytes of a
+ * (memory-mapped) file:
+ * <p><blockquote><pre>
+ * # comment lines
+ * nNode nElement 0 0 0
+ * index x y z                    (nNode lines)
+ * index material type n1 n2 ...  (nElement lines, type: tri, quad, tet or hex)
+ * </pre></blockquote>
+ * The start of each line is located in one sequential scan, then the node
+ * and element lines are parsed in chunks, in parallel if required. Numbers
+ * are converted without creating <tt>String</tt> objects except for the rare
+ * real numbers which can't be converted exactly in double arithmetic.
+ *
+ * @author yuemingl
+ *
+ */
+class GridFileParser {
+	//Maximum number of nodes of an element
+	static final int MAX_NODES = 8;
+	//Number of lines parsed by one task
+	static int chunkSize = 16384;
+
+	static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	ByteBuffer buf;
+	int[] lineStart;
+
+	int nNode;
+	int nElement;
+	int[] nodeIndex;      // index of each node line
+	double[] nodeCoords;  // 3 coordinates of each node line, 0 if not given
+	int[] eleType;        // FlatMesh.TRIANGLE,..., 0 if the type is not supported
+	int[] eleNodes;       // node indices of each element line, MAX_NODES per element
+	int dim = 2;          // 3 if there are tetrahedra or hexahedra
+
+	GridFileParser(ByteBuffer buf) {
+		this.buf = buf;
+	}
+
+	void parse(int parallelism) {
+		Cursor c = new Cursor(buf);
+		c.pos = nextDataLine(0);
+		if(c.pos >= buf.limit())
+			throw new FutureyeException("Grid file: no header line");
+		nNode = c.nextInt();
+		nElement = c.nextInt();
+		indexLines(nextLine(c.pos), nNode+nElement);
+
+		nodeIndex = new int[nNode];
+		nodeCoords = new double[3*nNode];
+		eleType = new int[nElement];
+		eleNodes = new int[MAX_NODES*nElement];
+
+		ForkJoinPool pool = parallelism > 1 && nNode+nElement > chunkSize ?
+				new ForkJoinPool(parallelism) : null;
+		try {
+			run(pool, 0, nNode, (cur, i) -> parseNode(cur, i));
+			run(pool, 0, nElement, (cur, k) -> parseElement(cur, k));
+		} finally {
+			if(pool != null)
+				pool.shutdown();
+		}
+		for(int k=0; k<nElement; k++) {
+			if(eleType[k] == FlatMesh.TETRAHEDRON || eleType[k] == FlatMesh.HEXAHEDRON) {
+				dim = 3;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Number of nodes of an element type, 0 if not supported
+	 */
+	static int getNumberOfNodes(int type) {
+		switch(type) {
+		case FlatMesh.TRIANGLE: return 3;
+		case FlatMesh.QUADRILATERAL: return 4;
+		case FlatMesh.TETRAHEDRON: return 4;
+		case FlatMesh.HEXAHEDRON: return 8;
+		}
+		return 0;
+	}
+
+	void parseNode(Cursor c, int i) {
+		c.pos = lineStart[i];
+		nodeIndex[i] = c.nextInt();
+		for(int d=0; d<3 && !c.atEndOfLine(); d++)
+			nodeCoords[3*i+d] = c.nextDouble();
+	}
+
+	void parseElement(Cursor c, int k) {
+		c.pos = lineStart[nNode+k];
+		c.nextInt(); //index
+		c.nextInt(); //material
+		int type = c.nextType();
+		int n = getNumberOfNodes(type);
+		eleType[k] = type;
+		for(int j=0; j<n; j++)
+			eleNodes[MAX_NODES*k+j] = c.nextInt();
+	}
+
+	interface LineParser {
+		void parse(Cursor c, int line);
+	}
+
+	//Parse lines [from,to) in chunks
+	void run(ForkJoinPool pool, int from, int to, final LineParser parser) {
+		if(pool == null) {
+			Cursor c = new Cursor(buf);
+			for(int i=from; i<to; i++)
+				parser.parse(c, i);
+			return;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int start=from; start<to; start+=chunkSize) {
+			final int s = start;
+			final int e = Math.min(start+chunkSize, to);
+			tasks.add(() -> {
+				Cursor c = new Cursor(buf.duplicate());
+				for(int i=s; i<e; i++)
+					parser.parse(c, i);
+				return null;
+			});
+		}
+		for(Future<Void> f : pool.invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				throw new FutureyeException(e.getMessage());
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+				throw new FutureyeException("Grid file: "+e.getCause());
+			}
+		}
+	}
+
+	//Record the start of the next n lines which are not empty or comments
+	void indexLines(int pos, int n) {
+		lineStart = new int[n];
+		int end = buf.limit();
+		for(int i=0; i<n; i++) {
+			pos = nextDataLine(pos);
+			if(pos >= end)
+				throw new FutureyeException("Grid file: "+nNode+" nodes and "+nElement+
+						" elements expected, but only "+i+" lines found");
+			lineStart[i] = pos;
+			pos = nextLine(pos);
+		}
+	}
+
+	//Start of the first line from pos which is not empty or a comment
+	int nextDataLine(int pos) {
+		int end = buf.limit();
+		while(pos < end) {
+			int p = pos;
+			byte b;
+			while(p < end && ((b = buf.get(p)) == ' ' || b == '\t' || b == '\r'))
+				p++;
+			if(p < end && buf.get(p) != '\n' && buf.get(p) != '#')
+				return pos;
+			pos = nextLine(p);
+		}
+		return end;
+	}
+
+	//Start of the line after the one containing pos
+	int nextLine(int pos) {
+		int end = buf.limit();
+		while(pos < end && buf.get(pos) != '\n')
+			pos++;
+		return pos+1;
+	}
+
+	/**
+	 * Reads tokens from a position in the buffer with absolute gets, so
+	 * each thread uses its own cursor on the shared buffer
+	 */
+	static class Cursor {
+		ByteBuffer buf;
+		int pos;
+		int end;
+
+		Cursor(ByteBuffer buf) {
+			this.buf = buf;
+			this.end = buf.limit();
+		}
+
+		void skipBlanks() {
+			byte b;
+			while(pos < end && ((b = buf.get(pos)) == ' ' || b == '\t' || b == '\r'))
+				pos++;
+		}
+
+		boolean atEndOfLine() {
+			skipBlanks();
+			return pos >= end || buf.get(pos) == '\n';
+		}
+
+		boolean isDelimiter(int p) {
+			if(p >= end) return true;
+			byte b = buf.get(p);
+			return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+		}
+
+		int nextInt() {
+			skipBlanks();
+			int start = pos;
+			boolean neg = false;
+			if(pos < end && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+				neg = buf.get(pos++) == '-';
+			long v = 0;
+			int nDigits = 0;
+			byte b;
+			while(pos < end && (b = buf.get(pos)) >= '0' && b <= '9') {
+				v = v*10 + (b - '0');
+				if(++nDigits > 10) break;
+				pos++;
+			}
+			if(nDigits == 0 || nDigits > 10 || v > Integer.MAX_VALUE || !isDelimiter(pos))
+				throw error("integer", start);
+			return neg ? (int)-v : (int)v;
+		}
+
+		/**
+		 * The result is the same as <tt>Double.parseDouble()</tt>: if the digits
+		 * (at most 18 significant ones) and the power of ten are exactly representable,
+		 * one multiplication or division gives the correctly rounded value.
+		 * Other tokens are converted by <tt>Double.parseDouble()</tt>.
+		 */
+		double nextDouble() {
+			skipBlanks();
+			int start = pos;
+			boolean neg = false;
+			if(pos < end && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+				neg = buf.get(pos++) == '-';
+			long m = 0;
+			int nSig = 0;
+			int exp = 0;
+			int nDigits = 0;
+			boolean exact = true;
+			boolean frac = false;
+			while(pos < end) {
+				byte b = buf.get(pos);
+				if(b >= '0' && b <= '9') {
+					int d = b - '0';
+					nDigits++;
+					if(m == 0 && d == 0) {
+						if(frac) exp--;
+					} else if(nSig < 18) {
+						m = m*10 + d;
+						nSig++;
+						if(frac) exp--;
+					} else {
+						if(!frac) exp++;
+						if(d != 0) exact = false;
+					}
+				} else if(b == '.' && !frac) {
+					frac = true;
+				} else {
+					break;
+				}
+				pos++;
+			}
+			if(nDigits > 0 && pos < end && (buf.get(pos) == 'e' || buf.get(pos) == 'E')) {
+				pos++;
+				boolean eNeg = false;
+				if(pos < end && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+					eNeg = buf.get(pos++) == '-';
+				int e = 0;
+				int nExpDigits = 0;
+				byte b;
+				while(pos < end && (b = buf.get(pos)) >= '0' && b <= '9') {
+					if(e < 10000) e = e*10 + (b - '0');
+					nExpDigits++;
+					pos++;
+				}
+				if(nExpDigits == 0) exact = false;
+				exp += eNeg ? -e : e;
+			}
+			if(nDigits > 0 && exact && isDelimiter(pos) && m < (1L<<53) && exp >= -22 && exp <= 22) {
+				double v = m == 0 ? 0.0 : (exp < 0 ? m/POW10[-exp] : m*POW10[exp]);
+				return neg ? -v : v;
+			}
+			while(!isDelimiter(pos))
+				pos++;
+			String token = token(start, pos);
+			try {
+				return Double.parseDouble(token);
+			} catch (NumberFormatException e) {
+				throw error("real number", start);
+			}
+		}
+
+		/**
+		 * Element type: tri, quad, tet or hex (case insensitive), 0 for the others
+		 */
+		int nextType() {
+			skipBlanks();
+			int start = pos;
+			while(!isDelimiter(pos))
+				pos++;
+			int len = pos - start;
+			if(len == 0)
+				throw error("element type", start);
+			if(len == 3 && matches(start, "tri")) return FlatMesh.TRIANGLE;
+			if(len == 4 && matches(start, "quad")) return FlatMesh.QUADRILATERAL;
+			if(len == 3 && matches(start, "tet")) return FlatMesh.TETRAHEDRON;
+			if(len == 3 && matches(start, "hex")) return FlatMesh.HEXAHEDRON;
+			return 0;
+		}
+
+		boolean matches(int start, String word) {
+			for(int i=0; i<word.length(); i++) {
+				if(Character.toLowerCase((char)buf.get(start+i)) != word.charAt(i))
+					return false;
+			}
+			return true;
+		}
+
+		String token(int start, int stop) {
+			byte[] bytes = new byte[stop-start];
+			for(int i=start; i<stop; i++)
+				bytes[i-start] = buf.get(i);
+			return new String(bytes, StandardCharsets.US_ASCII);
+		}
+
+		FutureyeException error(String expected, int start) {
+			int stop = start;
+			while(stop < end && stop-start < 32 && buf.get(stop) != '\n')
+				stop++;
+			return new FutureyeException("Grid file: "+expected+" expected at byte "+
+					start+": \""+token(start, stop).trim()+"\"");
+		}
+	}
+}
@@ -5,26 +5,41 @@
  */
 package edu.uta.futureye.io;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 
 import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.FlatMesh;
 import edu.uta.futureye.core.Mesh;
 import edu.uta.futureye.core.Node;
+import edu.uta.futureye.util.FutureyeException;
 import edu.uta.futureye.util.container.ElementList;
 import edu.uta.futureye.util.container.NodeList;
 
 /**
  * Read .grd file generated from Gridgen
+ * <p>
+ * The file is memory-mapped and parsed byte by byte (see <tt>GridFileParser</tt>).
+ * A binary mesh file written by <tt>MeshWriter.writeBinaryMesh()</tt> is detected
+ * automatically and loaded without parsing.
  * 
  * @author yuemingl
  *
  */
 public class MeshReader {
+	//First bytes of a binary mesh file, see MeshWriter.writeBinaryMesh()
+	public static final byte[] BINARY_MAGIC = {'F', 'Y', 'M', 'B'};
+	public static final int BINARY_VERSION = 1;
+	//Size of the header of a binary mesh file in bytes
+	static final int BINARY_HEADER = 40;
 	
 	Mesh mesh = new Mesh();
 	String file = null;
+	int parallelism = 1;
 	
 	public boolean debug = false;
 	
@@ -32,57 +47,93 @@ public class MeshReader {
 		this.file = fileName;
 	}
 	
+	/**
+	 * Set the number of threads used to parse the nodes and elements
+	 * of large .grd files. The file is parsed serially if 
+	 * <tt>parallelism &lt;= 1</tt> (default).
+	 * 
+	 * @param parallelism
+	 * @return
+	 */
+	public MeshReader setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+		return this;
+	}
+	
+	/**
+	 * Read triangles and quadrilaterals from a .grd file or a binary mesh file
+	 * (see <tt>MeshWriter.writeBinaryMesh()</tt>)
+	 * 
+	 * @return
+	 */
 	public Mesh read2DMesh() {
-		FileInputStream in;
-		try {
-			in = new FileInputStream(file);
-
-			InputStreamReader reader = new InputStreamReader(in,"UTF-8");
-			BufferedReader br = new BufferedReader(reader);
+		return readMesh(false);
+	}
 	
-			String str = null;
-			int nNode = 0;
-			int nElement = 0;
+	/**
+	 * Read tetrahedra and hexahedra from a .grd file or a binary mesh file
+	 * (see <tt>MeshWriter.writeBinaryMesh()</tt>)
+	 * 
+	 * @return
+	 */
+	public Mesh read3DMesh() {
+		return readMesh(true);
+	}
+	
+	protected Mesh readMesh(boolean threeD) {
+		try {
+			ByteBuffer buf = map();
 			mesh.clearAll();
-			while((str = br.readLine()) != null){
-				if(debug)
-					System.out.println(str);
-				if(str.startsWith("#")) continue;
-				String[] line = str.split("(\\s)+");
-				if(nNode == 0) {
-					nNode = Integer.valueOf(line[0]);
-					nElement = Integer.valueOf(line[1]);
-				} else {
-					if(mesh.getNodeList().size() < nNode) {
-						int index = Integer.valueOf(line[0]);
-						double x = Double.valueOf(line[1]);
-						double y = Double.valueOf(line[2]);
-						Node node = new Node(index, x, y);
-						mesh.addNode(node);
-					} else if(mesh.getElementList().size() < nElement) {
-						String type = line[2];
-						if(type.equalsIgnoreCase("tri")) {
-							NodeList list = new NodeList();
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[3])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[4])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[5])));
-							Element ele = new Element(list);
-							mesh.addElement(ele);
-						} else if(type.equalsIgnoreCase("quad")) {
-							NodeList list = new NodeList();
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[3])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[4])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[5])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[6])));
-							Element ele = new Element(list);
-							mesh.addElement(ele);
-						}
-					}
+			if(isBinary(buf)) {
+				//The vertices are adjusted before the binary file is written
+				FlatMesh fm = readBinary(buf);
+				double[] xyz = fm.getCoords();
+				int dim = fm.getDim();
+				for(int i=0; i<fm.getNumberOfNodes(); i++) {
+					double[] coords = new double[dim-1];
+					for(int d=1; d<dim; d++)
+						coords[d-1] = xyz[i*dim+d];
+					mesh.addNode(new Node(i+1, xyz[i*dim], coords));
+				}
+				int[] elemPtr = fm.getElementPtr();
+				int[] elemNodes = fm.getElementNodes();
+				int[] elemType = fm.getElementTypes();
+				NodeList nodes = mesh.getNodeList();
+				for(int k=0; k<fm.getNumberOfElements(); k++) {
+					if(is3D(elemType[k]) != threeD)
+						continue;
+					NodeList list = new NodeList();
+					for(int p=elemPtr[k]; p<elemPtr[k+1]; p++)
+						list.add(nodes.at(elemNodes[p]+1));
+					mesh.addElement(new Element(list));
 				}
+				return mesh;
 			}
-			br.close();
-			in.close();
-
+			
+			GridFileParser parser = new GridFileParser(buf);
+			parser.parse(parallelism);
+			double[] xyz = parser.nodeCoords;
+			for(int i=0; i<parser.nNode; i++) {
+				Node node = threeD ?
+						new Node(parser.nodeIndex[i], xyz[3*i], xyz[3*i+1], xyz[3*i+2]) :
+						new Node(parser.nodeIndex[i], xyz[3*i], xyz[3*i+1]);
+				mesh.addNode(node);
+			}
+			NodeList nodes = mesh.getNodeList();
+			for(int k=0; k<parser.nElement; k++) {
+				int type = parser.eleType[k];
+				if(type == 0 || is3D(type) != threeD)
+					continue;
+				NodeList list = new NodeList();
+				int base = GridFileParser.MAX_NODES*k;
+				for(int j=0; j<GridFileParser.getNumberOfNodes(type); j++)
+					list.add(nodes.at(parser.eleNodes[base+j]));
+				mesh.addElement(new Element(list));
+			}
+			if(debug)
+				System.out.println("nodes read: "+nodes.size()+" elements read: "+
+						mesh.getElementList().size());
+			
 			ElementList nEList = mesh.getElementList();
 			int nE = nEList.size();
 			for(int i=1;i<=nE;i++) {
@@ -96,80 +147,132 @@ public class MeshReader {
 		}
 		return null;
 	}
-	
-	public Mesh read3DMesh() {
-		FileInputStream in;
-		try {
-			in = new FileInputStream(file);
 
-			InputStreamReader reader = new InputStreamReader(in,"UTF-8");
-			BufferedReader br = new BufferedReader(reader);
-	
-			String str = null;
-			int nNode = 0;
+	/**
+	 * Read a 2D or 3D mesh into a <tt>FlatMesh</tt> without creating
+	 * <tt>Node</tt> and <tt>Element</tt> objects. A binary mesh file (see 
+	 * <tt>MeshWriter.writeBinaryMesh()</tt>) is loaded with its adjacency.
+	 * 
+	 * @return
+	 */
+	public FlatMesh readFlatMesh() {
+		try {
+			ByteBuffer buf = map();
+			if(isBinary(buf))
+				return readBinary(buf);
+			
+			GridFileParser parser = new GridFileParser(buf);
+			parser.parse(parallelism);
+			int nNode = parser.nNode;
+			int dim = parser.dim;
+			double[] xyz = new double[dim*nNode];
+			for(int i=0; i<nNode; i++) {
+				int index = parser.nodeIndex[i];
+				if(index < 1 || index > nNode)
+					throw new FutureyeException("Node index out of range: "+index);
+				System.arraycopy(parser.nodeCoords, 3*i, xyz, dim*(index-1), dim);
+			}
+			//Unsupported element types are skipped
 			int nElement = 0;
-			mesh.clearAll();
-			while((str = br.readLine()) != null){
-				if(debug)
-					System.out.println(str);
-				if(str.startsWith("#")) continue;
-				String[] line = str.split("(\\s)+");
-				if(nNode == 0) {
-					//Read in node number and element number
-					nNode = Integer.valueOf(line[0]);
-					nElement = Integer.valueOf(line[1]);
-				} else {
-					if(mesh.getNodeList().size() < nNode) {
-						int index = Integer.valueOf(line[0]);
-						double x = Double.valueOf(line[1]);
-						double y = Double.valueOf(line[2]);
-						double z = Double.valueOf(line[3]);
-						Node node = new Node(index, x, y, z);
-						mesh.addNode(node);
-					} else if(mesh.getElementList().size() < nElement) {
-						String type = line[2];
-						if(type.equalsIgnoreCase("tet")) {
-							NodeList list = new NodeList();
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[3])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[4])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[5])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[6])));
-							Element ele = new Element(list);
-							mesh.addElement(ele);
-						} else if(type.equalsIgnoreCase("hex")) {
-							NodeList list = new NodeList();
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[3])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[4])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[5])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[6])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[7])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[8])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[9])));
-							list.add(mesh.getNodeList().at(Integer.valueOf(line[10])));
-							Element ele = new Element(list);
-							mesh.addElement(ele);	
-						}
-					}
+			int nElemNodes = 0;
+			for(int k=0; k<parser.nElement; k++) {
+				if(parser.eleType[k] != 0) {
+					nElement++;
+					nElemNodes += GridFileParser.getNumberOfNodes(parser.eleType[k]);
 				}
 			}
-			br.close();
-			in.close();
-			
-			//add bufix
-			ElementList nEList = mesh.getElementList();
-			int nE = nEList.size();
-			for(int i=1;i<=nE;i++) {
-				Element e = nEList.at(i);
-				e.adjustVerticeToCounterClockwise();
+			int[] elemPtr = new int[nElement+1];
+			int[] elemType = new int[nElement];
+			int[] elemNodes = new int[nElemNodes];
+			for(int k=0, e=0; k<parser.nElement; k++) {
+				int type = parser.eleType[k];
+				if(type == 0)
+					continue;
+				int n = GridFileParser.getNumberOfNodes(type);
+				int p = elemPtr[e];
+				for(int j=0; j<n; j++)
+					elemNodes[p+j] = parser.eleNodes[GridFileParser.MAX_NODES*k+j]-1;
+				elemType[e] = type;
+				elemPtr[++e] = p+n;
 			}
-			return mesh;
+			return new FlatMesh(dim, xyz, elemPtr, elemNodes, elemType);
 		
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 		return null;
 	}
-
+	
+	protected static boolean is3D(int type) {
+		return type == FlatMesh.TETRAHEDRON || type == FlatMesh.HEXAHEDRON;
+	}
+	
+	protected ByteBuffer map() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			if(ch.size() > Integer.MAX_VALUE)
+				throw new FutureyeException("Mesh file larger than 2GB: "+file);
+			//The mapping is valid after the file is closed
+			return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		} finally {
+			raf.close();
+		}
+	}
+	
+	protected static boolean isBinary(ByteBuffer buf) {
+		if(buf.limit() < BINARY_HEADER)
+			return false;
+		for(int i=0; i<BINARY_MAGIC.length; i++) {
+			if(buf.get(i) != BINARY_MAGIC[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Binary mesh file (little endian), see <tt>MeshWriter.writeBinaryMesh()</tt>:
+	 * <p><blockquote><pre>
+	 * header: magic, version, dim, nNodes, nElements, 
+	 *         length of elemNodes, nodeElems, elemElems, 2 reserved ints
+	 * double[] xyz
+	 * int[] elemPtr, elemNodes, elemType, 
+	 *       nodeElemPtr, nodeElems, elemElemPtr, elemElems
+	 * </pre></blockquote>
+	 */
+	protected FlatMesh readBinary(ByteBuffer buf) {
+		buf = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int version = buf.getInt(4);
+		if(version != BINARY_VERSION)
+			throw new FutureyeException("Unsupported binary mesh version "+version+": "+file);
+		int dim = buf.getInt(8);
+		int nNodes = buf.getInt(12);
+		int nElements = buf.getInt(16);
+		int nElemNodes = buf.getInt(20);
+		int nNodeElems = buf.getInt(24);
+		int nElemElems = buf.getInt(28);
+		long size = BINARY_HEADER + 8L*dim*nNodes + 4L*(nElements+1 + nElemNodes + nElements +
+				nNodes+1 + nNodeElems + nElements+1 + nElemElems);
+		if(buf.limit() != size)
+			throw new FutureyeException("Binary mesh file truncated or corrupted: "+file);
+		
+		buf.position(BINARY_HEADER);
+		double[] xyz = new double[dim*nNodes];
+		buf.asDoubleBuffer().get(xyz);
+		buf.position(buf.position() + 8*xyz.length);
+		IntBuffer ib = buf.asIntBuffer();
+		int[] elemPtr = new int[nElements+1];
+		int[] elemNodes = new int[nElemNodes];
+		int[] elemType = new int[nElements];
+		int[] nodeElemPtr = new int[nNodes+1];
+		int[] nodeElems = new int[nNodeElems];
+		int[] elemElemPtr = new int[nElements+1];
+		int[] elemElems = new int[nElemElems];
+		ib.get(elemPtr).get(elemNodes).get(elemType);
+		ib.get(nodeElemPtr).get(nodeElems).get(elemElemPtr).get(elemElems);
+		return new FlatMesh(dim, xyz, elemPtr, elemNodes, elemType,
+				nodeElemPtr, nodeElems, elemElemPtr, elemElems);
+	}
 	
 	public NodeList getNodeList() {
 		return mesh.getNodeList();
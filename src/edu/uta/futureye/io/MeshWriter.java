@@ -7,31 +7,441 @@ package edu.uta.futureye.io;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.uta.futureye.algebra.intf.Vector;
 import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.FlatMesh;
 import edu.uta.futureye.core.Mesh;
 import edu.uta.futureye.core.Node;
+import edu.uta.futureye.util.FutureyeException;
 import edu.uta.futureye.util.container.ElementList;
 import edu.uta.futureye.util.container.NodeList;
 
 /**
  * Write .dat file for tecplot
+ * <p>
+ * <tt>writeVTU()</tt> and <tt>writeTechplotBinary()</tt> write binary files
+ * through a large direct buffer, optionally on a background thread
+ * (see <tt>setAsync()</tt>) for the output of time-dependent problems.
  * 
  * @author yuemingl
  *
  */
 public class MeshWriter {
 	Mesh mesh = null;
+	FlatMesh flatMesh = null;
+	
+	//Background thread of the binary writers, see setAsync()
+	boolean async = false;
+	ExecutorService executor = null;
+	List<Future<?>> pending = new ArrayList<Future<?>>();
 	
 	public MeshWriter(Mesh mesh) {
 		this.mesh = mesh;
 	}
 	
+	/**
+	 * Writer of a flat mesh, only the binary writers (<tt>writeVTU()</tt> 
+	 * and <tt>writeTechplotBinary()</tt>) are supported
+	 * 
+	 * @param mesh
+	 */
+	public MeshWriter(FlatMesh mesh) {
+		this.flatMesh = mesh;
+	}
+	
+	/**
+	 * If <tt>async</tt> is true, the binary writers copy the mesh and the values 
+	 * and return immediately, the files are written in order on a background
+	 * thread. Call <tt>flush()</tt> to wait until all the files are written.
+	 * 
+	 * @param async
+	 * @return
+	 */
+	public MeshWriter setAsync(boolean async) {
+		this.async = async;
+		return this;
+	}
+	
+	/**
+	 * Wait until all the files submitted to the background thread are written.
+	 * If writing a file failed, the first failure is thrown after all the
+	 * files are finished.
+	 */
+	public void flush() {
+		List<Future<?>> list;
+		synchronized(pending) {
+			list = new ArrayList<Future<?>>(pending);
+			pending.clear();
+		}
+		RuntimeException failure = null;
+		for(Future<?> f : list) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new FutureyeException("MeshWriter: interrupted while waiting for the output");
+			} catch (ExecutionException e) {
+				if(failure == null) {
+					if(e.getCause() instanceof RuntimeException)
+						failure = (RuntimeException)e.getCause();
+					else
+						failure = new FutureyeException("MeshWriter: "+e.getCause());
+				}
+			}
+		}
+		if(failure != null)
+			throw failure;
+	}
+	
+	/**
+	 * Write the mesh and nodal values to a VTK XML unstructured grid file (.vtu)
+	 * with the arrays in raw binary appended data, which is read by ParaView 
+	 * and VisIt. The values are named U, V, W, U4, ... as in <tt>writeTechplot()</tt>.
+	 * 
+	 * @param fileName
+	 * @param u
+	 * @param us
+	 */
+	public void writeVTU(final String fileName, Vector u, Vector ...us) {
+		final Snapshot s = new Snapshot(u, us);
+		submit(() -> writeVTU(fileName, s));
+	}
+	
+	/**
+	 * Write the mesh and nodal values to a Tecplot binary file (.plt, format
+	 * version 112) with one zone in block format. Elements are split and 
+	 * mixed meshes are written in the same way as <tt>writeTechplot()</tt>.
+	 * 
+	 * @param fileName
+	 * @param u
+	 * @param us
+	 */
+	public void writeTechplotBinary(final String fileName, Vector u, Vector ...us) {
+		final Snapshot s = new Snapshot(u, us);
+		submit(() -> writeTechplotBinary(fileName, s));
+	}
+	
+	protected void submit(Runnable task) {
+		if(!async) {
+			task.run();
+			return;
+		}
+		synchronized(pending) {
+			if(executor == null) {
+				executor = Executors.newSingleThreadExecutor(r -> {
+					Thread t = new Thread(r, "MeshWriter");
+					t.setDaemon(true);
+					return t;
+				});
+			}
+			pending.add(executor.submit(task));
+		}
+	}
+	
+	//Value names after "U"
+	static final String [] VNs ={"V","W","U4","U5","U6","U7","U8","U9"};
+	
+	static String valueName(int i) {
+		if(i == 0) return "U";
+		return i <= VNs.length ? VNs[i-1] : "U"+(i+1);
+	}
+	
+	/**
+	 * Copy of the mesh and values at the time a binary writer is called, 
+	 * so the caller can change them while the file is written
+	 */
+	protected class Snapshot {
+		int dim;
+		int nNodes;
+		double[] xyz;      // dim coordinates per node
+		int[] elemPtr;
+		int[] elemNodes;   // 0-based
+		double[][] values;
+		
+		Snapshot(Vector u, Vector ...us) {
+			if(flatMesh != null) {
+				//A flat mesh is immutable
+				dim = flatMesh.getDim();
+				nNodes = flatMesh.getNumberOfNodes();
+				xyz = flatMesh.getCoords();
+				elemPtr = flatMesh.getElementPtr();
+				elemNodes = flatMesh.getElementNodes();
+			} else {
+				NodeList nodes = mesh.getNodeList();
+				ElementList elements = mesh.getElementList();
+				nNodes = nodes.size();
+				dim = nNodes == 0 ? 2 : nodes.at(1).dim();
+				xyz = new double[dim*nNodes];
+				for(int i=1;i<=nNodes;i++) {
+					Node node = nodes.at(i);
+					for(int d=0; d<dim; d++)
+						xyz[(i-1)*dim+d] = node.coord(d+1);
+				}
+				int nE = elements.size();
+				elemPtr = new int[nE+1];
+				for(int k=1; k<=nE; k++)
+					elemPtr[k] = elemPtr[k-1] + elements.at(k).nodes.size();
+				elemNodes = new int[elemPtr[nE]];
+				for(int k=1, p=0; k<=nE; k++) {
+					NodeList eNodes = elements.at(k).nodes;
+					for(int j=1; j<=eNodes.size(); j++)
+						elemNodes[p++] = eNodes.at(j).globalIndex-1;
+				}
+			}
+			values = new double[us.length+1][];
+			for(int v=0; v<=us.length; v++) {
+				Vector vec = v == 0 ? u : us[v-1];
+				double[] a = new double[nNodes];
+				for(int i=0; i<nNodes; i++)
+					a[i] = vec.get(i+1);
+				values[v] = a;
+			}
+		}
+		
+		int getNumberOfElements() {
+			return elemPtr.length-1;
+		}
+	}
+	
+	/**
+	 * VTK cell type of an element with <tt>n</tt> nodes
+	 */
+	protected static int getVTKCellType(int dim, int n) {
+		if(dim == 1 && n == 2) return 3;  //VTK_LINE
+		if(dim == 2 && n == 3) return 5;  //VTK_TRIANGLE
+		if(dim == 2 && n == 4) return 9;  //VTK_QUAD
+		if(dim == 2 && n == 6) return 22; //VTK_QUADRATIC_TRIANGLE
+		if(dim == 2 && n == 8) return 23; //VTK_QUADRATIC_QUAD
+		if(dim == 3 && n == 4) return 10; //VTK_TETRA
+		if(dim == 3 && n == 8) return 12; //VTK_HEXAHEDRON
+		throw new FutureyeException("VTK output: unsupported element with "+n+
+				" nodes in "+dim+"D");
+	}
+	
+	protected static void writeVTU(String fileName, Snapshot s) {
+		try {
+			int nN = s.nNodes;
+			int nE = s.getNumberOfElements();
+			int nV = s.values.length;
+			//Size of the data arrays in bytes, each one is preceded by its size (UInt64)
+			long[] sizes = new long[nV+4];
+			for(int v=0; v<nV; v++)
+				sizes[v] = 8L*nN;
+			sizes[nV] = 24L*nN;
+			sizes[nV+1] = 4L*s.elemNodes.length;
+			sizes[nV+2] = 4L*nE;
+			sizes[nV+3] = nE;
+			long[] offsets = new long[sizes.length];
+			for(int i=1; i<sizes.length; i++)
+				offsets[i] = offsets[i-1] + 8 + sizes[i-1];
+			
+			StringBuilder sb = new StringBuilder();
+			sb.append("<?xml version=\"1.0\"?>\n");
+			sb.append("<VTKFile type=\"UnstructuredGrid\" version=\"1.0\" byte_order=\"LittleEndian\" header_type=\"UInt64\">\n");
+			sb.append("  <UnstructuredGrid>\n");
+			sb.append("    <Piece NumberOfPoints=\"").append(nN).append("\" NumberOfCells=\"").append(nE).append("\">\n");
+			sb.append("      <PointData Scalars=\"U\">\n");
+			for(int v=0; v<nV; v++)
+				sb.append("        <DataArray type=\"Float64\" Name=\"").append(valueName(v))
+					.append("\" format=\"appended\" offset=\"").append(offsets[v]).append("\"/>\n");
+			sb.append("      </PointData>\n");
+			sb.append("      <Points>\n");
+			sb.append("        <DataArray type=\"Float64\" NumberOfComponents=\"3\" format=\"appended\" offset=\"")
+				.append(offsets[nV]).append("\"/>\n");
+			sb.append("      </Points>\n");
+			sb.append("      <Cells>\n");
+			sb.append("        <DataArray type=\"Int32\" Name=\"connectivity\" format=\"appended\" offset=\"")
+				.append(offsets[nV+1]).append("\"/>\n");
+			sb.append("        <DataArray type=\"Int32\" Name=\"offsets\" format=\"appended\" offset=\"")
+				.append(offsets[nV+2]).append("\"/>\n");
+			sb.append("        <DataArray type=\"UInt8\" Name=\"types\" format=\"appended\" offset=\"")
+				.append(offsets[nV+3]).append("\"/>\n");
+			sb.append("      </Cells>\n");
+			sb.append("    </Piece>\n");
+			sb.append("  </UnstructuredGrid>\n");
+			sb.append("  <AppendedData encoding=\"raw\">\n");
+			sb.append("_");
+			
+			try(BinaryFileWriter out = new BinaryFileWriter(fileName)) {
+				out.putAscii(sb);
+				for(int v=0; v<nV; v++) {
+					out.putLong(sizes[v]);
+					out.putDoubles(s.values[v]);
+				}
+				out.putLong(sizes[nV]);
+				for(int i=0; i<nN; i++) {
+					for(int d=0; d<3; d++)
+						out.putDouble(d < s.dim ? s.xyz[i*s.dim+d] : 0.0);
+				}
+				out.putLong(sizes[nV+1]);
+				out.putInts(s.elemNodes);
+				out.putLong(sizes[nV+2]);
+				for(int k=1; k<=nE; k++)
+					out.putInt(s.elemPtr[k]-s.elemPtr[0]);
+				out.putLong(sizes[nV+3]);
+				for(int k=0; k<nE; k++)
+					out.putByte(getVTKCellType(s.dim, s.elemPtr[k+1]-s.elemPtr[k]));
+				out.putAscii("\n  </AppendedData>\n</VTKFile>\n");
+			}
+		} catch (IOException e) {
+			throw new FutureyeException("VTK output: "+fileName+": "+e.getMessage());
+		}
+	}
+	
+	//Tecplot zone types
+	static final int FELINESEG = 1;
+	static final int FETRIANGLE = 2;
+	static final int FEQUADRILATERAL = 3;
+	static final int FETETRAHEDRON = 4;
+	static final int FEBRICK = 5;
+	
+	//Sub-elements of the quadratic elements in writeTechplot(), 0-based local nodes
+	static final int[][] SPLIT_TRIANGLE6 = {{0,3,5},{1,4,3},{2,5,4},{3,4,5}};
+	static final int[][] SPLIT_QUADRILATERAL8 = {{0,4,7,0},{1,5,4,1},{2,6,5,2},{3,7,6,3},{4,5,6,7}};
+	
+	/**
+	 * Return the Tecplot zone type in <tt>type[0]</tt> and the (0-based) connectivity
+	 * of the Tecplot elements
+	 */
+	protected static int[] getTechplotElements(Snapshot s, int[] type) {
+		int nE = s.getNumberOfElements();
+		int nMaxNodes = 0;
+		for(int k=0; k<nE; k++)
+			nMaxNodes = Math.max(nMaxNodes, s.elemPtr[k+1]-s.elemPtr[k]);
+		int[][][] split = new int[9][][];
+		int nPerElement;
+		if(s.dim == 1) {
+			type[0] = FELINESEG; nPerElement = 2;
+			split[2] = new int[][]{{0,1}};
+		} else if(s.dim == 2 && nMaxNodes % 3 == 0) {
+			type[0] = FETRIANGLE; nPerElement = 3;
+			split[3] = new int[][]{{0,1,2}};
+			split[6] = SPLIT_TRIANGLE6;
+		} else if(s.dim == 2) {
+			type[0] = FEQUADRILATERAL; nPerElement = 4;
+			split[3] = new int[][]{{0,1,2,0}};
+			split[4] = new int[][]{{0,1,2,3}};
+			split[8] = SPLIT_QUADRILATERAL8;
+		} else if(nMaxNodes == 4) {
+			type[0] = FETETRAHEDRON; nPerElement = 4;
+			split[4] = new int[][]{{0,1,2,3}};
+		} else {
+			type[0] = FEBRICK; nPerElement = 8;
+			split[4] = new int[][]{{0,1,2,2,3,3,3,3}};
+			split[8] = new int[][]{{0,1,2,3,4,5,6,7}};
+		}
+		int count = 0;
+		for(int k=0; k<nE; k++) {
+			int n = s.elemPtr[k+1]-s.elemPtr[k];
+			if(n >= split.length || split[n] == null)
+				throw new FutureyeException("Tecplot output: unsupported element with "+n+
+						" nodes in "+s.dim+"D");
+			count += split[n].length;
+		}
+		int[] conn = new int[count*nPerElement];
+		for(int k=0, p=0; k<nE; k++) {
+			int start = s.elemPtr[k];
+			for(int[] sub : split[s.elemPtr[k+1]-start]) {
+				for(int j : sub)
+					conn[p++] = s.elemNodes[start+j];
+			}
+		}
+		return conn;
+	}
+	
+	//Tecplot string: one Int32 per character, terminated by 0
+	protected static void putTechplotString(BinaryFileWriter out, String str) throws IOException {
+		for(int i=0; i<str.length(); i++)
+			out.putInt(str.charAt(i));
+		out.putInt(0);
+	}
+	
+	protected static void writeTechplotBinary(String fileName, Snapshot s) {
+		try {
+			int[] type = new int[1];
+			int[] conn = getTechplotElements(s, type);
+			int nVars = s.dim + s.values.length;
+			int nPerElement = type[0] == FELINESEG ? 2 : (type[0] == FETRIANGLE ? 3 : 
+				(type[0] == FEBRICK ? 8 : 4));
+			
+			try(BinaryFileWriter out = new BinaryFileWriter(fileName)) {
+				//Header section
+				out.putAscii("#!TDV112");
+				out.putInt(1); //byte order
+				out.putInt(0); //file type: full
+				putTechplotString(out, "Futureye");
+				out.putInt(nVars);
+				String[] coordNames = {"X","Y","Z"};
+				for(int d=0; d<s.dim; d++)
+					putTechplotString(out, coordNames[d]);
+				for(int v=0; v<s.values.length; v++)
+					putTechplotString(out, valueName(v));
+				out.putFloat(299.0f); //zone marker
+				putTechplotString(out, "ZONE 001");
+				out.putInt(-1); //parent zone
+				out.putInt(-1); //strand id
+				out.putDouble(0.0); //solution time
+				out.putInt(-1); //not used
+				out.putInt(type[0]);
+				out.putInt(0); //all the variables at the nodes
+				out.putInt(0); //no face neighbors
+				out.putInt(0); //no user-defined face neighbor connections
+				out.putInt(s.nNodes);
+				out.putInt(conn.length/nPerElement);
+				out.putInt(0); out.putInt(0); out.putInt(0); //cell dims
+				out.putInt(0); //no auxiliary data
+				out.putFloat(357.0f); //end of header
+			
+				//Data section
+				out.putFloat(299.0f);
+				for(int v=0; v<nVars; v++)
+					out.putInt(2); //double
+				out.putInt(0); //no passive variables
+				out.putInt(0); //no variable sharing
+				out.putInt(-1); //no connectivity sharing
+				double[][] vars = new double[nVars][];
+				for(int d=0; d<s.dim; d++) {
+					double[] c = new double[s.nNodes];
+					for(int i=0; i<s.nNodes; i++)
+						c[i] = s.xyz[i*s.dim+d];
+					vars[d] = c;
+				}
+				for(int v=0; v<s.values.length; v++)
+					vars[s.dim+v] = s.values[v];
+				for(double[] a : vars) {
+					double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+					for(double x : a) {
+						if(x < min) min = x;
+						if(x > max) max = x;
+					}
+					out.putDouble(a.length == 0 ? 0.0 : min);
+					out.putDouble(a.length == 0 ? 0.0 : max);
+				}
+				for(double[] a : vars)
+					out.putDoubles(a);
+				out.putInts(conn);
+			}
+		} catch (IOException e) {
+			throw new FutureyeException("Tecplot output: "+fileName+": "+e.getMessage());
+		}
+	}
+	
 	public void writeTechplot(String fileName, Vector u, Vector ...us) {
 		FileOutputStream out;
 		try {
@@ -52,7 +462,6 @@ public class MeshWriter {
 			}
 			int dim = nodes.at(1).dim();
 			
-			String [] VNs ={"V","W","U4","U5","U6","U7","U8","U9"};
 			if(dim == 1) {
 				StringBuilder sb = new StringBuilder();
 					for(int i=1;i<=nNode;i++) {
@@ -342,4 +751,63 @@ public class MeshWriter {
 			e.printStackTrace();
 		}
 	}
+	
+	/**
+	 * Write a flat mesh and its adjacency to a binary file, which is loaded 
+	 * by <tt>MeshReader</tt> without parsing. Convert a .grd file once by
+	 * <p><blockquote><pre>
+	 * MeshWriter.writeBinaryMesh(new MeshReader("mesh.grd").readFlatMesh(), "mesh.bin");
+	 * </pre></blockquote>
+	 * The vertices are already adjusted to counterclockwise in the flat mesh,
+	 * see <tt>MeshReader.readBinary()</tt> for the file format.
+	 * 
+	 * @param mesh
+	 * @param fileName
+	 */
+	public static void writeBinaryMesh(FlatMesh mesh, String fileName) {
+		try {
+			int[] elemPtr = mesh.getElementPtr();
+			int[] elemNodes = mesh.getElementNodes();
+			int[] elemType = mesh.getElementTypes();
+			int[] nodeElemPtr = mesh.getNodeElementPtr();
+			int[] nodeElems = mesh.getNodeElements();
+			int[] elemElemPtr = mesh.getElementNeighborPtr();
+			int[] elemElems = mesh.getElementNeighbors();
+			double[] xyz = mesh.getCoords();
+			
+			int[][] arrays = {elemPtr, elemNodes, elemType, 
+					nodeElemPtr, nodeElems, elemElemPtr, elemElems};
+			long size = MeshReader.BINARY_HEADER + 8L*xyz.length;
+			for(int[] a : arrays)
+				size += 4L*a.length;
+			if(size > Integer.MAX_VALUE)
+				throw new FutureyeException("Binary mesh file larger than 2GB: "+fileName);
+			
+			ByteBuffer buf = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+			buf.put(MeshReader.BINARY_MAGIC);
+			buf.putInt(MeshReader.BINARY_VERSION);
+			buf.putInt(mesh.getDim());
+			buf.putInt(mesh.getNumberOfNodes());
+			buf.putInt(mesh.getNumberOfElements());
+			buf.putInt(elemNodes.length);
+			buf.putInt(nodeElems.length);
+			buf.putInt(elemElems.length);
+			buf.putInt(0);
+			buf.putInt(0);
+			buf.asDoubleBuffer().put(xyz);
+			buf.position(buf.position() + 8*xyz.length);
+			IntBuffer ib = buf.asIntBuffer();
+			for(int[] a : arrays)
+				ib.put(a);
+			buf.position(0);
+			
+			try(FileOutputStream out = new FileOutputStream(new File(fileName))) {
+				FileChannel ch = out.getChannel();
+				while(buf.hasRemaining())
+					ch.write(buf);
+			}
+		} catch (IOException e) {
+			throw new FutureyeException("Binary mesh output: "+fileName+": "+e.getMessage());
+		}
+	}
 }
@@ -34,5 +34,21 @@ public class AssembleParam {
 		this.testDOFIdx = j;
 		this.node = n;
 	}
+	
+	/**
+	 * Reset the parameters, so the same object can be reused in the
+	 * assembly instead of allocating a new one for each entry
+	 * 
+	 * @param e
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public AssembleParam set(Element e, int i, int j) {
+		this.element = e;
+		this.trialDOFIdx = i;
+		this.testDOFIdx = j;
+		return this;
+	}
 
 }
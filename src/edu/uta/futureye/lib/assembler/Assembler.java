@@ -5,10 +5,10 @@
  */
 package edu.uta.futureye.lib.assembler;
 
-import edu.uta.futureye.algebra.SparseMatrixRowMajor;
-import edu.uta.futureye.algebra.SparseVectorHashMap;
+import edu.uta.futureye.algebra.CSRMatrix;
 import edu.uta.futureye.algebra.intf.Matrix;
 import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.core.DOFMap;
 import edu.uta.futureye.core.Element;
 import edu.uta.futureye.core.Mesh;
 import edu.uta.futureye.core.intf.FiniteElement;
@@ -31,10 +31,15 @@ public class Assembler {
 	/**
 	 * Several assemblers can be chained by using this method
 	 * to assemble stiff matrix and load vector
+	 * <p>
+	 * A chained assembler is usually used on boundary elements, which are
+	 * not in the connectivity table of the mesh, so the global indices are 
+	 * computed by the finite element (see <tt>assembleGlobal(Element,Matrix,Vector)</tt>)
 	 * @param weakForm
 	 */
 	public Assembler(Assembler parent, WeakForm weakForm) {
 		this.parentAssembler = parent;
+		this.mesh = parent.mesh;
 		this.assembler = new BasicAssembler(mesh, weakForm);
 	}
 	
@@ -43,7 +48,9 @@ public class Assembler {
 	 * @param e
 	 */
 	public void assembleLocal(Element e) {
-		// Assemble on domain element
+		// Assemble on domain element, the mesh is prepared by the root assembler
+		if(null == this.parentAssembler)
+			assembler.prepareMesh();
 		assembler.assembleLocal(e);
 	}
 
@@ -66,11 +73,10 @@ public class Assembler {
 	 * @param mesh
 	 */
 	public void assembleGlobal() {
-		int dim = this.assembler.weakForm.getFiniteElement().getTotalNumberOfDOFs(mesh);
 		if(null == this.parentAssembler) {
-			gA = new SparseMatrixRowMajor(dim,dim);
-			gb = new SparseVectorHashMap(dim);
-			assembleGlobal(gA, gb);
+			this.assembler.assembleGlobal();
+			this.gA = this.assembler.getGlobalStiffMatrix();
+			this.gb = this.assembler.getGlobalLoadVector();
 		} else {
 			throw new RuntimeException("Call assembleGlobal(Mesh mesh) in root assembler only!");
 		}
@@ -88,12 +94,52 @@ public class Assembler {
 	 * @param load
 	 */
 	public void assembleGlobal(Matrix stiff, Vector load) {
+		if(this.assembler.getParallelism() > 1 || stiff instanceof CSRMatrix) {
+			this.assembler.assembleGlobal(stiff, load);
+			this.gA = stiff;
+			this.gb = load;
+			return;
+		}
+		this.assembler.prepareMesh();
 		for(Element e : mesh.getElementList()) {
 			this.assembleGlobal(e, stiff, load);
 		}
 	}
+	
+	/**
+	 * Set the number of threads used in <tt>assembleGlobal()</tt>
+	 * 
+	 * @see BasicAssembler#setParallelism(int)
+	 * @param parallelism
+	 * @return
+	 */
+	public Assembler setParallelism(int parallelism) {
+		this.assembler.setParallelism(parallelism);
+		return this;
+	}
+	
+	/**
+	 * @see BasicAssembler#setDeterministic(boolean)
+	 * @param deterministic
+	 * @return
+	 */
+	public Assembler setDeterministic(boolean deterministic) {
+		this.assembler.setDeterministic(deterministic);
+		return this;
+	}
+
+	/**
+	 * @see BasicAssembler#getSparsityPattern()
+	 * @return
+	 */
+	public SparsityPattern getSparsityPattern() {
+		return this.assembler.getSparsityPattern();
+	}
 
 	/**
+	 * The global indices of the DOFs of <tt>e</tt> are read from the connectivity
+	 * table of the mesh if <tt>e</tt> is an element of the mesh, otherwise
+	 * (e.g. boundary elements) they are computed by <tt>fe.getGlobalIndex()</tt>
 	 * 
 	 * @param e
 	 * @param stiff
@@ -106,11 +152,19 @@ public class Assembler {
 		int nDOFs = fe.getNumberOfDOFs();
 
 		// Get local-global indexing
+		int[] gIdx = new int[nDOFs];
+		DOFMap dofMap = this.assembler.dofMap;
+		int eleIdx = dofMap == null ? 0 : dofMap.getElementIndex(mesh, e);
+		for(int j=0;j<nDOFs;j++) {
+			if(eleIdx > 0)
+				gIdx[j] = dofMap.getGlobalIndex(eleIdx, j+1);
+			else
+				gIdx[j] = fe.getGlobalIndex(mesh, e, j+1);
+		}
 		for(int j=0;j<nDOFs;j++) {
-			int globalIdxJ = fe.getGlobalIndex(mesh, e, j+1);
+			int globalIdxJ = gIdx[j];
 			for(int i=0;i<nDOFs;i++) {
-				int globalIdxI = fe.getGlobalIndex(mesh, e, i+1);
-				stiff.add(globalIdxJ, globalIdxI, this.assembler.A[j][i]);
+				stiff.add(globalIdxJ, gIdx[i], this.assembler.A[j][i]);
 			}
 			load.add(globalIdxJ, this.assembler.b[j]);
 		}
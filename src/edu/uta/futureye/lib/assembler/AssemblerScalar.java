@@ -160,6 +160,7 @@ public class AssemblerScalar implements AssemblerOld {
 	//2011/11/28 modified according to vector valued case
 	@Override
 	public void imposeDirichletCondition(MathFunc diri) {
+		DirichletCondition bc = new DirichletCondition(this.globalStiff.getRowDim());
 		ElementList eList = mesh.getElementList();
 		for(int i=1;i<=eList.size();i++) {
 			Element e = eList.at(i);
@@ -169,9 +170,9 @@ public class AssemblerScalar implements AssemblerOld {
 				GeoEntity ge = dof.getOwner();
 				if(ge instanceof Node) {
 					Node n = (Node)ge;
-					if(n.getNodeType() == NodeType.Dirichlet) {
+					if(n.getNodeType() == NodeType.Dirichlet && !bc.contains(dof.getGlobalIndex())) {
 						Variable v = Variable.createFrom(diri, n, n.globalIndex); //bugfix 11/27/2013 Variable.createFrom(diri, n, 0);
-						setDirichlet(dof.getGlobalIndex(),diri.apply(v));
+						bc.set(dof.getGlobalIndex(),diri.apply(v));
 					}
 				} else if(ge instanceof EdgeLocal) {
 					//2D单元（面）其中的局部边上的自由度
@@ -192,9 +193,9 @@ public class AssemblerScalar implements AssemblerOld {
 					VertexList vs = ((GeoEntity2D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType()) {
+						if(NodeType.Dirichlet == n.getNodeType() && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(dof.getGlobalIndex(),diri.apply(v));
+							bc.set(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				} else if(ge instanceof Face) {
@@ -203,9 +204,9 @@ public class AssemblerScalar implements AssemblerOld {
 					VertexList vs = ((GeoEntity2D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType()) {
+						if(NodeType.Dirichlet == n.getNodeType() && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(dof.getGlobalIndex(),diri.apply(v));
+							bc.set(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				} else if(ge instanceof Volume) {
@@ -213,14 +214,15 @@ public class AssemblerScalar implements AssemblerOld {
 					VertexList vs = ((GeoEntity3D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType()) {
+						if(NodeType.Dirichlet == n.getNodeType() && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(dof.getGlobalIndex(),diri.apply(v));
+							bc.set(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				}
 			}
 		}
+		bc.apply(this.globalStiff, this.globalLoad);
 	}
 	
 	/**
@@ -60,24 +60,16 @@ public class AssemblerScalarFast implements AssemblerOld{
 	
 	@Override
 	public void imposeDirichletCondition(MathFunc diri) {
+		DirichletCondition bc = new DirichletCondition(this.globalStiff.getRowDim());
 		NodeList nList = mesh.getNodeList();
 		for(int i=1;i<=nList.size();i++) {
 			Node n = nList.at(i);
 			if(n.getNodeType() == NodeType.Dirichlet) {
 				Variable v = Variable.createFrom(diri, n, n.globalIndex);
-				this.globalStiff.set(n.globalIndex, n.globalIndex, 1.0);
-				double val = diri.apply(v);
-				this.globalLoad.set(n.globalIndex, val);
-				for(int j=1;j<=this.globalStiff.getRowDim();j++) {
-					if(j!=n.globalIndex) {
-						//TODO 行列都需要置零
-						this.globalLoad.add(j, -this.globalStiff.get(j, n.globalIndex)*val);
-						this.globalStiff.set(j, n.globalIndex, 0.0);
-						this.globalStiff.set(n.globalIndex, j, 0.0);
-					}
-				}
+				bc.set(n.globalIndex, diri.apply(v));
 			}
 		}
+		bc.apply(this.globalStiff, this.globalLoad);
 	}
 	
 	//二维：刚度矩阵增加hanging node约束系数
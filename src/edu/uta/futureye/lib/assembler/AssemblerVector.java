@@ -1,10 +1,5 @@
 package edu.uta.futureye.lib.assembler;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
-
 import edu.uta.futureye.algebra.FullMatrix;
 import edu.uta.futureye.algebra.SparseBlockMatrix;
 import edu.uta.futureye.algebra.SparseBlockVector;
@@ -290,27 +285,7 @@ public class AssemblerVector implements AssemblerOld {
 	@Override
 	public void imposeDirichletCondition(VecMathFunc diri) {
 		ElementList eList = mesh.getElementList();
-		
-		int nRow = this.globalStiff.getRowDim();
-		int nCol = this.globalStiff.getColDim();
-		FullMatrix fStiff = new FullMatrix(nRow,nCol);
-		double [][]fsData = fStiff.getData();
-		//System.out.println(this.globalStiff.getNonZeroNumber());
-		Map<Integer,Map<Integer,Double>> sData = this.globalStiff.getAll();
-		//int size = 0;
-		for(Entry<Integer,Map<Integer,Double>> e1 : sData.entrySet()) {
-			int r = e1.getKey();
-			Map<Integer,Double> row = e1.getValue();
-			for(Entry<Integer,Double> e2 : row.entrySet()) {
-				int c = e2.getKey();
-				Double v = e2.getValue();
-				fsData[r-1][c-1] = v;
-				//size++;
-			}
-		}
-		//System.out.println(this.globalStiff.getNonZeroNumber()+"=="+size);
-		
-		Set<Integer> nodeDOFSet = new HashSet<Integer>();
+		DirichletCondition bc = new DirichletCondition(this.globalStiff.getRowDim());
 		for(int ie=1;ie<=eList.size();ie++) {
 			Element e = eList.at(ie);
 			DOFList DOFs = e.getAllDOFList(DOFOrder.NEFV);
@@ -320,14 +295,11 @@ public class AssemblerVector implements AssemblerOld {
 				int nVVFCmpt = dof.getVVFComponent();
 				MathFunc fdiri = diri.get(nVVFCmpt);
 				if(ge instanceof Node) {
-					//if(!nodeDOFSet.contains(dof.getGlobalIndex())) {
-						Node n = (Node)ge;
-						if(n.getNodeType(nVVFCmpt) == NodeType.Dirichlet) {
-							Variable v = Variable.createFrom(fdiri, n, 0);
-							setDirichlet(fStiff,dof.getGlobalIndex(),fdiri.apply(v));
-						}
-					//	nodeDOFSet.add(dof.getGlobalIndex());
-					//}
+					Node n = (Node)ge;
+					if(n.getNodeType(nVVFCmpt) == NodeType.Dirichlet && !bc.contains(dof.getGlobalIndex())) {
+						Variable v = Variable.createFrom(fdiri, n, 0);
+						bc.set(dof.getGlobalIndex(),fdiri.apply(v));
+					}
 				} else if(ge instanceof EdgeLocal) {
 					//2D单元（面）其中的局部边上的自由度
 					EdgeLocal edge = (EdgeLocal)ge;
@@ -347,9 +319,9 @@ public class AssemblerVector implements AssemblerOld {
 					VertexList vs = ((GeoEntity2D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType(nVVFCmpt)) {
+						if(NodeType.Dirichlet == n.getNodeType(nVVFCmpt) && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(fdiri, n, 0);
-							setDirichlet(fStiff,dof.getGlobalIndex(),fdiri.apply(v));
+							bc.set(dof.getGlobalIndex(),fdiri.apply(v));
 						}
 					}
 				} else if(ge instanceof Face) {
@@ -358,9 +330,9 @@ public class AssemblerVector implements AssemblerOld {
 					VertexList vs = ((GeoEntity2D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType(nVVFCmpt)) {
+						if(NodeType.Dirichlet == n.getNodeType(nVVFCmpt) && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(fdiri, n, 0);
-							setDirichlet(fStiff,dof.getGlobalIndex(),fdiri.apply(v));
+							bc.set(dof.getGlobalIndex(),fdiri.apply(v));
 						}
 					}
 				} else if(ge instanceof Volume) {
@@ -368,28 +340,14 @@ public class AssemblerVector implements AssemblerOld {
 					VertexList vs = ((GeoEntity3D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType(nVVFCmpt)) {
+						if(NodeType.Dirichlet == n.getNodeType(nVVFCmpt) && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(fdiri, n, 0);
-							setDirichlet(fStiff,dof.getGlobalIndex(),fdiri.apply(v));
+							bc.set(dof.getGlobalIndex(),fdiri.apply(v));
 						}
 					}
 				}
 			}
 		}
-		this.globalStiff.clearData();
-		long begin = System.currentTimeMillis();
-		for(int i=nRow; --i>=0; ) {
-		//for(int i=0; i<nRow; i++) {
-			double[] _fsDatai = fsData[i];
-			for(int j=nCol; --j>=0; ) {
-			//for(int j=0; j<nCol; j++) {
-				double v = _fsDatai[j];
-				if(Math.abs(v) > Matrix.zeroEps) {
-					this.globalStiff.set(i+1, j+1, v);
-				}
-			}
-		}
-		long end = System.currentTimeMillis();
-		System.out.println("time="+(end-begin)+"ms");
+		bc.apply(this.globalStiff, this.globalLoad);
 	}		
 }
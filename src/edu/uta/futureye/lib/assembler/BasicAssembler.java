@@ -5,25 +5,55 @@
  */
 package edu.uta.futureye.lib.assembler;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import edu.uta.futureye.algebra.CSRMatrix;
 import edu.uta.futureye.algebra.SparseMatrixRowMajor;
 import edu.uta.futureye.algebra.SparseVectorHashMap;
 import edu.uta.futureye.algebra.intf.Matrix;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+import edu.uta.futureye.algebra.intf.SparseVector;
 import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.bytecode.CompiledKernel;
+import edu.uta.futureye.core.DOFMap;
 import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.FlatMesh;
 import edu.uta.futureye.core.Mesh;
-import edu.uta.futureye.core.intf.FiniteElement;
 import edu.uta.futureye.function.operator.FOIntegrate;
+import edu.uta.futureye.function.operator.QuadratureRule;
 import edu.uta.futureye.lib.weakform.WeakForm;
-import edu.uta.futureye.util.container.ElementList;
+import edu.uta.futureye.util.FutureyeException;
 
 public class BasicAssembler {
 	public Mesh mesh;
+	public FlatMesh flatMesh; // used instead of mesh if not null
 	public WeakForm weakForm;
 	
 	public double[][] A; // domain local stiff matrix
 	public double[] b;   // domain local load vector
 	double[] params;
 	int nDOFs;
+	int nCoords; // number of node coordinates at the beginning of params
+	AssembleParam ap = new AssembleParam(null, -1, -1); // reused for all the entries
+	boolean meshPrepared = false;
+	DOFMap dofMap; // connectivity table of the mesh, see prepareMesh()
+	
+	int parallelism = 1; // number of threads for global assembly
+	boolean deterministic = true;
+	int blockSize = 1024; // number of elements per thread in a block (deterministic mode)
+	BasicAssembler[] workers;
+	int workerIndex;
+	
+	SparsityPattern pattern; // sparsity pattern of global stiff matrix, computed on demand
+	boolean fixedPattern = true; // see setFixedPattern()
 	
 	Matrix gA; // global stiff matrix
 	Vector gb; // global load vector
@@ -34,67 +64,175 @@ public class BasicAssembler {
 		nDOFs = weakForm.getFiniteElement().getNumberOfDOFs();
 		A = new double[nDOFs][nDOFs];
 		b = new double[nDOFs];
-		params = new double[weakForm.getFiniteElement().getArgsOrder().length];
+		params = new double[weakForm.getArgsOrder().length];
+	}
+	
+	/**
+	 * Assemble on a flat mesh. The finite element of the weak form must be
+	 * nodal (see <tt>DOFMap(FlatMesh,FiniteElement)</tt>). No <tt>Element</tt> object
+	 * exists, so <tt>AssembleParam.element</tt> is null in the functions of the weak form.
+	 * 
+	 * @param mesh
+	 * @param weakForm
+	 */
+	public BasicAssembler(FlatMesh mesh, WeakForm weakForm) {
+		this((Mesh)null, weakForm);
+		this.flatMesh = mesh;
+	}
+	
+	/**
+	 * Preprocess the mesh before the first assembly: the vertices of all the 
+	 * elements are adjusted to counterclockwise once, instead of checking
+	 * the orientation each time an element is assembled. The connectivity
+	 * table (<tt>Mesh.getDOFMap()</tt>) is fetched after the adjustment.
+	 * <p>
+	 * Called by <tt>assembleGlobal()</tt>. Call <tt>resetSparsityPattern()</tt>
+	 * if the mesh is changed.
+	 */
+	public void prepareMesh() {
+		if(!meshPrepared && flatMesh != null) {
+			//The vertices are adjusted when the flat mesh is built
+			dofMap = flatMesh.getDOFMap(weakForm.getFiniteElement());
+			meshPrepared = true;
+		} else if(!meshPrepared && mesh != null) {
+			mesh.adjustVerticeToCounterClockwise();
+			dofMap = mesh.getDOFMap(weakForm.getFiniteElement());
+			meshPrepared = true;
+		}
 	}
 	
 	/**
-	 * Assemble local stiff matrix and load vector on a give element
+	 * Assemble local stiff matrix and load vector on a give element.
+	 * <p>
+	 * No object is allocated here: the arguments array and the 
+	 * <tt>AssembleParam</tt> object are reused for all the elements. 
+	 * The vertices of the element should be counterclockwise, see 
+	 * <tt>prepareMesh()</tt>.
+	 * 
 	 * @param e
 	 */
 	public void assembleLocal(Element e) {
-		e.adjustVerticeToCounterClockwise();
-		
-		FiniteElement fe = this.weakForm.getFiniteElement();
-		
-		double[] coords = e.getNodeCoords();
-		System.arraycopy(coords, 0, params, 0, coords.length);
+		nCoords = e.getNodeCoords(params);
+		assembleLocalWithCoords(e);
+	}
+	
+	/**
+	 * Assemble local stiff matrix and load vector on the <tt>idx</tt>-th element
+	 * (1-based) of the mesh or flat mesh
+	 * 
+	 * @param idx
+	 */
+	public void assembleLocal(int idx) {
+		if(flatMesh != null) {
+			nCoords = flatMesh.getNodeCoords(idx-1, params);
+			assembleLocalWithCoords(null);
+		} else {
+			assembleLocal(mesh.getElementList().at(idx));
+		}
+	}
+	
+	/**
+	 * Return the number of elements of the mesh or flat mesh
+	 * 
+	 * @return
+	 */
+	public int getNumberOfElements() {
+		return flatMesh != null ? flatMesh.getNumberOfElements() : mesh.getElementList().size();
+	}
+	
+	//The node coordinates are at the beginning of params
+	protected void assembleLocalWithCoords(Element e) {
+		CompiledKernel kernel = weakForm.getCompiledKernel();
+		QuadratureRule rule = weakForm.getQuadratureRule();
+		if(kernel != null) {
+			kernel.apply(ap.set(e, -1, -1), params, nCoords, 
+					rule.getPoints(), rule.getWeights(), A, b);
+			return;
+		}
 
 		weakForm.getCompiledJac().apply(params);
 
-		if(fe.getNumberOfDOFs() == 2) {
-		for(int j=0;j<nDOFs;j++) {
-			for(int i=0;i<nDOFs;i++) {
-				A[j][i] = FOIntegrate.intOnLinearRefElement(weakForm.getCompiledLHS()[j][i], 
-						new AssembleParam(e, i+1, j+1), params, coords.length, 5);
+		CompiledFunc[][] lhs = weakForm.getCompiledLHS();
+		CompiledFunc[] rhs = weakForm.getCompiledRHS();
+		for(int j=0; j<nDOFs; j++) {
+			for(int i=0; i<nDOFs; i++) {
+				A[j][i] = FOIntegrate.intOnRefElement(lhs[j][i], 
+						ap.set(e, i+1, j+1), params, nCoords, rule);
 			}
-			b[j] = FOIntegrate.intOnLinearRefElement(weakForm.getCompiledRHS()[j], 
-					new AssembleParam(e, -1, j+1), params, coords.length, 5);
+			b[j] = FOIntegrate.intOnRefElement(rhs[j], 
+					ap.set(e, -1, j+1), params, nCoords, rule);
 		}
-		} else if(fe.getNumberOfDOFs() == 3) {
-			for(int j=0; j<nDOFs; j++) {
-				for(int i=0; i<nDOFs; i++) {
-					A[j][i] = FOIntegrate.intOnTriangleRefElement(weakForm.getCompiledLHS()[j][i], 
-							new AssembleParam(e, i+1, j+1), params, coords.length, 2);//Laplace Test: 2=80.839 3=80.966, 4=80.967
-				}
-				b[j] = FOIntegrate.intOnTriangleRefElement(weakForm.getCompiledRHS()[j], 
-						new AssembleParam(e, -1, j+1), params, coords.length, 2);
-			}
-		} else if(fe.getNumberOfDOFs() == 4) {
-			for(int j=0; j<nDOFs; j++) {
-				for(int i=0; i<nDOFs; i++) {
-					A[j][i] = FOIntegrate.intOnRectangleRefElement(weakForm.getCompiledLHS()[j][i], 
-							new AssembleParam(e, i+1, j+1), params, coords.length, 5);
-				}
-				b[j] = FOIntegrate.intOnRectangleRefElement(weakForm.getCompiledRHS()[j], 
-						new AssembleParam(e, -1, j+1), params, coords.length, 5);
-			}
+	}
+	
+	/**
+	 * Return the sparsity pattern of the global stiff matrix. The pattern
+	 * is computed from the mesh at the first call and reused by the following
+	 * assemblies. Call <tt>resetSparsityPattern()</tt> if the mesh is changed.
+	 * 
+	 * @return
+	 */
+	public SparsityPattern getSparsityPattern() {
+		if(pattern == null) {
+			prepareMesh();
+			pattern = new SparsityPattern(dofMap);
 		}
+		return pattern;
+	}
+	
+	/**
+	 * Call this method if the mesh is changed, the sparsity pattern is
+	 * recomputed and the mesh is preprocessed again (see <tt>prepareMesh()</tt>)
+	 * at the next assembly
+	 */
+	public void resetSparsityPattern() {
+		this.pattern = null;
+		this.dofMap = null;
+		this.meshPrepared = false;
 	}
 	
 	/**
 	 * Assemble global stiff matrix and load vector on the given mesh
 	 * new matrix and vector are allocated. Use <tt>getGlobalStiffMatrix()</tt> and
 	 * <tt>getGlobalLoadVector()</tt> to access them.
+	 * <p>
+	 * The global stiff matrix is a <tt>CSRMatrix</tt> with the sparsity pattern 
+	 * returned by <tt>getSparsityPattern()</tt>, unless <tt>setFixedPattern(false)</tt>
+	 * is called, see <tt>getGlobalStiffMatrix()</tt>.
 	 * 
 	 * @param mesh
 	 */
 	public void assembleGlobal() {
-		int dim = this.weakForm.getFiniteElement().getTotalNumberOfDOFs(mesh);
-		gA = new SparseMatrixRowMajor(dim,dim);
-		gb = new SparseVectorHashMap(dim);
+		if(fixedPattern) {
+			SparsityPattern sp = getSparsityPattern();
+			gA = sp.createMatrix();
+			gb = new SparseVectorHashMap(sp.getDim());
+		} else {
+			prepareMesh();
+			int dim = dofMap.getTotalNumberOfDOFs();
+			gA = new SparseMatrixRowMajor(dim, dim);
+			gb = new SparseVectorHashMap(dim);
+		}
 		assembleGlobal(gA, gb);
 	}
 	
+	/**
+	 * By default (<tt>true</tt>), <tt>assembleGlobal()</tt> allocates a <tt>CSRMatrix</tt>
+	 * with the sparsity pattern of the mesh. Set it to <tt>false</tt> to allocate an open
+	 * <tt>SparseMatrixRowMajor</tt> instead (the behavior before <tt>SparsityPattern</tt>),
+	 * if entries out of the pattern are added after assembly, e.g. by coupling or penalty terms.
+	 * 
+	 * @param fixedPattern
+	 * @return
+	 */
+	public BasicAssembler setFixedPattern(boolean fixedPattern) {
+		this.fixedPattern = fixedPattern;
+		return this;
+	}
+	
+	public boolean isFixedPattern() {
+		return this.fixedPattern;
+	}
+	
 	/**
 	 * Assemble stiff matrix and load vector on the given mesh
 	 * into parameter stiff and load.
@@ -107,20 +245,14 @@ public class BasicAssembler {
 	 * @param load
 	 */
 	public void assembleGlobal(Matrix stiff, Vector load) {
-		ElementList eList = mesh.getElementList();
-		for(Element e : eList) {
-			assembleLocal(e);
-			
-			FiniteElement fe  = this.weakForm.getFiniteElement();
-
-			for(int j=0;j<nDOFs;j++) {
-				int nGlobalRow = fe.getGlobalIndex(mesh, e, j+1);
-				for(int i=0;i<nDOFs;i++) {
-					int nGlobalCol = fe.getGlobalIndex(mesh, e, i+1);
-					stiff.add(nGlobalRow, nGlobalCol, A[j][i]);
-				}
-				//Local load vector
-				load.add(nGlobalRow, b[j]);
+		prepareMesh();
+		if(parallelism > 1) {
+			assembleGlobalParallel(stiff, load);
+		} else {
+			int nEle = getNumberOfElements();
+			for(int idx=1; idx<=nEle; idx++) {
+				assembleLocal(idx);
+				addToGlobal(idx, A, b, stiff, load);
 			}
 		}
 		//update gA and gb
@@ -128,6 +260,218 @@ public class BasicAssembler {
 		this.gb = load;
 	}
 	
+	/**
+	 * Add local stiff matrix and load vector of the <tt>idx</tt>-th element 
+	 * to global stiff matrix and load vector. If <tt>stiff</tt> is created 
+	 * by the sparsity pattern of this assembler, the local matrix is added through 
+	 * the precomputed element offsets without searching.
+	 * 
+	 * @param idx - index of element in mesh.getElementList()
+	 * @param A
+	 * @param b
+	 * @param stiff
+	 * @param load
+	 */
+	protected void addToGlobal(int idx, double[][] A, double[] b, Matrix stiff, Vector load) {
+		if(stiff instanceof CSRMatrix && pattern != null && pattern.isPatternOf((CSRMatrix)stiff)) {
+			addToGlobal(idx, A, ((CSRMatrix)stiff).getVals());
+			int[] table = pattern.getDOFMap().getTable();
+			int base = pattern.getDOFMap().getOffset(idx);
+			for(int j=0;j<nDOFs;j++)
+				load.add(table[base+j], b[j]);
+			return;
+		}
+		int[] table = dofMap.getTable();
+		int base = dofMap.getOffset(idx);
+		for(int j=0;j<nDOFs;j++) {
+			int nGlobalRow = table[base+j];
+			for(int i=0;i<nDOFs;i++) {
+				int nGlobalCol = table[base+i];
+				stiff.add(nGlobalRow, nGlobalCol, A[j][i]);
+			}
+			//Local load vector
+			load.add(nGlobalRow, b[j]);
+		}
+	}
+	
+	/**
+	 * Add local stiff matrix of the <tt>idx</tt>-th element to the value array
+	 * of a CSR matrix with the sparsity pattern of this assembler
+	 */
+	protected void addToGlobal(int idx, double[][] A, double[] vals) {
+		int[] offsets = pattern.getElementOffsets(idx);
+		for(int j=0, k=0;j<nDOFs;j++) {
+			double[] Aj = A[j];
+			for(int i=0;i<nDOFs;i++)
+				vals[offsets[k++]] += Aj[i];
+		}
+	}
+	
+	/**
+	 * Set the number of threads used in <tt>assembleGlobal()</tt>. The elements
+	 * are assembled serially if <tt>parallelism &lt;= 1</tt> (default).
+	 * <p>
+	 * Each thread has its own local stiff matrix, load vector and arguments array,
+	 * the compiled weak form is shared by the threads. Functions in the weak form
+	 * that are not compiled (e.g. user defined <tt>apply()</tt>) must be thread safe.
+	 * The threads come from the pool shared with <tt>CSRMatrix</tt> (see
+	 * <tt>CSRMatrix.getPool()</tt>), so repeated assemblies, e.g. in nonlinear
+	 * iterations or time steps, do not create new threads.
+	 * 
+	 * @param parallelism
+	 * @return
+	 */
+	public BasicAssembler setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+		this.workers = null;
+		return this;
+	}
+	
+	public int getParallelism() {
+		return this.parallelism;
+	}
+	
+	/**
+	 * In deterministic mode (default), local stiff matrices and load vectors of a block
+	 * of elements are computed in parallel and then added to the global ones in the order
+	 * of elements, so the results are bit-identical to the serial assembly.
+	 * <p>
+	 * Otherwise, each thread assembles a range of elements into its own global stiff matrix
+	 * and load vector which are merged at the end. The results may differ from the serial 
+	 * assembly by round-off errors since the order of summation is changed.
+	 * 
+	 * @param deterministic
+	 * @return
+	 */
+	public BasicAssembler setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+		return this;
+	}
+	
+	public boolean isDeterministic() {
+		return this.deterministic;
+	}
+	
+	protected void assembleGlobalParallel(final Matrix stiff, final Vector load) {
+		final int nEle = getNumberOfElements();
+		if(workers == null) {
+			workers = new BasicAssembler[parallelism];
+			for(int w=0; w<parallelism; w++) {
+				workers[w] = new BasicAssembler(mesh, weakForm);
+				workers[w].flatMesh = flatMesh;
+				workers[w].workerIndex = w;
+			}
+		}
+		//The pool is shared with CSRMatrix, threads are not created for each assembly
+		ForkJoinPool pool = CSRMatrix.getPool(parallelism);
+		if(deterministic) {
+			int blockLen = Math.min(blockSize*parallelism, nEle);
+			final double[][][] blockA = new double[blockLen][nDOFs][nDOFs];
+			final double[][] blockB = new double[blockLen][nDOFs];
+			for(int start=1; start<=nEle; start+=blockLen) {
+				final int blockStart = start;
+				final int blockEnd = Math.min(start+blockLen, nEle+1);
+				invokeAll(pool, blockStart, blockEnd, (worker, idx) -> {
+					worker.assembleLocal(idx);
+					int k = idx - blockStart;
+					for(int j=0; j<nDOFs; j++) {
+						System.arraycopy(worker.A[j], 0, blockA[k][j], 0, nDOFs);
+					}
+					System.arraycopy(worker.b, 0, blockB[k], 0, nDOFs);
+				});
+				for(int idx=blockStart; idx<blockEnd; idx++) {
+					addToGlobal(idx, blockA[idx-blockStart], blockB[idx-blockStart], stiff, load);
+				}
+			}
+		} else if(stiff instanceof CSRMatrix && pattern != null && pattern.isPatternOf((CSRMatrix)stiff)) {
+			//Each thread adds into its own copy of the value array
+			final double[] vals = ((CSRMatrix)stiff).getVals();
+			final double[][] workerVals = new double[parallelism][];
+			final SparseVector[] loads = new SparseVector[parallelism];
+			final DOFMap map = pattern.getDOFMap();
+			final int[] table = map.getTable();
+			for(int w=0; w<parallelism; w++) {
+				workerVals[w] = new double[vals.length];
+				loads[w] = new SparseVectorHashMap(load.getDim());
+				workers[w].pattern = pattern;
+			}
+			invokeAll(pool, 1, nEle+1, (worker, idx) -> {
+				worker.assembleLocal(idx);
+				int w = worker.workerIndex;
+				worker.addToGlobal(idx, worker.A, workerVals[w]);
+				int base = map.getOffset(idx);
+				for(int j=0; j<nDOFs; j++)
+					loads[w].add(table[base+j], worker.b[j]);
+			});
+			for(int w=0; w<parallelism; w++) {
+				double[] wv = workerVals[w];
+				for(int k=0; k<vals.length; k++)
+					vals[k] += wv[k];
+				for(Entry<Integer, Double> ety : loads[w].getAll().entrySet()) {
+					load.add(ety.getKey(), ety.getValue());
+				}
+			}
+		} else {
+			final int dim = stiff.getRowDim();
+			final SparseMatrix[] stiffs = new SparseMatrix[parallelism];
+			final SparseVector[] loads = new SparseVector[parallelism];
+			for(int w=0; w<parallelism; w++) {
+				stiffs[w] = new SparseMatrixRowMajor(dim, stiff.getColDim());
+				loads[w] = new SparseVectorHashMap(load.getDim());
+				workers[w].dofMap = dofMap;
+			}
+			invokeAll(pool, 1, nEle+1, (worker, idx) -> {
+				worker.assembleLocal(idx);
+				int w = worker.workerIndex;
+				worker.addToGlobal(idx, worker.A, worker.b, stiffs[w], loads[w]);
+			});
+			for(int w=0; w<parallelism; w++) {
+				for(Entry<Integer, Map<Integer, Double>> row : stiffs[w].getAll().entrySet()) {
+					for(Entry<Integer, Double> col : row.getValue().entrySet()) {
+						stiff.add(row.getKey(), col.getKey(), col.getValue());
+					}
+				}
+				for(Entry<Integer, Double> ety : loads[w].getAll().entrySet()) {
+					load.add(ety.getKey(), ety.getValue());
+				}
+			}
+		}
+	}
+	
+	interface ElementTask {
+		void run(BasicAssembler worker, int elementIndex);
+	}
+	
+	/**
+	 * Split elements [start, end) into <tt>parallelism</tt> contiguous ranges
+	 * and run <tt>task</tt> on each range with its own worker
+	 */
+	protected void invokeAll(ForkJoinPool pool, int start, int end, final ElementTask task) {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		int len = (end - start + parallelism - 1) / parallelism;
+		for(int w=0; w<parallelism; w++) {
+			final BasicAssembler worker = workers[w];
+			final int rangeStart = start + w*len;
+			final int rangeEnd = Math.min(rangeStart + len, end);
+			if(rangeStart >= rangeEnd)
+				break;
+			tasks.add(() -> {
+				for(int idx=rangeStart; idx<rangeEnd; idx++)
+					task.run(worker, idx);
+				return null;
+			});
+		}
+		for(Future<Void> f : pool.invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				throw new FutureyeException(e.getMessage());
+			} catch (ExecutionException e) {
+				throw new FutureyeException("Parallel assembly failed: "+e.getCause());
+			}
+		}
+	}
+	
 	public double[][] getLocalStiffMatrix() {
 		return A;
 	}
@@ -136,6 +480,15 @@ public class BasicAssembler {
 		return b;
 	}
 
+	/**
+	 * Return the global stiff matrix of the last assembly. If it is allocated by
+	 * <tt>assembleGlobal()</tt> with the fixed pattern (default), it is a <tt>CSRMatrix</tt>
+	 * whose <tt>set()</tt> and <tt>add()</tt> throw <tt>FutureyeException</tt> for the entries
+	 * out of the sparsity pattern. Call <tt>setFixedPattern(false)</tt> or
+	 * <tt>assembleGlobal(Matrix, Vector)</tt> with an open matrix to add such entries.
+	 * 
+	 * @return
+	 */
 	public Matrix getGlobalStiffMatrix() {
 		return gA;
 	}
@@ -5,14 +5,19 @@
  */
 package edu.uta.futureye.lib.assembler;
 
+import edu.uta.futureye.algebra.CSRMatrix;
 import edu.uta.futureye.algebra.SparseMatrixRowMajor;
 import edu.uta.futureye.algebra.SparseVectorHashMap;
 import edu.uta.futureye.algebra.intf.Matrix;
 import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.bytecode.CompiledKernel;
+import edu.uta.futureye.core.DOFMap;
 import edu.uta.futureye.core.Element;
 import edu.uta.futureye.core.Mesh;
 import edu.uta.futureye.core.intf.VecFiniteElement;
 import edu.uta.futureye.function.operator.FOIntegrate;
+import edu.uta.futureye.function.operator.QuadratureRule;
 import edu.uta.futureye.lib.weakform.VecWeakForm;
 import edu.uta.futureye.util.container.ElementList;
 
@@ -23,6 +28,12 @@ public class BasicVecAssembler {
 	public double[] b;   // domain local load vector
 	double[] params;
 	int nDOFs;
+	AssembleParam ap = new AssembleParam(null, -1, -1); // reused for all the entries
+	boolean meshPrepared = false;
+	boolean[][] lhsNonZero; // structure of local stiff matrix, see VecWeakForm.getLHSNonZeroPattern()
+	
+	SparsityPattern pattern; // sparsity pattern of global stiff matrix, computed on demand
+	boolean fixedPattern = true; // see setFixedPattern()
 	
 	Matrix gA; // global stiff matrix
 	Vector gb; // global load vector
@@ -33,71 +44,125 @@ public class BasicVecAssembler {
 		this.nDOFs = weakForm.getFiniteElement().getNumberOfDOFs();
 		this.A = new double[nDOFs][nDOFs];
 		this.b = new double[nDOFs];
-		this.params = new double[weakForm.getFiniteElement().getArgsOrder().length];
+		this.params = new double[weakForm.getArgsOrder().length];
+		this.lhsNonZero = weakForm.getLHSNonZeroPattern();
+	}
+	
+	/**
+	 * Adjust the vertices of all the elements to counterclockwise once
+	 * before the first assembly, see <tt>BasicAssembler.prepareMesh()</tt>
+	 */
+	public void prepareMesh() {
+		if(!meshPrepared && mesh != null) {
+			mesh.adjustVerticeToCounterClockwise();
+			meshPrepared = true;
+		}
 	}
 	
 	/**
 	 * Assemble local stiff matrix and load vector on a give element
+	 * without allocating any object. The vertices of the element should
+	 * be counterclockwise, see <tt>prepareMesh()</tt>. The entries which are
+	 * identically zero are not integrated. The fused kernel of the weak form 
+	 * is used if it is compiled, see <tt>VecWeakForm.compileKernel()</tt>.
+	 * 
 	 * @param e
 	 */
 	public void assembleLocal(Element e) {
-		e.adjustVerticeToCounterClockwise();
-		
-		double[] coords = e.getNodeCoords();
-		System.arraycopy(coords, 0, params, 0, coords.length);
+		int nCoords = e.getNodeCoords(params);
+		QuadratureRule rule = weakForm.getQuadratureRule();
+		CompiledKernel kernel = weakForm.getCompiledKernel();
+		if(kernel != null) {
+			kernel.apply(ap.set(e, -1, -1), params, nCoords, 
+					rule.getPoints(), rule.getWeights(), A, b);
+			return;
+		}
 
 		weakForm.getCompiledJac().apply(params);
 
-		if(e.vertices().size() == 2) {
-			for(int j=0;j<nDOFs;j++) {
-				for(int i=0;i<nDOFs;i++) {
-					A[j][i] = FOIntegrate.intOnLinearRefElement(weakForm.getCompiledLHS()[j][i], 
-							new AssembleParam(e, i+1, j+1), params, coords.length, 5);
+		CompiledFunc[][] lhs = weakForm.getCompiledLHS();
+		CompiledFunc[] rhs = weakForm.getCompiledRHS();
+		for(int j=0; j<nDOFs; j++) {
+			for(int i=0; i<nDOFs; i++) {
+				if(!lhsNonZero[j][i]) {
+					A[j][i] = 0.0;
+					continue;
 				}
-				b[j] = FOIntegrate.intOnLinearRefElement(weakForm.getCompiledRHS()[j], 
-						new AssembleParam(e, -1, j+1), params, coords.length, 5);
-			}
-		} else if(e.vertices().size() == 3) {
-			
-			for(int j=0; j<nDOFs; j++) {
-				for(int i=0; i<nDOFs; i++) {
-					
-					//this.weakForm.getFiniteElement().getGeoEntity(e, i);
-					
-					A[j][i] = FOIntegrate.intOnTriangleRefElement(weakForm.getCompiledLHS()[j][i], 
-							new AssembleParam(e, i+1, j+1), params, coords.length, 5); //TODO use high order for high order element???
-					//Laplace Test: 2=80.839 3=80.966, 4=80.967
-				}
-				b[j] = FOIntegrate.intOnTriangleRefElement(weakForm.getCompiledRHS()[j], 
-						new AssembleParam(e, -1, j+1), params, coords.length, 5);
-			}
-		} else if(e.vertices().size() == 4) {
-			for(int j=0; j<nDOFs; j++) {
-				for(int i=0; i<nDOFs; i++) {
-					A[j][i] = FOIntegrate.intOnRectangleRefElement(weakForm.getCompiledLHS()[j][i], 
-							new AssembleParam(e, i+1, j+1), params, coords.length, 5);
-				}
-				b[j] = FOIntegrate.intOnRectangleRefElement(weakForm.getCompiledRHS()[j], 
-						new AssembleParam(e, -1, j+1), params, coords.length, 5);
+				A[j][i] = FOIntegrate.intOnRefElement(lhs[j][i], 
+						ap.set(e, i+1, j+1), params, nCoords, rule);
 			}
+			b[j] = FOIntegrate.intOnRefElement(rhs[j], 
+					ap.set(e, -1, j+1), params, nCoords, rule);
+		}
+	}
+	
+	/**
+	 * Return the sparsity pattern of the global stiff matrix. The local entries
+	 * which are identically zero are excluded, so the zero blocks between
+	 * uncoupled components are not stored. Call <tt>resetSparsityPattern()</tt>
+	 * if the mesh is changed.
+	 * 
+	 * @return
+	 */
+	public SparsityPattern getSparsityPattern() {
+		if(pattern == null) {
+			prepareMesh();
+			pattern = new SparsityPattern(
+					mesh.getDOFMap(weakForm.getFiniteElement()), lhsNonZero);
 		}
-		
+		return pattern;
+	}
+	
+	/**
+	 * Call this method if the mesh is changed, see 
+	 * <tt>BasicAssembler.resetSparsityPattern()</tt>
+	 */
+	public void resetSparsityPattern() {
+		this.pattern = null;
+		this.meshPrepared = false;
 	}
 	
 	/**
 	 * Assemble global stiff matrix and load vector on a given mesh
 	 * new matrix and vector are allocated. Use <tt>getGlobalStiffMatrix()</tt> and
 	 * <tt>getGlobalLoadVector()</tt> to access them.
+	 * <p>
+	 * The global stiff matrix is a <tt>CSRMatrix</tt> with the sparsity pattern 
+	 * returned by <tt>getSparsityPattern()</tt>, unless <tt>setFixedPattern(false)</tt>
+	 * is called, see <tt>getGlobalStiffMatrix()</tt>.
 	 */
 	public void assembleGlobal() {
-		int dim = this.weakForm.getFiniteElement().getTotalNumberOfDOFs(mesh);
-		
-		gA = new SparseMatrixRowMajor(dim,dim);
-		gb = new SparseVectorHashMap(dim);
-		
+		if(fixedPattern) {
+			SparsityPattern sp = getSparsityPattern();
+			gA = sp.createMatrix();
+			gb = new SparseVectorHashMap(sp.getDim());
+		} else {
+			prepareMesh();
+			int dim = mesh.getDOFMap(weakForm.getFiniteElement()).getTotalNumberOfDOFs();
+			gA = new SparseMatrixRowMajor(dim, dim);
+			gb = new SparseVectorHashMap(dim);
+		}
 		assembleGlobal(gA, gb);
 	}
 	
+	/**
+	 * By default (<tt>true</tt>), <tt>assembleGlobal()</tt> allocates a <tt>CSRMatrix</tt>
+	 * with the sparsity pattern of the mesh. Set it to <tt>false</tt> to allocate an open
+	 * <tt>SparseMatrixRowMajor</tt> instead (the behavior before <tt>SparsityPattern</tt>),
+	 * if entries out of the pattern are added after assembly, e.g. by coupling or penalty terms.
+	 * 
+	 * @param fixedPattern
+	 * @return
+	 */
+	public BasicVecAssembler setFixedPattern(boolean fixedPattern) {
+		this.fixedPattern = fixedPattern;
+		return this;
+	}
+	
+	public boolean isFixedPattern() {
+		return this.fixedPattern;
+	}
+	
 	/**
 	 * Assemble stiff matrix and load vector on a given mesh
 	 * into parameter stiff and load.
@@ -110,15 +175,34 @@ public class BasicVecAssembler {
 	 * @param load
 	 */
 	public void assembleGlobal(Matrix stiff, Vector load) {
+		prepareMesh();
 		ElementList eList = mesh.getElementList();
-		VecFiniteElement fe = this.weakForm.getFiniteElement();
-		for(Element e : eList) {
-			assembleLocal(e);
+		DOFMap dofMap = mesh.getDOFMap(this.weakForm.getFiniteElement());
+		int[] table = dofMap.getTable();
+		double[] vals = null;
+		if(stiff instanceof CSRMatrix && pattern != null && pattern.isPatternOf((CSRMatrix)stiff))
+			vals = ((CSRMatrix)stiff).getVals();
+		for(int idx=1; idx<=eList.size(); idx++) {
+			assembleLocal(eList.at(idx));
 
+			int base = dofMap.getOffset(idx);
+			if(vals != null) {
+				//Add through the precomputed offsets, zero entries are excluded
+				int[] offsets = pattern.getElementOffsets(idx);
+				for(int j=0, k=0;j<nDOFs;j++) {
+					for(int i=0;i<nDOFs;i++,k++) {
+						if(lhsNonZero[j][i])
+							vals[offsets[k]] += A[j][i];
+					}
+					load.add(table[base+j], b[j]);
+				}
+				continue;
+			}
 			for(int j=0;j<nDOFs;j++) {
-				int nGlobalRow = fe.getGlobalIndex(mesh, e, j+1);
+				int nGlobalRow = table[base+j];
 				for(int i=0;i<nDOFs;i++) {
-					int nGlobalCol = fe.getGlobalIndex(mesh, e, i+1);
+					if(!lhsNonZero[j][i]) continue;
+					int nGlobalCol = table[base+i];
 //					if(nGlobalRow==917) {
 //						System.out.println("(i,j)=("+i+","+j+"); global=("+nGlobalRow+","+nGlobalCol+"); value="+A[j][i]);
 //					}
@@ -137,16 +221,26 @@ public class BasicVecAssembler {
 
 	public void assembleGlobal(Element e, Matrix stiff, Vector load) {
 		// Assemble locally
+		prepareMesh();
 		assembleLocal(e);
 		VecFiniteElement fe = this.weakForm.getFiniteElement();
 		int nDOFs = fe.getNumberOfDOFs();
 
 		// Get local-global indexing
+		int[] gIdx = new int[nDOFs];
+		DOFMap dofMap = mesh.getDOFMap(fe);
+		int eleIdx = dofMap.getElementIndex(mesh, e);
 		for(int j=0;j<nDOFs;j++) {
-			int globalIdxJ = fe.getGlobalIndex(mesh, e, j+1);
+			if(eleIdx > 0)
+				gIdx[j] = dofMap.getGlobalIndex(eleIdx, j+1);
+			else
+				gIdx[j] = fe.getGlobalIndex(mesh, e, j+1);
+		}
+		for(int j=0;j<nDOFs;j++) {
+			int globalIdxJ = gIdx[j];
 			for(int i=0;i<nDOFs;i++) {
-				int globalIdxI = fe.getGlobalIndex(mesh, e, i+1);
-				stiff.add(globalIdxJ, globalIdxI, A[j][i]);
+				if(lhsNonZero[j][i])
+					stiff.add(globalIdxJ, gIdx[i], A[j][i]);
 			}
 			load.add(globalIdxJ, b[j]);
 		}
@@ -163,6 +257,15 @@ public class BasicVecAssembler {
 		return b;
 	}
 
+	/**
+	 * Return the global stiff matrix of the last assembly. If it is allocated by
+	 * <tt>assembleGlobal()</tt> with the fixed pattern (default), it is a <tt>CSRMatrix</tt>
+	 * whose <tt>set()</tt> and <tt>add()</tt> throw <tt>FutureyeException</tt> for the entries
+	 * out of the sparsity pattern. Call <tt>setFixedPattern(false)</tt> or
+	 * <tt>assembleGlobal(Matrix, Vector)</tt> with an open matrix to add such entries.
+	 * 
+	 * @return
+	 */
 	public Matrix getGlobalStiffMatrix() {
 		return gA;
 	}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.lib.assembler;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.SparseBlockMatrix;
+import edu.uta.futureye.algebra.intf.Matrix;
+import edu.uta.futureye.algebra.intf.MatrixEntry;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Bulk imposition of Dirichlet boundary conditions.
+ * <p>
+ * The Dirichlet DOFs and their values are collected first by <tt>set()</tt>
+ * (each DOF is stored once, no matter how many elements share it), then
+ * <tt>apply()</tt> imposes all of them in one pass over the entries of the
+ * global matrix:
+ * <ul>
+ * <li>the row of each Dirichlet DOF d is replaced by the identity row and load(d) = value(d)
+ * <li>if <tt>keepSymmetric</tt> is true (default), the column of d is also eliminated
+ * and moved to the right hand side: load(r) -= A(r,d)*value(d), so a symmetric matrix
+ * stays symmetric and CG can still be used
+ * </ul>
+ *
+ */
+public class DirichletCondition {
+	protected int dim;
+	protected boolean[] mark;   // 1-based
+	protected double[] values;  // 1-based
+	protected int[] indices;
+	protected int size = 0;
+
+	//Eliminate the columns of Dirichlet DOFs as well as the rows
+	public boolean keepSymmetric = true;
+
+	/**
+	 *
+	 * @param dim - dimension of the global system
+	 */
+	public DirichletCondition(int dim) {
+		this.dim = dim;
+		this.mark = new boolean[dim+1];
+		this.values = new double[dim+1];
+		this.indices = new int[16];
+	}
+
+	/**
+	 * Set the value of Dirichlet DOF <tt>index</tt>, the value is
+	 * replaced if the DOF is already set
+	 *
+	 * @param index - 1-based global index
+	 * @param value
+	 */
+	public void set(int index, double value) {
+		if(index < 1 || index > dim)
+			throw new FutureyeException("Dirichlet DOF "+index+" exceeds dimension [1,"+dim+"]");
+		if(!mark[index]) {
+			mark[index] = true;
+			if(size == indices.length)
+				indices = Arrays.copyOf(indices, 2*size);
+			indices[size++] = index;
+		}
+		values[index] = value;
+	}
+
+	/**
+	 * Return true if DOF <tt>index</tt> is already set, so the
+	 * boundary function need not be evaluated again
+	 *
+	 * @param index
+	 * @return
+	 */
+	public boolean contains(int index) {
+		return mark[index];
+	}
+
+	public double getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Return the number of Dirichlet DOFs
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the global indices of the Dirichlet DOFs in the order they are set
+	 * @return
+	 */
+	public int[] getIndices() {
+		return Arrays.copyOf(indices, size);
+	}
+
+	/**
+	 * Impose the Dirichlet condition on <tt>stiff</tt> and <tt>load</tt>
+	 *
+	 * @param stiff
+	 * @param load
+	 */
+	public void apply(Matrix stiff, Vector load) {
+		if(stiff.getRowDim() != dim || stiff.getColDim() != dim)
+			throw new FutureyeException("Dirichlet condition of dimension "+dim+
+					" can not be imposed on matrix "+stiff.getRowDim()+"x"+stiff.getColDim());
+		if(stiff instanceof CSRMatrix) {
+			applyCSR((CSRMatrix)stiff, load);
+		} else if(stiff instanceof SparseBlockMatrix) {
+			SparseBlockMatrix bm = (SparseBlockMatrix)stiff;
+			Map<Integer,Map<Integer,SparseMatrix>> blocks = bm.getAllBlock();
+			int rBase = 0;
+			for(int i=1; i<=bm.getRowBlockDim(); i++) {
+				Map<Integer,SparseMatrix> row = blocks.get(i);
+				int cBase = 0;
+				for(int j=1; j<=bm.getColBlockDim(); j++) {
+					SparseMatrix blk = row.get(j);
+					applySparse(blk, rBase, cBase, load);
+					cBase += blk.getColDim();
+				}
+				rBase += row.get(1).getRowDim();
+			}
+		} else if(stiff instanceof SparseMatrix) {
+			applySparse((SparseMatrix)stiff, 0, 0, load);
+		} else {
+			for(int r=1; r<=dim; r++) {
+				for(int c=1; c<=dim; c++) {
+					if(r == c) continue;
+					if(mark[r]) {
+						stiff.set(r, c, 0.0);
+					} else if(keepSymmetric && mark[c]) {
+						double v = stiff.get(r, c);
+						if(v != 0.0) {
+							load.add(r, -v*values[c]);
+							stiff.set(r, c, 0.0);
+						}
+					}
+				}
+			}
+		}
+		for(int k=0; k<size; k++) {
+			int d = indices[k];
+			stiff.set(d, d, 1.0);
+			load.set(d, values[d]);
+		}
+	}
+
+	/**
+	 * One pass over the CSR arrays, the sparsity pattern is not changed
+	 */
+	protected void applyCSR(CSRMatrix A, Vector load) {
+		int[] rowPtr = A.getRowPtr();
+		int[] colIdx = A.getColIdx();
+		double[] vals = A.getVals();
+		boolean upper = A.isSymmetric();
+		for(int r=0; r<dim; r++) {
+			int R = r+1;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int C = colIdx[k]+1;
+				if(C == R) continue;
+				if(mark[R]) {
+					//the stored entry is also A(C,R) in symmetric storage
+					if(upper && !mark[C])
+						load.add(C, -vals[k]*values[R]);
+					vals[k] = 0.0;
+				} else if(mark[C] && (keepSymmetric || upper)) {
+					load.add(R, -vals[k]*values[C]);
+					vals[k] = 0.0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * One pass over the entries of a hash based sparse matrix which is the
+	 * block at (<tt>rBase</tt>, <tt>cBase</tt>) of the global matrix
+	 */
+	protected void applySparse(SparseMatrix A, int rBase, int cBase, Vector load) {
+		int[] zeroRow = new int[16];
+		int[] zeroCol = new int[16];
+		int nZero = 0;
+		for(MatrixEntry e : A) {
+			int R = rBase + e.getRow();
+			int C = cBase + e.getCol();
+			if(R == C) continue;
+			if(mark[R] || (keepSymmetric && mark[C])) {
+				if(!mark[R])
+					load.add(R, -e.getValue()*values[C]);
+				if(nZero == zeroRow.length) {
+					zeroRow = Arrays.copyOf(zeroRow, 2*nZero);
+					zeroCol = Arrays.copyOf(zeroCol, 2*nZero);
+				}
+				zeroRow[nZero] = e.getRow();
+				zeroCol[nZero++] = e.getCol();
+			}
+		}
+		//entries are removed after the iteration
+		for(int k=0; k<nZero; k++)
+			A.set(zeroRow[k], zeroCol[k], 0.0);
+	}
+}
@@ -5,11 +5,13 @@ import edu.uta.futureye.algebra.SparseVectorHashMap;
 import edu.uta.futureye.algebra.intf.Matrix;
 import edu.uta.futureye.algebra.intf.Vector;
 import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.core.DOFMap;
 import edu.uta.futureye.core.Element;
 import edu.uta.futureye.core.Mesh;
 import edu.uta.futureye.core.NodeType;
 import edu.uta.futureye.core.intf.FiniteElement;
 import edu.uta.futureye.function.operator.FOIntegrate;
+import edu.uta.futureye.function.operator.QuadratureRule;
 import edu.uta.futureye.lib.weakform.WeakForm;
 import edu.uta.futureye.util.container.ElementList;
 
@@ -24,8 +26,11 @@ public class DomainBoundaryAssemblerRaw {
 	double[][] beA; // boundary local stiff matrix
 	double[] beb;   // boundary local load vector
 	double[] beParams;
+	int[] beGIdx;   // global indices of boundary DOFs
 	int nBeDOFs;
 	
+	AssembleParam ap = new AssembleParam(null, -1, -1); // reused for all the entries
+	
 	Matrix gA; // global stiff matrix
 	Vector gb; // global load vector
 
@@ -43,13 +48,14 @@ public class DomainBoundaryAssemblerRaw {
 		nDOFs = domainWF.getFiniteElement().getNumberOfDOFs();
 		A = new double[nDOFs][nDOFs];
 		b = new double[nDOFs];
-		params = new double[domainWF.getFiniteElement().getArgsOrder().length];
+		params = new double[domainWF.getArgsOrder().length];
 		
 		if(null != boundaryWF) {
 			nBeDOFs = this.boundaryWF.getFiniteElement().getNumberOfDOFs();
 			beA = new double[nBeDOFs][nBeDOFs];
 			beb = new double[nBeDOFs];
-			beParams = new double[boundaryWF.getFiniteElement().getArgsOrder().length];
+			beParams = new double[boundaryWF.getArgsOrder().length];
+			beGIdx = new int[nBeDOFs];
 		}
 	}
 	
@@ -60,38 +66,18 @@ public class DomainBoundaryAssemblerRaw {
 	public void assembleLocal(Element e) {
 		//e.adjustVerticeToCounterClockwise();
 
-		double[] coords = e.getNodeCoords();
-		System.arraycopy(coords, 0, params, 0, coords.length);
+		int nCoords = e.getNodeCoords(params);
 
 		domainWF.getCompiledJac().apply(params);
 
-		if(domainWF.getFiniteElement().getNumberOfDOFs() == 2) {
-		for(int j=0;j<nDOFs;j++) {
-			for(int i=0;i<nDOFs;i++) {
-				A[j][i] = FOIntegrate.intOnLinearRefElement(domainWF.getCompiledLHS()[j][i], 
-						new AssembleParam(e, i+1, j+1), params, coords.length, 5);
-			}
-			b[j] = FOIntegrate.intOnLinearRefElement(domainWF.getCompiledRHS()[j], 
-					new AssembleParam(e, -1, j+1), params, coords.length, 5);
-		}
-		} else if(domainWF.getFiniteElement().getNumberOfDOFs() == 3) {
-			for(int j=0; j<nDOFs; j++) {
-				for(int i=0; i<nDOFs; i++) {
-					A[j][i] = FOIntegrate.intOnTriangleRefElement(domainWF.getCompiledLHS()[j][i], 
-							new AssembleParam(e, i+1, j+1), params, coords.length, 2);//Laplace Test: 2=80.839 3=80.966, 4=80.967
-				}
-				b[j] = FOIntegrate.intOnTriangleRefElement(domainWF.getCompiledRHS()[j], 
-						new AssembleParam(e, -1, j+1), params, coords.length, 2);
-			}
-		} else if(domainWF.getFiniteElement().getNumberOfDOFs() == 4) {
-			for(int j=0; j<nDOFs; j++) {
-				for(int i=0; i<nDOFs; i++) {
-					A[j][i] = FOIntegrate.intOnRectangleRefElement(domainWF.getCompiledLHS()[j][i], 
-							new AssembleParam(e, i+1, j+1), params, coords.length, 5);
-				}
-				b[j] = FOIntegrate.intOnRectangleRefElement(domainWF.getCompiledRHS()[j], 
-						new AssembleParam(e, -1, j+1), params, coords.length, 5);
+		QuadratureRule rule = domainWF.getQuadratureRule();
+		for(int j=0; j<nDOFs; j++) {
+			for(int i=0; i<nDOFs; i++) {
+				A[j][i] = FOIntegrate.intOnRefElement(domainWF.getCompiledLHS()[j][i], 
+						ap.set(e, i+1, j+1), params, nCoords, rule);
 			}
+			b[j] = FOIntegrate.intOnRefElement(domainWF.getCompiledRHS()[j], 
+					ap.set(e, -1, j+1), params, nCoords, rule);
 		}
 
 		if(null != this.boundaryWF && e.isBorderElement()) {
@@ -104,21 +90,21 @@ public class DomainBoundaryAssemblerRaw {
 				NodeType nodeType = be.getBorderNodeType();
 				if(nodeType == NodeType.Neumann || nodeType == NodeType.Robin) {
 
-					double[] beCoords = be.getNodeCoords();
-					System.arraycopy(beCoords, 0, beParams, 0, beCoords.length);
+					int nBeCoords = be.getNodeCoords(beParams);
 
 					//Update Jacobian on boundary element
 					CompiledFunc funcBeJac = this.boundaryWF.getCompiledJac();
 					if(null != funcBeJac) 
 						funcBeJac.apply(beParams);
 
+					QuadratureRule beRule = boundaryWF.getQuadratureRule();
 					for(int j=0;j<nBeDOFs;j++) {
 						for(int i=0;i<nBeDOFs;i++) {
-							beA[j][i] = FOIntegrate.intOnLinearRefElement(boundaryWF.getCompiledLHS()[j][i], 
-									new AssembleParam(e, i+1, j+1), beParams, beCoords.length, 5);
+							beA[j][i] = FOIntegrate.intOnRefElement(boundaryWF.getCompiledLHS()[j][i], 
+									ap.set(e, i+1, j+1), beParams, nBeCoords, beRule);
 						}
-						beb[j] = FOIntegrate.intOnLinearRefElement(boundaryWF.getCompiledRHS()[j], 
-								new AssembleParam(e, -1, j+1), beParams, beCoords.length, 5);
+						beb[j] = FOIntegrate.intOnRefElement(boundaryWF.getCompiledRHS()[j], 
+								ap.set(e, -1, j+1), beParams, nBeCoords, beRule);
 					}
 				}
 			}
@@ -152,14 +138,18 @@ public class DomainBoundaryAssemblerRaw {
 		
 		FiniteElement fe = this.domainWF.getFiniteElement();
 		FiniteElement bfe = fe.getBoundaryFE();
+		DOFMap dofMap = mesh.getDOFMap(fe);
+		int[] table = dofMap.getTable();
 		
-		for(Element e : eList) {
+		for(int idx=1; idx<=eList.size(); idx++) {
+			Element e = eList.at(idx);
 			assembleLocal(e);
 
+			int base = dofMap.getOffset(idx);
 			for(int j=0;j<nDOFs;j++) {
-				int nGlobalRow = fe.getGlobalIndex(mesh, e, j+1);
+				int nGlobalRow = table[base+j];
 				for(int i=0;i<nDOFs;i++) {
-					int nGlobalCol = fe.getGlobalIndex(mesh, e, i+1);
+					int nGlobalCol = table[base+i];
 					stiff.add(nGlobalRow, nGlobalCol, A[j][i]);
 				}
 				//Local load vector
@@ -175,10 +165,13 @@ public class DomainBoundaryAssemblerRaw {
 					//Check node type
 					NodeType nodeType = be.getBorderNodeType();
 					if(nodeType == NodeType.Neumann || nodeType == NodeType.Robin) {
+						//Boundary elements are not in the element list of the mesh
+						for(int j=0;j<nBeDOFs;j++)
+							beGIdx[j] = bfe.getGlobalIndex(mesh, be, j+1);
 						for(int j=0;j<nBeDOFs;j++) {
-							int nGlobalRow = bfe.getGlobalIndex(mesh, be, j+1);
+							int nGlobalRow = beGIdx[j];
 							for(int i=0;i<nBeDOFs;i++) {
-								int nGlobalCol = bfe.getGlobalIndex(mesh, be, i+1);
+								int nGlobalCol = beGIdx[i];
 								stiff.add(nGlobalRow, nGlobalCol, beA[j][i]);
 							}
 							//Local load vector
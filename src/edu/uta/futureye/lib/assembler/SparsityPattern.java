@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.lib.assembler;
+
+import java.util.Arrays;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.core.DOFMap;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.intf.FiniteElement;
+
+/**
+ * Symbolic sparsity pattern of the global stiff matrix computed from
+ * the connectivity of a mesh and the global indices of a finite element.
+ * <p>
+ * Besides the CSR structure (<tt>rowPtr</tt>, <tt>colIdx</tt>), the position
+ * of each entry of the local stiff matrix of each element in the CSR value array
+ * is precomputed, so that repeated assemblies on the same mesh can add
+ * local matrices to the global matrix without any searching:
+ * <p><blockquote><pre>
+ * vals[getElementOffsets(e)[j*nDOFs+i]] += A[j][i]
+ * </pre></blockquote>
+ * For vector valued finite elements, the local entries which are known to be
+ * zero (see <tt>VecWeakForm.getLHSNonZeroPattern()</tt>) can be excluded, so
+ * the zero blocks of the global matrix are not stored. Their offsets are -1.
+ *
+ */
+public class SparsityPattern {
+	protected int dim;
+	protected int nDOFs;
+	protected int[] rowPtr;
+	protected int[] colIdx;
+	protected DOFMap dofMap;       // connectivity table, 1-based global indices
+	protected int[][] offsets;     // [element][j*nDOFs+i], positions in CSR value array
+
+	/**
+	 * Build the pattern for the elements of <tt>mesh</tt>
+	 *
+	 * @param mesh
+	 * @param fe
+	 */
+	public SparsityPattern(Mesh mesh, FiniteElement fe) {
+		this(mesh.getDOFMap(fe));
+	}
+
+	/**
+	 * Build the pattern from the connectivity table of a mesh
+	 *
+	 * @param dofMap
+	 */
+	public SparsityPattern(DOFMap dofMap) {
+		this(dofMap, null);
+	}
+
+	/**
+	 * Build the pattern from the connectivity table of a mesh. The local entry
+	 * <tt>(j,i)</tt> is excluded if <tt>nonZero[j][i]</tt> is false, null
+	 * to include all the entries. The diagonal entries are always included.
+	 *
+	 * @param dofMap
+	 * @param nonZero
+	 */
+	public SparsityPattern(DOFMap dofMap, boolean[][] nonZero) {
+		this.dofMap = dofMap;
+		int nEle = dofMap.getNumberOfElements();
+		this.dim = dofMap.getTotalNumberOfDOFs();
+		this.nDOFs = dofMap.getNumberOfDOFs();
+		int[] table = dofMap.getTable();
+
+		boolean[][] coupled = new boolean[nDOFs][nDOFs];
+		int[] rowCnt = new int[nDOFs];
+		for(int j=0; j<nDOFs; j++) {
+			for(int i=0; i<nDOFs; i++) {
+				coupled[j][i] = nonZero == null || nonZero[j][i] || i == j;
+				if(coupled[j][i]) rowCnt[j]++;
+			}
+		}
+
+		int[] cnt = new int[dim];
+		for(int p=0; p<table.length; p++)
+			cnt[table[p]-1] += rowCnt[p%nDOFs];
+
+		//Fill column indices of each row with duplicates
+		int[] pos = new int[dim+1];
+		for(int r=0; r<dim; r++)
+			pos[r+1] = pos[r] + cnt[r];
+		int[] cols = new int[pos[dim]];
+		int[] fill = Arrays.copyOf(pos, dim);
+		for(int k=0; k<nEle; k++) {
+			int base = k*nDOFs;
+			for(int j=0; j<nDOFs; j++) {
+				int r = table[base+j]-1;
+				for(int i=0; i<nDOFs; i++)
+					if(coupled[j][i])
+						cols[fill[r]++] = table[base+i]-1;
+			}
+		}
+
+		//Sort and remove duplicates in place
+		rowPtr = new int[dim+1];
+		int nnz = 0;
+		for(int r=0; r<dim; r++) {
+			Arrays.sort(cols, pos[r], pos[r+1]);
+			for(int p=pos[r]; p<pos[r+1]; p++) {
+				if(p == pos[r] || cols[p] != cols[p-1])
+					cols[nnz++] = cols[p];
+			}
+			rowPtr[r+1] = nnz;
+		}
+		colIdx = Arrays.copyOf(cols, nnz);
+
+		offsets = new int[nEle][nDOFs*nDOFs];
+		for(int k=0; k<nEle; k++) {
+			int base = k*nDOFs;
+			for(int j=0; j<nDOFs; j++) {
+				int r = table[base+j]-1;
+				for(int i=0; i<nDOFs; i++) {
+					offsets[k][j*nDOFs+i] = !coupled[j][i] ? -1 : 
+						Arrays.binarySearch(colIdx, rowPtr[r], rowPtr[r+1], table[base+i]-1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create a new matrix with this pattern. The pattern arrays
+	 * are shared by all the matrices created by this method.
+	 *
+	 * @return
+	 */
+	public CSRMatrix createMatrix() {
+		return new CSRMatrix(dim, dim, rowPtr, colIdx);
+	}
+
+	/**
+	 * Return true if <tt>m</tt> is created by <tt>createMatrix()</tt>
+	 * of this pattern
+	 *
+	 * @param m
+	 * @return
+	 */
+	public boolean isPatternOf(CSRMatrix m) {
+		return m.getRowPtr() == rowPtr && m.getColIdx() == colIdx;
+	}
+
+	/**
+	 * Return the positions in CSR value array of the entries of the local
+	 * stiff matrix of the <tt>idx</tt>-th element (1-based) of the mesh.
+	 * Entry <tt>A[j][i]</tt> is at <tt>j*nDOFs+i</tt>, -1 if it is excluded
+	 *
+	 * @param idx
+	 * @return
+	 */
+	public int[] getElementOffsets(int idx) {
+		return offsets[idx-1];
+	}
+
+	/**
+	 * Return the connectivity table from which the pattern is built
+	 *
+	 * @return
+	 */
+	public DOFMap getDOFMap() {
+		return dofMap;
+	}
+
+	public int getDim() {
+		return dim;
+	}
+
+	public int getNonZeroNumber() {
+		return colIdx.length;
+	}
+
+	public int[] getRowPtr() {
+		return rowPtr;
+	}
+
+	public int[] getColIdx() {
+		return colIdx;
+	}
+}
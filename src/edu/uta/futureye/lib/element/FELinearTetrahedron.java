@@ -1,65 +1,102 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ * 
+ * 
+ */
 package edu.uta.futureye.lib.element;
 
-import edu.uta.futureye.core.DOF;
 import edu.uta.futureye.core.Element;
 import edu.uta.futureye.core.Mesh;
-import edu.uta.futureye.core.Vertex;
-import edu.uta.futureye.lib.shapefun.SFLinearLocal3D;
+import edu.uta.futureye.core.TetVolumeCoord;
+import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.util.container.VertexList;
 
 /**
- * Linear Tetrahedron element for 3D
- * 3维四面体线性单元
+ * Linear finite element on a tetrahedron element.
  * 
- * @author liuyueming
+ * N1 = r
+ * N2 = s
+ * N3 = t
+ * N4 = u = 1-r-s-t
  *
  */
-public class FELinearTetrahedron implements FiniteElementType {
-	protected static SFLinearLocal3D[] shapeFun = new SFLinearLocal3D[4];
+public class FELinearTetrahedron implements FiniteElement {
+	TetVolumeCoord coord;
 	
+	//Construct a function with the coordinate of points in an element as parameters
+	String[] argsOrder;
+	
+	public int nDOFs = 4;
+	MathFunc[] shapeFuncs = new MathFunc[nDOFs];
+
 	public FELinearTetrahedron() {
-		shapeFun[0] = new SFLinearLocal3D(1);
-		shapeFun[1] = new SFLinearLocal3D(2);
-		shapeFun[2] = new SFLinearLocal3D(3);
-		shapeFun[3] = new SFLinearLocal3D(4);
+		FX x1 = new FX("x1");
+		FX x2 = new FX("x2");
+		FX x3 = new FX("x3");
+		FX x4 = new FX("x4");
+		FX y1 = new FX("y1");
+		FX y2 = new FX("y2");
+		FX y3 = new FX("y3");
+		FX y4 = new FX("y4");
+		FX z1 = new FX("z1");
+		FX z2 = new FX("z2");
+		FX z3 = new FX("z3");
+		FX z4 = new FX("z4");
+		
+		this.coord = new TetVolumeCoord(x1, x2, x3, x4, y1, y2, y3, y4, z1, z2, z3, z4);
+		MathFunc r = coord.getCoordR();
+		MathFunc s = coord.getCoordS();
+		MathFunc t = coord.getCoordT();
+		
+		this.argsOrder = new String[]{x1, x2, x3, x4, y1, y2, y3, y4, z1, z2, z3, z4, r, s, t, "u"};
+		
+		//shape functions
+		this.shapeFuncs[0] = r;
+		this.shapeFuncs[1] = s;
+		this.shapeFuncs[2] = t;
+		this.shapeFuncs[3] = 1 - r - s - t;
 	}
-	
-	/**
-	 * Assign degree of freedom to element
-	 * @param e
-	 */
-	public void assignTo(Element e) {
-		VertexList vertices = e.vertices();
-		for(int j=1;j<=vertices.size();j++) {
-			Vertex v = vertices.at(j);
-			//Assign shape function to DOF
-			DOF dof = new DOF(
-						j, //Local DOF index
-						v.globalNode().getIndex(), //Global DOF index, take global node index
-						shapeFun[j-1] //Shape function 
-						);
-			e.addNodeDOF(j, dof);
-		}
+
+	@Override
+	public int getNumberOfDOFs() {
+		return this.nDOFs;
 	}
-	
+
 	@Override
-	public int getDOFNumOnElement(int vsfDim) {
-		return 4;
+	public MathFunc[] getShapeFunctions() {
+		return this.shapeFuncs;
 	}
 
 	@Override
-	public int getVectorShapeFunctionDim() {
-		throw new UnsupportedOperationException();
-	}	
+	public String[] getArgsOrder() {
+		return this.argsOrder;
+	}
+
+	@Override
+	public int getGlobalIndex(Mesh mesh, Element e, int localIndex) {
+		VertexList vertices = e.vertices();
+		return vertices.at(localIndex).globalNode().globalIndex;
+	}
 
 	@Override
-	public int getDOFNumOnMesh(Mesh mesh, int vsfDim) {
+	public int getTotalNumberOfDOFs(Mesh mesh) {
 		return mesh.getNodeList().size();
 	}
 
+	/**
+	 * Finite elements on the triangular faces in 3D are not available,
+	 * null is returned
+	 */
 	@Override
-	public void initDOFIndexGenerator(Mesh mesh) {
-		// TODO Auto-generated method stub
-		
+	public FiniteElement getBoundaryFE() {
+		return null;
+	}
+
+	@Override
+	public CoordTrans getCoordTrans() {
+		return this.coord;
 	}
 }
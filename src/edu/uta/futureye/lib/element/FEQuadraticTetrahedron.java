@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ * 
+ * 
+ */
+package edu.uta.futureye.lib.element;
+
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.TetVolumeCoord;
+import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+
+/**
+ * Quadratic finite element on a tetrahedron element with straight edges.
+ * The element has 10 nodes: vertices 1-4 and the mid-points of the edges
+ * in the order of TetrahedronTp.edges
+ * 
+ * 5: (1,2)  6: (2,3)  7: (3,1)
+ * 8: (1,4)  9: (2,4) 10: (3,4)
+ * 
+ * N1 = (2*r-1)*r
+ * N2 = (2*s-1)*s
+ * N3 = (2*t-1)*t
+ * N4 = (2*u-1)*u
+ * N5 = 4*r*s
+ * N6 = 4*s*t
+ * N7 = 4*t*r
+ * N8 = 4*r*u
+ * N9 = 4*s*u
+ * N10 = 4*t*u
+ * 
+ * where u=1-r-s-t
+ *
+ */
+public class FEQuadraticTetrahedron implements FiniteElement {
+	TetVolumeCoord coord;
+	
+	//Construct a function with the coordinate of points in an element as parameters
+	String[] argsOrder;
+	
+	public int nDOFs = 10;
+	MathFunc[] shapeFuncs = new MathFunc[nDOFs];
+
+	public FEQuadraticTetrahedron() {
+		FX[] xs = new FX[nDOFs];
+		FX[] ys = new FX[nDOFs];
+		FX[] zs = new FX[nDOFs];
+		for(int i=0; i<nDOFs; i++) {
+			xs[i] = new FX("x"+(i+1));
+			ys[i] = new FX("y"+(i+1));
+			zs[i] = new FX("z"+(i+1));
+		}
+		
+		//the coordinate transformation is defined by the vertices
+		this.coord = new TetVolumeCoord(xs[0], xs[1], xs[2], xs[3], 
+				ys[0], ys[1], ys[2], ys[3], zs[0], zs[1], zs[2], zs[3]);
+		MathFunc r = coord.getCoordR();
+		MathFunc s = coord.getCoordS();
+		MathFunc t = coord.getCoordT();
+		MathFunc u = coord.getCoordU();
+		
+		//the arguments are the coordinates of all the nodes, see Element.getNodeCoords()
+		this.argsOrder = new String[3*nDOFs+4];
+		for(int i=0; i<nDOFs; i++) {
+			argsOrder[i] = "x"+(i+1);
+			argsOrder[nDOFs+i] = "y"+(i+1);
+			argsOrder[2*nDOFs+i] = "z"+(i+1);
+		}
+		argsOrder[3*nDOFs] = r.getName();
+		argsOrder[3*nDOFs+1] = s.getName();
+		argsOrder[3*nDOFs+2] = t.getName();
+		argsOrder[3*nDOFs+3] = "u";
+		
+		//shape functions
+		this.shapeFuncs[0] = (2*r-1)*r;
+		this.shapeFuncs[1] = (2*s-1)*s;
+		this.shapeFuncs[2] = (2*t-1)*t;
+		this.shapeFuncs[3] = (2*u-1)*u;
+		this.shapeFuncs[4] = 4*r*s;
+		this.shapeFuncs[5] = 4*s*t;
+		this.shapeFuncs[6] = 4*t*r;
+		this.shapeFuncs[7] = 4*r*u;
+		this.shapeFuncs[8] = 4*s*u;
+		this.shapeFuncs[9] = 4*t*u;
+	}
+
+	@Override
+	public int getNumberOfDOFs() {
+		return this.nDOFs;
+	}
+
+	@Override
+	public MathFunc[] getShapeFunctions() {
+		return this.shapeFuncs;
+	}
+
+	@Override
+	public String[] getArgsOrder() {
+		return this.argsOrder;
+	}
+
+	@Override
+	public int getGlobalIndex(Mesh mesh, Element e, int localIndex) {
+		return e.nodes.at(localIndex).globalIndex;
+	}
+
+	@Override
+	public int getTotalNumberOfDOFs(Mesh mesh) {
+		return mesh.getNodeList().size();
+	}
+
+	/**
+	 * Finite elements on the triangular faces in 3D are not available,
+	 * null is returned
+	 */
+	@Override
+	public FiniteElement getBoundaryFE() {
+		return null;
+	}
+
+	@Override
+	public CoordTrans getCoordTrans() {
+		return this.coord;
+	}
+}
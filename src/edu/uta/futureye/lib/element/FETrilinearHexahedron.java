@@ -1,59 +1,102 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ * 
+ * 
+ */
 package edu.uta.futureye.lib.element;
 
-import edu.uta.futureye.core.DOF;
 import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.HexVolumeCoord;
 import edu.uta.futureye.core.Mesh;
-import edu.uta.futureye.core.Vertex;
-import edu.uta.futureye.lib.shapefun.SFTrilinearLocal3D;
+import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.util.container.VertexList;
 
-public class FETrilinearHexahedron implements FiniteElementType {
-	SFTrilinearLocal3D[] shapeFun = new SFTrilinearLocal3D[8];
+/**
+ * Trilinear shape functions on a hexahedron element
+ * 
+ *      8-------7
+ *     /|      /|
+ *    5-------6 |      t
+ *    | 4-----|-3      | s
+ *    |/      |/       |/
+ *    1-------2        +--r
+ * 
+ * Ni = (1+ri*r)*(1+si*s)*(1+ti*t)/8, i=1,...,8
+ * where (ri,si,ti) are the coordinates of vertex i
+ * on the reference element [-1,1]*[-1,1]*[-1,1]
+ * 
+ */
+public class FETrilinearHexahedron implements FiniteElement {
+	HexVolumeCoord coord;
+	
+	//Construct a function with the coordinate of points in an element as parameters
+	String[] argsOrder;
+	
+	public int nDOFs = 8;
+	MathFunc[] shapeFuncs;
 
 	public FETrilinearHexahedron() {
-		for(int i=1;i<=8;i++)
-			shapeFun[i-1] = new SFTrilinearLocal3D(i);
+		FX[] xs = new FX[nDOFs];
+		FX[] ys = new FX[nDOFs];
+		FX[] zs = new FX[nDOFs];
+		this.argsOrder = new String[3*nDOFs+3];
+		for(int i=0; i<nDOFs; i++) {
+			xs[i] = new FX("x"+(i+1));
+			ys[i] = new FX("y"+(i+1));
+			zs[i] = new FX("z"+(i+1));
+			argsOrder[i] = "x"+(i+1);
+			argsOrder[nDOFs+i] = "y"+(i+1);
+			argsOrder[2*nDOFs+i] = "z"+(i+1);
+		}
+
+		this.coord = new HexVolumeCoord(xs, ys, zs);
+		argsOrder[3*nDOFs] = coord.getCoordR().getName();
+		argsOrder[3*nDOFs+1] = coord.getCoordS().getName();
+		argsOrder[3*nDOFs+2] = coord.getCoordT().getName();
+
+		this.shapeFuncs = coord.getTrilinearFunctions();
 	}
-	
-	/**
-	 * Assign degree of freedom to element
-	 * @param e
-	 */
+
 	@Override
-	public void assignTo(Element e) {
-		//Asign degree of freedom to element
-		VertexList vertices = e.vertices();
-		for(int j=1;j<=vertices.size();j++) {
-			Vertex v = vertices.at(j);
-			//Assign shape function to DOF
-			DOF dof = new DOF(
-						j, //Local DOF index
-						v.globalNode().getIndex(), //Global DOF index, take global node index
-						shapeFun[j-1] //Shape function 
-						);
-			e.addNodeDOF(j, dof);
-		}
+	public MathFunc[] getShapeFunctions() {
+		return this.shapeFuncs;
 	}
 
 	@Override
-	public int getDOFNumOnElement(int vsfDim) {
-		return 8;
+	public int getNumberOfDOFs() {
+		return this.nDOFs;
 	}
 
 	@Override
-	public int getVectorShapeFunctionDim() {
-		throw new UnsupportedOperationException();
+	public String[] getArgsOrder() {
+		return this.argsOrder;
+	}
+	
+	/**
+	 * Finite elements on the quadrilateral faces in 3D are not available,
+	 * null is returned
+	 */
+	@Override
+	public FiniteElement getBoundaryFE() {
+		return null;
 	}
 
 	@Override
-	public int getDOFNumOnMesh(Mesh mesh, int vsfDim) {
-		return mesh.getNodeList().size();
+	public int getGlobalIndex(Mesh mesh, Element e, int localIndex) {
+		VertexList vertices = e.vertices();
+		return vertices.at(localIndex).globalNode().globalIndex;
 	}
 
 	@Override
-	public void initDOFIndexGenerator(Mesh mesh) {
-		// TODO Auto-generated method stub
-		
+	public int getTotalNumberOfDOFs(Mesh mesh) {
+		return mesh.getNodeList().size();
 	}
 
+	@Override
+	public CoordTrans getCoordTrans() {
+		return this.coord;
+	}
 }
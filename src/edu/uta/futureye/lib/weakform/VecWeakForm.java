@@ -7,23 +7,19 @@ package edu.uta.futureye.lib.weakform;
 
 import java.util.Map;
 
-import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.core.intf.CoordTrans;
 import edu.uta.futureye.core.intf.LHSVecExpr;
 import edu.uta.futureye.core.intf.RHSVecExpr;
 import edu.uta.futureye.core.intf.VecFiniteElement;
 import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.function.intf.VecMathFunc;
 
-public class VecWeakForm {
+public class VecWeakForm extends WeakFormBase {
 	VecFiniteElement fe;
 	
-	MathFunc jac;
-	MathFunc[][] matLHS;
-	MathFunc[] vecRHS;
-
-	CompiledFunc cjac;
-	CompiledFunc[][] clhs;
-	CompiledFunc[] crhs;
+	//false if the LHS entry is identically zero, e.g. the blocks between
+	//different velocity components and the pressure-pressure block of Stokes
+	boolean[][] lhsNonZero;
 
 	public VecWeakForm(VecFiniteElement fe, LHSVecExpr lhsExpr, RHSVecExpr rhsExpr) {
 		this.fe = fe;
@@ -34,6 +30,7 @@ public class VecWeakForm {
 		Map<String, MathFunc> map = fe.getCoordTrans().getCoordTransMap();
 		matLHS = new MathFunc[nDOFs][nDOFs];
 		vecRHS = new MathFunc[nDOFs];
+		lhsNonZero = new boolean[nDOFs][nDOFs];
 
 		for(int j=0; j<nDOFs; j++) {
 			VecMathFunc v = shapeFuncs[j];
@@ -41,41 +38,47 @@ public class VecWeakForm {
 				VecMathFunc u = shapeFuncs[i];
 				matLHS[j][i] = lhsExpr.apply(u, v).compose(map)*jac;
 				matLHS[j][i].setName("LHS"+i+""+j);
+				//Zero components of the shape functions are propagated symbolically
+				//by MathFuncBase.M() and A(), so an entry which vanishes for all the
+				//elements is reduced to a constant zero here
+				lhsNonZero[j][i] = !isZero(matLHS[j][i]);
 			}
 			vecRHS[j] = rhsExpr.apply(v).compose(map)*jac;
 			vecRHS[j].setName("RHS"+j);
 		}
 	}
 
-	public void compile() {
-		String[] argsOrder = fe.getArgsOrder();
-		jac.compileToStaticField(true);
-		cjac = jac.compileWithASM(argsOrder);
+	protected static boolean isZero(MathFunc f) {
+		return f.isConstant() && f.apply() == 0.0;
+	}
 
-		int nDOFs = this.fe.getNumberOfDOFs();
-		clhs = new CompiledFunc[nDOFs][nDOFs];
-		crhs = new CompiledFunc[nDOFs];
-		for(int j=0; j<nDOFs; j++) {
-			for(int i=0; i<nDOFs; i++) {
-				//System.out.println("compile:"+i+"_"+j);
-				clhs[j][i] = matLHS[j][i].compileWithASM(argsOrder);
-			}
-			crhs[j] = vecRHS[j].compileWithASM(argsOrder);
-		}
+	/**
+	 * Return the structure of the local stiff matrix: <tt>[j][i]</tt> is false
+	 * if the LHS entry of trial function i and test function j is identically 
+	 * zero on all the elements. These entries are not compiled, integrated or
+	 * added to the global stiff matrix by <tt>BasicVecAssembler</tt>.
+	 * 
+	 * @return
+	 */
+	public boolean[][] getLHSNonZeroPattern() {
+		return this.lhsNonZero;
 	}
 	
-	public CompiledFunc[][] getCompiledLHS() {
-		return clhs;
+	@Override
+	protected boolean isLHSNonZero(int j, int i) {
+		return lhsNonZero[j][i];
 	}
 	
-	public CompiledFunc[] getCompiledRHS() {
-		return crhs;
+	@Override
+	protected CoordTrans getCoordTrans() {
+		return fe.getCoordTrans();
 	}
 	
-	public CompiledFunc getCompiledJac() {
-		return this.cjac;
+	@Override
+	protected String[] getElementArgsOrder() {
+		return fe.getArgsOrder();
 	}
-	
+
 	public VecFiniteElement getFiniteElement() {
 		return this.fe;
 	}
@@ -7,22 +7,14 @@ package edu.uta.futureye.lib.weakform;
 
 import java.util.Map;
 
-import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.core.intf.CoordTrans;
 import edu.uta.futureye.core.intf.FiniteElement;
 import edu.uta.futureye.core.intf.LHSExpr;
 import edu.uta.futureye.core.intf.RHSExpr;
 import edu.uta.futureye.function.intf.MathFunc;
 
-public class WeakForm {
+public class WeakForm extends WeakFormBase {
 	FiniteElement fe;
-	
-	MathFunc jac;
-	MathFunc[][] matLHS;
-	MathFunc[] vecRHS;
-
-	CompiledFunc cjac;
-	CompiledFunc[][] clhs;
-	CompiledFunc[] crhs;
 
 	public WeakForm(FiniteElement fe, LHSExpr lhsExpr, RHSExpr rhsExpr) {
 		this.fe = fe;
@@ -46,34 +38,14 @@ public class WeakForm {
 		}
 	}
 
-	public void compile() {
-		String[] argsOrder = fe.getArgsOrder();
-		jac.compileToStaticField(true);
-		cjac = jac.compileWithASM(argsOrder);
-
-		int nDOFs = this.fe.getNumberOfDOFs();
-		clhs = new CompiledFunc[nDOFs][nDOFs];
-		crhs = new CompiledFunc[nDOFs];
-		for(int j=0; j<nDOFs; j++) {
-			for(int i=0; i<nDOFs; i++) {
-				clhs[j][i] = matLHS[j][i].compileWithASM(argsOrder);
-				//clhs[j][i] = matLHS[j][i].compile(argsOrder);
-			}
-			crhs[j] = vecRHS[j].compileWithASM(argsOrder);
-			//crhs[j] = vecRHS[j].compile(argsOrder);
-		}
-	}
-	
-	public CompiledFunc[][] getCompiledLHS() {
-		return clhs;
-	}
-	
-	public CompiledFunc[] getCompiledRHS() {
-		return crhs;
+	@Override
+	protected CoordTrans getCoordTrans() {
+		return fe.getCoordTrans();
 	}
 	
-	public CompiledFunc getCompiledJac() {
-		return this.cjac;
+	@Override
+	protected String[] getElementArgsOrder() {
+		return fe.getArgsOrder();
 	}
 	
 	public FiniteElement getFiniteElement() {
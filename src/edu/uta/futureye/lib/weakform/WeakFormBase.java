@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ * 
+ * 
+ */
+package edu.uta.futureye.lib.weakform;
+
+import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.bytecode.CompiledKernel;
+import edu.uta.futureye.bytecode.KernelGenerator;
+import edu.uta.futureye.core.intf.CoordTrans;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.QuadratureRule;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Common part of <tt>WeakForm</tt> and <tt>VecWeakForm</tt>: the LHS and RHS
+ * expressions of the local stiff matrix and load vector in the local coordinates,
+ * their compilation and the selection of the quadrature rule.
+ * 
+ */
+public abstract class WeakFormBase {
+	//Name of the argument which holds the value of the Jacobian
+	public static final String JAC = "jac";
+	
+	MathFunc jac;
+	MathFunc[][] matLHS;
+	MathFunc[] vecRHS;
+
+	CompiledFunc cjac;
+	CompiledFunc[][] clhs;
+	CompiledFunc[] crhs;
+	CompiledKernel ckernel;
+
+	//Degree of the coefficients and other non polynomial functions in the integrands
+	int coefDegree = 2;
+	QuadratureRule quadRule;
+	
+	/**
+	 * Return the coordinate transformation of the finite element
+	 * 
+	 * @return
+	 */
+	protected abstract CoordTrans getCoordTrans();
+	
+	/**
+	 * Return the arguments order of the finite element
+	 * 
+	 * @return
+	 */
+	protected abstract String[] getElementArgsOrder();
+	
+	/**
+	 * Return false if the LHS entry of trial function i and test function j
+	 * is identically zero, such entries are not compiled
+	 * 
+	 * @param j
+	 * @param i
+	 * @return
+	 */
+	protected boolean isLHSNonZero(int j, int i) {
+		return true;
+	}
+
+	/**
+	 * Compile the Jacobian, LHS and RHS expressions of each entry. The classes
+	 * already generated for the same expressions are reused, and if an archive
+	 * is opened (see <tt>FuncClassCache.openArchive()</tt>) the classes generated
+	 * here are added to it and saved when the program exits, so the next run loads
+	 * them instead of generating them.
+	 */
+	public void compile() {
+		String[] argsOrder = getArgsOrder();
+		//If the Jacobian is constant on an element, the compiled Jacobian stores its
+		//value to args[argsOrder.length-1] which is then used by the compiled LHS and RHS,
+		//otherwise (e.g. bilinear and trilinear elements) it is evaluated at each point
+		jac.compileToArg(isJacobianConstant() ? JAC : null);
+		cjac = jac.compileWithASM(argsOrder);
+
+		int nDOFs = vecRHS.length;
+		clhs = new CompiledFunc[nDOFs][nDOFs];
+		crhs = new CompiledFunc[nDOFs];
+		for(int j=0; j<nDOFs; j++) {
+			for(int i=0; i<nDOFs; i++) {
+				if(isLHSNonZero(j, i))
+					clhs[j][i] = matLHS[j][i].compileWithASM(argsOrder);
+			}
+			crhs[j] = vecRHS[j].compileWithASM(argsOrder);
+		}
+	}
+	
+	/**
+	 * Compile all the LHS and RHS expressions into a single class (fused kernel).
+	 * The sub-expressions shared by the entries (e.g. the Jacobian) are evaluated
+	 * only once at each quadrature point and the entries which are identically
+	 * zero are skipped. Assemblers use the fused kernel instead of the compiled
+	 * functions of each entry if this method is called.
+	 * <p>
+	 * If the kernel can't be generated (e.g. the code of the whole local system
+	 * exceeds the 64KB limit of a method), the expressions of each entry are
+	 * compiled instead (see <tt>compile()</tt>) and <tt>getCompiledKernel()</tt>
+	 * returns null.
+	 * 
+	 * @see CompiledKernel
+	 */
+	public void compileKernel() {
+		try {
+			ckernel = KernelGenerator.compile("Kernel", matLHS, vecRHS, getElementArgsOrder());
+		} catch(FutureyeException e) {
+			System.out.println("compileKernel(): "+e.getMessage()+", compile each entry instead");
+			ckernel = null;
+			compile();
+		}
+	}
+	
+	public CompiledKernel getCompiledKernel() {
+		return this.ckernel;
+	}
+	
+	public CompiledFunc[][] getCompiledLHS() {
+		return clhs;
+	}
+	
+	public CompiledFunc[] getCompiledRHS() {
+		return crhs;
+	}
+	
+	public CompiledFunc getCompiledJac() {
+		return this.cjac;
+	}
+
+	/**
+	 * Set the polynomial degree which is assumed for the coefficients (functions
+	 * which are not polynomials of the local coordinates) when the quadrature
+	 * rule is selected automatically. The default is 2.
+	 * 
+	 * @param coefDegree
+	 */
+	public void setCoefficientDegree(int coefDegree) {
+		this.coefDegree = coefDegree;
+		this.quadRule = null;
+	}
+	
+	public int getCoefficientDegree() {
+		return this.coefDegree;
+	}
+	
+	/**
+	 * Set the quadrature rule used by the assemblers, null to select
+	 * the rule automatically (default)
+	 * 
+	 * @param rule
+	 */
+	public void setQuadratureRule(QuadratureRule rule) {
+		this.quadRule = rule;
+	}
+	
+	/**
+	 * Return the quadrature rule used by the assemblers. If it is not set, the rule
+	 * with the fewest points which is exact for the degree <tt>getIntegrandDegree()</tt>
+	 * on the reference element of the finite element is selected.
+	 * 
+	 * @return
+	 */
+	public QuadratureRule getQuadratureRule() {
+		if(quadRule == null) {
+			int degree = Math.min(getIntegrandDegree(), QuadratureRule.MAX_DEGREE);
+			quadRule = QuadratureRule.get(getCoordTrans().getReferenceShape(), degree);
+		}
+		return quadRule;
+	}
+	
+	/**
+	 * Return true if the Jacobian of the coordinate transformation does not
+	 * depend on the local coordinates, e.g. on triangles and tetrahedra
+	 * 
+	 * @return
+	 */
+	public boolean isJacobianConstant() {
+		CoordTrans trans = getCoordTrans();
+		return QuadratureRule.getPolynomialDegree(jac, trans.getReferenceShape(), 
+				trans.getCoords(), null, coefDegree) == 0;
+	}
+	
+	/**
+	 * Return the max polynomial degree of the LHS and RHS expressions in the
+	 * local coordinates, see <tt>QuadratureRule.getPolynomialDegree()</tt>
+	 * 
+	 * @return
+	 */
+	public int getIntegrandDegree() {
+		CoordTrans trans = getCoordTrans();
+		QuadratureRule.Shape shape = trans.getReferenceShape();
+		MathFunc[] coords = trans.getCoords();
+		int degree = 0;
+		int nDOFs = vecRHS.length;
+		for(int j=0; j<nDOFs; j++) {
+			for(int i=0; i<nDOFs; i++) {
+				if(!isLHSNonZero(j, i)) continue;
+				degree = Math.max(degree, QuadratureRule.getPolynomialDegree(
+						matLHS[j][i], shape, coords, jac, coefDegree));
+			}
+			degree = Math.max(degree, QuadratureRule.getPolynomialDegree(
+					vecRHS[j], shape, coords, jac, coefDegree));
+		}
+		return degree;
+	}
+	
+	/**
+	 * Return the order of the arguments of the compiled functions. It is the
+	 * arguments order of the finite element followed by the Jacobian. The caller
+	 * of the compiled functions allocates the arguments array with this length
+	 * and calls the compiled Jacobian first on each element.
+	 * 
+	 * @return
+	 */
+	public String[] getArgsOrder() {
+		String[] feArgsOrder = getElementArgsOrder();
+		String[] argsOrder = new String[feArgsOrder.length+1];
+		System.arraycopy(feArgsOrder, 0, argsOrder, 0, feArgsOrder.length);
+		argsOrder[feArgsOrder.length] = JAC;
+		return argsOrder;
+	}
+}
@@ -24,8 +24,8 @@ import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.io.MeshReader;
 import edu.uta.futureye.io.MeshWriter;
 import edu.uta.futureye.lib.assembler.AssemblerScalar;
-import edu.uta.futureye.lib.element.FELinearTetrahedron;
-import edu.uta.futureye.lib.element.FETrilinearHexahedron;
+import edu.uta.futureye.lib.element.FELinearTetrahedronOld;
+import edu.uta.futureye.lib.element.FETrilinearHexahedronOld;
 import edu.uta.futureye.lib.shapefun.SFLinearLocal3D;
 import edu.uta.futureye.lib.weakform.WeakFormLaplace;
 import edu.uta.futureye.lib.weakform.WeakFormLaplace3D;
@@ -82,7 +82,7 @@ public class Laplace3DTest {
 		
 		//Use element library
 		ElementList eList = mesh.getElementList();
-		FELinearTetrahedron fe = new FELinearTetrahedron();
+		FELinearTetrahedronOld fe = new FELinearTetrahedronOld();
 		for(int i=1;i<=eList.size();i++)
 			fe.assignTo(eList.at(i));
 		
@@ -256,7 +256,7 @@ public class Laplace3DTest {
 		mesh.writeNodesInfo("human_phantom3D_mesh.dat");
 		
         ElementList eList = mesh.getElementList();
-        FETrilinearHexahedron feTLH = new FETrilinearHexahedron();
+        FETrilinearHexahedronOld feTLH = new FETrilinearHexahedronOld();
         for(int i=1;i<=eList.size();i++)
         	feTLH.assignTo(eList.at(i));
 		
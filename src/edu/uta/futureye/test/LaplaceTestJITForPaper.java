@@ -215,7 +215,8 @@ public class LaplaceTestJITForPaper {
 	
 	public static class FELinearTriangleT {
 		//Construct a function with the coordinate of points in an element as parameters
-		String[] argsOrder = new String[]{"x1","x2","x3","y1","y2","y3","r","s","t"};
+		//'jac' holds the value of the Jacobian computed by 'cjac'
+		String[] argsOrder = new String[]{"x1","x2","x3","y1","y2","y3","r","s","t","jac"};
 		FX x1 = new FX("x1");
 		FX x2 = new FX("x2");
 		FX x3 = new FX("x3");
@@ -240,7 +241,7 @@ public class LaplaceTestJITForPaper {
 			//             (r[2] r[3])   (y_r, y_s)
 			//jac changes with element, define the expression for jac with linear element
 			jac = fx.diff("r")*fy.diff("s") - fy.diff("r")*fx.diff("s");
-			jac.compileToStaticField(true);
+			jac.compileToArg("jac");
 			cjac = jac.compileWithASM(argsOrder);
 			matLHS = new MathFunc[nDOFs][nDOFs];
 			vecRHS = new MathFunc[nDOFs];
@@ -331,7 +332,7 @@ public class LaplaceTestJITForPaper {
 		// Construct a function with the coordinate of points in an element as
 		// parameters
 		String[] argsOrder = new String[] { "x1", "x2", "x3", "y1", "y2", "y3",
-				"r", "s", "t" };
+				"r", "s", "t", "jac" };
 		FELinearTriangleT fet = new FELinearTriangleT();
 
 		// Right hand side(RHS):
@@ -1,7 +1,5 @@
 package edu.uta.futureye.test;
 
-import java.lang.reflect.Field;
-
 import edu.uta.futureye.bytecode.CompiledFunc;
 import edu.uta.futureye.function.FMath;
 import edu.uta.futureye.function.basic.FX;
@@ -24,61 +22,43 @@ public class TestCompileASM {
 		System.out.println(cf.apply(10));
 	}
 
-	public static void testCompileToStaticField() {
+	public static void testCompileToArg() {
 		MathFunc fun1 = x+1;
-		//set the flag to true so the result of 'fun1' will be stored to a static filed
-		//after the evaluation
-		fun1.compileToStaticField(true);
-		CompiledFunc cf = fun1.compileWithASM(new String[]{"x"});
-		System.out.println(cf.apply(10));
-		//print the static field using reflection
-		Field[] fds = cf.getClass().getDeclaredFields();
-		for(Field f : fds) {
-			try {
-				System.out.println(f.getName()+"="+f.getDouble(null));
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
-		}
+		//set the argument name so the result of 'fun1' will be stored to
+		//args[1] after the evaluation
+		fun1.compileToArg("f");
+		CompiledFunc cf = fun1.compileWithASM(new String[]{"x","f"});
+		double[] args = new double[]{10, 0};
+		System.out.println(cf.apply(args));
+		System.out.println("f="+args[1]);
 		
 		//Define two functions which involve 'fun1'
 		//the expression of 'fun1' will not be compiled into the function 
-		//instead the static field will be used as the value of 'fun1'
-		CompiledFunc cf2 = (fun1+100).compileWithASM(new String[]{"x"});
-		System.out.println(cf2.apply(10));
-		CompiledFunc cf3 = (fun1+500).compileWithASM(new String[]{"x"});
-		System.out.println(cf3.apply(10));
+		//instead args[1] will be used as the value of 'fun1'
+		CompiledFunc cf2 = (fun1+100).compileWithASM(new String[]{"x","f"});
+		System.out.println(cf2.apply(args));
+		CompiledFunc cf3 = (fun1+500).compileWithASM(new String[]{"x","f"});
+		System.out.println(cf3.apply(args));
 
 	}
 	
-	public static void testCompileToStaticField2() {
+	public static void testCompileToArg2() {
 		MathFunc fun1 = x*x + y*y;
-		//set the flag to true so the result of 'fun1' will be stored to a static filed
-		//after the evaluation
-		fun1.compileToStaticField(true);
-		CompiledFunc cf = fun1.compileWithASM(new String[]{"x","y"});
-		System.out.println(cf.apply(3, 4));
-		//print the static field using reflection
-		Field[] fds = cf.getClass().getDeclaredFields();
-		for(Field f : fds) {
-			try {
-				System.out.println(f.getName()+"="+f.getDouble(null));
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
-		}
+		//set the argument name so the result of 'fun1' will be stored to
+		//args[2] after the evaluation
+		fun1.compileToArg("f");
+		CompiledFunc cf = fun1.compileWithASM(new String[]{"x","y","f"});
+		double[] args = new double[]{3, 4, 0};
+		System.out.println(cf.apply(args));
+		System.out.println("f="+args[2]);
 		
 		//Define two functions which involve 'fun1'
 		//the expression of 'fun1' will not be compiled into the function 
-		//instead the static field will be used as the value of 'fun1'
-		CompiledFunc cf2 = (sqrt(fun1)).compileWithASM(new String[]{"x"});
-		System.out.println(cf2.apply(10));
-		CompiledFunc cf3 = (sqrt(fun1)).compileWithASM(new String[]{"x"});
-		System.out.println(cf3.apply(10));
+		//instead args[2] will be used as the value of 'fun1'
+		CompiledFunc cf2 = (sqrt(fun1)).compileWithASM(new String[]{"x","y","f"});
+		System.out.println(cf2.apply(args));
+		CompiledFunc cf3 = (sqrt(fun1)).compileWithASM(new String[]{"x","y","f"});
+		System.out.println(cf3.apply(args));
 
 	}
 	
@@ -86,8 +66,8 @@ public class TestCompileASM {
 	public static void main(String[] args) {
 //		test1();
 //		test2();
-//		testCompileToStaticField();
-		testCompileToStaticField2();
+//		testCompileToArg();
+		testCompileToArg2();
 	}
 
 }
@@ -0,0 +1,63 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.FullVector;
+import edu.uta.futureye.algebra.solver.SmoothedAggregationAMG;
+import edu.uta.futureye.algebra.solver.Solver;
+
+public class AMGTest {
+	static final int M = 60;
+
+	static void assertConverged(String name, CSRMatrix A, FullVector x, FullVector b) {
+		double res = SparseDirectSolverTest.residual(A, x, b);
+		assertTrue(name+": residual = "+res, res <= 1e-6*b.normInf());
+	}
+
+	@Test
+	public void testHierarchy() {
+		CSRMatrix A = SparseDirectSolverTest.laplacian2D(M);
+		SmoothedAggregationAMG amg = new SmoothedAggregationAMG(A, 0.08, 50);
+		assertTrue(amg.getLevelNumber() > 1);
+		assertEquals(A.getRowDim(), amg.getMatrix(0).getRowDim());
+		for(int l=1; l<amg.getLevelNumber(); l++) {
+			CSRMatrix Ac = amg.getMatrix(l);
+			assertEquals(Ac.getRowDim(), Ac.getColDim());
+			assertTrue(Ac.getRowDim() < amg.getMatrix(l-1).getRowDim());
+		}
+		double oc = amg.getOperatorComplexity();
+		assertTrue("operator complexity = "+oc, oc >= 1.0 && oc < 3.0);
+	}
+
+	@Test
+	public void testSolveAMG() {
+		CSRMatrix A = SparseDirectSolverTest.laplacian2D(M);
+		FullVector b = new FullVector(A.getRowDim(), 1.0);
+		FullVector x = new FullVector(A.getRowDim());
+		new Solver().solveAMG(A, b, x);
+		assertConverged("AMG", A, x, b);
+	}
+
+	@Test
+	public void testAMGPreconditionedCG() {
+		CSRMatrix A = SparseDirectSolverTest.laplacian2D(M);
+		FullVector b = new FullVector(A.getRowDim(), 1.0);
+		FullVector x = new FullVector(A.getRowDim());
+		new Solver().solvePCG(A, new SmoothedAggregationAMG(A), b, x);
+		assertConverged("AMG-PCG", A, x, b);
+	}
+
+	@Test
+	public void testSymmetricUpperStorage() {
+		CSRMatrix A = SparseDirectSolverTest.laplacian2D(M);
+		CSRMatrix U = A.getSymmetricUpper();
+		FullVector b = new FullVector(A.getRowDim(), 1.0);
+		FullVector x = new FullVector(A.getRowDim());
+		new Solver().solvePCG(U, new SmoothedAggregationAMG(U), b, x);
+		assertConverged("AMG-PCG symmetric upper", A, x, b);
+	}
+}
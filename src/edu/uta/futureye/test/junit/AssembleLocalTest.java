@@ -0,0 +1,127 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.grad;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.FlatMesh;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.lib.assembler.BasicAssembler;
+import edu.uta.futureye.lib.element.FELinearTetrahedron;
+import edu.uta.futureye.lib.element.FELinearTriangle;
+import edu.uta.futureye.lib.weakform.WeakForm;
+import edu.uta.futureye.util.container.ElementList;
+
+/**
+ * <tt>BasicAssembler.assembleLocal()</tt> reuses the arguments array and the
+ * <tt>AssembleParam</tt> object: it allocates nothing, and the local matrices
+ * are the same as the ones of a fresh assembler
+ */
+public class AssembleLocalTest {
+
+	static WeakForm poisson(FiniteElement fe, boolean kernel, String ...vars) {
+		final MathFunc k = FX.x.M(FX.y).A(1.0);
+		WeakForm wf = new WeakForm(fe,
+				(u,v) -> k.M(grad(u, vars).dot(grad(v, vars))),
+				v -> k.M(v));
+		if(kernel)
+			wf.compileKernel();
+		else
+			wf.compile();
+		return wf;
+	}
+
+	static void assertSameLocal(BasicAssembler expected, BasicAssembler actual) {
+		double[][] A1 = expected.getLocalStiffMatrix(), A2 = actual.getLocalStiffMatrix();
+		double[] b1 = expected.getLocalLoadVector(), b2 = actual.getLocalLoadVector();
+		for(int j=0; j<A1.length; j++) {
+			for(int i=0; i<A1.length; i++)
+				assertEquals("A["+j+"]["+i+"]", A1[j][i], A2[j][i], 0.0);
+			assertEquals("b["+j+"]", b1[j], b2[j], 0.0);
+		}
+	}
+
+	/**
+	 * Minimum number of bytes allocated by the current thread to assemble all
+	 * the local matrices, after warm-up. Return -1 if it can't be measured.
+	 */
+	static long allocatedBytes(BasicAssembler assembler, int nRounds) {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean tBean = (com.sun.management.ThreadMXBean)bean;
+		if(!tBean.isThreadAllocatedMemorySupported())
+			return -1;
+		tBean.setThreadAllocatedMemoryEnabled(true);
+		long id = Thread.currentThread().getId();
+		int nEle = assembler.getNumberOfElements();
+		long min = Long.MAX_VALUE;
+		for(int r=0; r<nRounds; r++) {
+			long begin = tBean.getThreadAllocatedBytes(id);
+			for(int idx=1; idx<=nEle; idx++)
+				assembler.assembleLocal(idx);
+			long end = tBean.getThreadAllocatedBytes(id);
+			min = Math.min(min, end-begin);
+		}
+		return min;
+	}
+
+	static void assertNoAllocation(Mesh mesh, WeakForm wf) {
+		BasicAssembler assembler = new BasicAssembler(mesh, wf);
+		assembler.prepareMesh();
+		//Warm up so that the methods are compiled by JIT
+		allocatedBytes(assembler, 20);
+		long bytes = allocatedBytes(assembler, 10);
+		if(bytes < 0) return;
+		int nEle = assembler.getNumberOfElements();
+		//Bytes per call of assembleLocal()
+		assertTrue(bytes+" bytes for "+nEle+" elements", bytes < nEle);
+	}
+
+	@Test
+	public void testNoAllocationTriangle() {
+		Mesh mesh = new MeshReader("grids/triangle_refine80x80.grd").read2DMesh();
+		assertNoAllocation(mesh, poisson(new FELinearTriangle(), false, "x", "y"));
+		assertNoAllocation(mesh, poisson(new FELinearTriangle(), true, "x", "y"));
+	}
+
+	@Test
+	public void testNoAllocationTetrahedron() {
+		Mesh mesh = new MeshReader("grids/block1.grd").read3DMesh();
+		assertNoAllocation(mesh, poisson(new FELinearTetrahedron(), false, "x", "y", "z"));
+		assertNoAllocation(mesh, poisson(new FELinearTetrahedron(), true, "x", "y", "z"));
+	}
+
+	@Test
+	public void testReuse() {
+		String file = "grids/triangle.grd";
+		Mesh mesh = new MeshReader(file).read2DMesh();
+		FlatMesh fm = new MeshReader(file).readFlatMesh();
+		for(boolean kernel : new boolean[]{false, true}) {
+			WeakForm wf = poisson(new FELinearTriangle(), kernel, "x", "y");
+			BasicAssembler reused = new BasicAssembler(mesh, wf);
+			reused.prepareMesh();
+			BasicAssembler reusedFlat = new BasicAssembler(fm, wf);
+			ElementList eList = mesh.getElementList();
+			//Backward, so that each element follows a different one than in assembleGlobal()
+			for(int idx=eList.size(); idx>=1; idx--) {
+				Element e = eList.at(idx);
+				BasicAssembler fresh = new BasicAssembler(mesh, wf);
+				fresh.assembleLocal(e);
+				reused.assembleLocal(e);
+				assertSameLocal(fresh, reused);
+				reusedFlat.assembleLocal(idx);
+				assertSameLocal(fresh, reusedFlat);
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.C0;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.SparseMatrixRowMajor;
+import edu.uta.futureye.algebra.SparseVectorHashMap;
+import edu.uta.futureye.algebra.intf.Matrix;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.lib.assembler.BasicAssembler;
+import edu.uta.futureye.lib.assembler.BasicVecAssembler;
+import edu.uta.futureye.lib.element.FEQuadraticV_LinearP;
+import edu.uta.futureye.lib.weakform.VecWeakForm;
+import edu.uta.futureye.lib.weakform.WeakForm;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * The global system assembled into the <tt>CSRMatrix</tt> of the sparsity pattern
+ * is the same as the one assembled into an open <tt>SparseMatrixRowMajor</tt>
+ */
+public class CSRAssemblyTest {
+
+	//Every entry of both matrices, missing entries are zero
+	static void assertSameMatrix(Matrix expected, Matrix actual) {
+		assertEquals(expected.getRowDim(), actual.getRowDim());
+		assertEquals(expected.getColDim(), actual.getColDim());
+		assertSubset((SparseMatrix)expected, actual);
+		assertSubset((SparseMatrix)actual, expected);
+	}
+
+	static void assertSubset(SparseMatrix m1, Matrix m2) {
+		for(Map.Entry<Integer,Map<Integer,Double>> row : m1.getAll().entrySet()) {
+			for(Map.Entry<Integer,Double> e : row.getValue().entrySet()) {
+				int i = row.getKey(), j = e.getKey();
+				assertEquals("("+i+","+j+")", e.getValue(), m2.get(i, j), 1e-12);
+			}
+		}
+	}
+
+	static void assertSameVector(Vector expected, Vector actual) {
+		assertEquals(expected.getDim(), actual.getDim());
+		for(int i=1; i<=expected.getDim(); i++)
+			assertEquals("load entry "+i, expected.get(i), actual.get(i), 1e-12);
+	}
+
+	@Test
+	public void testScalar() {
+		Mesh mesh = new MeshReader("grids/triangle.grd").read2DMesh();
+		WeakForm wf = ParallelAssemblyTest.poisson();
+		BasicAssembler csr = new BasicAssembler(mesh, wf);
+		csr.assembleGlobal();
+		assertTrue(csr.getGlobalStiffMatrix() instanceof CSRMatrix);
+
+		int n = csr.getSparsityPattern().getDim();
+		BasicAssembler open = new BasicAssembler(mesh, wf);
+		open.assembleGlobal(new SparseMatrixRowMajor(n, n), new SparseVectorHashMap(n));
+		assertSameMatrix(open.getGlobalStiffMatrix(), csr.getGlobalStiffMatrix());
+		assertSameVector(open.getGlobalLoadVector(), csr.getGlobalLoadVector());
+
+		//Opt back into the open matrix
+		BasicAssembler optOut = new BasicAssembler(mesh, wf).setFixedPattern(false);
+		optOut.assembleGlobal();
+		assertTrue(optOut.getGlobalStiffMatrix() instanceof SparseMatrixRowMajor);
+		assertSameMatrix(csr.getGlobalStiffMatrix(), optOut.getGlobalStiffMatrix());
+		assertSameVector(csr.getGlobalLoadVector(), optOut.getGlobalLoadVector());
+	}
+
+	@Test
+	public void testVector() {
+		Mesh mesh = VecWeakFormTest.stokesMesh();
+		VecWeakForm wf = VecWeakFormTest.stokes(new FEQuadraticV_LinearP(), C0);
+		BasicVecAssembler csr = new BasicVecAssembler(mesh, wf);
+		csr.assembleGlobal();
+		assertTrue(csr.getGlobalStiffMatrix() instanceof CSRMatrix);
+
+		int n = csr.getSparsityPattern().getDim();
+		BasicVecAssembler open = new BasicVecAssembler(mesh, wf);
+		open.assembleGlobal(new SparseMatrixRowMajor(n, n), new SparseVectorHashMap(n));
+		assertSameMatrix(open.getGlobalStiffMatrix(), csr.getGlobalStiffMatrix());
+		assertSameVector(open.getGlobalLoadVector(), csr.getGlobalLoadVector());
+
+		BasicVecAssembler optOut = new BasicVecAssembler(mesh, wf).setFixedPattern(false);
+		optOut.assembleGlobal();
+		assertTrue(optOut.getGlobalStiffMatrix() instanceof SparseMatrixRowMajor);
+		assertSameMatrix(csr.getGlobalStiffMatrix(), optOut.getGlobalStiffMatrix());
+	}
+
+	@Test
+	public void testOutOfPattern() {
+		Mesh mesh = new MeshReader("grids/triangle.grd").read2DMesh();
+		BasicAssembler assembler = new BasicAssembler(mesh, ParallelAssemblyTest.poisson());
+		assembler.assembleGlobal();
+		Matrix A = assembler.getGlobalStiffMatrix();
+		int n = A.getRowDim();
+		//The first and the last nodes are not neighbors on this mesh
+		assertEquals(0.0, A.get(1, n), 0.0);
+		try {
+			A.add(1, n, 1.0);
+			fail("Entry out of the sparsity pattern is added");
+		} catch(FutureyeException e) {
+		}
+
+		//Entries in the pattern can be changed
+		double d = A.get(1, 1);
+		A.add(1, 1, 1.0);
+		assertEquals(d+1.0, A.get(1, 1), 0.0);
+
+		assembler.setFixedPattern(false).assembleGlobal();
+		A = assembler.getGlobalStiffMatrix();
+		A.add(1, n, 1.0);
+		assertEquals(1.0, A.get(1, n), 0.0);
+	}
+}
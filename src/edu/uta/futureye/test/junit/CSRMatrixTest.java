@@ -0,0 +1,117 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.FullVector;
+import edu.uta.futureye.algebra.SparseMatrixRowMajor;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+
+public class CSRMatrixTest {
+
+	static double[] denseMult(double[][] D, double[] x) {
+		double[] y = new double[D.length];
+		for(int i=0; i<D.length; i++)
+			for(int j=0; j<x.length; j++)
+				y[i] += D[i][j]*x[j];
+		return y;
+	}
+
+	static double[] randomVector(Random rnd, int n) {
+		double[] x = new double[n];
+		for(int i=0; i<n; i++)
+			x[i] = rnd.nextGaussian();
+		return x;
+	}
+
+	static void assertArrayClose(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for(int i=0; i<expected.length; i++)
+			assertEquals(expected[i], actual[i], 1e-12*(1.0+Math.abs(expected[i])));
+	}
+
+	@Test
+	public void testMultRectangular() {
+		Random rnd = new Random(1);
+		int m = 300, n = 200;
+		double[][] D = new double[m][n];
+		SparseMatrix S = new SparseMatrixRowMajor(m, n);
+		for(int i=0; i<m; i++) {
+			for(int t=0; t<5; t++) {
+				int j = rnd.nextInt(n);
+				D[i][j] = rnd.nextGaussian();
+				S.set(i+1, j+1, D[i][j]);
+			}
+		}
+		double[] x = randomVector(rnd, n);
+		double[] expected = denseMult(D, x);
+		CSRMatrix A = new CSRMatrix(S);
+		for(int p : new int[] {1, 2, 4, 7}) {
+			A.setParallelism(p);
+			FullVector y = new FullVector(m);
+			A.mult(new FullVector(x, true), y);
+			assertArrayClose(expected, y.getData());
+		}
+	}
+
+	@Test
+	public void testMultSymmetricUpper() {
+		Random rnd = new Random(2);
+		int n = 500;
+		double[][] D = new double[n][n];
+		SparseMatrix S = new SparseMatrixRowMajor(n, n);
+		for(int i=0; i<n; i++) {
+			D[i][i] = 10.0;
+			S.set(i+1, i+1, 10.0);
+			for(int t=0; t<3; t++) {
+				int j = rnd.nextInt(n);
+				if(j == i) continue;
+				double v = rnd.nextGaussian();
+				D[i][j] = D[j][i] = v;
+				S.set(i+1, j+1, v);
+				S.set(j+1, i+1, v);
+			}
+		}
+		double[] x = randomVector(rnd, n);
+		double[] expected = denseMult(D, x);
+		double xAx = 0.0;
+		for(int i=0; i<n; i++)
+			xAx += x[i]*expected[i];
+		CSRMatrix U = new CSRMatrix(S).getSymmetricUpper();
+		for(int p : new int[] {1, 3, 8}) {
+			U.setParallelism(p);
+			FullVector y = new FullVector(n);
+			U.mult(new FullVector(x, true), y);
+			assertArrayClose(expected, y.getData());
+			double d = U.multDot(new FullVector(x, true), y);
+			assertArrayClose(expected, y.getData());
+			assertEquals(xAx, d, 1e-10*Math.abs(xAx));
+		}
+	}
+
+	@Test
+	public void testResize() {
+		SparseMatrix S = new SparseMatrixRowMajor(2, 2);
+		S.set(1, 1, 1.0);
+		S.set(2, 1, 2.0);
+		S.set(2, 2, 3.0);
+		CSRMatrix A = new CSRMatrix(S);
+		A.setRowDim(3);
+		A.setColDim(3);
+		A.set(3, 3, 0.0);
+		assertEquals(3, A.getRowDim());
+		assertEquals(3, A.getColDim());
+		assertEquals(2.0, A.get(2, 1), 0.0);
+		assertEquals(0.0, A.get(3, 3), 0.0);
+		A.setRowDim(2);
+		assertEquals(2, A.getRowDim());
+		assertEquals(3.0, A.get(2, 2), 0.0);
+		A.setColDim(1);
+		assertEquals(2, A.getNonZeroNumber());
+		assertEquals(2.0, A.get(2, 1), 0.0);
+	}
+}
@@ -0,0 +1,122 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.lib.weakform.WeakForm;
+import edu.uta.futureye.lib.weakform.WeakFormBase;
+
+/**
+ * A compiled weak form keeps the Jacobian in the arguments array of the caller
+ * ("jac", see <tt>MathFunc.compileToArg()</tt>), so it can be evaluated by
+ * several threads on elements with different Jacobians at the same time
+ */
+public class ConcurrentEvalTest {
+	static final int N_THREADS = 8;
+	static final int N_ROUNDS = 2000;
+	//Local coordinates (r,s,t) of the evaluation points
+	static final double[][] POINTS = {{1.0/3, 1.0/3, 1.0/3}, {0.6, 0.2, 0.2}, {0.1, 0.3, 0.6}};
+
+	//Triangle k: the Jacobians of all the triangles are different
+	static double[] triangle(int k) {
+		double s = 1.0 + 0.25*k;
+		return new double[]{0.1*k, s, 0.2*k, //x1,x2,x3
+				0.0, 0.3*k, s+0.5}; //y1,y2,y3
+	}
+
+	static double[] args(String[] argsOrder, double[] coords, double[] point) {
+		List<String> names = Arrays.asList(argsOrder);
+		double[] args = new double[argsOrder.length];
+		String[] coordNames = {"x1", "x2", "x3", "y1", "y2", "y3"};
+		for(int i=0; i<coordNames.length; i++)
+			args[names.indexOf(coordNames[i])] = coords[i];
+		String[] pointNames = {"r", "s", "t"};
+		for(int i=0; i<pointNames.length; i++)
+			args[names.indexOf(pointNames[i])] = point[i];
+		return args;
+	}
+
+	/**
+	 * Values of the Jacobian, the LHS and RHS entries on triangle k at each point:
+	 * <tt>v[p] = {jac, lhs[0][0], lhs[0][1], ..., rhs[0], ...}</tt>
+	 */
+	static double[][] evaluate(WeakForm wf, int k) {
+		String[] argsOrder = wf.getArgsOrder();
+		CompiledFunc[][] lhs = wf.getCompiledLHS();
+		CompiledFunc[] rhs = wf.getCompiledRHS();
+		int n = rhs.length;
+		double[][] v = new double[POINTS.length][1+n*n+n];
+		for(int p=0; p<POINTS.length; p++) {
+			double[] args = args(argsOrder, triangle(k), POINTS[p]);
+			//The Jacobian is stored to args["jac"] and read by the LHS and RHS
+			v[p][0] = wf.getCompiledJac().apply(args);
+			assertEquals(v[p][0], args[argsOrder.length-1], 0.0);
+			int c = 1;
+			for(int j=0; j<n; j++)
+				for(int i=0; i<n; i++)
+					v[p][c++] = lhs[j][i].apply(args);
+			for(int j=0; j<n; j++)
+				v[p][c++] = rhs[j].apply(args);
+		}
+		return v;
+	}
+
+	static void assertSameValues(String msg, double[][] expected, double[][] actual) {
+		for(int p=0; p<expected.length; p++)
+			for(int c=0; c<expected[p].length; c++)
+				assertEquals(msg+" point "+p+" value "+c, expected[p][c], actual[p][c], 0.0);
+	}
+
+	@Test
+	public void testConcurrentJacobians() throws Exception {
+		final WeakForm wf = ParallelAssemblyTest.poisson();
+		assertEquals(WeakFormBase.JAC, wf.getArgsOrder()[wf.getArgsOrder().length-1]);
+
+		//Serial evaluation
+		final double[][][] expected = new double[N_THREADS][][];
+		for(int k=0; k<N_THREADS; k++) {
+			expected[k] = evaluate(wf, k);
+			if(k > 0)
+				assertTrue(Math.abs(expected[k-1][0][0]-expected[k][0][0]) > 1e-8);
+		}
+
+		//Each thread moves to the next triangle at each round, so the threads
+		//evaluate triangles with different Jacobians at the same time
+		final CyclicBarrier barrier = new CyclicBarrier(N_THREADS);
+		ExecutorService pool = Executors.newFixedThreadPool(N_THREADS);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for(int t=0; t<N_THREADS; t++) {
+				final int thread = t;
+				results.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						barrier.await();
+						for(int round=0; round<N_ROUNDS; round++) {
+							int k = (thread+round) % N_THREADS;
+							assertSameValues("thread "+thread+" round "+round+" triangle "+k,
+									expected[k], evaluate(wf, k));
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> f : results)
+				f.get(); //rethrow the failure of a thread
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
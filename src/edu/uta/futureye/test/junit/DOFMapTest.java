@@ -0,0 +1,156 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.grad;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.intf.Matrix;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.core.DOFMap;
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.Node;
+import edu.uta.futureye.core.NodeType;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.core.intf.VecFiniteElement;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.lib.assembler.Assembler;
+import edu.uta.futureye.lib.element.FELinearTetrahedron;
+import edu.uta.futureye.lib.element.FELinearTriangle;
+import edu.uta.futureye.lib.element.FEQuadraticV_LinearP;
+import edu.uta.futureye.lib.weakform.WeakForm;
+import edu.uta.futureye.util.container.ElementList;
+
+/**
+ * The connectivity table of a mesh gives the same global indices as the
+ * finite element, and chained assemblers on boundary elements (which are
+ * not in the table) still add their contributions at the right indices
+ */
+public class DOFMapTest {
+
+	static void assertSameIndices(Mesh mesh, FiniteElement fe) {
+		DOFMap map = mesh.getDOFMap(fe);
+		assertSame(map, mesh.getDOFMap(fe));
+		assertEquals(fe.getTotalNumberOfDOFs(mesh), map.getTotalNumberOfDOFs());
+		ElementList eList = mesh.getElementList();
+		assertEquals(eList.size(), map.getNumberOfElements());
+		for(int k=1; k<=eList.size(); k++) {
+			Element e = eList.at(k);
+			assertEquals(k, map.getElementIndex(mesh, e));
+			for(int j=1; j<=fe.getNumberOfDOFs(); j++)
+				assertEquals("element "+k+" DOF "+j, fe.getGlobalIndex(mesh, e, j), map.getGlobalIndex(k, j));
+		}
+	}
+
+	static void assertSameIndices(Mesh mesh, VecFiniteElement fe) {
+		DOFMap map = mesh.getDOFMap(fe);
+		assertSame(map, mesh.getDOFMap(fe));
+		assertEquals(fe.getTotalNumberOfDOFs(mesh), map.getTotalNumberOfDOFs());
+		ElementList eList = mesh.getElementList();
+		for(int k=1; k<=eList.size(); k++) {
+			Element e = eList.at(k);
+			assertEquals(k, map.getElementIndex(mesh, e));
+			for(int j=1; j<=fe.getNumberOfDOFs(); j++)
+				assertEquals("element "+k+" DOF "+j, fe.getGlobalIndex(mesh, e, j), map.getGlobalIndex(k, j));
+		}
+	}
+
+	@Test
+	public void testTriangle() {
+		Mesh mesh = new MeshReader("grids/triangle.grd").read2DMesh();
+		mesh.adjustVerticeToCounterClockwise();
+		assertSameIndices(mesh, new FELinearTriangle());
+	}
+
+	@Test
+	public void testTetrahedron() {
+		Mesh mesh = new MeshReader("grids/block1.grd").read3DMesh();
+		mesh.adjustVerticeToCounterClockwise();
+		assertSameIndices(mesh, new FELinearTetrahedron());
+	}
+
+	@Test
+	public void testVector() {
+		Mesh mesh = VecWeakFormTest.stokesMesh();
+		assertSameIndices(mesh, new FEQuadraticV_LinearP());
+	}
+
+	@Test
+	public void testElementNotInMesh() {
+		Mesh mesh = new MeshReader("grids/triangle.grd").read2DMesh();
+		DOFMap map = mesh.getDOFMap(new FELinearTriangle());
+		Mesh other = new MeshReader("grids/triangle.grd").read2DMesh();
+		assertEquals(0, map.getElementIndex(mesh, other.getElementList().at(1)));
+
+		//Stale after the mesh is changed
+		assertTrue(map.isValidFor(mesh));
+		mesh.addNode(new Node(mesh.getNodeList().size()+1, 100.0, 100.0));
+		assertTrue(!map.isValidFor(mesh));
+	}
+
+	/**
+	 * A chained assembler adds the Robin term <tt>\int_{\Gamma} 2*u*v</tt> and the
+	 * load <tt>\int_{\Gamma} 0.01*v</tt> on the boundary edges to the system of
+	 * the root assembler
+	 */
+	@Test
+	public void testChainedBoundary() {
+		Mesh mesh = new MeshReader("grids/triangle.grd").read2DMesh();
+		mesh.computeNodeBelongsToElements();
+		HashMap<NodeType, MathFunc> types = new HashMap<NodeType, MathFunc>();
+		types.put(NodeType.Robin, null);
+		mesh.markBorderNode(types);
+
+		FELinearTriangle fe = new FELinearTriangle();
+		WeakForm wf = new WeakForm(fe,
+				(u,v) -> grad(u, "x", "y").dot(grad(v, "x", "y")),
+				v -> v);
+		wf.compile();
+		WeakForm bwf = new WeakForm(fe.getBoundaryFE(),
+				(u,v) -> u.M(v).M(2.0),
+				v -> v.M(0.01));
+		bwf.compile();
+
+		Assembler domain = new Assembler(mesh, wf);
+		domain.assembleGlobal();
+		Assembler boundary = new Assembler(domain, bwf);
+		int n = mesh.getNodeList().size();
+		//Boundary mass matrix and load of linear edges: L/6*[2 1;1 2], L/2*[1 1]
+		double[][] R = new double[n+1][n+1];
+		double[] r = new double[n+1];
+		int nBorder = 0;
+		for(Element e : mesh.getElementList()) {
+			for(Element be : e.getBorderElements()) {
+				boundary.assembleGlobal(be);
+				Node p = be.nodes.at(1), q = be.nodes.at(2);
+				double L = Math.hypot(p.coord(1)-q.coord(1), p.coord(2)-q.coord(2));
+				int i = p.globalIndex, j = q.globalIndex;
+				R[i][i] += 2.0*L/3;
+				R[j][j] += 2.0*L/3;
+				R[i][j] += 2.0*L/6;
+				R[j][i] += 2.0*L/6;
+				r[i] += 0.01*L/2;
+				r[j] += 0.01*L/2;
+				nBorder++;
+			}
+		}
+		assertTrue(nBorder > 0);
+		assertSame(domain.getGlobalStiffMatrix(), boundary.getGlobalStiffMatrix());
+
+		Assembler reference = new Assembler(mesh, wf);
+		reference.assembleGlobal();
+		Matrix A = boundary.getGlobalStiffMatrix(), A0 = reference.getGlobalStiffMatrix();
+		Vector b = boundary.getGlobalLoadVector(), b0 = reference.getGlobalLoadVector();
+		for(int i=1; i<=n; i++) {
+			for(int j=1; j<=n; j++)
+				assertEquals("("+i+","+j+")", R[i][j], A.get(i, j)-A0.get(i, j), 1e-12);
+			assertEquals("load "+i, r[i], b.get(i)-b0.get(i), 1e-14);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.SparseBlockMatrix;
+import edu.uta.futureye.algebra.SparseBlockVector;
+import edu.uta.futureye.algebra.SparseMatrixRowMajor;
+import edu.uta.futureye.algebra.SparseVectorHashMap;
+import edu.uta.futureye.algebra.intf.Matrix;
+import edu.uta.futureye.algebra.intf.MatrixEntry;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+import edu.uta.futureye.algebra.intf.SparseVector;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.lib.assembler.DirichletCondition;
+import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.Utils;
+
+/**
+ * Compare <tt>DirichletCondition.apply()</tt> on each matrix type with
+ * <tt>Utils.setDirichlet()</tt> applied DOF by DOF
+ */
+public class DirichletConditionTest {
+	static final int N = 300;
+	static final int N_DIRICHLET = 40;
+
+	SparseMatrixRowMajor A = new SparseMatrixRowMajor(N, N);
+	SparseVectorHashMap f = new SparseVectorHashMap(N);
+	DirichletCondition bc = new DirichletCondition(N);
+	SparseMatrix R;
+	SparseVector fr;
+
+	public DirichletConditionTest() {
+		Random rnd = new Random(3);
+		for(int i=1; i<=N; i++) {
+			A.set(i, i, 4.0);
+			for(int k=0; k<3; k++) {
+				int j = rnd.nextInt(N)+1;
+				if(j != i) {
+					double v = rnd.nextDouble();
+					A.set(i, j, v);
+					A.set(j, i, v);
+				}
+			}
+		}
+		for(int i=1; i<=N; i++)
+			f.set(i, rnd.nextDouble());
+
+		//Some DOFs are set twice, the last value wins
+		Map<Integer,Double> last = new HashMap<Integer,Double>();
+		for(int k=0; k<N_DIRICHLET; k++) {
+			int index = rnd.nextInt(N)+1;
+			double value = rnd.nextDouble();
+			bc.set(index, value);
+			last.put(index, value);
+		}
+		R = A.copy();
+		fr = (SparseVector)f.copy();
+		for(Map.Entry<Integer,Double> e : last.entrySet())
+			Utils.setDirichlet(R, fr, e.getKey(), e.getValue());
+	}
+
+	static void assertSame(Matrix R, Vector fr, Matrix X, Vector fx, boolean upperOnly) {
+		for(int i=1; i<=N; i++) {
+			assertEquals("load "+i, fr.get(i), fx.get(i), 1e-14);
+			for(int j=upperOnly?i:1; j<=N; j++)
+				assertEquals("stiff("+i+","+j+")", R.get(i, j), X.get(i, j), 1e-14);
+		}
+	}
+
+	@Test
+	public void testIndices() {
+		int[] indices = bc.getIndices();
+		assertEquals(bc.size(), indices.length);
+		for(int index : indices) {
+			assertTrue(bc.contains(index));
+			assertEquals(fr.get(index), bc.getValue(index), 0.0);
+		}
+		int count = 0;
+		for(int i=1; i<=N; i++)
+			if(bc.contains(i)) count++;
+		assertEquals(bc.size(), count);
+	}
+
+	@Test
+	public void testSparseMatrix() {
+		SparseMatrix H = A.copy();
+		SparseVector fh = (SparseVector)f.copy();
+		bc.apply(H, fh);
+		assertSame(R, fr, H, fh, false);
+	}
+
+	@Test
+	public void testCSRMatrix() {
+		CSRMatrix C = new CSRMatrix(A);
+		SparseVector fc = (SparseVector)f.copy();
+		bc.apply(C, fc);
+		assertSame(R, fr, C, fc, false);
+	}
+
+	@Test
+	public void testSymmetricUpperCSRMatrix() {
+		CSRMatrix S = new CSRMatrix(A).getSymmetricUpper();
+		SparseVector fs = (SparseVector)f.copy();
+		bc.apply(S, fs);
+		assertSame(R, fr, S, fs, true);
+	}
+
+	@Test
+	public void testBlockMatrix() {
+		int[] dims = {120, N-120};
+		int[] offsets = {0, 120};
+		SparseBlockMatrix B = new SparseBlockMatrix(2, 2);
+		SparseMatrixRowMajor[][] blocks = new SparseMatrixRowMajor[2][2];
+		for(int i=0; i<2; i++) {
+			for(int j=0; j<2; j++) {
+				blocks[i][j] = new SparseMatrixRowMajor(dims[i], dims[j]);
+				B.setBlock(i+1, j+1, blocks[i][j]);
+			}
+		}
+		for(MatrixEntry e : A) {
+			int bi = e.getRow() > offsets[1] ? 1 : 0;
+			int bj = e.getCol() > offsets[1] ? 1 : 0;
+			blocks[bi][bj].set(e.getRow()-offsets[bi], e.getCol()-offsets[bj], e.getValue());
+		}
+		SparseBlockVector fb = new SparseBlockVector(2);
+		fb.setBlock(1, new SparseVectorHashMap(dims[0]));
+		fb.setBlock(2, new SparseVectorHashMap(dims[1]));
+		for(int i=1; i<=N; i++)
+			fb.set(i, f.get(i));
+		bc.apply(B, fb);
+		assertSame(R, fr, B, fb, false);
+	}
+
+	@Test
+	public void testReplaceValue() {
+		DirichletCondition c = new DirichletCondition(5);
+		c.set(2, 1.0);
+		c.set(4, 2.0);
+		c.set(2, 3.0);
+		assertEquals(2, c.size());
+		assertArrayEquals(new int[]{2, 4}, c.getIndices());
+		assertEquals(3.0, c.getValue(2), 0.0);
+		assertFalse(c.contains(1));
+	}
+
+	@Test(expected=FutureyeException.class)
+	public void testIndexOutOfRange() {
+		new DirichletCondition(5).set(6, 1.0);
+	}
+
+	@Test(expected=FutureyeException.class)
+	public void testDimensionMismatch() {
+		new DirichletCondition(N+1).apply(A.copy(), f.copy());
+	}
+}
@@ -0,0 +1,247 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.grad;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.HexVolumeCoord;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.Node;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.function.basic.FC;
+import edu.uta.futureye.function.basic.SpaceVectorFunction;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.lib.assembler.BasicAssembler;
+import edu.uta.futureye.lib.element.FELinearTetrahedron;
+import edu.uta.futureye.lib.element.FEQuadraticTetrahedron;
+import edu.uta.futureye.lib.element.FETrilinearHexahedron;
+import edu.uta.futureye.lib.weakform.WeakForm;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * Linear and quadratic tetrahedra and trilinear hexahedra: volume, partition
+ * of unity, patch test, and the orientation fix of tetrahedra
+ */
+public class Element3DTest {
+	//Vertices of a tetrahedron, counterclockwise or not (see testOrientation())
+	static final double[][] TET = {{0,0,0}, {2,0,0}, {0.2,3,0}, {0.5,0.5,1.5}};
+	//Edges of TetrahedronTp: the edge nodes 5,...,10 of a quadratic tetrahedron
+	static final int[][] TET_EDGES = {{1,2}, {2,3}, {3,1}, {1,4}, {2,4}, {3,4}};
+	//Gradient of the linear field of the patch test
+	static final double[] G = {0.7, -1.2, 2.1};
+
+	//Tetrahedron with 4 nodes, or 10 nodes with the edge nodes at the middle
+	static Element tetrahedron(double[][] P, boolean quadratic) {
+		NodeList nodes = new NodeList();
+		for(int i=0; i<4; i++)
+			nodes.add(new Node(i+1, P[i][0], P[i][1], P[i][2]));
+		if(quadratic) {
+			for(int i=0; i<TET_EDGES.length; i++) {
+				double[] p = P[TET_EDGES[i][0]-1], q = P[TET_EDGES[i][1]-1];
+				nodes.add(new Node(5+i, (p[0]+q[0])/2, (p[1]+q[1])/2, (p[2]+q[2])/2));
+			}
+		}
+		return new Element(nodes);
+	}
+
+	//Hexahedron with vertex i at the image of HexVolumeCoord.vertices[i], see hexMap()
+	static Element hexahedron(boolean affine) {
+		double[][] ref = HexVolumeCoord.vertices;
+		NodeList nodes = new NodeList();
+		for(int i=0; i<8; i++) {
+			double[] v = hexMap(ref[i], affine);
+			nodes.add(new Node(i+1, v[0], v[1], v[2]));
+		}
+		return new Element(nodes);
+	}
+
+	//Affine: x = A*(r,s,t)+c, volume 8*det(A). Otherwise the unit cube with
+	//the top face at z = 1+0.5*x, volume 1.25
+	static double[] hexMap(double[] rst, boolean affine) {
+		double r = rst[0], s = rst[1], t = rst[2];
+		if(affine)
+			return new double[]{1.0*r + 0.2*s + 1.0, 1.5*s + 0.1*t, 0.3*r + 0.8*t - 2.0};
+		double x = (r+1)/2, y = (s+1)/2;
+		return new double[]{x, y, t < 0 ? 0.0 : 1.0+0.5*x};
+	}
+
+	static final double HEX_AFFINE_VOLUME = 8*(1.0*(1.5*0.8-0.1*0.0) - 0.2*(0.0*0.8-0.1*0.3));
+	static final double HEX_VOLUME = 1.25;
+
+	static BasicAssembler assembleLocal(Element e, FiniteElement fe, boolean patch) {
+		Mesh mesh = new Mesh();
+		for(int i=1; i<=e.nodes.size(); i++)
+			mesh.addNode(e.nodes.at(i));
+		mesh.addElement(e);
+		WeakForm wf;
+		if(patch) {
+			final SpaceVectorFunction g = new SpaceVectorFunction(new FC(G[0]), new FC(G[1]), new FC(G[2]));
+			wf = new WeakForm(fe,
+					(u,v) -> grad(u, "x", "y", "z").dot(grad(v, "x", "y", "z")),
+					v -> grad(v, "x", "y", "z").dot(g));
+		} else {
+			wf = new WeakForm(fe,
+					(u,v) -> u.M(v),
+					v -> v);
+		}
+		wf.compile();
+		BasicAssembler assembler = new BasicAssembler(mesh, wf);
+		assembler.assembleLocal(e);
+		return assembler;
+	}
+
+	//The sum of the load vector of v -> v is the volume
+	static void assertVolume(Element e, FiniteElement fe, double volume) {
+		double[] b = assembleLocal(e, fe, false).getLocalLoadVector();
+		double sum = 0.0;
+		for(double bi : b)
+			sum += bi;
+		assertEquals(volume, sum, 1e-12*volume);
+	}
+
+	//The shape functions sum to 1 at some points on the reference element
+	static void assertPartitionOfUnity(FiniteElement fe, double[][] points) {
+		String[] argsOrder = fe.getArgsOrder();
+		List<String> names = Arrays.asList(argsOrder);
+		MathFunc[] shapeFuncs = fe.getShapeFunctions();
+		CompiledFunc[] csf = new CompiledFunc[shapeFuncs.length];
+		for(int i=0; i<shapeFuncs.length; i++)
+			csf[i] = shapeFuncs[i].compileWithASM(argsOrder);
+		String[] coords = {"r", "s", "t", "u"};
+		for(double[] p : points) {
+			double[] args = new double[argsOrder.length];
+			for(int k=0; k<p.length; k++)
+				args[names.indexOf(coords[k])] = p[k];
+			double sum = 0.0;
+			for(CompiledFunc f : csf)
+				sum += f.apply(args);
+			assertEquals(Arrays.toString(p), 1.0, sum, 1e-14);
+		}
+	}
+
+	/**
+	 * Patch test: the nodal values of a linear field give the exact gradient,
+	 * i.e. <tt>K*phi = (\int G.grad(N_i))</tt>, and <tt>K</tt> maps constants to zero
+	 */
+	static void assertPatch(Element e, FiniteElement fe) {
+		BasicAssembler assembler = assembleLocal(e, fe, true);
+		double[][] K = assembler.getLocalStiffMatrix();
+		double[] b = assembler.getLocalLoadVector();
+		int n = fe.getNumberOfDOFs();
+		assertEquals(e.nodes.size(), n);
+		double[] phi = new double[n];
+		for(int j=0; j<n; j++) {
+			Node node = e.nodes.at(j+1);
+			phi[j] = 1.0 + G[0]*node.coord(1) + G[1]*node.coord(2) + G[2]*node.coord(3);
+		}
+		double max = 0.0;
+		for(int i=0; i<n; i++)
+			for(int j=0; j<n; j++)
+				max = Math.max(max, Math.abs(K[i][j]));
+		for(int i=0; i<n; i++) {
+			double Kphi = 0.0, rowSum = 0.0;
+			for(int j=0; j<n; j++) {
+				Kphi += K[i][j]*phi[j];
+				rowSum += K[i][j];
+			}
+			assertEquals("row "+i, b[i], Kphi, 1e-12*max);
+			assertEquals("row sum "+i, 0.0, rowSum, 1e-12*max);
+		}
+	}
+
+	static double[][] tetPoints() {
+		return new double[][]{{0.25,0.25,0.25,0.25}, {0.1,0.2,0.3,0.4}, {1,0,0,0}, {0.6,0.3,0.05,0.05}};
+	}
+
+	static double[][] hexPoints() {
+		return new double[][]{{0,0,0}, {-0.3,0.7,0.1}, {1,-1,1}, {0.9,0.2,-0.8}};
+	}
+
+	static double tetVolume() {
+		return Math.abs(tetrahedron(TET, false).getElementVolume());
+	}
+
+	//TET or TET with vertices 2 and 3 swapped, whichever is counterclockwise
+	static double[][] counterclockwise() {
+		Element e = tetrahedron(TET, false);
+		return e.adjustVerticeToCounterClockwise() ? swap23(TET) : TET;
+	}
+
+	static double[][] swap23(double[][] P) {
+		return new double[][]{P[0], P[2], P[1], P[3]};
+	}
+
+	@Test
+	public void testLinearTetrahedron() {
+		FiniteElement fe = new FELinearTetrahedron();
+		//base area 3, height 1.5
+		assertEquals(3.0*1.5/3, tetVolume(), 1e-14);
+		assertVolume(tetrahedron(counterclockwise(), false), fe, tetVolume());
+		assertPartitionOfUnity(fe, tetPoints());
+		assertPatch(tetrahedron(counterclockwise(), false), fe);
+	}
+
+	@Test
+	public void testQuadraticTetrahedron() {
+		FiniteElement fe = new FEQuadraticTetrahedron();
+		assertVolume(tetrahedron(counterclockwise(), true), fe, tetVolume());
+		assertPartitionOfUnity(fe, tetPoints());
+		assertPatch(tetrahedron(counterclockwise(), true), fe);
+	}
+
+	@Test
+	public void testTrilinearHexahedron() {
+		FiniteElement fe = new FETrilinearHexahedron();
+		assertVolume(hexahedron(true), fe, HEX_AFFINE_VOLUME);
+		assertVolume(hexahedron(false), fe, HEX_VOLUME);
+		assertPartitionOfUnity(fe, hexPoints());
+		assertPatch(hexahedron(true), fe);
+		assertPatch(hexahedron(false), fe);
+	}
+
+	@Test
+	public void testOrientation() {
+		for(boolean quadratic : new boolean[]{false, true}) {
+			double[][] ccw = counterclockwise();
+			Element e = tetrahedron(ccw, quadratic);
+			assertTrue(e.getElementVolume() > 0);
+			assertFalse(e.adjustVerticeToCounterClockwise());
+
+			//Clockwise: vertices 2 and 3 are swapped back
+			double[][] cw = swap23(ccw);
+			e = tetrahedron(cw, quadratic);
+			Node[] old = new Node[e.nodes.size()];
+			for(int i=0; i<old.length; i++)
+				old[i] = e.nodes.at(i+1);
+			assertTrue(e.getElementVolume() < 0);
+			assertTrue(e.adjustVerticeToCounterClockwise());
+			assertEquals(tetVolume(), e.getElementVolume(), 1e-14);
+			assertSame(old[0], e.nodes.at(1));
+			assertSame(old[2], e.nodes.at(2));
+			assertSame(old[1], e.nodes.at(3));
+			assertSame(old[3], e.nodes.at(4));
+			if(quadratic) {
+				//Edge nodes follow the edges of the new vertices
+				for(int i=0; i<TET_EDGES.length; i++) {
+					Node p = e.nodes.at(TET_EDGES[i][0]), q = e.nodes.at(TET_EDGES[i][1]);
+					Node m = e.nodes.at(5+i);
+					for(int k=1; k<=3; k++)
+						assertEquals("edge node "+(5+i), (p.coord(k)+q.coord(k))/2, m.coord(k), 1e-15);
+				}
+			}
+			//Assembled on the adjusted element
+			FiniteElement fe = quadratic ? new FEQuadraticTetrahedron() : new FELinearTetrahedron();
+			assertVolume(e, fe, tetVolume());
+			assertPatch(e, fe);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.bytecode.ExprDAG;
+import edu.uta.futureye.function.basic.FC;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.FAdd;
+import edu.uta.futureye.function.operator.FMul;
+import edu.uta.futureye.function.operator.FSin;
+import edu.uta.futureye.function.operator.FSqrt;
+
+public class ExprDAGTest {
+
+	@Test
+	public void testSharedExprs() {
+		MathFunc x = new FX("x"), y = new FX("y");
+		//sin(x*y) and sin(y*x) are structurally equal
+		MathFunc s1 = new FSin(new FMul(x, y));
+		MathFunc s2 = new FSin(new FMul(new FX("y"), new FX("x")));
+		//(2+3) is folded to 5 and s2*1 is folded to s2
+		MathFunc f = new FAdd(new FMul(s1, new FAdd(new FC(2.0), new FC(3.0))),
+				new FMul(new FMul(s2, new FC(1.0)), new FSqrt(new FMul(s1, s2))));
+		ExprDAG dag = new ExprDAG(f);
+		assertEquals(1, dag.getSharedExprs().size());
+
+		CompiledFunc cf = f.compileWithASM("x", "y");
+		double[][] argsList = {{0.3, 0.7}, {0.0, 0.0}, {-1.2, 0.5}, {2.5, -3.1}, {10.0, 0.01}};
+		for(double[] args : argsList)
+			assertEquals(f.apply(args), cf.apply(null, args), 1e-12);
+	}
+
+}
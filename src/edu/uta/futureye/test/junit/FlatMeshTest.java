@@ -0,0 +1,147 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.grad;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.FlatMesh;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.lib.assembler.BasicAssembler;
+import edu.uta.futureye.lib.element.FELinearTriangle;
+import edu.uta.futureye.lib.element.FETrilinearHexahedron;
+import edu.uta.futureye.lib.weakform.WeakForm;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * Compare <tt>FlatMesh</tt> with the <tt>Mesh</tt> it represents: the arrays,
+ * the adjacency and the system assembled on both
+ */
+public class FlatMeshTest {
+
+	static void assertSameArrays(FlatMesh a, FlatMesh b) {
+		assertEquals(a.getDim(), b.getDim());
+		assertArrayEquals(a.getElementPtr(), b.getElementPtr());
+		assertArrayEquals(a.getElementNodes(), b.getElementNodes());
+		assertArrayEquals(a.getElementTypes(), b.getElementTypes());
+		double[] ca = a.getCoords(), cb = b.getCoords();
+		assertEquals(ca.length, cb.length);
+		for(int i=0; i<ca.length; i++)
+			assertEquals(ca[i], cb[i], 0.0);
+	}
+
+	static void assertAdjacency(Mesh mesh, FlatMesh fm) {
+		mesh.computeNodeBelongsToElements();
+		int[] nodeElemPtr = fm.getNodeElementPtr();
+		int[] nodeElems = fm.getNodeElements();
+		NodeList nodes = mesh.getNodeList();
+		for(int i=1; i<=nodes.size(); i++) {
+			Set<Integer> expected = new HashSet<Integer>();
+			for(Element e : nodes.at(i).belongToElements)
+				expected.add(e.globalIndex-1);
+			Set<Integer> actual = new HashSet<Integer>();
+			for(int p=nodeElemPtr[i-1]; p<nodeElemPtr[i]; p++) {
+				if(p > nodeElemPtr[i-1])
+					assertTrue(nodeElems[p] > nodeElems[p-1]);
+				actual.add(nodeElems[p]);
+			}
+			assertEquals("elements of node "+i, expected, actual);
+		}
+
+		//Neighbors are symmetric and share an edge (2D) or a face (3D)
+		int[] elemPtr = fm.getElementPtr();
+		int[] elemNodes = fm.getElementNodes();
+		int[] nbPtr = fm.getElementNeighborPtr();
+		int[] nbs = fm.getElementNeighbors();
+		for(int k=0; k<fm.getNumberOfElements(); k++) {
+			for(int p=nbPtr[k]; p<nbPtr[k+1]; p++) {
+				int j = nbs[p];
+				boolean back = false;
+				for(int q=nbPtr[j]; q<nbPtr[j+1]; q++)
+					back |= nbs[q] == k;
+				assertTrue("neighbors "+k+" "+j, back);
+				int common = 0;
+				for(int a=elemPtr[k]; a<elemPtr[k+1]; a++)
+					for(int b=elemPtr[j]; b<elemPtr[j+1]; b++)
+						if(elemNodes[a] == elemNodes[b]) common++;
+				assertTrue("neighbors "+k+" "+j, common >= fm.getDim());
+			}
+		}
+	}
+
+	static void assertSameSystem(Mesh mesh, FlatMesh fm, WeakForm wf) {
+		BasicAssembler a1 = new BasicAssembler(mesh, wf);
+		a1.assembleGlobal();
+		for(int parallelism : new int[]{1, 4}) {
+			BasicAssembler a2 = new BasicAssembler(fm, wf);
+			a2.setParallelism(parallelism);
+			a2.assembleGlobal();
+			CSRMatrix A1 = (CSRMatrix)a1.getGlobalStiffMatrix();
+			CSRMatrix A2 = (CSRMatrix)a2.getGlobalStiffMatrix();
+			assertArrayEquals(A1.getRowPtr(), A2.getRowPtr());
+			assertArrayEquals(A1.getColIdx(), A2.getColIdx());
+			double[] v1 = A1.getVals(), v2 = A2.getVals();
+			for(int i=0; i<v1.length; i++)
+				assertEquals(v1[i], v2[i], 1e-12);
+			Vector b1 = a1.getGlobalLoadVector(), b2 = a2.getGlobalLoadVector();
+			for(int i=1; i<=b1.getDim(); i++)
+				assertEquals(b1.get(i), b2.get(i), 1e-12);
+		}
+	}
+
+	@Test
+	public void testTriangles() {
+		String file = "grids/triangle.grd";
+		Mesh mesh = new MeshReader(file).read2DMesh();
+		FlatMesh fm = new MeshReader(file).readFlatMesh();
+		assertEquals(mesh.getNodeList().size(), fm.getNumberOfNodes());
+		assertEquals(mesh.getElementList().size(), fm.getNumberOfElements());
+		assertSameArrays(new FlatMesh(mesh), fm);
+		assertAdjacency(mesh, fm);
+
+		final MathFunc f = FX.x.M(FX.x).A(FX.y.M(FX.y)).M(-2).A(36);
+		FiniteElement fe = new FELinearTriangle();
+		WeakForm wf = new WeakForm(fe,
+				(u,v) -> grad(u, "x", "y").dot(grad(v, "x", "y")),
+				v -> f.M(v));
+		wf.compile();
+		assertSameSystem(mesh, fm, wf);
+	}
+
+	@Test
+	public void testTetrahedra() {
+		String file = "grids/block1.grd";
+		Mesh mesh = new MeshReader(file).read3DMesh();
+		FlatMesh fm = new MeshReader(file).readFlatMesh();
+		assertEquals(3, fm.getDim());
+		assertArrayEquals(new FlatMesh(mesh).getElementNodes(), fm.getElementNodes());
+		assertAdjacency(mesh, fm);
+	}
+
+	@Test
+	public void testHexahedra() {
+		String file = "grids/human_phantom3D.grd";
+		Mesh mesh = new MeshReader(file).read3DMesh();
+		FlatMesh fm = new MeshReader(file).readFlatMesh();
+		assertArrayEquals(new FlatMesh(mesh).getElementNodes(), fm.getElementNodes());
+		assertAdjacency(mesh, fm);
+
+		WeakForm wf = new WeakForm(new FETrilinearHexahedron(),
+				(u,v) -> grad(u, "x", "y", "z").dot(grad(v, "x", "y", "z")),
+				v -> v);
+		wf.compile();
+		assertSameSystem(mesh, fm, wf);
+	}
+}
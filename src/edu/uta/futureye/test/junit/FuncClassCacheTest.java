@@ -0,0 +1,182 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.sin;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.bytecode.FuncClassCache;
+import edu.uta.futureye.function.basic.FC;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.lib.weakform.WeakForm;
+
+/**
+ * Classes generated for structurally equal expressions are reused, the keys
+ * of different expressions differ, and the classes survive a round trip
+ * through the jar archive
+ */
+public class FuncClassCacheTest {
+
+	@After
+	public void tearDown() {
+		FuncClassCache.closeArchive();
+	}
+
+	//x*y + sin(x) + c, built from new objects at each call
+	static MathFunc func(String y, double c) {
+		MathFunc x = new FX("x");
+		return x.M(new FX(y)).A(sin(new FX("x"))).A(new FC(c));
+	}
+
+	//The generated class name ends with the key
+	static String keyOf(CompiledFunc f) {
+		String name = f.getClass().getName();
+		return name.substring(name.length()-32);
+	}
+
+	static String digest(String structure) throws Exception {
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		byte[] digest = md.digest(structure.getBytes(StandardCharsets.UTF_8));
+		StringBuilder hex = new StringBuilder();
+		for(int i=0; i<16; i++)
+			hex.append(String.format("%02x", digest[i]));
+		return hex.toString();
+	}
+
+	static Map<String, byte[]> readJar(File file) throws Exception {
+		Map<String, byte[]> entries = new HashMap<String, byte[]>();
+		try(JarInputStream jis = new JarInputStream(new FileInputStream(file))) {
+			JarEntry entry;
+			while((entry = jis.getNextJarEntry()) != null) {
+				java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+				byte[] buf = new byte[4096];
+				int n;
+				while((n = jis.read(buf)) > 0)
+					out.write(buf, 0, n);
+				entries.put(entry.getName(), out.toByteArray());
+			}
+		}
+		return entries;
+	}
+
+	@Test
+	public void testCacheHit() {
+		CompiledFunc c1 = func("y", 2.0).compileWithASM("x", "y");
+		CompiledFunc c2 = func("y", 2.0).compileWithASM("x", "y");
+		assertSame(c1.getClass(), c2.getClass());
+		assertNotNull(FuncClassCache.get(keyOf(c1)));
+		assertEquals(2.0+Math.sin(1.0)+2.0, c2.apply(1.0, 2.0), 0.0);
+
+		//The same weak form compiled again reuses all the classes
+		WeakForm wf1 = ParallelAssemblyTest.poisson();
+		WeakForm wf2 = ParallelAssemblyTest.poisson();
+		assertSame(wf1.getCompiledJac().getClass(), wf2.getCompiledJac().getClass());
+		for(int j=0; j<3; j++) {
+			for(int i=0; i<3; i++)
+				assertSame(wf1.getCompiledLHS()[j][i].getClass(), wf2.getCompiledLHS()[j][i].getClass());
+			assertSame(wf1.getCompiledRHS()[j].getClass(), wf2.getCompiledRHS()[j].getClass());
+		}
+		wf1.compileKernel();
+		wf2.compileKernel();
+		assertSame(wf1.getCompiledKernel().getClass(), wf2.getCompiledKernel().getClass());
+	}
+
+	@Test
+	public void testKeyDiffers() {
+		CompiledFunc c = func("y", 2.0).compileWithASM("x", "y", "z");
+		//Constant
+		CompiledFunc cConst = func("y", 3.0).compileWithASM("x", "y", "z");
+		assertNotSame(c.getClass(), cConst.getClass());
+		assertTrue(!keyOf(c).equals(keyOf(cConst)));
+		assertEquals(1.0, cConst.apply(0.0, 0.0, 0.0) - c.apply(0.0, 0.0, 0.0), 0.0);
+		//Variable
+		CompiledFunc cVar = func("z", 2.0).compileWithASM("x", "y", "z");
+		assertNotSame(c.getClass(), cVar.getClass());
+		assertTrue(!keyOf(c).equals(keyOf(cVar)));
+		assertEquals(1.0*2.0+Math.sin(1.0)+2.0, c.apply(1.0, 2.0, 3.0), 0.0);
+		assertEquals(1.0*3.0+Math.sin(1.0)+2.0, cVar.apply(1.0, 2.0, 3.0), 0.0);
+		//Order of the arguments
+		CompiledFunc cOrder = func("y", 2.0).compileWithASM("y", "x", "z");
+		assertNotSame(c.getClass(), cOrder.getClass());
+		assertEquals(c.apply(1.0, 2.0, 3.0), cOrder.apply(2.0, 1.0, 3.0), 0.0);
+	}
+
+	@Test
+	public void testVersionedKey() throws Exception {
+		FuncClassCache.Key key = new FuncClassCache.Key(new String[]{"x", "y"}, true);
+		key.add(func("y", 2.0), true);
+		assertTrue(key.toString().startsWith("v"+FuncClassCache.CODEGEN_VERSION+";"));
+		assertEquals(digest(key.toString()), key.getKey());
+	}
+
+	@Test
+	public void testArchiveRoundTrip() throws Exception {
+		File jar = File.createTempFile("FuncClassCacheTest", ".jar");
+		jar.delete();
+		try {
+			//A constant which is not compiled by the other tests
+			double c = 7.0 + Math.random();
+			FuncClassCache.openArchive(jar.getPath());
+			CompiledFunc f = func("y", c).compileWithASM("x", "y");
+			String key = keyOf(f);
+			FuncClassCache.saveArchive();
+			Map<String, byte[]> entries = readJar(jar);
+			assertTrue(entries.containsKey(key+".class"));
+
+			//Not in memory and not in an archive: generated again
+			FuncClassCache.closeArchive();
+			FuncClassCache.clear();
+			assertNull(FuncClassCache.get(key));
+
+			//Loaded from the archive
+			FuncClassCache.openArchive(jar.getPath());
+			Class<?> loaded = FuncClassCache.get(key);
+			assertNotNull(loaded);
+			assertNotSame(f.getClass(), loaded);
+			CompiledFunc f2 = func("y", c).compileWithASM("x", "y");
+			assertSame(loaded, f2.getClass());
+			assertEquals(f.apply(1.0, 2.0), f2.apply(1.0, 2.0), 0.0);
+			FuncClassCache.closeArchive();
+
+			//An archive of an older code generator: the keys don't match
+			FuncClassCache.Key k = new FuncClassCache.Key(new String[]{"x", "y"}, true);
+			k.add(func("y", c), true);
+			k.append("result:null");
+			k.append("integrate");
+			assertEquals(key, k.getKey());
+			String oldKey = digest(k.toString().replaceFirst(
+					"^v"+FuncClassCache.CODEGEN_VERSION+";", "v"+(FuncClassCache.CODEGEN_VERSION-1)+";"));
+			try(JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar))) {
+				jos.putNextEntry(new JarEntry(oldKey+".class"));
+				jos.write(entries.get(key+".class"));
+				jos.closeEntry();
+			}
+			FuncClassCache.clear();
+			FuncClassCache.openArchive(jar.getPath());
+			assertNotNull(FuncClassCache.get(oldKey));
+			assertNull(FuncClassCache.get(key));
+		} finally {
+			FuncClassCache.closeArchive();
+			jar.delete();
+		}
+	}
+}
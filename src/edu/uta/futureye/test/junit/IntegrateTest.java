@@ -0,0 +1,106 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.exp;
+import static edu.uta.futureye.function.FMath.grad;
+import static edu.uta.futureye.function.FMath.sin;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.uta.futureye.bytecode.CompiledFunc;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.operator.FOIntegrate;
+import edu.uta.futureye.lib.assembler.AssembleParam;
+import edu.uta.futureye.lib.element.FELinearTriangle;
+import edu.uta.futureye.lib.weakform.WeakForm;
+
+/**
+ * The generated <tt>CompiledFunc.integrate()</tt>, which evaluates the loop-invariant
+ * sub-expressions only once, gives the same sum as evaluating the function at
+ * each quadrature point
+ */
+public class IntegrateTest {
+	static final String[] ARGS = {"x1", "y1", "r", "s", "t"};
+	static final int R = 2; //index of r in ARGS
+
+	//\sum_p weights[p]*f(points[p])
+	static double sum(CompiledFunc f, double[] args, int argsStart, double[] points, double[] weights) {
+		int dim = points.length/weights.length;
+		double rlt = 0.0;
+		for(int p=0; p<weights.length; p++) {
+			System.arraycopy(points, p*dim, args, argsStart, dim);
+			rlt += weights[p]*f.apply(null, args);
+		}
+		return rlt;
+	}
+
+	//The generated class overrides integrate()
+	static void assertGenerated(CompiledFunc f) throws Exception {
+		assertEquals(f.getClass(), f.getClass().getMethod("integrate", AssembleParam.class,
+				double[].class, int.class, double[].class, double[].class).getDeclaringClass());
+	}
+
+	static void assertSameIntegral(CompiledFunc f, double[] args, int argsStart) {
+		for(int order=2; order<=5; order++) {
+			double[][] q = FOIntegrate.getTriangleRefElementQuadrature(order);
+			double expected = sum(f, args.clone(), argsStart, q[0], q[1]);
+			double actual = f.integrate(null, args.clone(), argsStart, q[0], q[1]);
+			assertEquals("order "+order, expected, actual, 1e-13*Math.max(1.0, Math.abs(expected)));
+		}
+	}
+
+	@Test
+	public void testVaryingTerms() throws Exception {
+		MathFunc x1 = new FX("x1"), y1 = new FX("y1");
+		MathFunc r = new FX("r"), s = new FX("s"), t = new FX("t");
+		//sin(x1)*x1*y1 is invariant, the other terms depend on the point
+		MathFunc f = sin(x1).M(x1).M(y1).M(r).A(s.M(s).M(y1)).A(exp(t.M(x1))).A(sin(x1));
+		CompiledFunc cf = f.compileWithASM(ARGS);
+		assertGenerated(cf);
+		double[] args = {0.7, -1.3, 0, 0, 0};
+		assertSameIntegral(cf, args, R);
+		//r,s,t after other arguments
+		double[] args2 = {0.7, -1.3, 0.2, 0.3, 0.5, 0, 0, 0};
+		CompiledFunc cf2 = f.compileWithASM("x1", "y1", "a", "b", "c", "r", "s", "t");
+		assertSameIntegral(cf2, args2, 5);
+		//argsStart is not the index of r: the generic loop is used
+		assertSameIntegral(cf, args, R-1);
+	}
+
+	@Test
+	public void testInvariantTerms() throws Exception {
+		MathFunc x1 = new FX("x1"), y1 = new FX("y1");
+		MathFunc f = x1.M(y1).A(sin(x1)).D(y1.M(y1).A(1.0));
+		CompiledFunc cf = f.compileWithASM(ARGS);
+		assertGenerated(cf);
+		double[] args = {0.7, -1.3, 0, 0, 0};
+		assertSameIntegral(cf, args, R);
+		//The sum of the weights times the value
+		double[][] q = FOIntegrate.getTriangleRefElementQuadrature(4);
+		double w = 0.0;
+		for(double wp : q[1])
+			w += wp;
+		assertEquals(w*cf.apply(null, args), cf.integrate(null, args, R, q[0], q[1]), 1e-14);
+	}
+
+	@Test
+	public void testWeakForm() {
+		//grad(u).dot(grad(v)) is invariant on linear triangles, the RHS is not
+		final MathFunc f = FX.x.M(FX.x).A(FX.y.M(FX.y)).M(-2).A(36);
+		WeakForm wf = new WeakForm(new FELinearTriangle(),
+				(u,v) -> grad(u, "x", "y").dot(grad(v, "x", "y")).A(f.M(u).M(v)),
+				v -> f.M(v));
+		wf.compile();
+		double[] args = new double[wf.getArgsOrder().length];
+		double[] coords = {0.0, 1.3, 0.2, 0.1, 0.05, 1.1};
+		System.arraycopy(coords, 0, args, 0, coords.length);
+		wf.getCompiledJac().apply(args);
+		int argsStart = java.util.Arrays.asList(wf.getArgsOrder()).indexOf("r");
+		for(CompiledFunc[] row : wf.getCompiledLHS())
+			for(CompiledFunc c : row)
+				assertSameIntegral(c, args, argsStart);
+		for(CompiledFunc c : wf.getCompiledRHS())
+			assertSameIntegral(c, args, argsStart);
+	}
+}
@@ -0,0 +1,129 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.C1;
+import static edu.uta.futureye.function.FMath.grad;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.intf.FiniteElement;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.basic.SpaceVectorFunction;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.intf.VecMathFunc;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.lib.assembler.BasicAssembler;
+import edu.uta.futureye.lib.assembler.BasicVecAssembler;
+import edu.uta.futureye.lib.element.FELinearTriangle;
+import edu.uta.futureye.lib.element.FEQuadraticV_LinearP;
+import edu.uta.futureye.lib.weakform.VecWeakForm;
+import edu.uta.futureye.lib.weakform.WeakForm;
+import edu.uta.futureye.util.container.ElementList;
+
+/**
+ * The fused kernel (<tt>compileKernel()</tt>) gives the same local stiff matrix
+ * and load vector as the compiled functions of each entry (<tt>compile()</tt>)
+ */
+public class KernelTest {
+	static final int N_ELEMENTS = 10;
+
+	static WeakForm poisson(FiniteElement fe, boolean kernel) {
+		final MathFunc k = FX.x.M(FX.y).A(1.0);
+		final MathFunc f = FX.x.M(FX.x).A(FX.y.M(FX.y)).M(-2).A(36);
+		WeakForm wf = new WeakForm(fe,
+				(u,v) -> k.M(grad(u, "x", "y").dot(grad(v, "x", "y"))).A(u.M(v)),
+				v -> f.M(v));
+		if(kernel)
+			wf.compileKernel();
+		else
+			wf.compile();
+		return wf;
+	}
+
+	//Stokes with coefficient k in the velocity blocks
+	static VecWeakForm stokes(final MathFunc k, boolean kernel) {
+		final VecMathFunc f = new SpaceVectorFunction(C1, FX.y);
+		VecWeakForm wf = new VecWeakForm(new FEQuadraticV_LinearP(),
+				(u, v) -> k.M(grad(u.get(1),"x","y").dot(grad(v.get(1),"x","y"))
+					.A(grad(u.get(2),"x","y").dot(grad(v.get(2),"x","y"))))
+					.S(v.get(1).diff("x").A(v.get(2).diff("y")).M(u.get(3)))
+					.A(v.get(3).M(u.get(1).diff("x").A(u.get(2).diff("y")))),
+				v -> v.get(1).M(f.get(1)).A(v.get(2).M(f.get(2))));
+		if(kernel)
+			wf.compileKernel();
+		else
+			wf.compile();
+		return wf;
+	}
+
+	static void assertSameLocal(String msg, double[][] A1, double[] b1, double[][] A2, double[] b2) {
+		for(int j=0; j<A1.length; j++) {
+			for(int i=0; i<A1.length; i++)
+				assertEquals(msg+" A["+j+"]["+i+"]", A1[j][i], A2[j][i], 1e-12*Math.max(1.0, Math.abs(A1[j][i])));
+			assertEquals(msg+" b["+j+"]", b1[j], b2[j], 1e-12*Math.max(1.0, Math.abs(b1[j])));
+		}
+	}
+
+	static void assertSameLocal(Mesh mesh, FiniteElement fe) {
+		WeakForm entries = poisson(fe, false);
+		WeakForm kernel = poisson(fe, true);
+		assertNull(entries.getCompiledKernel());
+		assertNotNull(kernel.getCompiledKernel());
+		BasicAssembler a1 = new BasicAssembler(mesh, entries);
+		BasicAssembler a2 = new BasicAssembler(mesh, kernel);
+		a1.prepareMesh();
+		ElementList eList = mesh.getElementList();
+		for(int idx=1; idx<=Math.min(N_ELEMENTS, eList.size()); idx++) {
+			Element e = eList.at(idx);
+			a1.assembleLocal(e);
+			a2.assembleLocal(e);
+			assertSameLocal("element "+idx, a1.getLocalStiffMatrix(), a1.getLocalLoadVector(),
+					a2.getLocalStiffMatrix(), a2.getLocalLoadVector());
+		}
+	}
+
+	@Test
+	public void testWeakForm() {
+		assertSameLocal(new MeshReader("grids/triangle.grd").read2DMesh(), new FELinearTriangle());
+	}
+
+	static void assertSameLocal(Mesh mesh, VecWeakForm entries, VecWeakForm kernel) {
+		BasicVecAssembler a1 = new BasicVecAssembler(mesh, entries);
+		BasicVecAssembler a2 = new BasicVecAssembler(mesh, kernel);
+		a1.prepareMesh();
+		ElementList eList = mesh.getElementList();
+		for(int idx=1; idx<=Math.min(N_ELEMENTS, eList.size()); idx++) {
+			Element e = eList.at(idx);
+			a1.assembleLocal(e);
+			a2.assembleLocal(e);
+			assertSameLocal("element "+idx, a1.A, a1.b, a2.A, a2.b);
+		}
+
+		//The zero blocks are skipped by both
+		a1.assembleGlobal();
+		a2.assembleGlobal();
+		CSRAssemblyTest.assertSameMatrix(a1.getGlobalStiffMatrix(), a2.getGlobalStiffMatrix());
+		CSRAssemblyTest.assertSameVector(a1.getGlobalLoadVector(), a2.getGlobalLoadVector());
+	}
+
+	@Test
+	public void testVecWeakForm() {
+		VecWeakForm kernel = stokes(C1, true);
+		assertNotNull(kernel.getCompiledKernel());
+		assertSameLocal(VecWeakFormTest.stokesMesh(), stokes(C1, false), kernel);
+	}
+
+	@Test
+	public void testKernelTooLarge() {
+		//The kernel exceeds the size limit of a method, each entry is compiled instead
+		final MathFunc k = FX.x.A(1.0);
+		VecWeakForm kernel = stokes(k, true);
+		assertNull(kernel.getCompiledKernel());
+		assertNotNull(kernel.getCompiledLHS());
+		assertSameLocal(VecWeakFormTest.stokesMesh(), stokes(k, false), kernel);
+	}
+}
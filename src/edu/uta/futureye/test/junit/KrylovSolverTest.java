@@ -0,0 +1,159 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.FullMatrix;
+import edu.uta.futureye.algebra.FullVector;
+import edu.uta.futureye.algebra.SparseMatrixRowMajor;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+import edu.uta.futureye.algebra.solver.IC0Preconditioner;
+import edu.uta.futureye.algebra.solver.ILU0Preconditioner;
+import edu.uta.futureye.algebra.solver.JacobiPreconditioner;
+import edu.uta.futureye.algebra.solver.Preconditioner;
+import edu.uta.futureye.algebra.solver.SSORPreconditioner;
+import edu.uta.futureye.algebra.solver.Solver;
+
+public class KrylovSolverTest {
+	static final int M = 20;
+
+	/**
+	 * 5-point Laplacian plus an upwind convection term in x direction
+	 */
+	static CSRMatrix convectionDiffusion2D(int m, double c) {
+		SparseMatrix A = new SparseMatrixRowMajor(m*m, m*m);
+		for(int i=0; i<m; i++) {
+			for(int j=0; j<m; j++) {
+				int r = i*m+j+1;
+				A.set(r, r, 4.0+c);
+				if(i > 0) A.set(r, r-m, -1.0);
+				if(j > 0) A.set(r, r-1, -1.0-c);
+				if(j < m-1) A.set(r, r+1, -1.0);
+				if(i < m-1) A.set(r, r+m, -1.0);
+			}
+		}
+		return new CSRMatrix(A);
+	}
+
+	static FullVector rhs(int n) {
+		double[] b = new double[n];
+		for(int i=0; i<n; i++)
+			b[i] = Math.sin(i+1);
+		return new FullVector(b, false);
+	}
+
+	static Preconditioner[] spdPreconditioners(CSRMatrix A) {
+		return new Preconditioner[] {
+				null,
+				new JacobiPreconditioner(A),
+				new SSORPreconditioner(A),
+				new SSORPreconditioner(A, 1.5),
+				new IC0Preconditioner(A)
+		};
+	}
+
+	static Preconditioner[] preconditioners(CSRMatrix A) {
+		return new Preconditioner[] {
+				null,
+				new JacobiPreconditioner(A),
+				new SSORPreconditioner(A),
+				new ILU0Preconditioner(A)
+		};
+	}
+
+	static void assertConverged(String name, CSRMatrix A, FullVector x, FullVector b) {
+		double res = SparseDirectSolverTest.residual(A, x, b);
+		assertTrue(name+": residual = "+res, res <= 1e-6*b.normInf());
+	}
+
+	@Test
+	public void testPCGPoisson() {
+		CSRMatrix A = SparseDirectSolverTest.laplacian2D(M);
+		FullVector b = rhs(A.getRowDim());
+		for(Preconditioner P : spdPreconditioners(A)) {
+			Solver solver = new Solver();
+			FullVector x = new FullVector(b.getDim());
+			solver.solvePCG(A, P, b, x);
+			assertConverged("PCG "+P, A, x, b);
+		}
+	}
+
+	@Test
+	public void testBiCGStab() {
+		CSRMatrix[] As = {
+				SparseDirectSolverTest.laplacian2D(M),
+				convectionDiffusion2D(M, 2.0)
+		};
+		for(CSRMatrix A : As) {
+			FullVector b = rhs(A.getRowDim());
+			for(Preconditioner P : preconditioners(A)) {
+				Solver solver = new Solver();
+				FullVector x = new FullVector(b.getDim());
+				solver.solveBiCGStab(A, P, b, x);
+				assertConverged("BiCGStab "+P, A, x, b);
+			}
+		}
+	}
+
+	@Test
+	public void testGMRES() {
+		CSRMatrix[] As = {
+				SparseDirectSolverTest.laplacian2D(M),
+				convectionDiffusion2D(M, 2.0)
+		};
+		for(CSRMatrix A : As) {
+			FullVector b = rhs(A.getRowDim());
+			for(Preconditioner P : preconditioners(A)) {
+				Solver solver = new Solver();
+				FullVector x = new FullVector(b.getDim());
+				solver.solveGMRES(A, P, b, x);
+				assertConverged("GMRES "+P, A, x, b);
+			}
+		}
+	}
+
+	@Test
+	public void testNonzeroInitialGuess() {
+		CSRMatrix A = SparseDirectSolverTest.laplacian2D(M);
+		FullVector b = rhs(A.getRowDim());
+		FullVector x = new FullVector(b.getDim());
+		new Solver().solvePCG(A, new IC0Preconditioner(A), b, x);
+		//Restart from the solution: no iteration should spoil it
+		new Solver().solvePCG(A, new IC0Preconditioner(A), b, x);
+		assertConverged("PCG restart", A, x, b);
+	}
+
+	/**
+	 * The fused CG for <tt>CSRMatrix</tt> gives the same iterates as the 
+	 * generic CG on the same matrix stored in a <tt>FullMatrix</tt>
+	 */
+	@Test
+	public void testFusedCG() {
+		int m = 8;
+		CSRMatrix A = SparseDirectSolverTest.laplacian2D(m);
+		FullMatrix F = new FullMatrix(A);
+		FullVector b = rhs(A.getRowDim());
+		for(int k=1; k<=20; k++) {
+			Solver fused = new Solver();
+			Solver generic = new Solver();
+			fused.maxIter = k;
+			generic.maxIter = k;
+			FullVector x1 = new FullVector(b.getDim());
+			FullVector x2 = new FullVector(b.getDim());
+			fused.solveCG(A, b, x1);
+			generic.solveCG(F, b, x2);
+			for(int i=1; i<=b.getDim(); i++)
+				assertEquals("iteration "+k+", x("+i+")", x2.get(i), x1.get(i), 1e-12*Math.max(1.0, Math.abs(x2.get(i))));
+		}
+		FullVector x1 = new FullVector(b.getDim());
+		FullVector x2 = new FullVector(b.getDim());
+		new Solver().solveCG(A, b, x1);
+		new Solver().solveCG(F, b, x2);
+		assertConverged("CG", A, x1, b);
+		for(int i=1; i<=b.getDim(); i++)
+			assertEquals(x2.get(i), x1.get(i), 1e-10);
+	}
+}
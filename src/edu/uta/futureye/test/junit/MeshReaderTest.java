@@ -0,0 +1,211 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.FlatMesh;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.Node;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.io.MeshWriter;
+import edu.uta.futureye.util.container.ElementList;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * Compare <tt>MeshReader</tt> with a line by line reader of .grd files
+ * (the implementation before <tt>GridFileParser</tt>), and the binary
+ * mesh files written by <tt>MeshWriter.writeBinaryMesh()</tt> with the
+ * .grd files they are written from
+ */
+public class MeshReaderTest {
+	static final String[] FILES_2D = {
+			"grids/triangle.grd",
+			"grids/rectangle.grd",
+			"grids/patch_triangle.grd",
+			"grids/mixed.grd",
+			"grids/triangle_refine80x80.grd"
+	};
+	static final String FILE_3D = "grids/stokes_cavity3d.grd";
+
+	/**
+	 * Read triangles and quadrilaterals with <tt>String.split()</tt>
+	 * and <tt>Double.valueOf()</tt>
+	 */
+	static Mesh referenceRead2DMesh(String file) throws IOException {
+		Mesh mesh = new Mesh();
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String str = null;
+			int nNode = 0;
+			int nElement = 0;
+			int nElementLines = 0;
+			while((str = br.readLine()) != null) {
+				if(str.startsWith("#") || str.trim().isEmpty()) continue;
+				String[] line = str.trim().split("(\\s)+");
+				if(nNode == 0) {
+					nNode = Integer.valueOf(line[0]);
+					nElement = Integer.valueOf(line[1]);
+				} else if(mesh.getNodeList().size() < nNode) {
+					mesh.addNode(new Node(Integer.valueOf(line[0]),
+							Double.valueOf(line[1]), Double.valueOf(line[2])));
+				} else if(nElementLines++ < nElement) {
+					int n = line[2].equalsIgnoreCase("tri") ? 3 :
+						line[2].equalsIgnoreCase("quad") ? 4 : 0;
+					if(n == 0) continue;
+					NodeList list = new NodeList();
+					for(int j=0; j<n; j++)
+						list.add(mesh.getNodeList().at(Integer.valueOf(line[3+j])));
+					mesh.addElement(new Element(list));
+				}
+			}
+		} finally {
+			br.close();
+		}
+		for(Element e : mesh.getElementList())
+			e.adjustVerticeToCounterClockwise();
+		return mesh;
+	}
+
+	static void assertSameMesh(String file, Mesh expected, Mesh actual) {
+		assertNotNull(file, actual);
+		NodeList na = expected.getNodeList(), nb = actual.getNodeList();
+		assertEquals(file, na.size(), nb.size());
+		for(int i=1; i<=na.size(); i++) {
+			assertEquals(file, na.at(i).globalIndex, nb.at(i).globalIndex);
+			assertSameValues(file+" node "+i, na.at(i).coords(), nb.at(i).coords());
+		}
+		ElementList ea = expected.getElementList(), eb = actual.getElementList();
+		assertEquals(file, ea.size(), eb.size());
+		for(int k=1; k<=ea.size(); k++) {
+			NodeList a = ea.at(k).nodes, b = eb.at(k).nodes;
+			assertEquals(file, a.size(), b.size());
+			for(int j=1; j<=a.size(); j++)
+				assertEquals(file+" element "+k, a.at(j).globalIndex, b.at(j).globalIndex);
+		}
+	}
+
+	//Bitwise equality, the values must be converted exactly as Double.parseDouble()
+	static void assertSameValues(String message, double[] expected, double[] actual) {
+		assertTrue(message+": "+Arrays.toString(expected)+" != "+Arrays.toString(actual),
+				Arrays.equals(expected, actual));
+	}
+
+	static void assertSameFlatMesh(FlatMesh a, FlatMesh b) {
+		assertEquals(a.getDim(), b.getDim());
+		assertSameValues("coords", a.getCoords(), b.getCoords());
+		assertArrayEquals(a.getElementPtr(), b.getElementPtr());
+		assertArrayEquals(a.getElementNodes(), b.getElementNodes());
+		assertArrayEquals(a.getElementTypes(), b.getElementTypes());
+		assertArrayEquals(a.getNodeElementPtr(), b.getNodeElementPtr());
+		assertArrayEquals(a.getNodeElements(), b.getNodeElements());
+		assertArrayEquals(a.getElementNeighborPtr(), b.getElementNeighborPtr());
+		assertArrayEquals(a.getElementNeighbors(), b.getElementNeighbors());
+	}
+
+	static File tempFile(String suffix) throws IOException {
+		File f = File.createTempFile("MeshReaderTest", suffix);
+		f.deleteOnExit();
+		return f;
+	}
+
+	@Test
+	public void testRead2DMesh() throws IOException {
+		for(String file : FILES_2D) {
+			Mesh expected = referenceRead2DMesh(file);
+			assertSameMesh(file, expected, new MeshReader(file).read2DMesh());
+			//More than one chunk of lines for the larger files
+			assertSameMesh(file, expected, new MeshReader(file).setParallelism(4).read2DMesh());
+		}
+	}
+
+	@Test
+	public void testRead3DMesh() {
+		Mesh mesh = new MeshReader(FILE_3D).read3DMesh();
+		FlatMesh fm = new MeshReader(FILE_3D).readFlatMesh();
+		assertEquals(3, fm.getDim());
+		assertEquals(fm.getNumberOfNodes(), mesh.getNodeList().size());
+		assertEquals(fm.getNumberOfElements(), mesh.getElementList().size());
+		NodeList nodes = mesh.getNodeList();
+		for(int i=1; i<=nodes.size(); i++) {
+			Node node = nodes.at(i);
+			for(int d=0; d<3; d++)
+				assertEquals(fm.getCoord(node.globalIndex-1, d), node.coord(d+1), 0.0);
+		}
+		//A 3D file has no 2D elements
+		assertEquals(0, new MeshReader(FILE_3D).read2DMesh().getElementList().size());
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		String[] files = new String[FILES_2D.length+1];
+		System.arraycopy(FILES_2D, 0, files, 0, FILES_2D.length);
+		files[FILES_2D.length] = FILE_3D;
+		for(String file : files) {
+			FlatMesh fm = new MeshReader(file).readFlatMesh();
+			String bin = tempFile(".bin").getPath();
+			MeshWriter.writeBinaryMesh(fm, bin);
+			assertSameFlatMesh(fm, new MeshReader(bin).readFlatMesh());
+			boolean threeD = fm.getDim() == 3;
+			Mesh fromGrd = threeD ? new MeshReader(file).read3DMesh() : new MeshReader(file).read2DMesh();
+			Mesh fromBin = threeD ? new MeshReader(bin).read3DMesh() : new MeshReader(bin).read2DMesh();
+			assertSameMesh(file, fromGrd, fromBin);
+		}
+	}
+
+	@Test
+	public void testNumbers() throws IOException {
+		File f = tempFile(".grd");
+		FileWriter w = new FileWriter(f);
+		try {
+			w.write("# comment\n\n3 1 0 0 0\n");
+			w.write("1 0.1 -2.5e-3\n");
+			w.write("2   +1.00000000000000000001\t3E2\r\n");
+			w.write("3 .5 12345678901234567890.0\n");
+			w.write("1 1 TRI 1 2 3\n");
+		} finally {
+			w.close();
+		}
+		FlatMesh fm = new MeshReader(f.getPath()).readFlatMesh();
+		assertSameValues("coords", new double[]{
+				0.1, -2.5e-3,
+				Double.parseDouble("1.00000000000000000001"), 300.0,
+				0.5, 12345678901234567890.0}, fm.getCoords());
+		assertArrayEquals(new int[]{0, 1, 2}, fm.getElementNodes());
+		assertEquals(FlatMesh.TRIANGLE, fm.getElementTypes()[0]);
+	}
+
+	@Test
+	public void testMalformedFile() throws IOException {
+		File f = tempFile(".grd");
+		FileWriter w = new FileWriter(f);
+		try {
+			w.write("3 1 0 0 0\n1 0 0\n2 1 x\n3 0 1\n1 1 tri 1 2 3\n");
+		} finally {
+			w.close();
+		}
+		assertNull(new MeshReader(f.getPath()).readFlatMesh());
+
+		w = new FileWriter(f);
+		try {
+			w.write("3 1 0 0 0\n1 0 0\n2 1 0\n");
+		} finally {
+			w.close();
+		}
+		assertNull(new MeshReader(f.getPath()).readFlatMesh());
+		assertTrue(f.delete());
+	}
+}
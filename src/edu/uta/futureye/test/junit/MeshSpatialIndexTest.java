@@ -0,0 +1,182 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.MeshSpatialIndex;
+import edu.uta.futureye.core.Node;
+import edu.uta.futureye.core.Refiner;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.util.Constant;
+import edu.uta.futureye.util.container.ElementList;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * Compare the queries of <tt>MeshSpatialIndex</tt> with a linear scan
+ * of the nodes and elements of the mesh
+ */
+public class MeshSpatialIndexTest {
+
+	static Node scanNode(Mesh mesh, double[] coord, double threshold) {
+		NodeList nodes = mesh.getNodeList();
+		for(int i=1; i<=nodes.size(); i++) {
+			Node node = nodes.at(i);
+			boolean same = true;
+			for(int j=1; j<=node.dim(); j++) {
+				if(Math.abs(coord[j-1]-node.coord(j)) > threshold) {
+					same = false;
+					break;
+				}
+			}
+			if(same) return node;
+		}
+		return null;
+	}
+
+	static Element scanElement(Mesh mesh, double[] coord) {
+		ElementList eles = mesh.getElementList();
+		for(int i=1; i<=eles.size(); i++) {
+			if(eles.at(i).isCoordInElement(coord))
+				return eles.at(i);
+		}
+		return null;
+	}
+
+	static Mesh refinedMesh(String file, int nRefine) {
+		Mesh mesh = new MeshReader(file).read2DMesh();
+		for(int r=0; r<nRefine; r++) {
+			mesh.computeNodeBelongsToElements();
+			mesh.computeNeighborNodes();
+			mesh.computeGlobalEdge();
+			mesh.computeNeighborElements();
+			ElementList eToRefine = new ElementList();
+			for(Element e : mesh.getElementList())
+				eToRefine.add(e);
+			Refiner.refineOnce(mesh, eToRefine);
+		}
+		return mesh;
+	}
+
+	/**
+	 * Half of the points are close to the nodes, the others are
+	 * random points in the bounding box and a little outside of it
+	 */
+	static double[][] samplePoints(Mesh mesh, int n, long seed) {
+		Random rnd = new Random(seed);
+		double[] box = mesh.getSpatialIndex().getBoundingBox();
+		NodeList nodes = mesh.getNodeList();
+		double[][] points = new double[n][];
+		for(int i=0; i<n; i++) {
+			if(i%2 == 0) {
+				Node node = nodes.at(1+rnd.nextInt(nodes.size()));
+				points[i] = new double[]{node.coord(1)+(rnd.nextDouble()-0.5)*1e-3, node.coord(2)};
+			} else {
+				points[i] = new double[]{
+						box[0]-0.1+rnd.nextDouble()*(box[2]-box[0]+0.2),
+						box[1]-0.1+rnd.nextDouble()*(box[3]-box[1]+0.2)};
+			}
+		}
+		return points;
+	}
+
+	static void assertSameAsScan(Mesh mesh, double[][] points) {
+		Node[] nodes = mesh.findNodesByCoord(points, Constant.meshEps);
+		Element[] eles = mesh.getElementsByCoord(points);
+		int nFound = 0;
+		for(int i=0; i<points.length; i++) {
+			assertSame("node at point "+i, scanNode(mesh, points[i], Constant.meshEps), nodes[i]);
+			assertSame("element at point "+i, scanElement(mesh, points[i]), eles[i]);
+			if(eles[i] != null) nFound++;
+		}
+		assertTrue(nFound > 0);
+	}
+
+	@Test
+	public void testTriangleMesh() {
+		Mesh mesh = refinedMesh("grids/triangle.grd", 2);
+		assertSameAsScan(mesh, samplePoints(mesh, 400, 3));
+	}
+
+	@Test
+	public void testRectangleMesh() {
+		Mesh mesh = refinedMesh("grids/rectangle.grd", 1);
+		assertSameAsScan(mesh, samplePoints(mesh, 400, 5));
+	}
+
+	@Test
+	public void testExactNodes() {
+		Mesh mesh = refinedMesh("grids/triangle.grd", 1);
+		NodeList nodes = mesh.getNodeList();
+		for(int i=1; i<=nodes.size(); i++)
+			assertSame(nodes.at(i), mesh.findNodeByCoord(nodes.at(i).coords(), Constant.meshEps));
+		assertEquals(nodes.size(), mesh.getSpatialIndex().getNumberOfIndexedNodes());
+	}
+
+	@Test
+	public void testLargeThreshold() {
+		//Many nodes are within the threshold, the first one in the node list is returned
+		Mesh mesh = refinedMesh("grids/triangle.grd", 1);
+		double[][] points = samplePoints(mesh, 200, 7);
+		for(int i=0; i<points.length; i++)
+			assertSame(scanNode(mesh, points[i], 0.3), mesh.findNodeByCoord(points[i], 0.3));
+	}
+
+	@Test
+	public void testMovedNodes() {
+		Mesh mesh = refinedMesh("grids/triangle.grd", 1);
+		MeshSpatialIndex index = mesh.getSpatialIndex();
+		assertSame(index, mesh.getSpatialIndex());
+		NodeList nodes = mesh.getNodeList();
+		for(int i=1; i<=nodes.size(); i++) {
+			Node node = nodes.at(i);
+			node.setCoord(1, node.coord(1)+1.0);
+		}
+		mesh.clearSpatialIndex();
+		assertTrue(index != mesh.getSpatialIndex());
+		assertSameAsScan(mesh, samplePoints(mesh, 400, 11));
+	}
+
+	@Test
+	public void testConcurrentQueries() throws Exception {
+		final Mesh mesh = refinedMesh("grids/triangle.grd", 2);
+		final double[][] points = samplePoints(mesh, 1000, 13);
+		final Element[] expected = new Element[points.length];
+		for(int i=0; i<points.length; i++)
+			expected[i] = scanElement(mesh, points[i]);
+		//The element index is built by the first query of any thread
+		mesh.clearSpatialIndex();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for(int t=0; t<4; t++) {
+				results.add(pool.submit(new Callable<Integer>() {
+					public Integer call() {
+						int nWrong = 0;
+						for(int i=0; i<points.length; i++) {
+							if(mesh.getElementByCoord(points[i]) != expected[i])
+								nWrong++;
+						}
+						return nWrong;
+					}
+				}));
+			}
+			for(Future<Integer> f : results)
+				assertEquals(0, f.get().intValue());
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.SparseVectorHashMap;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.MeshTransfer;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * Interpolation by <tt>MeshTransfer</tt> from a mesh to its refinement reproduces
+ * linear functions on triangles and bilinear functions on rectangles exactly
+ */
+public class MeshTransferTest {
+
+	static double linear(double x, double y) {
+		return 1.0 + 2.0*x + 3.0*y;
+	}
+
+	static double bilinear(double x, double y) {
+		return 1.0 + 2.0*x + 3.0*y + x*y;
+	}
+
+	static Vector nodalValues(Mesh mesh, boolean isBilinear) {
+		NodeList nodes = mesh.getNodeList();
+		Vector u = new SparseVectorHashMap(nodes.size());
+		for(int i=1; i<=nodes.size(); i++) {
+			double x = nodes.at(i).coord(1), y = nodes.at(i).coord(2);
+			u.set(i, isBilinear ? bilinear(x, y) : linear(x, y));
+		}
+		return u;
+	}
+
+	static void assertReproduced(String file, boolean isBilinear) {
+		Mesh from = new MeshReader(file).read2DMesh();
+		Mesh to = MeshSpatialIndexTest.refinedMesh(file, 2);
+		MeshTransfer tr = new MeshTransfer(from, to);
+		assertEquals(to.getNodeList().size(), tr.getNumberOfPoints());
+		assertEquals(0, tr.getNumberOfOutsidePoints());
+
+		Vector u = nodalValues(from, isBilinear);
+		Vector expected = nodalValues(to, isBilinear);
+		Vector rlt = tr.apply(u);
+		for(int i=1; i<=expected.getDim(); i++)
+			assertEquals(file+" node "+i, expected.get(i), rlt.get(i), 1e-12);
+
+		//Several vectors in parallel give the same values
+		Vector[] us = new Vector[6];
+		for(int k=0; k<us.length; k++) {
+			us[k] = u.copy();
+			us[k].scale(k+1);
+		}
+		Vector[] rlts = tr.apply(us, 0.0, 4);
+		for(int k=0; k<us.length; k++) {
+			for(int i=1; i<=expected.getDim(); i++)
+				assertEquals((k+1)*rlt.get(i), rlts[k].get(i), 1e-12);
+		}
+	}
+
+	@Test
+	public void testLinearOnTriangles() {
+		assertReproduced("grids/patch_triangle.grd", false);
+	}
+
+	@Test
+	public void testBilinearOnRectangles() {
+		assertReproduced("grids/patch_rectangle.grd", true);
+	}
+
+	@Test
+	public void testPartitionOfUnity() {
+		Mesh from = new MeshReader("grids/triangle.grd").read2DMesh();
+		Mesh to = MeshSpatialIndexTest.refinedMesh("grids/triangle.grd", 1);
+		CSRMatrix P = new MeshTransfer(from, to).getMatrix();
+		int[] rowPtr = P.getRowPtr();
+		double[] vals = P.getVals();
+		for(int r=0; r<P.getRowDim(); r++) {
+			double s = 0;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				assertTrue(vals[k] >= -1e-12);
+				s += vals[k];
+			}
+			assertEquals(1.0, s, 1e-12);
+		}
+	}
+
+	@Test
+	public void testOutsidePoints() {
+		Mesh from = new MeshReader("grids/patch_triangle.grd").read2DMesh();
+		double[] box = from.getSpatialIndex().getBoundingBox();
+		double[][] points = {
+				{box[0]-1.0, box[1]},
+				{0.5*(box[0]+box[2]), 0.5*(box[1]+box[3])},
+				{box[2], box[3]+1.0}
+		};
+		MeshTransfer tr = new MeshTransfer(from, points);
+		assertEquals(2, tr.getNumberOfOutsidePoints());
+		assertFalse(tr.isInside(0));
+		assertTrue(tr.isInside(1));
+		assertFalse(tr.isInside(2));
+		Vector rlt = tr.apply(nodalValues(from, false), -1.0);
+		assertEquals(-1.0, rlt.get(1), 0.0);
+		assertEquals(linear(points[1][0], points[1][1]), rlt.get(2), 1e-12);
+		assertEquals(-1.0, rlt.get(3), 0.0);
+	}
+}
@@ -0,0 +1,256 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.SpaceVector;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.Node;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.io.MeshWriter;
+import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.container.ElementList;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * The binary VTU and Tecplot files are read back and compared with the mesh
+ * and the values, and a failure of a background write is reported by <tt>flush()</tt>
+ */
+public class MeshWriterTest {
+
+	static Mesh mesh() {
+		return new MeshReader("grids/triangle.grd").read2DMesh();
+	}
+
+	static SpaceVector[] values(Mesh mesh) {
+		int n = mesh.getNodeList().size();
+		SpaceVector u = new SpaceVector(n), v = new SpaceVector(n);
+		for(int i=1; i<=n; i++) {
+			u.set(i, Math.sin(i));
+			v.set(i, 0.1*i);
+		}
+		return new SpaceVector[]{u, v};
+	}
+
+	static File tempFile(String suffix) throws Exception {
+		File f = File.createTempFile("MeshWriterTest", suffix);
+		f.deleteOnExit();
+		return f;
+	}
+
+	static int attr(String header, String name) {
+		Matcher m = Pattern.compile(name+"=\"(\\d+)\"").matcher(header);
+		assertTrue(name, m.find());
+		return Integer.parseInt(m.group(1));
+	}
+
+	//Offset of the appended data array whose tag contains key
+	static int offset(String header, String key) {
+		Matcher m = Pattern.compile("<DataArray[^>]*"+key+"[^>]*offset=\"(\\d+)\"").matcher(header);
+		assertTrue(key, m.find());
+		return Integer.parseInt(m.group(1));
+	}
+
+	//The array at offset of the appended data: UInt64 size in bytes then the data
+	static ByteBuffer array(ByteBuffer data, int start, int offset, long expectedSize) {
+		ByteBuffer buf = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		buf.position(start+offset);
+		assertEquals(expectedSize, buf.getLong());
+		ByteBuffer a = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+		a.limit((int)expectedSize);
+		return a;
+	}
+
+	static void assertVTU(File file, Mesh mesh, SpaceVector ...us) throws Exception {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		String text = new String(bytes, StandardCharsets.ISO_8859_1);
+		String marker = "<AppendedData encoding=\"raw\">\n_";
+		int start = text.indexOf(marker)+marker.length();
+		assertTrue(start > marker.length());
+		String header = text.substring(0, start);
+		assertTrue(header.contains("byte_order=\"LittleEndian\" header_type=\"UInt64\""));
+		NodeList nodes = mesh.getNodeList();
+		ElementList elements = mesh.getElementList();
+		int nN = nodes.size(), nE = elements.size();
+		assertEquals(nN, attr(header, "NumberOfPoints"));
+		assertEquals(nE, attr(header, "NumberOfCells"));
+		ByteBuffer data = ByteBuffer.wrap(bytes);
+
+		String[] names = {"U", "V"};
+		for(int v=0; v<us.length; v++) {
+			ByteBuffer a = array(data, start, offset(header, "Name=\""+names[v]+"\""), 8L*nN);
+			for(int i=1; i<=nN; i++)
+				assertEquals(us[v].get(i), a.getDouble(), 0.0);
+		}
+		ByteBuffer points = array(data, start, offset(header, "NumberOfComponents=\"3\""), 24L*nN);
+		for(int i=1; i<=nN; i++) {
+			Node node = nodes.at(i);
+			assertEquals(node.coord(1), points.getDouble(), 0.0);
+			assertEquals(node.coord(2), points.getDouble(), 0.0);
+			assertEquals(0.0, points.getDouble(), 0.0);
+		}
+		ByteBuffer conn = array(data, start, offset(header, "Name=\"connectivity\""), 4L*3*nE);
+		ByteBuffer offsets = array(data, start, offset(header, "Name=\"offsets\""), 4L*nE);
+		ByteBuffer types = array(data, start, offset(header, "Name=\"types\""), nE);
+		for(int k=1; k<=nE; k++) {
+			NodeList eNodes = elements.at(k).nodes;
+			for(int j=1; j<=eNodes.size(); j++)
+				assertEquals(eNodes.at(j).globalIndex-1, conn.getInt());
+			assertEquals(3*k, offsets.getInt());
+			assertEquals(5, types.get()); //VTK_TRIANGLE
+		}
+		//The last array is followed by the end of the file
+		int end = start + offset(header, "Name=\"types\"") + 8 + nE;
+		assertEquals("\n  </AppendedData>\n</VTKFile>\n", text.substring(end));
+	}
+
+	static String tecplotString(ByteBuffer buf) {
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while((c = buf.getInt()) != 0)
+			sb.append((char)c);
+		return sb.toString();
+	}
+
+	static void assertTecplot(File file, Mesh mesh, SpaceVector ...us) throws Exception {
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		byte[] magic = new byte[8];
+		buf.get(magic);
+		assertEquals("#!TDV112", new String(magic, StandardCharsets.US_ASCII));
+		assertEquals(1, buf.getInt());
+		assertEquals(0, buf.getInt());
+		tecplotString(buf); //title
+		int nVars = buf.getInt();
+		assertEquals(2+us.length, nVars);
+		String[] names = {"X", "Y", "U", "V"};
+		for(int v=0; v<nVars; v++)
+			assertEquals(names[v], tecplotString(buf));
+		assertEquals(299.0f, buf.getFloat(), 0.0f);
+		tecplotString(buf); //zone name
+		assertEquals(-1, buf.getInt());
+		assertEquals(-1, buf.getInt());
+		assertEquals(0.0, buf.getDouble(), 0.0);
+		assertEquals(-1, buf.getInt());
+		assertEquals(2, buf.getInt()); //FETRIANGLE
+		assertEquals(0, buf.getInt());
+		assertEquals(0, buf.getInt());
+		assertEquals(0, buf.getInt());
+		NodeList nodes = mesh.getNodeList();
+		ElementList elements = mesh.getElementList();
+		int nN = nodes.size(), nE = elements.size();
+		assertEquals(nN, buf.getInt());
+		assertEquals(nE, buf.getInt());
+		for(int i=0; i<4; i++)
+			assertEquals(0, buf.getInt());
+		assertEquals(357.0f, buf.getFloat(), 0.0f);
+
+		assertEquals(299.0f, buf.getFloat(), 0.0f);
+		for(int v=0; v<nVars; v++)
+			assertEquals(2, buf.getInt()); //double
+		assertEquals(0, buf.getInt());
+		assertEquals(0, buf.getInt());
+		assertEquals(-1, buf.getInt());
+		double[][] vars = new double[nVars][nN];
+		for(int i=1; i<=nN; i++) {
+			vars[0][i-1] = nodes.at(i).coord(1);
+			vars[1][i-1] = nodes.at(i).coord(2);
+			for(int v=0; v<us.length; v++)
+				vars[2+v][i-1] = us[v].get(i);
+		}
+		for(double[] a : vars) {
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			for(double x : a) {
+				min = Math.min(min, x);
+				max = Math.max(max, x);
+			}
+			assertEquals(min, buf.getDouble(), 0.0);
+			assertEquals(max, buf.getDouble(), 0.0);
+		}
+		for(double[] a : vars)
+			for(double x : a)
+				assertEquals(x, buf.getDouble(), 0.0);
+		for(int k=1; k<=nE; k++) {
+			NodeList eNodes = elements.at(k).nodes;
+			for(int j=1; j<=eNodes.size(); j++)
+				assertEquals(eNodes.at(j).globalIndex-1, buf.getInt());
+		}
+		assertEquals(0, buf.remaining());
+	}
+
+	@Test
+	public void testVTU() throws Exception {
+		Mesh mesh = mesh();
+		SpaceVector[] us = values(mesh);
+		File file = tempFile(".vtu");
+		new MeshWriter(mesh).writeVTU(file.getPath(), us[0], us[1]);
+		assertVTU(file, mesh, us);
+	}
+
+	@Test
+	public void testTecplotBinary() throws Exception {
+		Mesh mesh = mesh();
+		SpaceVector[] us = values(mesh);
+		File file = tempFile(".plt");
+		new MeshWriter(mesh).writeTechplotBinary(file.getPath(), us[0], us[1]);
+		assertTecplot(file, mesh, us);
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		Mesh mesh = mesh();
+		SpaceVector[] us = values(mesh);
+		SpaceVector[] copy = values(mesh);
+		File vtu = tempFile(".vtu"), plt = tempFile(".plt");
+		MeshWriter writer = new MeshWriter(mesh).setAsync(true);
+		writer.writeVTU(vtu.getPath(), us[0], us[1]);
+		writer.writeTechplotBinary(plt.getPath(), us[0], us[1]);
+		//The values are copied by the call
+		for(int i=1; i<=us[0].getDim(); i++)
+			us[0].set(i, -1.0);
+		writer.flush();
+		assertVTU(vtu, mesh, copy);
+		assertTecplot(plt, mesh, copy);
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		Mesh mesh = mesh();
+		SpaceVector[] us = values(mesh);
+		String missing = new File(tempFile(".dir").getPath()+"_missing", "u.vtu").getPath();
+		try {
+			new MeshWriter(mesh).writeVTU(missing, us[0]);
+			fail("Writing to a missing directory succeeded");
+		} catch(FutureyeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("u.vtu"));
+		}
+
+		//Background: reported by flush(), the following files are still written
+		MeshWriter writer = new MeshWriter(mesh).setAsync(true);
+		File file = tempFile(".vtu");
+		File sync = tempFile(".vtu");
+		writer.writeVTU(missing, us[0]);
+		writer.writeVTU(file.getPath(), us[0]);
+		try {
+			writer.flush();
+			fail("The failure of a background write is not reported");
+		} catch(FutureyeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("u.vtu"));
+		}
+		new MeshWriter(mesh).writeVTU(sync.getPath(), us[0]);
+		assertArrayEquals(Files.readAllBytes(sync.toPath()), Files.readAllBytes(file.toPath()));
+		//Reported once
+		writer.flush();
+	}
+}
@@ -0,0 +1,90 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.grad;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.lib.assembler.BasicAssembler;
+import edu.uta.futureye.lib.element.FELinearTriangle;
+import edu.uta.futureye.lib.weakform.WeakForm;
+
+/**
+ * Deterministic parallel assembly gives exactly the serial results,
+ * non-deterministic parallel assembly differs only by round-off errors
+ */
+public class ParallelAssemblyTest {
+	//More elements than one block of the deterministic mode
+	static final String FILE = "grids/triangle_refine80x80.grd";
+
+	static WeakForm poisson() {
+		final MathFunc k = FX.x.M(FX.y).A(1.0);
+		final MathFunc f = FX.x.M(FX.x).A(FX.y.M(FX.y)).M(-2).A(36);
+		WeakForm wf = new WeakForm(new FELinearTriangle(),
+				(u,v) -> k.M(grad(u, "x", "y").dot(grad(v, "x", "y"))),
+				v -> f.M(v));
+		wf.compile();
+		return wf;
+	}
+
+	static BasicAssembler assemble(Mesh mesh, WeakForm wf, int parallelism, boolean deterministic) {
+		BasicAssembler assembler = new BasicAssembler(mesh, wf);
+		assembler.setParallelism(parallelism).setDeterministic(deterministic);
+		assembler.assembleGlobal();
+		return assembler;
+	}
+
+	static void assertSameSystem(BasicAssembler expected, BasicAssembler actual, double tol) {
+		CSRMatrix A1 = (CSRMatrix)expected.getGlobalStiffMatrix();
+		CSRMatrix A2 = (CSRMatrix)actual.getGlobalStiffMatrix();
+		assertArrayEquals(A1.getRowPtr(), A2.getRowPtr());
+		assertArrayEquals(A1.getColIdx(), A2.getColIdx());
+		double[] v1 = A1.getVals(), v2 = A2.getVals();
+		for(int k=0; k<v1.length; k++)
+			assertEquals("stiff entry "+k, v1[k], v2[k], tol*Math.max(1.0, Math.abs(v1[k])));
+		Vector b1 = expected.getGlobalLoadVector(), b2 = actual.getGlobalLoadVector();
+		assertEquals(b1.getDim(), b2.getDim());
+		for(int i=1; i<=b1.getDim(); i++)
+			assertEquals("load entry "+i, b1.get(i), b2.get(i), tol*Math.max(1.0, Math.abs(b1.get(i))));
+	}
+
+	@Test
+	public void testDeterministic() {
+		Mesh mesh = new MeshReader(FILE).read2DMesh();
+		WeakForm wf = poisson();
+		BasicAssembler serial = assemble(mesh, wf, 1, true);
+		for(int parallelism : new int[]{2, 3, 4})
+			assertSameSystem(serial, assemble(mesh, wf, parallelism, true), 0.0);
+	}
+
+	@Test
+	public void testNonDeterministic() {
+		Mesh mesh = new MeshReader(FILE).read2DMesh();
+		WeakForm wf = poisson();
+		BasicAssembler serial = assemble(mesh, wf, 1, true);
+		for(int parallelism : new int[]{2, 4})
+			assertSameSystem(serial, assemble(mesh, wf, parallelism, false), 1e-12);
+	}
+
+	@Test
+	public void testRepeatedAssembly() {
+		Mesh mesh = new MeshReader("grids/triangle.grd").read2DMesh();
+		WeakForm wf = poisson();
+		BasicAssembler serial = assemble(mesh, wf, 1, true);
+		BasicAssembler parallel = new BasicAssembler(mesh, wf).setParallelism(4);
+		for(int it=0; it<20; it++) {
+			parallel.assembleGlobal();
+			assertSameSystem(serial, parallel, 0.0);
+		}
+		//The shared pool is used, no more threads than the parallelism
+		assertTrue(CSRMatrix.getPool(4).getPoolSize() <= 4);
+	}
+}
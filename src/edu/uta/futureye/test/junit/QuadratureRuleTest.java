@@ -0,0 +1,155 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uta.futureye.function.operator.QuadratureRule;
+import edu.uta.futureye.function.operator.QuadratureRule.Shape;
+import edu.uta.futureye.util.FutureyeException;
+
+/**
+ * Integrate monomials on each reference element and compare with the exact
+ * values. The rules on triangles and tetrahedra are exact for polynomials of
+ * total degree <tt>getDegree()</tt>, the tensor product rules on lines,
+ * rectangles and hexahedra for degree <tt>getDegree()</tt> in each coordinate.
+ */
+public class QuadratureRuleTest {
+
+	static double factorial(int n) {
+		double r = 1;
+		for(int i=2; i<=n; i++)
+			r *= i;
+		return r;
+	}
+
+	//Integral of x^a on [-1,1]
+	static double line(int a) {
+		return a%2 == 1 ? 0.0 : 2.0/(a+1);
+	}
+
+	/**
+	 * Exact integral of the monomial with exponents <tt>e</tt> in the local
+	 * coordinates of <tt>shape</tt>: (r,s,t) on [-1,1]^n for the tensor product
+	 * shapes, area or volume coordinates (the last one is not used) for simplices
+	 */
+	static double exact(Shape shape, int[] e) {
+		switch(shape) {
+		case LINE: return line(e[0]);
+		case RECTANGLE: return line(e[0])*line(e[1]);
+		case HEXAHEDRON: return line(e[0])*line(e[1])*line(e[2]);
+		case TRIANGLE: return factorial(e[0])*factorial(e[1])/factorial(e[0]+e[1]+2);
+		default: return factorial(e[0])*factorial(e[1])*factorial(e[2])/factorial(e[0]+e[1]+e[2]+3);
+		}
+	}
+
+	static int nVars(Shape shape) {
+		switch(shape) {
+		case LINE: return 1;
+		case RECTANGLE: case TRIANGLE: return 2;
+		default: return 3;
+		}
+	}
+
+	static boolean isSimplex(Shape shape) {
+		return shape == Shape.TRIANGLE || shape == Shape.TETRAHEDRON;
+	}
+
+	/**
+	 * Max relative error over all the monomials which the rule integrates exactly
+	 */
+	static double maxError(QuadratureRule q) {
+		Shape shape = q.getShape();
+		int d = q.getDegree();
+		int dim = q.getDimension();
+		int nv = nVars(shape);
+		double[] p = q.getPoints();
+		double[] w = q.getWeights();
+		//pow[(k*nv+v)*(d+1)+a] = (coordinate v of point k)^a
+		double[] pow = new double[w.length*nv*(d+1)];
+		for(int k=0; k<w.length; k++) {
+			for(int v=0; v<nv; v++) {
+				int base = (k*nv+v)*(d+1);
+				pow[base] = 1.0;
+				for(int a=1; a<=d; a++)
+					pow[base+a] = pow[base+a-1]*p[k*dim+v];
+			}
+		}
+		double maxErr = 0;
+		int[] e = new int[3];
+		int bMax = nv > 1 ? d : 0;
+		int cMax = nv > 2 ? d : 0;
+		for(e[0]=0; e[0]<=d; e[0]++) {
+			for(e[1]=0; e[1]<=bMax; e[1]++) {
+				for(e[2]=0; e[2]<=cMax; e[2]++) {
+					if(isSimplex(shape) && e[0]+e[1]+e[2] > d)
+						continue;
+					double s = 0;
+					for(int k=0; k<w.length; k++) {
+						double m = w[k];
+						for(int v=0; v<nv; v++)
+							m *= pow[(k*nv+v)*(d+1)+e[v]];
+						s += m;
+					}
+					double ex = exact(shape, e);
+					maxErr = Math.max(maxErr, Math.abs(s-ex)/Math.max(Math.abs(ex), 1e-3));
+				}
+			}
+		}
+		return maxErr;
+	}
+
+	@Test
+	public void testExactness() {
+		for(Shape shape : Shape.values()) {
+			for(int d=0; d<=QuadratureRule.MAX_DEGREE; d++) {
+				//(d+1)^3 monomials times (d/2+1)^3 points, too slow for high degrees
+				if(shape == Shape.HEXAHEDRON && d > 12)
+					continue;
+				QuadratureRule q = QuadratureRule.get(shape, d);
+				assertTrue(q.toString(), q.getDegree() >= d);
+				double err = maxError(q);
+				assertTrue(q+": error = "+err, err < 1e-10);
+			}
+		}
+	}
+
+	@Test
+	public void testLayout() {
+		for(Shape shape : Shape.values()) {
+			for(int d=0; d<=10; d++) {
+				QuadratureRule q = QuadratureRule.get(shape, d);
+				assertEquals(shape, q.getShape());
+				assertEquals(q.size(), q.getWeights().length);
+				assertEquals(q.size()*q.getDimension(), q.getPoints().length);
+				if(isSimplex(shape)) {
+					//Area or volume coordinates sum to 1
+					assertEquals(nVars(shape)+1, q.getDimension());
+					double[] p = q.getPoints();
+					for(int k=0; k<q.size(); k++) {
+						double s = 0;
+						for(int i=0; i<q.getDimension(); i++)
+							s += p[k*q.getDimension()+i];
+						assertEquals(q.toString(), 1.0, s, 1e-12);
+					}
+				} else {
+					assertEquals(nVars(shape), q.getDimension());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCache() {
+		for(Shape shape : Shape.values())
+			assertSame(QuadratureRule.get(shape, 5), QuadratureRule.get(shape, 5));
+		assertSame(QuadratureRule.get(Shape.TRIANGLE, 0), QuadratureRule.get(Shape.TRIANGLE, -1));
+	}
+
+	@Test(expected=FutureyeException.class)
+	public void testUnsupportedDegree() {
+		QuadratureRule.get(Shape.TRIANGLE, QuadratureRule.MAX_DEGREE+1);
+	}
+}
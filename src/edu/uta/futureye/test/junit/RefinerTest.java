@@ -0,0 +1,165 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import edu.uta.futureye.core.EdgeLocal;
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.Node;
+import edu.uta.futureye.core.NodeRefined;
+import edu.uta.futureye.core.Refiner;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.util.container.ElementList;
+import edu.uta.futureye.util.container.NodeList;
+
+/**
+ * The topology updated incrementally by <tt>Refiner.refineOnce()</tt> must be the
+ * same as the one computed from scratch on the refined mesh
+ */
+public class RefinerTest {
+
+	static void computeTopology(Mesh mesh) {
+		mesh.computeNodeBelongsToElements();
+		mesh.computeNeighborNodes();
+		mesh.computeGlobalEdge();
+		mesh.computeNeighborElements();
+	}
+
+	//Elements whose centers are in the circle (cx,cy,r)
+	static ElementList select(Mesh mesh, double cx, double cy, double r) {
+		ElementList list = new ElementList();
+		for(Element e : mesh.getElementList()) {
+			double x = 0, y = 0;
+			int n = e.vertices().size();
+			for(int j=1; j<=n; j++) {
+				x += e.vertices().at(j).coord(1);
+				y += e.vertices().at(j).coord(2);
+			}
+			x /= n;
+			y /= n;
+			if((x-cx)*(x-cx)+(y-cy)*(y-cy) < r*r)
+				list.add(e);
+		}
+		return list;
+	}
+
+	static String edgeKey(Node a, Node b) {
+		return Math.min(a.globalIndex, b.globalIndex)+"-"+Math.max(a.globalIndex, b.globalIndex);
+	}
+
+	/**
+	 * Topology of the mesh as text: hanging node constraints, neighbor nodes and
+	 * elements of each node, nodes, neighbors and global edges of each element
+	 */
+	static String topology(Mesh mesh) {
+		StringBuilder sb = new StringBuilder();
+		NodeList nodes = mesh.getNodeList();
+		for(int i=1; i<=nodes.size(); i++) {
+			Node n = nodes.at(i);
+			sb.append(i).append(':').append(n.coord(1)).append(',').append(n.coord(2));
+			if(n instanceof NodeRefined && ((NodeRefined)n).isHangingNode()) {
+				Set<Integer> c = new TreeSet<Integer>();
+				for(Node x : ((NodeRefined)n).constrainNodes)
+					c.add(x.globalIndex);
+				sb.append(" H").append(c);
+			}
+			Set<Integer> nb = new TreeSet<Integer>();
+			if(n.neighbors != null)
+				for(Node x : n.neighbors) nb.add(x.globalIndex);
+			sb.append(" N").append(nb);
+			Set<Integer> be = new TreeSet<Integer>();
+			if(n.belongToElements != null)
+				for(Element x : n.belongToElements) be.add(x.globalIndex);
+			sb.append(" B").append(be).append('\n');
+		}
+		for(Element e : mesh.getElementList()) {
+			sb.append('E').append(e.globalIndex).append(':');
+			for(Node n : e.nodes)
+				sb.append(n.globalIndex).append(' ');
+			Set<Integer> nb = new TreeSet<Integer>();
+			for(Element x : e.neighbors)
+				nb.add(x.globalIndex);
+			sb.append(nb);
+			Set<String> edges = new TreeSet<String>();
+			for(EdgeLocal le : e.edges())
+				edges.add(edgeKey(le.getGlobalEdge().beginNode(), le.getGlobalEdge().endNode()));
+			sb.append(edges).append('\n');
+		}
+		return sb.toString();
+	}
+
+	static int countEdges(Mesh mesh) {
+		Set<String> edges = new HashSet<String>();
+		for(Element e : mesh.getElementList())
+			for(EdgeLocal le : e.edges())
+				edges.add(edgeKey(le.beginNode(), le.endNode()));
+		return edges.size();
+	}
+
+	static void assertLocalRefinement(String file, int nCycles) {
+		Mesh mesh = new MeshReader(file).read2DMesh();
+		computeTopology(mesh);
+		double[] box = mesh.getSpatialIndex().getBoundingBox();
+		double cx = box[0]+0.3*(box[2]-box[0]);
+		double cy = box[1]+0.4*(box[3]-box[1]);
+		double r = 0.8*(box[2]-box[0]);
+		for(int c=0; c<nCycles; c++) {
+			int nElements = mesh.getElementList().size();
+			ElementList eToRefine = select(mesh, cx, cy, r);
+			assertFalse(eToRefine.size() == 0);
+			Refiner.refineOnce(mesh, eToRefine);
+			assertTrue(mesh.getElementList().size() > nElements);
+
+			int nEdges = mesh.getEdgeList().size();
+			for(int i=1; i<=nEdges; i++)
+				assertEquals(i, mesh.getEdgeList().at(i).getGlobalIndex());
+			assertEquals(file+" cycle "+c, countEdges(mesh), nEdges);
+
+			Set<String> coords = new HashSet<String>();
+			for(Node n : mesh.getNodeList())
+				assertTrue("duplicate node "+n.globalIndex, coords.add(n.coord(1)+","+n.coord(2)));
+
+			String incremental = topology(mesh);
+			computeTopology(mesh);
+			assertEquals(file+" cycle "+c, topology(mesh), incremental);
+			assertEquals(file+" cycle "+c, nEdges, mesh.getEdgeList().size());
+			r *= 0.6;
+		}
+	}
+
+	@Test
+	public void testTriangles() {
+		assertLocalRefinement("grids/patch_triangle.grd", 5);
+	}
+
+	@Test
+	public void testRectangles() {
+		assertLocalRefinement("grids/patch_rectangle.grd", 5);
+	}
+
+	@Test
+	public void testUniformRefinement() {
+		Mesh mesh = new MeshReader("grids/triangle.grd").read2DMesh();
+		computeTopology(mesh);
+		int nNodes = mesh.getNodeList().size();
+		int nElements = mesh.getElementList().size();
+		int nEdges = countEdges(mesh);
+		ElementList all = new ElementList();
+		for(Element e : mesh.getElementList())
+			all.add(e);
+		Refiner.refineOnce(mesh, all);
+		//A new node on each edge, each triangle is split into 4
+		assertEquals(nNodes+nEdges, mesh.getNodeList().size());
+		assertEquals(4*nElements, mesh.getElementList().size());
+		for(Node n : mesh.getNodeList())
+			assertFalse(n instanceof NodeRefined && ((NodeRefined)n).isHangingNode());
+	}
+}
@@ -0,0 +1,149 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.CompressedColMatrix;
+import edu.uta.futureye.algebra.CompressedRowMatrix;
+import edu.uta.futureye.algebra.FullMatrix;
+import edu.uta.futureye.algebra.FullVector;
+import edu.uta.futureye.algebra.SparseBlockMatrix;
+import edu.uta.futureye.algebra.SparseBlockVector;
+import edu.uta.futureye.algebra.SparseMatrixRowMajor;
+import edu.uta.futureye.algebra.SparseVectorHashMap;
+import edu.uta.futureye.algebra.intf.MatrixEntry;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+import edu.uta.futureye.algebra.solver.SchurComplementStokesSolver;
+import edu.uta.futureye.algebra.solver.SparseLU;
+
+/**
+ * The solution of the matrix-free Schur complement solver is the same as the
+ * direct solution of the whole block system
+ */
+public class SchurComplementStokesSolverTest {
+	static final int M = 8; // velocity grid of each component: M*M DOFs
+	static final int NP = 12; // number of pressure DOFs
+
+	/**
+	 * Block system of Stokes (<tt>convection == 0</tt>, PCG is used) or Oseen
+	 * type (GMRES is used) with 2 velocity components, the whole system is
+	 * stored in <tt>full</tt>
+	 */
+	static SparseBlockMatrix blockSystem(double convection, SparseMatrix full) {
+		int nv = M*M;
+		SparseBlockMatrix A = new SparseBlockMatrix(3, 3);
+		for(int c=0; c<2; c++) {
+			SparseMatrix B = new SparseMatrixRowMajor(nv, nv);
+			for(MatrixEntry e : SparseDirectSolverTest.laplacian2D(M))
+				B.set(e.getRow(), e.getCol(), e.getValue());
+			for(int r=1; r<nv; r++) {
+				B.add(r, r+1, convection);
+				B.add(r+1, r, -convection);
+			}
+			//Discrete divergence: each pressure DOF is coupled to a few velocity DOFs
+			SparseMatrix C = new SparseMatrixRowMajor(nv, NP);
+			SparseMatrix CT = new SparseMatrixRowMajor(NP, nv);
+			for(int r=1; r<=nv; r++) {
+				int p = (r+5*c) % NP + 1;
+				double v = 0.5 + 0.1*((r+c) % 7);
+				C.set(r, p, v);
+				CT.set(p, r, -v);
+			}
+			A.setBlock(c+1, c+1, B);
+			A.setBlock(c+1, 3, C);
+			A.setBlock(3, c+1, CT);
+			copy(B, full, c*nv, c*nv);
+			copy(C, full, c*nv, 2*nv);
+			copy(CT, full, 2*nv, c*nv);
+		}
+		A.setBlock(1, 2, new SparseMatrixRowMajor(nv, nv));
+		A.setBlock(2, 1, new SparseMatrixRowMajor(nv, nv));
+		A.setBlock(3, 3, new SparseMatrixRowMajor(NP, NP));
+		return A;
+	}
+
+	static void copy(SparseMatrix block, SparseMatrix full, int rowBase, int colBase) {
+		for(MatrixEntry e : block)
+			full.set(rowBase+e.getRow(), colBase+e.getCol(), e.getValue());
+	}
+
+	static void assertSameSolution(double convection) {
+		int nv = M*M, n = 2*nv+NP;
+		SparseMatrix full = new SparseMatrixRowMajor(n, n);
+		SparseBlockMatrix A = blockSystem(convection, full);
+		double[] f = new double[n];
+		for(int i=0; i<n; i++)
+			f[i] = Math.sin(i+1.0);
+		SparseBlockVector b = new SparseBlockVector(3);
+		b.setBlock(1, new SparseVectorHashMap(Arrays.copyOfRange(f, 0, nv)));
+		b.setBlock(2, new SparseVectorHashMap(Arrays.copyOfRange(f, nv, 2*nv)));
+		b.setBlock(3, new SparseVectorHashMap(Arrays.copyOfRange(f, 2*nv, n)));
+
+		CSRMatrix K = new CSRMatrix(full);
+		FullVector x = new FullVector(n);
+		new SparseLU(K).solve(new FullVector(f, true), x);
+		assertTrue(SparseDirectSolverTest.residual(K, x, new FullVector(f, true)) < 1e-10);
+
+		SchurComplementStokesSolver solver = new SchurComplementStokesSolver(A, b);
+		solver.getSchurSolver().epsRelIter = 1e-13;
+		solver.getSchurSolver().epsAbsIterMax = 1e-10;
+		SparseBlockVector u = solver.solve2D();
+		for(int i=1; i<=nv; i++) {
+			assertEquals("u1 "+i, x.get(i), u.getBlock(1).get(i), 1e-8);
+			assertEquals("u2 "+i, x.get(nv+i), u.getBlock(2).get(i), 1e-8);
+		}
+		for(int i=1; i<=NP; i++)
+			assertEquals("p "+i, x.get(2*nv+i), u.getBlock(3).get(i), 1e-8);
+	}
+
+	@Test
+	public void testStokesPCG() {
+		assertSameSolution(0.0);
+	}
+
+	@Test
+	public void testOseenGMRES() {
+		assertSameSolution(0.3);
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testDeprecatedHelpers() {
+		SparseMatrix full = new SparseMatrixRowMajor(2*M*M+NP, 2*M*M+NP);
+		SparseBlockMatrix A = blockSystem(0.0, full);
+		SchurComplementStokesSolver solver = new SchurComplementStokesSolver(A, new SparseBlockVector(3));
+		solver.setCGInit(0.5);
+		SparseMatrix B = A.getBlock(1, 1);
+		SparseMatrix C = A.getBlock(1, 3);
+		CSRMatrix BB = new CSRMatrix(B);
+
+		//B*inv(B)*v = v
+		FullVector v = new FullVector(M*M, 1.0);
+		FullVector x = solver.invB_v(new CompressedRowMatrix(B, false), v);
+		assertTrue(SparseDirectSolverTest.residual(BB, x, v) < 1e-12);
+
+		//B*inv(B)*C = C
+		FullMatrix X = solver.invB_C(B, C);
+		FullMatrix X2 = (FullMatrix)solver.invB_C(new CompressedRowMatrix(B, false),
+				new CompressedColMatrix(C, false));
+		FullMatrix X3 = (FullMatrix)solver.invB_CColt(B, C);
+		double[][] x1 = X.getData(), x2 = X2.getData(), x3 = X3.getData();
+		for(int col=0; col<NP; col++) {
+			double[] xc = new double[M*M];
+			for(int r=0; r<M*M; r++) {
+				xc[r] = x1[r][col];
+				assertEquals(x1[r][col], x2[r][col], 0.0);
+				assertEquals(x1[r][col], x3[r][col], 0.0);
+			}
+			FullVector cc = new FullVector(M*M);
+			for(int r=0; r<M*M; r++)
+				cc.getData()[r] = C.get(r+1, col+1);
+			assertTrue(SparseDirectSolverTest.residual(BB, new FullVector(xc, false), cc) < 1e-12);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package edu.uta.futureye.test.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.FullVector;
+import edu.uta.futureye.algebra.SparseMatrixRowMajor;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
+import edu.uta.futureye.algebra.solver.AMDOrdering;
+import edu.uta.futureye.algebra.solver.SparseCholesky;
+import edu.uta.futureye.algebra.solver.SparseLU;
+import edu.uta.futureye.util.FutureyeException;
+
+public class SparseDirectSolverTest {
+
+	/**
+	 * 5-point Laplacian on an m*m grid
+	 */
+	public static CSRMatrix laplacian2D(int m) {
+		SparseMatrix A = new SparseMatrixRowMajor(m*m, m*m);
+		for(int i=0; i<m; i++) {
+			for(int j=0; j<m; j++) {
+				int r = i*m+j+1;
+				A.set(r, r, 4.0);
+				if(i > 0) A.set(r, r-m, -1.0);
+				if(j > 0) A.set(r, r-1, -1.0);
+				if(j < m-1) A.set(r, r+1, -1.0);
+				if(i < m-1) A.set(r, r+m, -1.0);
+			}
+		}
+		return new CSRMatrix(A);
+	}
+
+	public static double residual(CSRMatrix A, FullVector x, FullVector b) {
+		FullVector r = new FullVector(b.getDim());
+		A.mult(x, r);
+		r.add(-1.0, b);
+		return r.normInf();
+	}
+
+	static void assertPermutation(int n, int[] perm) {
+		assertEquals(n, perm.length);
+		boolean[] seen = new boolean[n];
+		for(int k=0; k<n; k++) {
+			assertTrue(perm[k] >= 0 && perm[k] < n);
+			assertFalse(seen[perm[k]]);
+			seen[perm[k]] = true;
+		}
+	}
+
+	@Test
+	public void testAMDPermutation() {
+		CSRMatrix A = laplacian2D(12);
+		int n = A.getRowDim();
+		int[] perm = AMDOrdering.order(A);
+		assertPermutation(n, perm);
+		int[] inv = AMDOrdering.inverse(perm);
+		for(int k=0; k<n; k++)
+			assertEquals(k, inv[perm[k]]);
+	}
+
+	@Test
+	public void testCholeskyLaplacian() {
+		CSRMatrix A = laplacian2D(30);
+		int n = A.getRowDim();
+		FullVector b = new FullVector(n, 1.0);
+		FullVector x = new FullVector(n);
+		SparseCholesky ch = new SparseCholesky(A);
+		assertPermutation(n, ch.getPermutation());
+		ch.solve(b, x);
+		assertTrue(residual(A, x, b) < 1e-10);
+
+		//Refactorize with new values and the same pattern
+		CSRMatrix A2 = laplacian2D(30);
+		for(int i=1; i<=n; i++)
+			A2.set(i, i, 5.0);
+		ch.factorize(A2);
+		ch.solve(b, x);
+		assertTrue(residual(A2, x, b) < 1e-10);
+	}
+
+	@Test
+	public void testLUPivoting() {
+		//Zero diagonal, no factorization without row exchanges
+		SparseMatrix S = new SparseMatrixRowMajor(3, 3);
+		S.set(1, 2, 1.0);
+		S.set(2, 1, 1.0);
+		S.set(2, 3, 2.0);
+		S.set(3, 2, 3.0);
+		S.set(3, 3, 1.0);
+		CSRMatrix A = new CSRMatrix(S);
+		double[] xe = {1.0, -2.0, 3.0};
+		FullVector b = new FullVector(3);
+		A.mult(new FullVector(xe, true), b);
+		FullVector x = new FullVector(3);
+		new SparseLU(A).solve(b, x);
+		for(int i=0; i<3; i++)
+			assertEquals(xe[i], x.getData()[i], 1e-12);
+	}
+
+	@Test
+	public void testLUNonsymmetric() {
+		//Random nonsymmetric matrix with tiny diagonal entries
+		Random rnd = new Random(1);
+		int n = 200;
+		SparseMatrix S = new SparseMatrixRowMajor(n, n);
+		for(int i=1; i<=n; i++) {
+			S.set(i, i, 1e-8*rnd.nextGaussian());
+			for(int t=0; t<4; t++)
+				S.set(i, rnd.nextInt(n)+1, rnd.nextGaussian());
+		}
+		CSRMatrix A = new CSRMatrix(S);
+		double[] xe = new double[n];
+		for(int i=0; i<n; i++)
+			xe[i] = Math.sin(i);
+		FullVector b = new FullVector(n);
+		A.mult(new FullVector(xe, true), b);
+		for(double tol : new double[] {0.1, 1.0}) {
+			FullVector x = new FullVector(n);
+			new SparseLU(A, tol).solve(b, x);
+			assertTrue(residual(A, x, b) < 1e-8);
+		}
+	}
+
+	@Test(expected = FutureyeException.class)
+	public void testLUSingular() {
+		//The third row is the sum of the first two
+		SparseMatrix S = new SparseMatrixRowMajor(3, 3);
+		S.set(1, 1, 1.0); S.set(1, 2, 2.0);
+		S.set(2, 2, 1.0); S.set(2, 3, 1.0);
+		S.set(3, 1, 1.0); S.set(3, 2, 3.0); S.set(3, 3, 1.0);
+		new SparseLU(new CSRMatrix(S));
+	}
+
+	@Test(expected = FutureyeException.class)
+	public void testCholeskyIndefinite() {
+		SparseMatrix S = new SparseMatrixRowMajor(2, 2);
+		S.set(1, 1, 1.0); S.set(1, 2, 2.0);
+		S.set(2, 1, 2.0); S.set(2, 2, 1.0);
+		new SparseCholesky(new CSRMatrix(S));
+	}
+}
@@ -0,0 +1,130 @@
+package edu.uta.futureye.test.junit;
+
+import static edu.uta.futureye.function.FMath.C0;
+import static edu.uta.futureye.function.FMath.C1;
+import static edu.uta.futureye.function.FMath.grad;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.uta.futureye.algebra.CSRMatrix;
+import edu.uta.futureye.algebra.intf.Vector;
+import edu.uta.futureye.core.EdgeLocal;
+import edu.uta.futureye.core.Element;
+import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.Node;
+import edu.uta.futureye.core.NodeLocal;
+import edu.uta.futureye.core.Vertex;
+import edu.uta.futureye.function.basic.FX;
+import edu.uta.futureye.function.basic.SpaceVectorFunction;
+import edu.uta.futureye.function.intf.MathFunc;
+import edu.uta.futureye.function.intf.VecMathFunc;
+import edu.uta.futureye.io.MeshReader;
+import edu.uta.futureye.lib.assembler.BasicVecAssembler;
+import edu.uta.futureye.lib.element.FEQuadraticV_LinearP;
+import edu.uta.futureye.lib.weakform.VecWeakForm;
+
+/**
+ * The LHS entries of a vector-valued weak form which are identically zero
+ * are skipped in assembly, which must not change the assembled system
+ */
+public class VecWeakFormTest {
+	static final int NV = 6; //number of DOFs of each velocity component
+
+	//Mesh for FEQuadraticV_LinearP: a node at the middle of each edge
+	static Mesh stokesMesh() {
+		Mesh mesh = new MeshReader("grids/stokes_box.grd").read2DMesh();
+		mesh.nVertex = mesh.getNodeList().size();
+		for(Element e : mesh.getElementList()) {
+			e.adjustVerticeToCounterClockwise();
+			int nNode = e.nodes.size();
+			for(EdgeLocal edge : e.edges()) {
+				Vertex l = edge.beginVertex();
+				Vertex r = edge.endVertex();
+				Node node = new Node(mesh.getNodeList().size()+1,
+						(l.coord(1)+r.coord(1))/2.0, (l.coord(2)+r.coord(2))/2.0);
+				Node findNode = mesh.findNode(node);
+				if(findNode == null) {
+					edge.addEdgeNode(new NodeLocal(++nNode, node));
+					mesh.addNode(node);
+				} else {
+					edge.addEdgeNode(new NodeLocal(++nNode, findNode));
+				}
+			}
+			e.applyChange();
+		}
+		mesh.computeNodeBelongsToElements();
+		return mesh;
+	}
+
+	/**
+	 * Stokes weak form, <tt>zero</tt> times the coupling of the two velocity
+	 * components is added: nothing is skipped unless <tt>zero</tt> is folded
+	 */
+	static VecWeakForm stokes(FEQuadraticV_LinearP fe, final MathFunc zero) {
+		final VecMathFunc f = new SpaceVectorFunction(C1, C0);
+		VecWeakForm wf = new VecWeakForm(fe,
+				(u, v) -> grad(u.get(1),"x","y").dot(grad(v.get(1),"x","y"))
+					.A(grad(u.get(2),"x","y").dot(grad(v.get(2),"x","y")))
+					.S(v.get(1).diff("x").A(v.get(2).diff("y")).M(u.get(3)))
+					.A(v.get(3).M(u.get(1).diff("x").A(u.get(2).diff("y"))))
+					.A(zero.M(u.get(1).M(v.get(2)).A(u.get(2).M(v.get(1))).A(u.get(3).M(v.get(3))))),
+				v -> v.get(1).M(f.get(1)).A(v.get(2).M(f.get(2))));
+		wf.compile();
+		return wf;
+	}
+
+	static int component(int localIndex) {
+		return localIndex < NV ? 1 : (localIndex < 2*NV ? 2 : 3);
+	}
+
+	@Test
+	public void testNonZeroPattern() {
+		FEQuadraticV_LinearP fe = new FEQuadraticV_LinearP();
+		boolean[][] nz = stokes(fe, C0).getLHSNonZeroPattern();
+		int n = fe.getNumberOfDOFs();
+		for(int j=0; j<n; j++) {
+			for(int i=0; i<n; i++) {
+				int cj = component(j), ci = component(i);
+				if(cj == ci && cj < 3)
+					assertTrue(nz[j][i] || i != j);
+				else if(cj < 3 && ci < 3 || cj == 3 && ci == 3)
+					assertFalse("entry "+j+","+i, nz[j][i]);
+			}
+		}
+		boolean[][] full = stokes(fe, FX.x.S(FX.x)).getLHSNonZeroPattern();
+		for(int j=0; j<n; j++)
+			for(int i=0; i<n; i++)
+				assertTrue(full[j][i]);
+	}
+
+	@Test
+	public void testSameSystem() {
+		Mesh mesh = stokesMesh();
+		FEQuadraticV_LinearP fe = new FEQuadraticV_LinearP();
+		BasicVecAssembler skipped = new BasicVecAssembler(mesh, stokes(fe, C0));
+		skipped.assembleGlobal();
+		BasicVecAssembler full = new BasicVecAssembler(mesh, stokes(fe, FX.x.S(FX.x)));
+		full.assembleGlobal();
+
+		CSRMatrix A = (CSRMatrix)skipped.getGlobalStiffMatrix();
+		CSRMatrix R = (CSRMatrix)full.getGlobalStiffMatrix();
+		assertTrue(A.getNonZeroNumber() < R.getNonZeroNumber());
+		Map<Integer,Map<Integer,Double>> a = A.getAll();
+		for(Map.Entry<Integer,Map<Integer,Double>> row : R.getAll().entrySet()) {
+			Map<Integer,Double> aRow = a.get(row.getKey());
+			for(Map.Entry<Integer,Double> e : row.getValue().entrySet()) {
+				Double v = aRow == null ? null : aRow.get(e.getKey());
+				assertEquals("("+row.getKey()+","+e.getKey()+")",
+						e.getValue(), v == null ? 0.0 : v, 1e-12);
+			}
+		}
+		Vector b = skipped.getGlobalLoadVector(), rb = full.getGlobalLoadVector();
+		for(int i=1; i<=b.getDim(); i++)
+			assertEquals(rb.get(i), b.get(i), 1e-12);
+	}
+}
@@ -8,11 +8,15 @@ import java.util.List;
 import edu.uta.futureye.algebra.SpaceVector;
 import edu.uta.futureye.algebra.SparseBlockMatrix;
 import edu.uta.futureye.algebra.SparseBlockVector;
+import edu.uta.futureye.algebra.SparseMatrixRowMajor;
 import edu.uta.futureye.algebra.SparseVectorHashMap;
+import edu.uta.futureye.algebra.intf.SparseMatrix;
 import edu.uta.futureye.algebra.intf.SparseVector;
 import edu.uta.futureye.algebra.intf.Vector;
 import edu.uta.futureye.algebra.solver.SchurComplementStokesSolver;
 import edu.uta.futureye.util.DataReader;
+import edu.uta.futureye.core.DOF;
+import edu.uta.futureye.core.DOFOrder;
 import edu.uta.futureye.core.EdgeLocal;
 import edu.uta.futureye.core.Element;
 import edu.uta.futureye.core.Mesh;
@@ -37,6 +41,7 @@ import edu.uta.futureye.lib.element.FiniteElementType;
 import edu.uta.futureye.lib.weakform.WeakFormNavierStokes2D;
 import edu.uta.futureye.util.Constant;
 import edu.uta.futureye.util.FutureyeException;
+import edu.uta.futureye.util.container.DOFList;
 import edu.uta.futureye.util.container.ElementList;
 import edu.uta.futureye.util.container.NodeList;
 import edu.uta.futureye.util.container.ObjList;
@@ -68,6 +73,8 @@ public class T11NavierStokesCylinder {
 	protected VecMathFunc diri = null;
 	//Previous Velocity
 	protected VecMathFunc U = new SpaceVectorFunction(2);
+	//Schur complement solver, keeps the factorizations between nonlinear iterations
+	protected SchurComplementStokesSolver solver = null;
 	
 	//delta t
 	protected double dt = 0.02;
@@ -313,6 +320,37 @@ public class T11NavierStokesCylinder {
 		diri.set(3, FMath.C0);
 	}
 	
+	/**
+	 * Lumped pressure mass matrix used to precondition the Schur complement
+	 * system: each pressure DOF of an element gets an equal share of the
+	 * element area. The mesh doesn't change, so it is assembled only once.
+	 * 
+	 * @param stiff
+	 * @return
+	 */
+	public SparseMatrix assemblePressureMassMatrix(SparseBlockMatrix stiff) {
+		int offset = stiff.getBlock(1, 1).getRowDim() + stiff.getBlock(2, 2).getRowDim();
+		int nP = stiff.getBlock(3, 3).getRowDim();
+		SparseMatrix Mp = new SparseMatrixRowMajor(nP, nP);
+		ElementList eList = mesh.getElementList();
+		for(int i=1;i<=eList.size();i++) {
+			Element e = eList.at(i);
+			DOFList DOFs = e.getAllDOFList(DOFOrder.NEFV);
+			int nPDOFs = 0;
+			for(int j=1;j<=DOFs.size();j++) {
+				if(DOFs.at(j).getVVFComponent() == 3)
+					nPDOFs++;
+			}
+			double area = e.getElementArea();
+			for(int j=1;j<=DOFs.size();j++) {
+				DOF dof = DOFs.at(j);
+				if(dof.getVVFComponent() == 3)
+					Mp.add(dof.getGlobalIndex()-offset, dof.getGlobalIndex()-offset, area/nPDOFs);
+			}
+		}
+		return Mp;
+	}
+	
 	public SparseBlockVector nonlinearIter(int time, int nIter, SpaceVectorFunction uk) {
 		//Right hand side(RHS): f = (0,0)'
 		if(time==0)
@@ -333,9 +371,11 @@ public class T11NavierStokesCylinder {
 		
 		assembler.imposeDirichletCondition(diri);
 		
-		SchurComplementStokesSolver solver = 
-			new SchurComplementStokesSolver(stiff,load);
-		//solver.setCGInit(0.5);
+		if(solver == null) {
+			solver = new SchurComplementStokesSolver(stiff,load);
+			solver.setPressureMassMatrix(assemblePressureMassMatrix(stiff));
+		} else
+			solver.setSystem(stiff,load);
 		//solver.debug = true;
 		return solver.solve2D();
 		
@@ -351,9 +391,11 @@ public class T11NavierStokesCylinder {
 		SparseBlockVector load = assembler.getLoadVector();
 		assembler.imposeDirichletCondition(diri);
 		
-		SchurComplementStokesSolver solver = 
-			new SchurComplementStokesSolver(stiff,load);
-		//solver.setCGInit(0.5);
+		if(solver == null) {
+			solver = new SchurComplementStokesSolver(stiff,load);
+			solver.setPressureMassMatrix(assemblePressureMassMatrix(stiff));
+		} else
+			solver.setSystem(stiff,load);
 		//solver.debug = true;
 		return solver.solve2D();
 		
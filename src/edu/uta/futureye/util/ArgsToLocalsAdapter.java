@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.util;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A LocalVarAllocator which replaces the reads of a (virtual) arguments array
+ * <p><blockquote><pre>
+ * ALOAD array; LDC k; DALOAD
+ * </pre></blockquote>
+ * by <tt>DLOAD locals[k]</tt>, so the arguments of a function can be passed in
+ * local variables instead of a new array (see FComposite.bytecodeGen()).
+ * <p>
+ * Any other use of the array (e.g. passing it to a function which is not compiled)
+ * can't be replaced, <tt>isReplaced()</tt> returns false in this case. Run the
+ * generator once with <tt>locals == null</tt> and no delegate to check it before
+ * generating the code.
+ *
+ */
+public class ArgsToLocalsAdapter extends LocalVarAllocator {
+	protected LocalVarAllocator alloc;
+	protected int arrayIdx;
+	protected int[] locals;
+
+	//0: nothing pending, 1: ALOAD array, 2: ALOAD array; LDC k
+	protected int state = 0;
+	protected int ldcIdx;
+	protected boolean replaced = true;
+
+	/**
+	 * @param alloc - allocator of the method being generated, the calls are delegated to it.
+	 *        <tt>null</tt> for a dry run
+	 * @param arrayIdx - index of the arguments array in the local variable table
+	 * @param locals - <tt>locals[k]</tt> is the local variable of the k-th argument
+	 */
+	public ArgsToLocalsAdapter(LocalVarAllocator alloc, int arrayIdx, int[] locals, int nextLocal) {
+		super(alloc, nextLocal);
+		this.alloc = alloc;
+		this.arrayIdx = arrayIdx;
+		this.locals = locals;
+	}
+
+	/**
+	 * Return true if all the uses of the array are replaced
+	 *
+	 * @return
+	 */
+	public boolean isReplaced() {
+		flush();
+		return replaced;
+	}
+
+	@Override
+	public int newLocal(org.objectweb.asm.Type type) {
+		return alloc == null ? super.newLocal(type) : alloc.newLocal(type);
+	}
+
+	@Override
+	public int getNextLocal() {
+		return alloc == null ? super.getNextLocal() : alloc.getNextLocal();
+	}
+
+	//Emit the pending instructions unchanged, the array is used otherwise
+	protected void flush() {
+		if(state == 0) return;
+		replaced = false;
+		super.visitVarInsn(Opcodes.ALOAD, arrayIdx);
+		if(state == 2)
+			super.visitLdcInsn(ldcIdx);
+		state = 0;
+	}
+
+	protected boolean isArrayLoad(int opcode, int var) {
+		return opcode == Opcodes.ALOAD && var == arrayIdx;
+	}
+
+	@Override
+	public void visitVarInsn(int opcode, int var) {
+		flush();
+		if(isArrayLoad(opcode, var))
+			state = 1;
+		else
+			super.visitVarInsn(opcode, var);
+	}
+
+	@Override
+	public void visitIntInsn(int opcode, int operand) {
+		flush();
+		if(isArrayLoad(opcode, operand))
+			state = 1;
+		else
+			super.visitIntInsn(opcode, operand);
+	}
+
+	@Override
+	public void visitLdcInsn(Object cst) {
+		if(state == 1 && cst instanceof Integer) {
+			int k = (Integer)cst;
+			if(locals == null || (k >= 0 && k < locals.length)) {
+				ldcIdx = k;
+				state = 2;
+				return;
+			}
+		}
+		flush();
+		super.visitLdcInsn(cst);
+	}
+
+	@Override
+	public void visitInsn(int opcode) {
+		if(state == 2 && opcode == Opcodes.DALOAD) {
+			state = 0;
+			if(locals != null)
+				super.visitVarInsn(Opcodes.DLOAD, locals[ldcIdx]);
+			return;
+		}
+		flush();
+		super.visitInsn(opcode);
+	}
+
+	@Override
+	public void visitTypeInsn(int opcode, String type) {
+		flush();
+		super.visitTypeInsn(opcode, type);
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+		flush();
+		super.visitFieldInsn(opcode, owner, name, desc);
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+		flush();
+		super.visitMethodInsn(opcode, owner, name, desc, itf);
+	}
+
+	@Override
+	public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+		flush();
+		super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		flush();
+		super.visitJumpInsn(opcode, label);
+	}
+
+	@Override
+	public void visitLabel(Label label) {
+		flush();
+		super.visitLabel(label);
+	}
+
+	@Override
+	public void visitIincInsn(int var, int increment) {
+		flush();
+		super.visitIincInsn(var, increment);
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+		flush();
+		super.visitTableSwitchInsn(min, max, dflt, labels);
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+		flush();
+		super.visitLookupSwitchInsn(dflt, keys, labels);
+	}
+
+	@Override
+	public void visitMultiANewArrayInsn(String desc, int dims) {
+		flush();
+		super.visitMultiANewArrayInsn(desc, dims);
+	}
+
+	@Override
+	public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+		flush();
+		super.visitFrame(type, nLocal, local, nStack, stack);
+	}
+}
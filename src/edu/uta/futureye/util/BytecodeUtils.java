@@ -27,6 +27,7 @@ import org.apache.bcel.generic.Type;
 import edu.uta.futureye.function.basic.FComposite;
 import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.function.operator.FBinaryOp;
+import edu.uta.futureye.function.operator.FUniaryOp;
 import edu.uta.futureye.lib.assembler.AssembleParam;
 
 public class BytecodeUtils {
@@ -34,6 +35,8 @@ public class BytecodeUtils {
 		if(func instanceof FBinaryOp) {
 			postOrder(((FBinaryOp) func).arg1, list);
 			postOrder(((FBinaryOp) func).arg2, list);
+		} else if(func instanceof FUniaryOp) {
+			postOrder(((FUniaryOp) func).arg, list);
 		} else if(func instanceof FComposite) {
 			FComposite fc = (FComposite)func;
 			for(Entry<String, MathFunc> e : fc.fInners.entrySet()) {
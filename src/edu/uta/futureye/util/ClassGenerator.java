@@ -67,7 +67,9 @@ public class ClassGenerator implements Opcodes {
 	}
 
 	/**
-	 * Start generating a method of the class
+	 * Start generating a method of the class. The returned object is a
+	 * LocalVarAllocator so that free local variables can be allocated
+	 * during code generation
 	 * 
 	 * @param access
 	 * @param name
@@ -75,7 +77,8 @@ public class ClassGenerator implements Opcodes {
 	 * @return
 	 */
 	public MethodVisitor startMethod(int access, String name, String type) {
-		return cw.visitMethod(access, name, type, null, null);
+		return new LocalVarAllocator(cw.visitMethod(access, name, type, null, null),
+				access, type);
 	}
 
 	/**
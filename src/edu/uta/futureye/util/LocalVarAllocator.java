@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2010, nkliuyueming@gmail.com. All rights reserved.
+ *
+ *
+ */
+package edu.uta.futureye.util;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * A MethodVisitor which hands out free slots in the local variable table
+ * of the method being generated. The first free slot is right after the
+ * arguments of the method.
+ * <p>
+ * Code generators (e.g. FComposite.bytecodeGen()) should call <tt>newLocal()</tt>
+ * instead of using a hard-coded index so that the generated code does not
+ * overwrite the arguments or the locals of other generators.
+ *
+ */
+public class LocalVarAllocator extends MethodVisitor {
+	protected int nextLocal;
+
+	/**
+	 *
+	 * @param mv - the MethodVisitor to which the calls are delegated
+	 * @param access - access flags of the method
+	 * @param desc - descriptor of the method
+	 */
+	public LocalVarAllocator(MethodVisitor mv, int access, String desc) {
+		super(Opcodes.ASM5, mv);
+		//size of arguments plus one for 'this'
+		this.nextLocal = Type.getArgumentsAndReturnSizes(desc) >> 2;
+		if((access & Opcodes.ACC_STATIC) != 0)
+			this.nextLocal--;
+	}
+
+	/**
+	 * Start allocating at <tt>nextLocal</tt>, see <tt>ArgsToLocalsAdapter</tt>
+	 *
+	 * @param mv - the MethodVisitor to which the calls are delegated
+	 * @param nextLocal - index of the first free local variable
+	 */
+	protected LocalVarAllocator(MethodVisitor mv, int nextLocal) {
+		super(Opcodes.ASM5, mv);
+		this.nextLocal = nextLocal;
+	}
+
+	/**
+	 * Allocate a new local variable of the given type
+	 *
+	 * @param type
+	 * @return the index of the new local variable
+	 */
+	public int newLocal(Type type) {
+		int idx = this.nextLocal;
+		this.nextLocal += type.getSize();
+		return idx;
+	}
+
+	/**
+	 * Return the index of the next free local variable
+	 * @return
+	 */
+	public int getNextLocal() {
+		return this.nextLocal;
+	}
+}
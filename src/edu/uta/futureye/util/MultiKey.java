@@ -34,10 +34,10 @@ public class MultiKey {
     public boolean equals(Object obj) {
     	MultiKey k = (MultiKey)obj;
     	if(this.hasOrder)
-    		return (this.k1 == k.k1 && this.k2 == k.k2);
+    		return (this.k1.equals(k.k1) && this.k2.equals(k.k2));
     	else {
-    		return (this.k1 == k.k1 && this.k2 == k.k2) ||
-    		(this.k1 == k.k2 && this.k2 == k.k1);
+    		return (this.k1.equals(k.k1) && this.k2.equals(k.k2)) ||
+    		(this.k1.equals(k.k2) && this.k2.equals(k.k1));
     	}
     }
     
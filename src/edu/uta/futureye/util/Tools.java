@@ -17,6 +17,7 @@ import edu.uta.futureye.algebra.solver.external.SolverJBLAS;
 import edu.uta.futureye.core.DOF;
 import edu.uta.futureye.core.Element;
 import edu.uta.futureye.core.Mesh;
+import edu.uta.futureye.core.MeshTransfer;
 import edu.uta.futureye.core.Node;
 import edu.uta.futureye.core.NodeRefined;
 import edu.uta.futureye.core.NodeType;
@@ -528,16 +529,33 @@ public class Tools {
 		}
 	}
 
+	/**
+	 * Interpolate <tt>vecFun</tt> to the nodes of <tt>newMesh</tt>. The nodes are
+	 * located once with <tt>MeshTransfer</tt>, use it directly to interpolate
+	 * several vectors between the same meshes.
+	 * 
+	 * @param oldMesh - used if the mesh of <tt>vecFun</tt> is not specified
+	 * @param newMesh
+	 * @param vecFun
+	 * @return
+	 */
 	public static Vector interplateFrom(Mesh oldMesh, Mesh newMesh, Vector2MathFunc vecFun) {
 		int nNode = newMesh.getNodeList().size();
 		NodeList nodes = newMesh.getNodeList();
+		Mesh meshFrom = vecFun.getMesh() != null ? vecFun.getMesh() : oldMesh;
+		MeshTransfer transfer = new MeshTransfer(meshFrom, newMesh);
+		Vector values = transfer.apply(vecFun.getVector());
 		Vector rlt = new SparseVectorHashMap(nNode);
 		for(int i=1;i<=nNode;i++) {
-			Variable v = new Variable();
-			v.set("x",nodes.at(i).coord(1));
-			v.set("y",nodes.at(i).coord(2));
-			double val = vecFun.apply(v);
-			rlt.set(i,val);
+			if(transfer.isInside(i-1)) {
+				rlt.set(i,values.get(i));
+			} else {
+				Variable v = new Variable();
+				v.set("x",nodes.at(i).coord(1));
+				v.set("y",nodes.at(i).coord(2));
+				//Outside of the old mesh: default function or exception
+				rlt.set(i,vecFun.apply(v));
+			}
 		}
 		return rlt;
 	}
@@ -21,6 +21,7 @@ import edu.uta.futureye.algebra.intf.Matrix;
 import edu.uta.futureye.algebra.intf.Vector;
 import edu.uta.futureye.core.CoordinateTransform;
 import edu.uta.futureye.core.DOF;
+import edu.uta.futureye.core.DOFMap;
 import edu.uta.futureye.core.DOFOrder;
 import edu.uta.futureye.core.Edge;
 import edu.uta.futureye.core.EdgeLocal;
@@ -47,6 +48,7 @@ import edu.uta.futureye.function.basic.SpaceVectorFunction;
 import edu.uta.futureye.function.intf.MathFunc;
 import edu.uta.futureye.function.intf.ScalarShapeFunction;
 import edu.uta.futureye.function.intf.VecMathFunc;
+import edu.uta.futureye.lib.assembler.DirichletCondition;
 import edu.uta.futureye.util.container.DOFList;
 import edu.uta.futureye.util.container.ElementList;
 import edu.uta.futureye.util.container.NodeList;
@@ -118,17 +120,15 @@ public class Utils {
 	 * TODO 可以修改为2D,3D都可以计算
 	 */
 	public static double computeAngle2D(Point a1,Point a2,Point b1,Point b2) {
-		Vector v1 = new SpaceVector(2);
-		v1.set(1, a2.coord(1)-a1.coord(1));
-		v1.set(2, a2.coord(2)-a1.coord(2));
-		
-		Vector v2 = new SpaceVector(2);
-		v2.set(1, b2.coord(1)-b1.coord(1));
-		v2.set(2, b2.coord(2)-b1.coord(2));
+		//No temporary vectors, it is called for each pair of edges in Mesh.isNeighbor()
+		double x1 = a2.coord(1)-a1.coord(1);
+		double y1 = a2.coord(2)-a1.coord(2);
+		double x2 = b2.coord(1)-b1.coord(1);
+		double y2 = b2.coord(2)-b1.coord(2);
 		
 		//if(v1.norm2()<Constant.eps || v2.norm2()<Constant.eps), Math.acos(v) will be NaN
 
-		double v = v1.dot(v2)/(v1.norm2()*v2.norm2());
+		double v = (x1*x2+y1*y2)/(Math.sqrt(x1*x1+y1*y1)*Math.sqrt(x2*x2+y2*y2));
 		if(v > 1.0) v = 1.0;
 		else if(v < -1.0) v = -1.0;
 		return Math.acos(v);
@@ -958,40 +958,57 @@ public class Utils {
 	}
 
 	public static void imposeDirichletCondition(Matrix stiff, Vector load, FiniteElement fe, Mesh mesh, MathFunc diri) {
+		DirichletCondition bc = new DirichletCondition(stiff.getRowDim());
 		ElementList eList = mesh.getElementList();
+		DOFMap dofMap = mesh.getDOFMap(fe);
+		int nDOFs = dofMap.getNumberOfDOFs();
 		for(int i=1;i<=eList.size();i++) {
 			NodeList nodes = eList.at(i).nodes;
 			for(int j=1; j<=nodes.size(); j++) {
 				Node n = nodes.at(j);
 				if(n.getNodeType() == NodeType.Dirichlet) {
+					int idx = j <= nDOFs ? dofMap.getGlobalIndex(i, j) : 
+						fe.getGlobalIndex(mesh, eList.at(i), j);
+					if(bc.contains(idx)) continue;
 					Variable v = Variable.createFrom(diri, n, n.globalIndex); //bugfix 11/27/2013 Variable.createFrom(diri, n, 0);
 					double vv = diri.apply(v);
 					//System.out.println("===>"+vv);
-					setDirichlet(stiff, load, fe.getGlobalIndex(mesh, eList.at(i), j), vv);
+					bc.set(idx, vv);
 				}
 			}
 		}
+		bc.apply(stiff, load);
 	}
 	
 	public static void imposeDirichletCondition(Matrix stiff, Vector load, VecFiniteElement fe, Mesh mesh, VecMathFunc diri) {
+		DirichletCondition bc = new DirichletCondition(stiff.getRowDim());
 		int nDOFs = fe.getNumberOfDOFs();
-		for(Element e : mesh.getElementList()) {
+		ElementList eList = mesh.getElementList();
+		DOFMap dofMap = mesh.getDOFMap(fe);
+		int[] table = dofMap.getTable();
+		for(int i=1;i<=eList.size();i++) {
+			Element e = eList.at(i);
+			int base = dofMap.getOffset(i);
 			for(int localIndex=1; localIndex<=nDOFs; localIndex++) {
 				if(fe.getDOFType(e, localIndex) == NodeType.Dirichlet) {
+					int idx = table[base+localIndex-1];
+					if(bc.contains(idx)) continue;
 					int fIdx = fe.getVVFComponentIndex(localIndex);
 					MathFunc f = diri.get(fIdx);
 					Node n = (Node)fe.getGeoEntity(e, localIndex);
 					Variable v = Variable.createFrom(f, n, n.globalIndex); //bugfix 11/27/2013 Variable.createFrom(diri, n, 0);
 					double vv = f.apply(v);
 					//System.out.println("===>"+vv);
-					setDirichlet(stiff, load, fe.getGlobalIndex(mesh, e, localIndex), vv);
+					bc.set(idx, vv);
 				}
 			}
 		}
+		bc.apply(stiff, load);
 	}
 	
 	@Deprecated
 	public static void imposeDirichletCondition(Matrix stiff, Vector load, Mesh mesh, MathFunc diri) {
+		DirichletCondition bc = new DirichletCondition(stiff.getRowDim());
 		ElementList eList = mesh.getElementList();
 		for(int i=1;i<=eList.size();i++) {
 			Element e = eList.at(i);
@@ -1001,9 +1018,9 @@ public class Utils {
 				GeoEntity ge = dof.getOwner();
 				if(ge instanceof Node) {
 					Node n = (Node)ge;
-					if(n.getNodeType() == NodeType.Dirichlet) {
+					if(n.getNodeType() == NodeType.Dirichlet && !bc.contains(dof.getGlobalIndex())) {
 						Variable v = Variable.createFrom(diri, n, n.globalIndex); //bugfix 11/27/2013 Variable.createFrom(diri, n, 0);
-						setDirichlet(stiff, load, dof.getGlobalIndex(),diri.apply(v));
+						bc.set(dof.getGlobalIndex(),diri.apply(v));
 					}
 				} else if(ge instanceof EdgeLocal) {
 					//2D单元（面）其中的局部边上的自由度
@@ -1024,9 +1041,9 @@ public class Utils {
 					VertexList vs = ((GeoEntity2D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType()) {
+						if(NodeType.Dirichlet == n.getNodeType() && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(stiff, load, dof.getGlobalIndex(),diri.apply(v));
+							bc.set(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				} else if(ge instanceof Face) {
@@ -1035,9 +1052,9 @@ public class Utils {
 					VertexList vs = ((GeoEntity2D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType()) {
+						if(NodeType.Dirichlet == n.getNodeType() && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(stiff, load, dof.getGlobalIndex(),diri.apply(v));
+							bc.set(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				} else if(ge instanceof Volume) {
@@ -1045,14 +1062,15 @@ public class Utils {
 					VertexList vs = ((GeoEntity3D) ge).getVertices();
 					for(int k=1;k<=vs.size();k++) {
 						Node n = vs.at(k).globalNode();
-						if(NodeType.Dirichlet == n.getNodeType()) {
+						if(NodeType.Dirichlet == n.getNodeType() && !bc.contains(dof.getGlobalIndex())) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(stiff, load, dof.getGlobalIndex(),diri.apply(v));
+							bc.set(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				}
 			}
 		}
+		bc.apply(stiff, load);
 	}
 
 }